@@ -207,7 +207,7 @@ public class MainActivity extends AppCompatActivity {
      * 停止录音
      */
     private void stopRecord() {
-        //停止录音
-        idealRecorder.stop();
+        //停止录音 异步停止 不阻塞UI线程
+        idealRecorder.stopAsync();
     }
 }
\ No newline at end of file
@@ -5,17 +5,36 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.media.AudioFormat;
 import android.media.MediaRecorder;
-import android.os.Handler;
 import androidx.core.content.ContextCompat;
 import android.text.TextUtils;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.binky.audiorecorder.file.AudioFileHelper;
 import com.binky.audiorecorder.file.AudioFileListener;
+import com.binky.audiorecorder.file.RecordingCatalog;
+import com.binky.audiorecorder.file.StorageBudget;
+import com.binky.audiorecorder.file.WavMarker;
+import com.binky.audiorecorder.file.WavMetadata;
+import com.binky.audiorecorder.process.AudioProcessor;
+import com.binky.audiorecorder.process.ProcessorChain;
+import com.binky.audiorecorder.record.AudioRecordSource;
+import com.binky.audiorecorder.record.CaptureSource;
+import com.binky.audiorecorder.record.ChannelMask;
+import com.binky.audiorecorder.record.FrameInfo;
 import com.binky.audiorecorder.record.Recorder;
 import com.binky.audiorecorder.record.RecorderCallback;
+import com.binky.audiorecorder.session.MemorySession;
+import com.binky.audiorecorder.sink.AudioSink;
+import com.binky.audiorecorder.sink.SinkFanout;
+import com.binky.audiorecorder.trace.Trace;
+import com.binky.audiorecorder.upload.UploadManager;
 import com.binky.audiorecorder.utils.BytesTransUtil;
 import com.binky.audiorecorder.utils.Log;
 
@@ -24,9 +43,14 @@ import com.binky.audiorecorder.utils.Log;
  */
 
 public class AudioRecorder implements RecorderCallback, AudioFileListener {
+    /**
+     * 默认的停止超时时间 单位毫秒
+     */
+    public static final long DEFAULT_DRAIN_TIMEOUT = 2000L;
     private static final String TAG = "IdealRecorder";
     private Context mContext;
-    private Handler mRecorderHandler;
+    private Executor mCallbackExecutor;
+    private final ConflatedDispatcher mDataDispatcher = new ConflatedDispatcher();
     private RecordConfig mRecordConfig;
 
     private AudioFileHelper mAudioFileHelper;
@@ -36,11 +60,50 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
     private long mMaxRecordTime = 6000L;
     private long mVolumeInterval = 200L;
     private int mCount;
-    private ByteArrayOutputStream mByteArrayOutputStream = new ByteArrayOutputStream();
+    /**
+     * 写文件用的字节缓冲 在采集线程中复用 只在帧变长时重新分配
+     */
+    private byte[] mSaveBuffer = new byte[0];
+    private int mSampleRate = 16000;
+    private int mChannelCount = 1;
+    private volatile long mStartNanos;
+    /**
+     * 最近一次开始的录音的指标 每次录音一个新的对象 上一次录音收尾时仍然写入自己的对象
+     */
+    private volatile RecordMetrics mRecordMetrics = new RecordMetrics();
+    /**
+     * start()时创建 录音真正开始时成为mRecordMetrics
+     */
+    private volatile RecordMetrics mStartingMetrics;
+    private final Object mStopLock = new Object();
+    private boolean mIsSessionActive;
+    /**
+     * 还没有完成的异步停止 每次调用stopAsync一个 收尾完成后一起完成
+     */
+    private final List<StopFuture> mPendingStops = new ArrayList<>();
+    /**
+     * sink排空的最长时间 取所有异步停止请求中最长的 小于等于0表示不超时
+     */
+    private long mPendingDrainTimeout;
+    private MemorySession.Codec mSessionCodec = MemorySession.Codec.RAW;
+    private boolean mKeepSessionInMemory = true;
+    private volatile MemorySession mMemorySession;
+    /**
+     * 使用了自定义的录音设备 不再检查录音权限
+     */
+    private boolean mIsCustomSource;
+    private final SinkFanout mSinkFanout = new SinkFanout();
+    private UploadManager mUploadManager;
+    private boolean mMarkPauses;
+    private final Map<String, String> mFileInfo = new LinkedHashMap<>();
+    private volatile WavMetadata mMetadata;
+    /**
+     * 本次录音已经投递的单声道采样点数 标记的位置以它为准
+     */
+    private volatile long mRecordedFrames;
     private AtomicBoolean mIsStarted = new AtomicBoolean(false);
 
     private AudioRecorder() {
-        mRecorderHandler = new Handler();
         mRecorder = new Recorder(mRecordConfig, this);
         mAudioFileHelper = new AudioFileHelper(this);
     }
@@ -93,6 +156,92 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
     }
 
 
+    /**
+     * 设置暂停时是否停止录音设备 默认不停止 暂停期间继续采集并丢弃数据 继续录音没有启动延迟
+     * 停止设备可以省电并让系统不再显示录音中 继续录音时需要重新启动设备
+     *
+     * @param stopSource 暂停时是否停止录音设备
+     * @return
+     */
+    public AudioRecorder setStopSourceOnPause(boolean stopSource) {
+        mRecorder.setStopSourceOnPause(stopSource);
+        return this;
+    }
+
+    /**
+     * 设置是否在保存的WAV文件中用cue点标记每次暂停的位置
+     *
+     * @param markPauses 是否标记
+     * @return
+     */
+    public AudioRecorder setMarkPausesInFile(boolean markPauses) {
+        this.mMarkPauses = markPauses;
+        return this;
+    }
+
+    /**
+     * 设置之后每次录音写入WAV文件的INFO字段 例如{@link WavMetadata#INFO_TITLE}
+     *
+     * @param id    四个字符的字段名
+     * @param value 内容 为null时删除
+     * @return
+     */
+    public AudioRecorder setFileInfo(String id, String value) {
+        if (id == null || id.length() != 4) {
+            Log.e(TAG, "info id must be 4 characters: " + id);
+            return this;
+        }
+        synchronized (mFileInfo) {
+            if (value == null) {
+                mFileInfo.remove(id);
+            } else {
+                mFileInfo.put(id, value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 在当前录音位置添加一个标记 可以在任意线程中调用 文件收尾时写成WAV的cue点和标签
+     *
+     * @param label 标签 可以为null
+     * @return 添加的标记 没有在录音时返回null
+     */
+    public WavMarker addMarker(String label) {
+        WavMetadata metadata = mMetadata;
+        if (metadata == null || !mIsStarted.get()) {
+            Log.e(TAG, "addMarker failed , Because the Ideal Recorder is not started");
+            return null;
+        }
+        return metadata.addMarker(mRecordedFrames, label);
+    }
+
+    /**
+     * 在指定位置添加一个区间标记 例如检测到的一段语音
+     *
+     * @param position 区间开始的位置 以本次录音保存的单声道采样点计
+     * @param length   区间长度 以单声道采样点计 0表示单个位置
+     * @param label    标签 可以为null
+     * @return 添加的标记 没有在录音时返回null
+     */
+    public WavMarker addRegion(long position, long length, String label) {
+        WavMetadata metadata = mMetadata;
+        if (metadata == null || !mIsStarted.get()) {
+            Log.e(TAG, "addRegion failed , Because the Ideal Recorder is not started");
+            return null;
+        }
+        return metadata.addRegion(position, length, label);
+    }
+
+    /**
+     * 当前录音或最近一次录音的标记和INFO
+     *
+     * @return 还没有录过音时返回null
+     */
+    public WavMetadata getSessionMetadata() {
+        return mMetadata;
+    }
+
     /**
      * 设置音量回调时长 单位毫秒 必须为100毫秒的整数倍
      *
@@ -138,6 +287,31 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
         return this;
     }
 
+    /**
+     * 设置录音保存目录的存储预算 开始录音时按最长录音时间预估文件大小 超出预算时删除最旧的录音
+     * 空间不够写满最长录音时间时 会在写满可用空间之前停止录音并回调{@link StatusListener#onStorageLimitReached(long)}
+     * 不设置时只检查磁盘剩余空间 不会删除文件
+     *
+     * @param budget 存储预算 传null取消
+     * @return
+     */
+    public AudioRecorder setStorageBudget(StorageBudget budget) {
+        mAudioFileHelper.setStorageBudget(budget);
+        return this;
+    }
+
+    /**
+     * 设置录音目录 每次保存成功后记录路径、格式、时长、响度和标记 列表和筛选可以直接查询目录 不需要打开录音文件
+     * 目录日志不要放在存储预算会删除的.wav/.pcm文件名下
+     *
+     * @param catalog 录音目录 传null取消
+     * @return
+     */
+    public AudioRecorder setRecordingCatalog(RecordingCatalog catalog) {
+        mAudioFileHelper.setCatalog(catalog);
+        return this;
+    }
+
     /**
      * 设置录音保存的格式是否为wav 默认保存为wav格式 true 保存为wav格式 false 文件保存问pcm格式
      *
@@ -149,6 +323,108 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
         return this;
     }
 
+    /**
+     * 录音结束后把保存的文件峰值归一化 在录音结束时对文件做第二遍处理
+     *
+     * @param enable       是否开启
+     * @param targetPeakDb 目标峰值 单位dBFS 例如 -1
+     * @return
+     */
+    public AudioRecorder setNormalizeOnFinish(boolean enable, float targetPeakDb) {
+        mAudioFileHelper.setNormalizePeak(enable ? targetPeakDb : Float.NaN);
+        return this;
+    }
+
+    /**
+     * 设置整段录音在内存中保存的格式 默认为{@link MemorySession.Codec#RAW}
+     * 压缩格式下录音时逐帧编码 结束后通过{@link StatusListener#onRecordedSession(MemorySession)}按需解码读取
+     * 只有RAW格式会回调{@link StatusListener#onRecordedAllData(byte[])}
+     * FLAC最多支持8个声道 声道更多时本次录音改为RAW格式保存
+     *
+     * @param codec 保存格式
+     * @return
+     */
+    public AudioRecorder setSessionCodec(MemorySession.Codec codec) {
+        this.mSessionCodec = codec == null ? MemorySession.Codec.RAW : codec;
+        return this;
+    }
+
+    /**
+     * 设置是否在内存中保存整段录音 默认保存
+     * 长时间录音时内存会一直增长 只需要文件或sink输出时建议关闭 关闭后不再回调onRecordedAllData和onRecordedSession
+     *
+     * @param keep 是否保存
+     * @return
+     */
+    public AudioRecorder setKeepSessionInMemory(boolean keep) {
+        this.mKeepSessionInMemory = keep;
+        return this;
+    }
+
+    /**
+     * 替换录音设备 默认使用{@link AudioRecordSource} 只能在没有录音也没有预热时调用
+     * 自定义的设备不检查录音权限 可以用来在没有真实设备的环境中回放或生成数据
+     *
+     * @param source 录音设备 传null恢复默认
+     * @return
+     */
+    public AudioRecorder setCaptureSource(CaptureSource source) {
+        if (source == null) {
+            source = new AudioRecordSource();
+        }
+        if (mRecorder.setCaptureSource(source)) {
+            mIsCustomSource = !(source instanceof AudioRecordSource);
+        } else {
+            Log.e(TAG, "setCaptureSource failed , Because the Ideal Recorder is busy");
+        }
+        return this;
+    }
+
+    /**
+     * 添加一个录音数据的输出目标 使用默认的队列长度{@link SinkFanout#DEFAULT_QUEUE_CAPACITY}
+     *
+     * @param sink sink
+     * @return
+     */
+    public AudioRecorder addSink(AudioSink sink) {
+        return addSink(sink, SinkFanout.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * 添加一个录音数据的输出目标 每个sink在自己的线程中写入 队列满时丢弃新到的帧
+     * 在下一次录音开始时生效
+     *
+     * @param sink          sink
+     * @param queueCapacity 队列能缓存的帧数
+     * @return
+     */
+    public AudioRecorder addSink(AudioSink sink, int queueCapacity) {
+        mSinkFanout.add(sink, queueCapacity);
+        return this;
+    }
+
+    /**
+     * 移除一个输出目标 在下一次录音开始时生效
+     *
+     * @param sink sink
+     * @return
+     */
+    public AudioRecorder removeSink(AudioSink sink) {
+        mSinkFanout.remove(sink);
+        return this;
+    }
+
+    /**
+     * 设置录音文件保存成功后自动上传 传null取消
+     *
+     * @param uploadManager 上传管理
+     * @return
+     */
+    public AudioRecorder setUploadManager(UploadManager uploadManager) {
+        this.mUploadManager = uploadManager;
+        return this;
+    }
+
     /**
      * 设置录音时各种状态的监听
      *
@@ -156,7 +432,23 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
      * @return
      */
     public AudioRecorder setStatusListener(StatusListener statusListener) {
+        return setStatusListener(statusListener, CallbackExecutors.mainThread());
+    }
+
+    /**
+     * 设置录音时各种状态的监听 并指定回调执行的线程
+     * <p>
+     * {@link StatusListener#onRecordData(short[], int)}和{@link StatusListener#onVoiceVolume(int)}会合并投递
+     * 执行器处理不过来时只回调最新的一次 需要完整数据时使用{@link StatusListener#onRecordDataOnWorkerThread(short[], int)}
+     *
+     * @param statusListener statusListener
+     * @param executor       回调执行器 见{@link CallbackExecutors}
+     * @return
+     */
+    public AudioRecorder setStatusListener(StatusListener statusListener, Executor executor) {
         this.mStatusListener = statusListener;
+        this.mCallbackExecutor = executor == null ? CallbackExecutors.mainThread() : executor;
+        mDataDispatcher.setListener(statusListener);
         return this;
     }
 
@@ -179,17 +471,46 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
     }
 
     /**
-     * 开始录音
+     * 预热录音 提前打开录音设备并保持采集线程运行 之后调用{@link #start()}可以在一帧时长内拿到数据
+     * 适用于按住说话等对启动延迟敏感的场景 不再需要时调用{@link #release()}释放录音设备
      *
-     * @return
+     * @return 是否预热成功
+     */
+    public boolean prepare() {
+        if (!mIsCustomSource && !isRecordAudioPermissionGranted()) {
+            Log.e(TAG, "Prepare failed , Because lack RECORD_AUDIO permission");
+            return false;
+        }
+        return mRecorder.prepare();
+    }
+
+    /**
+     * 释放预热的录音设备 正在录音时会在本次录音结束后释放
+     */
+    public void release() {
+        mRecorder.release();
+    }
+
+    /**
+     * 开始录音 上一次录音还在收尾(写文件、归一化、sink排空)时不阻塞 收尾完成后自动开始
+     *
+     * @return 是否开始或者已经排队 排队后开始失败通过{@link StatusListener#onRecordError(int, String)}通知
      */
     public boolean start() {
-        if (isRecordAudioPermissionGranted()) {
+        if (!mIsCustomSource && !isRecordAudioPermissionGranted()) {
             Log.e(TAG, "Start failed , Because lack RECORD_AUDIO permission");
             return false;
         }
         if (mIsStarted.compareAndSet(false, true)) {
-            mRecorder.start();
+            RecordMetrics metrics = new RecordMetrics();
+            metrics.setWarmStart(mRecorder.isPrepared());
+            mStartingMetrics = metrics;
+            mStartNanos = System.nanoTime();
+            if (!mRecorder.start()) {
+                mIsStarted.set(false);
+                Log.e(TAG, "Start failed , recorder is not available");
+                return false;
+            }
             Log.d(TAG, "Ideal Recorder Started");
             return true;
         } else {
@@ -199,10 +520,42 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
     }
 
     /**
-     * 停止录音
+     * 暂停录音 录音设备、文件和内存中的录音都保持打开 继续后数据接着写入
+     * 暂停的时间不计入最长录音时间
+     *
+     * @return 是否暂停成功 没有在录音或已经暂停时返回false
+     */
+    public boolean pause() {
+        if (!mIsStarted.get()) {
+            Log.e(TAG, "Pause failed , Because the Ideal Recorder is not started");
+            return false;
+        }
+        return mRecorder.pause();
+    }
+
+    /**
+     * 继续录音
+     *
+     * @return 是否继续成功 没有暂停时返回false
+     */
+    public boolean resume() {
+        return mRecorder.resume();
+    }
+
+    /**
+     * 是否处于暂停状态
+     */
+    public boolean isPaused() {
+        return mRecorder.isPaused();
+    }
+
+    /**
+     * 停止录音 会阻塞到录音文件写入完成 在UI线程中请使用{@link #stopAsync(long, StopFuture.Callback)}
      */
     public void stop() {
         Log.d(TAG, "Stop Ideal Recorder is called");
+        long stopNanos = System.nanoTime();
+        RecordMetrics metrics = mRecordMetrics;
         if (this.mIsStarted.get()) {
             this.mIsStarted.set(false);
             this.mRecorder.immediateStop();
@@ -210,20 +563,82 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
         } else if (this.mRecorder!= null) {
             this.mRecorder.immediateStop();
         }
+        metrics.setStopLatencyNanos(System.nanoTime() - stopNanos);
     }
 
     /**
-     * 在UI线程执行
+     * 异步停止录音 不阻塞调用线程 停止信号通过采集线程传递 所有数据写入并且文件收尾后完成
+     *
+     * 收尾期间再次调用时不会重复停止 每次调用得到自己的结果和回调 sink排空的时间取其中最长的
+     *
+     * @param drainTimeoutMillis 等待收尾的最长时间 超时后以未完成结束 小于等于0表示不超时
+     * @param callback           完成时的回调 可以为null
+     * @return 停止结果
+     */
+    public StopFuture stopAsync(long drainTimeoutMillis, StopFuture.Callback callback) {
+        Log.d(TAG, "Stop Ideal Recorder async is called");
+        StopFuture future = new StopFuture(callback);
+        boolean first;
+        synchronized (mStopLock) {
+            if (!mIsSessionActive) {
+                mIsStarted.set(false);
+                future.complete(true);
+                return future;
+            }
+            first = mPendingStops.isEmpty();
+            if (first || mPendingDrainTimeout > 0 && (drainTimeoutMillis <= 0 || drainTimeoutMillis > mPendingDrainTimeout)) {
+                mPendingDrainTimeout = drainTimeoutMillis;
+            }
+            mPendingStops.add(future);
+        }
+        if (first) {
+            mIsStarted.set(false);
+            mRecorder.stop();
+        }
+        future.scheduleTimeout(drainTimeoutMillis);
+        return future;
+    }
+
+    /**
+     * 使用默认超时时间异步停止录音
+     *
+     * @return 停止结果
+     */
+    public StopFuture stopAsync() {
+        return stopAsync(DEFAULT_DRAIN_TIMEOUT, null);
+    }
+
+    /**
+     * 获取最近一次录音的性能指标 每次录音是不同的对象 可以在下一次录音开始后继续读取
+     *
+     * @return 录音性能指标
+     */
+    public RecordMetrics getRecordMetrics() {
+        return mRecordMetrics;
+    }
+
+    /**
+     * 在回调执行器中执行 默认为主线程
      *
      * @param runnable 需要执行的runnable
      */
     private void runOnUi(Runnable runnable) {
-        mRecorderHandler.post(runnable);
+        callbackExecutor().execute(runnable);
+    }
+
+    private Executor callbackExecutor() {
+        if (mCallbackExecutor == null) {
+            mCallbackExecutor = CallbackExecutors.mainThread();
+        }
+        return mCallbackExecutor;
     }
 
 
     @Override
     public boolean onRecorderReady() {
+        if (mIsCustomSource) {
+            return true;
+        }
         if (!isRecordAudioPermissionGranted()) {
             Log.e(TAG, "set recorder failed,because no RECORD_AUDIO permission was granted");
             onRecordedFail(AudioConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
@@ -233,11 +648,45 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
 
     @Override
     public boolean onRecorderStart() {
+        RecordMetrics metrics = mStartingMetrics;
+        mRecordMetrics = metrics != null ? metrics : new RecordMetrics();
+        mStartingMetrics = null;
         if (mIsAudioFileHelperInit) {
+            mAudioFileHelper.setMaxDuration(mMaxRecordTime);
             mAudioFileHelper.start();
+            mRecordMetrics.setStartToFileOpenNanos(System.nanoTime() - mStartNanos);
         }
         mCount = 0;
-        mByteArrayOutputStream.reset();
+        mRecordedFrames = 0;
+        WavMetadata metadata = new WavMetadata();
+        synchronized (mFileInfo) {
+            for (Map.Entry<String, String> entry : mFileInfo.entrySet()) {
+                metadata.setInfo(entry.getKey(), entry.getValue());
+            }
+        }
+        mMetadata = metadata;
+        mAudioFileHelper.setMetadata(metadata);
+        mDataDispatcher.reset();
+        if (mRecordConfig != null) {
+            mSampleRate = mRecordConfig.getSampleRate();
+            mChannelCount = mRecordConfig.getChannelCount();
+            ProcessorChain chain = mRecordConfig.getProcessorChain();
+            chain.prepare(mRecordConfig.getSampleRate(), mRecordConfig.getChannelCount());
+            MemorySession.Codec codec = mSessionCodec;
+            if (!MemorySession.isSupported(codec, mChannelCount)) {
+                // 不能在采集线程中第一帧编码时才失败 改为保存PCM
+                Log.e(TAG, codec + " does not support " + mChannelCount + " channels, keeping session as RAW");
+                codec = MemorySession.Codec.RAW;
+            }
+            mMemorySession = mKeepSessionInMemory
+                    ? new MemorySession(codec, mRecordConfig.getSampleRate(), mChannelCount) : null;
+            mRecordMetrics.setMemorySession(mMemorySession);
+            mSinkFanout.open(mRecordConfig.getSampleRate(), mRecordConfig.getChannelCount());
+        }
+        synchronized (mStopLock) {
+            mIsSessionActive = true;
+        }
+        Trace.event(Trace.STATE, Trace.STATE_START);
         runOnUi(new Runnable() {
             public void run() {
                 if (mStatusListener!= null) {
@@ -250,52 +699,116 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
     }
 
     @Override
-    public void onRecorded(final short[] wave) {
-        mCount++;
-        final byte[] bytes = BytesTransUtil.getInstance().Shorts2Bytes(wave);
-        if (mIsAudioFileHelperInit) {
-
-            mAudioFileHelper.save(bytes, 0, bytes.length);
-        }
-        mByteArrayOutputStream.write(bytes, 0, bytes.length);
-        if (mStatusListener!= null) {
-            mStatusListener.onRecordDataOnWorkerThread(wave, wave == null ? 0 : wave.length);
+    public void onRecorderPause() {
+        WavMetadata metadata = mMetadata;
+        if (mMarkPauses && metadata != null) {
+            metadata.addMarker(mRecordedFrames, "pause");
         }
         runOnUi(new Runnable() {
-            @Override
             public void run() {
                 if (mStatusListener!= null) {
-                    mStatusListener.onRecordData(wave, wave == null ? 0 : wave.length);
+                    mStatusListener.onPauseRecording();
                 }
             }
         });
+    }
 
-        long recordedTime = mCount * Recorder.TIMER_INTERVAL;
-        if (recordedTime >= mVolumeInterval && recordedTime % mVolumeInterval== 0) {
-            onRecorderVolume(calculateVolume(wave));
+    @Override
+    public void onRecorderResume(long pausedNanos) {
+        mRecordMetrics.addPause(pausedNanos);
+        runOnUi(new Runnable() {
+            public void run() {
+                if (mStatusListener!= null) {
+                    mStatusListener.onResumeRecording();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onRecorded(final short[] wave, int length, final FrameInfo info) {
+        mCount++;
+        if (mCount == 1) {
+            // 采集线程上不打日志 指标在录音结束时输出
+            long timeToFirstFrame = System.nanoTime() - mStartNanos;
+            mRecordMetrics.setTimeToFirstFrameNanos(timeToFirstFrame);
+            Trace.event(Trace.STATE, Trace.STATE_FIRST_FRAME, timeToFirstFrame);
+        }
+        if (info.isDiscontinuity()) {
+            onRecorderGap(info);
+        }
+        // 按采样点计算时长 读取不足或丢帧都不会让时长产生误差 暂停期间的采样点不计入位置
+        long startFrame = info.getSampleIndex();
+        long endFrame = startFrame + length / mChannelCount;
+        long maxFrames = mMaxRecordTime / 1000 * mSampleRate + mMaxRecordTime % 1000 * mSampleRate / 1000;
+        boolean reachedMax = endFrame >= maxFrames;
+        if (reachedMax) {
+            endFrame = Math.max(startFrame, maxFrames);
+            length = (int) (endFrame - startFrame) * mChannelCount;
+        }
+        if (length > 0) {
+            if (mRecordConfig != null) {
+                Trace.event(Trace.PROCESS_BEGIN, length);
+                mRecordConfig.getProcessorChain().process(wave, 0, length);
+                Trace.event(Trace.PROCESS_END, length);
+            }
+            if (mIsAudioFileHelperInit) {
+                if (mSaveBuffer.length < length * 2) {
+                    mSaveBuffer = new byte[length * 2];
+                }
+                int size = BytesTransUtil.getInstance().Shorts2Bytes(wave, length, mSaveBuffer);
+                mAudioFileHelper.save(mSaveBuffer, 0, size);
+            }
+            if (mMemorySession != null) {
+                mMemorySession.append(wave, 0, length);
+            }
+            mSinkFanout.dispatch(wave, 0, length, info.getSequence(), info.getTimestampNanos());
+            mRecordedFrames += length / mChannelCount;
+            if (mStatusListener!= null) {
+                mStatusListener.onRecordDataOnWorkerThread(wave, length, info);
+            }
+            if (mStatusListener!= null) {
+                Trace.event(Trace.CALLBACK_POST, length);
+                mDataDispatcher.postData(wave, length, callbackExecutor());
+            }
+        }
+
+        long volumeFrames = mVolumeInterval * mSampleRate / 1000;
+        if (length > 0 && volumeFrames > 0 && endFrame / volumeFrames > startFrame / volumeFrames) {
+            onRecorderVolume(calculateVolume(wave, length));
         }
-        if (recordedTime >= mMaxRecordTime) {
+        if (reachedMax) {
             mRecorder.stop();
             mIsStarted.set(false);
         }
 
     }
 
-    private void onRecorderVolume(final int volume) {
-
+    private void onRecorderGap(FrameInfo info) {
+        final long sampleIndex = info.getSampleIndex();
+        final long lostSamples = info.getLostSamples();
+        Trace.event(Trace.GAP, sampleIndex, lostSamples);
+        mRecordMetrics.addGap(lostSamples);
+        Log.e(TAG, "audio discontinuity at " + sampleIndex + ", " + lostSamples + " samples lost");
         runOnUi(new Runnable() {
             public void run() {
                 if (mStatusListener!= null) {
-                    mStatusListener.onVoiceVolume(volume);
+                    mStatusListener.onRecordGap(sampleIndex, lostSamples);
                 }
             }
         });
+    }
 
-
+    private void onRecorderVolume(int volume) {
+        if (mStatusListener!= null) {
+            mDataDispatcher.postVolume(volume, callbackExecutor());
+        }
     }
 
     @Override
     public void onRecordedFail(final int paramInt) {
+        // 录音已经停止 或者排队的录音没能开始
+        mIsStarted.set(false);
         if (mIsAudioFileHelperInit) {
 
             mAudioFileHelper.cancel();
@@ -325,29 +838,69 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
 
     @Override
     public void onRecorderStop() {
+        Trace.event(Trace.STATE, Trace.STATE_STOP);
+        RecordMetrics metrics = mRecordMetrics;
         if (mIsAudioFileHelperInit) {
             mAudioFileHelper.finish();
         }
+        metrics.setConflatedFrames(mDataDispatcher.getConflatedFrames());
+        long drainTimeout;
+        synchronized (mStopLock) {
+            // 阻塞的stop()使用默认超时
+            drainTimeout = mPendingStops.isEmpty() ? DEFAULT_DRAIN_TIMEOUT : mPendingDrainTimeout;
+        }
+        boolean drained = mSinkFanout.close(drainTimeout);
+        if (!drained) {
+            Log.e(TAG, "sinks not drained in " + drainTimeout + "ms " + mSinkFanout);
+        }
+        if (mRecordConfig != null) {
+            // 下一次录音会重置处理器链和sink的统计 这里复制一份
+            metrics.setProcessorStats(mRecordConfig.getProcessorChain());
+            metrics.setSinkStats(mSinkFanout.snapshotStats());
+        }
+        StopFuture[] pendingStops;
+        synchronized (mStopLock) {
+            mIsSessionActive = false;
+            pendingStops = mPendingStops.toArray(new StopFuture[mPendingStops.size()]);
+            mPendingStops.clear();
+        }
+        if (pendingStops.length > 0) {
+            // 没有排空时和超时一样结束 不能抢在超时任务之前报告成功
+            for (StopFuture pendingStop : pendingStops) {
+                pendingStop.complete(drained);
+            }
+            metrics.setStopLatencyNanos(pendingStops[0].getStopLatencyNanos());
+            Log.d(TAG, metrics.toString());
+        }
+        final MemorySession session = mMemorySession;
         runOnUi(new Runnable() {
             @Override
             public void run() {
                 if (mStatusListener!= null) {
-                    mStatusListener.onRecordedAllData(mByteArrayOutputStream.toByteArray());
+                    if (session != null) {
+                        if (session.getCodec() == MemorySession.Codec.RAW) {
+                            try {
+                                mStatusListener.onRecordedAllData(session.toPcmByteArray());
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                        mStatusListener.onRecordedSession(session);
+                    }
                     mStatusListener.onStopRecording();
                 }
             }
         });
-//        byteArrayOutputStream.reset();
     }
 
-    private int calculateVolume(short[] wave) {
+    private int calculateVolume(short[] wave, int length) {
         long v = 0;
         // 将 buffer 内容取出，进行平方和运算
-        for (int i = 0; i < wave.length; i++) {
+        for (int i = 0; i < length; i++) {
             v += wave[i] * wave[i];
         }
         // 平方和除以数据总长度，得到音量大小。
-        double mean = v / (double) wave.length;
+        double mean = v / (double) length;
         double volume = 10 * Math.log10(mean);
         return (int) volume;
     }
@@ -370,12 +923,34 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
         });
     }
 
+    /**
+     * 存储空间用完 停止录音 已经写入的数据正常保存
+     */
+    @Override
+    public void onStorageLimit(final long writtenBytes) {
+        Log.e(TAG, "storage limit reached, stop recording after " + writtenBytes + " bytes");
+        Trace.event(Trace.STATE, Trace.STATE_STORAGE_LIMIT, writtenBytes);
+        mRecorder.stop();
+        mIsStarted.set(false);
+        runOnUi(new Runnable() {
+            public void run() {
+                if (mStatusListener!= null) {
+                    mStatusListener.onStorageLimitReached(writtenBytes);
+                }
+            }
+        });
+    }
+
     /**
      * 保存文件成功
      */
     @Override
     public void onSuccess(final String savePath) {
         Log.d(TAG, "save record file success, the file path is" + savePath);
+        UploadManager uploadManager = mUploadManager;
+        if (uploadManager != null) {
+            uploadManager.enqueue(savePath);
+        }
         runOnUi(new Runnable() {
             public void run() {
                 if (mStatusListener!= null) {
@@ -405,6 +980,7 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
         private int sampleRate = SAMPLE_RATE_16K_HZ;
         private int channelConfig = AudioFormat.CHANNEL_IN_MONO;
         private int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
+        private final ProcessorChain processorChain = new ProcessorChain();
 
         /**
          * 录音配置的构造方法
@@ -474,12 +1050,20 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
          *                      See {@link AudioFormat#CHANNEL_IN_MONO} and
          *                      {@link AudioFormat#CHANNEL_IN_STEREO}.  {@link AudioFormat#CHANNEL_IN_MONO} is guaranteed
          *                      to work on all devices.
+         *                      多麦克风阵列可以用{@link ChannelMask#fromIndexMask(int)}指定设备的输入通道 需要API 23
          */
         public RecordConfig setChannelConfig(int channelConfig) {
             this.channelConfig = channelConfig;
             return this;
         }
 
+        /**
+         * @return 根据channelConfig得到的声道数
+         */
+        public int getChannelCount() {
+            return ChannelMask.channelCount(channelConfig);
+        }
+
         public int getAudioFormat() {
             return audioFormat;
         }
@@ -494,6 +1078,24 @@ public class AudioRecorder implements RecorderCallback, AudioFileListener {
             return this;
         }
 
+        /**
+         * 添加录音数据处理器 在工作线程中按添加顺序执行 处理结果会影响保存的文件和所有回调
+         *
+         * @param processor 处理器
+         */
+        public RecordConfig addProcessor(AudioProcessor processor) {
+            processorChain.add(processor);
+            return this;
+        }
+
+        public RecordConfig removeProcessor(AudioProcessor processor) {
+            processorChain.remove(processor);
+            return this;
+        }
+
+        public ProcessorChain getProcessorChain() {
+            return processorChain;
+        }
 
     }
 
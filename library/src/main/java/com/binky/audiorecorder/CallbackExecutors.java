@@ -0,0 +1,48 @@
+package com.binky.audiorecorder;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 常用的回调执行器 通过{@link AudioRecorder#setStatusListener(StatusListener, Executor)}指定回调在哪个线程执行
+ */
+
+public final class CallbackExecutors {
+
+    private static Executor sMainThread;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private CallbackExecutors() {
+    }
+
+    /**
+     * 在主线程执行 默认的回调方式
+     */
+    public static synchronized Executor mainThread() {
+        if (sMainThread == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainThread = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return sMainThread;
+    }
+
+    /**
+     * 直接在录音工作线程中执行 回调中不能做耗时操作
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+}
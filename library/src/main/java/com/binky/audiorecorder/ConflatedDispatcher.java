@@ -0,0 +1,132 @@
+package com.binky.audiorecorder;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.binky.audiorecorder.trace.Trace;
+
+/**
+ * 合并投递录音数据和音量 执行器处理不过来时只保留最新的一次 不会积压过期的数据
+ * <p>
+ * 每次录音复用同一个对象和两块缓冲区 投递时不分配内存
+ */
+
+class ConflatedDispatcher implements Runnable {
+
+    private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+    private final Object mLock = new Object();
+    private short[] mPending = new short[0];
+    private short[] mDelivering = new short[0];
+    private int mPendingLength;
+    private boolean mHasData;
+    private int mVolume;
+    private boolean mHasVolume;
+    private long mConflated;
+    private volatile StatusListener mListener;
+    private volatile Executor mExecutor;
+
+    void setListener(StatusListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * 在录音工作线程中调用 复制一帧数据等待投递
+     */
+    void postData(short[] data, int length, Executor executor) {
+        synchronized (mLock) {
+            if (mPending.length < length) {
+                mPending = new short[length];
+            }
+            System.arraycopy(data, 0, mPending, 0, length);
+            if (mHasData) {
+                mConflated++;
+                Trace.event(Trace.CALLBACK_CONFLATED, mConflated);
+            }
+            mPendingLength = length;
+            mHasData = true;
+        }
+        schedule(executor);
+    }
+
+    void postVolume(int volume, Executor executor) {
+        synchronized (mLock) {
+            mVolume = volume;
+            mHasVolume = true;
+        }
+        schedule(executor);
+    }
+
+    /**
+     * 被合并掉没有投递的帧数
+     */
+    long getConflatedFrames() {
+        synchronized (mLock) {
+            return mConflated;
+        }
+    }
+
+    void reset() {
+        synchronized (mLock) {
+            mHasData = false;
+            mHasVolume = false;
+            mConflated = 0;
+        }
+    }
+
+    private void schedule(Executor executor) {
+        mExecutor = executor;
+        if (mScheduled.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * 同一时间只有一个run在执行 投递完成后再检查是否有新的数据 保证交换缓冲区时没有人在读
+     */
+    @Override
+    public void run() {
+        deliver();
+        mScheduled.set(false);
+        boolean pending;
+        synchronized (mLock) {
+            pending = mHasData || mHasVolume;
+        }
+        if (pending) {
+            schedule(mExecutor);
+        }
+    }
+
+    private void deliver() {
+        short[] data = null;
+        int length = 0;
+        int volume = 0;
+        boolean hasVolume;
+        synchronized (mLock) {
+            if (mHasData) {
+                short[] swap = mDelivering;
+                mDelivering = mPending;
+                mPending = swap;
+                data = mDelivering;
+                length = mPendingLength;
+                mHasData = false;
+            }
+            hasVolume = mHasVolume;
+            if (hasVolume) {
+                volume = mVolume;
+                mHasVolume = false;
+            }
+        }
+        StatusListener listener = mListener;
+        if (listener == null) {
+            return;
+        }
+        Trace.event(Trace.CALLBACK_RUN_BEGIN, length);
+        if (data != null) {
+            listener.onRecordData(data, length);
+        }
+        if (hasVolume) {
+            listener.onVoiceVolume(volume);
+        }
+        Trace.event(Trace.CALLBACK_RUN_END, length);
+    }
+}
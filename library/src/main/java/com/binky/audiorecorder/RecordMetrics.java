@@ -0,0 +1,239 @@
+package com.binky.audiorecorder;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.binky.audiorecorder.process.ProcessorChain;
+import com.binky.audiorecorder.session.MemorySession;
+import com.binky.audiorecorder.sink.SinkStats;
+
+/**
+ * 录音过程中的性能指标 时间单位均为纳秒 -1表示本次录音还没有产生该指标
+ * <p>
+ * 处理器和sink的统计在录音结束时复制 之后的录音不会改变它们
+ */
+
+public class RecordMetrics {
+
+    private volatile long mTimeToFirstFrameNanos = -1;
+    private volatile long mStartToFileOpenNanos = -1;
+    private volatile long mStopLatencyNanos = -1;
+    private volatile boolean mWarmStart;
+    private volatile int mGapCount;
+    private volatile long mLostSamples;
+    private volatile long mConflatedFrames;
+    private volatile int mPauseCount;
+    private volatile long mPausedNanos;
+    private volatile String[] mProcessorNames = new String[0];
+    private volatile long[] mProcessorTotalNanos = new long[0];
+    private volatile long[] mProcessorMaxNanos = new long[0];
+    private volatile long mProcessedFrames;
+    private volatile MemorySession mMemorySession;
+    private volatile List<SinkStats> mSinkStats = Collections.emptyList();
+
+    void addPause(long pausedNanos) {
+        mPauseCount++;
+        mPausedNanos += pausedNanos;
+    }
+
+    void setConflatedFrames(long frames) {
+        this.mConflatedFrames = frames;
+    }
+
+    void addGap(long lostSamples) {
+        mGapCount++;
+        mLostSamples += lostSamples;
+    }
+
+    void setTimeToFirstFrameNanos(long nanos) {
+        this.mTimeToFirstFrameNanos = nanos;
+    }
+
+    void setStartToFileOpenNanos(long nanos) {
+        this.mStartToFileOpenNanos = nanos;
+    }
+
+    void setStopLatencyNanos(long nanos) {
+        this.mStopLatencyNanos = nanos;
+    }
+
+    void setProcessorStats(ProcessorChain chain) {
+        int count = chain.getActiveCount();
+        String[] names = new String[count];
+        long[] totalNanos = new long[count];
+        long[] maxNanos = new long[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = chain.getActive(i).getClass().getSimpleName();
+            totalNanos[i] = chain.getTotalNanos(i);
+            maxNanos[i] = chain.getMaxNanos(i);
+        }
+        mProcessedFrames = chain.getFrameCount();
+        mProcessorTotalNanos = totalNanos;
+        mProcessorMaxNanos = maxNanos;
+        mProcessorNames = names;
+    }
+
+    void setMemorySession(MemorySession session) {
+        this.mMemorySession = session;
+    }
+
+    void setSinkStats(List<SinkStats> stats) {
+        this.mSinkStats = Collections.unmodifiableList(stats);
+    }
+
+    void setWarmStart(boolean warmStart) {
+        this.mWarmStart = warmStart;
+    }
+
+    /**
+     * 从调用start到第一帧数据回调的耗时
+     */
+    public long getTimeToFirstFrameNanos() {
+        return mTimeToFirstFrameNanos;
+    }
+
+    /**
+     * 从调用start到录音文件打开完成的耗时 未设置保存路径时为-1
+     */
+    public long getStartToFileOpenNanos() {
+        return mStartToFileOpenNanos;
+    }
+
+    /**
+     * 从请求停止到文件收尾完成的耗时
+     */
+    public long getStopLatencyNanos() {
+        return mStopLatencyNanos;
+    }
+
+    /**
+     * 本次录音是否是在预热状态下开始的
+     */
+    public boolean isWarmStart() {
+        return mWarmStart;
+    }
+
+    /**
+     * 本次录音检测到的数据不连续次数
+     */
+    public int getGapCount() {
+        return mGapCount;
+    }
+
+    /**
+     * 本次录音丢失的单声道采样点数
+     */
+    public long getLostSamples() {
+        return mLostSamples;
+    }
+
+    /**
+     * 本次录音暂停的次数
+     */
+    public int getPauseCount() {
+        return mPauseCount;
+    }
+
+    /**
+     * 本次录音暂停的总时长 不包括停止时仍在暂停的那一次
+     */
+    public long getPausedNanos() {
+        return mPausedNanos;
+    }
+
+    /**
+     * 因为回调线程处理不过来而被合并 没有回调{@link StatusListener#onRecordData(short[], int)}的帧数
+     * 录音结束时更新
+     */
+    public long getConflatedFrames() {
+        return mConflatedFrames;
+    }
+
+    /**
+     * 本次录音执行的处理器数量 录音结束后可用
+     */
+    public int getProcessorCount() {
+        return mProcessorNames.length;
+    }
+
+    /**
+     * 第index个处理器的类名
+     */
+    public String getProcessorName(int index) {
+        return mProcessorNames[index];
+    }
+
+    /**
+     * 第index个处理器的累计耗时
+     */
+    public long getProcessorTotalNanos(int index) {
+        return mProcessorTotalNanos[index];
+    }
+
+    /**
+     * 第index个处理器单帧的最大耗时
+     */
+    public long getProcessorMaxNanos(int index) {
+        return mProcessorMaxNanos[index];
+    }
+
+    /**
+     * 第index个处理器单帧的平均耗时
+     */
+    public long getProcessorAverageNanos(int index) {
+        long frames = mProcessedFrames;
+        return frames == 0 ? 0 : mProcessorTotalNanos[index] / frames;
+    }
+
+    /**
+     * 处理器链处理过的帧数
+     */
+    public long getProcessedFrames() {
+        return mProcessedFrames;
+    }
+
+    /**
+     * 本次录音的内存会话 可以从中获取压缩比和每帧编码耗时
+     */
+    public MemorySession getMemorySession() {
+        return mMemorySession;
+    }
+
+    /**
+     * 本次录音每个sink的吞吐、延迟和丢帧数 录音结束后可用
+     */
+    public List<SinkStats> getSinkStats() {
+        return mSinkStats;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordMetrics{warmStart=" + mWarmStart
+                + ", timeToFirstFrame=" + mTimeToFirstFrameNanos / 1000 + "us"
+                + ", startToFileOpen=" + mStartToFileOpenNanos / 1000 + "us"
+                + ", stopLatency=" + mStopLatencyNanos / 1000 + "us"
+                + ", gaps=" + mGapCount + "/" + mLostSamples
+                + ", conflated=" + mConflatedFrames
+                + ", pauses=" + mPauseCount + "/" + mPausedNanos / 1000000 + "ms"
+                + processorsToString()
+                + (mMemorySession == null ? "" : ", " + mMemorySession)
+                + (mSinkStats.isEmpty() ? "" : ", sinks=" + mSinkStats) + "}";
+    }
+
+    private String processorsToString() {
+        String[] names = mProcessorNames;
+        if (names.length == 0) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(", processors={");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(names[i])
+                    .append(" avg=").append(getProcessorAverageNanos(i) / 1000).append("us")
+                    .append(" max=").append(getProcessorMaxNanos(i) / 1000).append("us");
+        }
+        return builder.append('}').toString();
+    }
+}
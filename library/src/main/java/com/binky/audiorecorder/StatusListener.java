@@ -1,5 +1,8 @@
 package com.binky.audiorecorder;
 
+import com.binky.audiorecorder.record.FrameInfo;
+import com.binky.audiorecorder.session.MemorySession;
+
 /**
  * 录音各种状态的回调类
  */
@@ -13,6 +16,18 @@ public class StatusListener {
     public void onStartRecording() {
     }
 
+    /**
+     * 录音暂停的回调
+     */
+    public void onPauseRecording() {
+    }
+
+    /**
+     * 录音继续的回调
+     */
+    public void onResumeRecording() {
+    }
+
     /**
      * 录音时的buffer
      *
@@ -32,6 +47,28 @@ public class StatusListener {
 
     }
 
+    /**
+     * 录音时的buffer回调 在工作线程中 带有这一帧的序号、位置和采集时间
+     * 默认调用{@link #onRecordDataOnWorkerThread(short[], int)}
+     *
+     * @param data   PCM Data
+     * @param length 长度
+     * @param info   帧信息 只在回调期间有效
+     */
+    public void onRecordDataOnWorkerThread(short[] data, int length, FrameInfo info) {
+        onRecordDataOnWorkerThread(data, length);
+    }
+
+    /**
+     * 检测到录音数据不连续 通常是读取不及时导致设备缓冲区溢出
+     *
+     * @param sampleIndex 不连续发生的位置 以单声道采样点计
+     * @param lostSamples 丢失的单声道采样点数
+     */
+    public void onRecordGap(long sampleIndex, long lostSamples) {
+
+    }
+
 
     /**
      * 录音时的音量
@@ -62,6 +99,15 @@ public class StatusListener {
 
     }
 
+    /**
+     * 存储空间或预算即将用完 录音已经自动停止 之前的数据会正常保存
+     *
+     * @param writtenBytes 保存的音频数据字节数
+     */
+    public void onStorageLimitReached(long writtenBytes) {
+
+    }
+
     /**
      * 保存录音文件成功
      *
@@ -87,4 +133,13 @@ public class StatusListener {
 
     }
 
+    /**
+     * 保存在内存中的整段录音 格式由{@link AudioRecorder#setSessionCodec(MemorySession.Codec)}决定
+     *
+     * @param session 整段录音 通过{@link MemorySession#newReader()}按需解码读取
+     */
+    public void onRecordedSession(MemorySession session) {
+
+    }
+
 }
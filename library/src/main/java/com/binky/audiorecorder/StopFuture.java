@@ -0,0 +1,129 @@
+package com.binky.audiorecorder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 异步停止录音的结果 所有数据写入完成并且文件收尾后完成
+ * <p>
+ * get()返回true表示正常结束 false表示超过了drain超时时间 文件收尾仍会在后台继续
+ */
+
+public class StopFuture implements Future<Boolean> {
+
+    /**
+     * 停止完成的回调 在录音工作线程或超时线程中执行
+     */
+    public interface Callback {
+        /**
+         * @param finished         是否在超时之前完成了所有收尾工作
+         * @param stopLatencyNanos 从请求停止到完成的耗时 单位纳秒
+         */
+        void onStopComplete(boolean finished, long stopLatencyNanos);
+    }
+
+    private static ScheduledExecutorService sTimeoutExecutor;
+
+    private final CountDownLatch mLatch = new CountDownLatch(1);
+    private final AtomicBoolean mDone = new AtomicBoolean(false);
+    private final Callback mCallback;
+    private final long mRequestNanos;
+    private volatile boolean mFinished;
+    private volatile long mStopLatencyNanos = -1;
+
+    StopFuture(Callback callback) {
+        this.mCallback = callback;
+        this.mRequestNanos = System.nanoTime();
+    }
+
+    void complete(boolean finished) {
+        if (!mDone.compareAndSet(false, true)) {
+            return;
+        }
+        mFinished = finished;
+        mStopLatencyNanos = System.nanoTime() - mRequestNanos;
+        mLatch.countDown();
+        if (mCallback != null) {
+            mCallback.onStopComplete(finished, mStopLatencyNanos);
+        }
+    }
+
+    /**
+     * 超过drainTimeoutMillis仍未完成时以超时结束
+     */
+    void scheduleTimeout(long drainTimeoutMillis) {
+        if (drainTimeoutMillis <= 0 || isDone()) {
+            return;
+        }
+        timeoutExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                complete(false);
+            }
+        }, drainTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从请求停止到完成的耗时 未完成时为-1
+     */
+    public long getStopLatencyNanos() {
+        return mStopLatencyNanos;
+    }
+
+    /**
+     * 是否在超时之前完成了所有收尾工作
+     */
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mLatch.getCount() == 0;
+    }
+
+    @Override
+    public Boolean get() throws InterruptedException, ExecutionException {
+        mLatch.await();
+        return mFinished;
+    }
+
+    @Override
+    public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mLatch.await(timeout, unit)) {
+            throw new TimeoutException("stop not finished in " + unit.toMillis(timeout) + "ms");
+        }
+        return mFinished;
+    }
+
+    private static synchronized ScheduledExecutorService timeoutExecutor() {
+        if (sTimeoutExecutor == null) {
+            sTimeoutExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AudioRecorder-stop-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sTimeoutExecutor;
+    }
+}
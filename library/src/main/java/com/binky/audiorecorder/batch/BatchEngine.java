@@ -0,0 +1,285 @@
+package com.binky.audiorecorder.batch;
+
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import com.binky.audiorecorder.file.WavReader;
+import com.binky.audiorecorder.process.AudioProcessor;
+import com.binky.audiorecorder.process.ProcessorChain;
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.AudioSink;
+import com.binky.audiorecorder.utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 离线批处理 用fork-join线程池并发处理多个WAV文件
+ * <p>
+ * 每个文件用{@link WavReader}按窗口内存映射流式读取 依次经过处理器和sink 和录音时的流程一致
+ * 单个文件占用的内存是固定的 并发数不会超过内存预算能容纳的文件数
+ */
+
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class BatchEngine {
+
+    private static final String TAG = "BatchEngine";
+    /**
+     * 处理器状态等其他开销的估计值
+     */
+    private static final int JOB_OVERHEAD = 256 * 1024;
+
+    private final int mThreads;
+    private final long mMemoryBudget;
+    private int mWindowSize = WavReader.DEFAULT_WINDOW_SIZE;
+    private int mFrameMillis = 100;
+
+    /**
+     * @param threads      最多使用的线程数
+     * @param memoryBudget 所有并发任务的内存预算 单位字节
+     */
+    public BatchEngine(int threads, long memoryBudget) {
+        this.mThreads = Math.max(1, threads);
+        this.mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * 使用所有CPU核心 内存预算为最大堆内存的四分之一
+     */
+    public BatchEngine() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * 设置每次内存映射的大小 默认1MB
+     */
+    public BatchEngine setWindowSize(int windowSize) {
+        this.mWindowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * 设置每次送入处理器的帧长 默认和录音一样为100ms
+     */
+    public BatchEngine setFrameMillis(int frameMillis) {
+        this.mFrameMillis = frameMillis;
+        return this;
+    }
+
+    /**
+     * 按内存预算算出的并发数
+     */
+    public int getParallelism() {
+        // 最大按8声道48KHz估算一帧的缓冲区
+        long frameBytes = 48000L * 8 * mFrameMillis / 1000 * 2;
+        long perJob = mWindowSize + frameBytes + JOB_OVERHEAD;
+        long byBudget = Math.max(1, mMemoryBudget / perJob);
+        return (int) Math.min(mThreads, byBudget);
+    }
+
+    /**
+     * 查找目录下所有的WAV文件 包括子目录 按路径排序
+     */
+    public static List<File> listWavFiles(File dir) {
+        List<File> files = new ArrayList<>();
+        collect(dir, files);
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void collect(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (child.getName().toLowerCase().endsWith(".wav")) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * 处理所有文件 阻塞到全部完成
+     *
+     * @param files    输入文件
+     * @param pipeline 每个文件的处理流程
+     * @param listener 进度回调 可以为null
+     */
+    public BatchReport run(List<File> files, BatchPipeline pipeline, BatchListener listener) {
+        int parallelism = getParallelism();
+        FileResult[] results = new FileResult[files.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long begin = System.nanoTime();
+        try {
+            pool.invoke(new FileRangeTask(files, 0, files.size(), results, pipeline,
+                    listener, new AtomicInteger()));
+        } finally {
+            pool.shutdown();
+        }
+        long wall = System.nanoTime() - begin;
+        BatchReport report = new BatchReport(Arrays.asList(results), parallelism, wall);
+        Log.d(TAG, report.toString());
+        return report;
+    }
+
+    /**
+     * 处理一个文件 在当前线程中执行
+     */
+    public FileResult process(File file, BatchPipeline pipeline) {
+        FileResult result = new FileResult();
+        result.file = file;
+        long begin = System.nanoTime();
+        WavReader reader = null;
+        List<AudioSink> sinks = Collections.emptyList();
+        int openedSinks = 0;
+        try {
+            reader = new WavReader(file, mWindowSize);
+            int sampleRate = reader.getSampleRate();
+            int channelCount = reader.getChannelCount();
+            result.sampleRate = sampleRate;
+            result.channelCount = channelCount;
+            result.bytes = reader.getDataSize();
+
+            ProcessorChain chain = new ProcessorChain();
+            for (AudioProcessor processor : pipeline.createProcessors(file)) {
+                chain.add(processor);
+            }
+            chain.prepare(sampleRate, channelCount);
+            sinks = pipeline.createSinks(file);
+            for (AudioSink sink : sinks) {
+                sink.open(sampleRate, channelCount);
+                openedSinks++;
+            }
+
+            int frameLength = Math.max(1, sampleRate * mFrameMillis / 1000) * channelCount;
+            AudioFrame frame = new AudioFrame(frameLength);
+            short[] buffer = frame.data;
+            long sequence = 0;
+            long frames = 0;
+            int peak = 0;
+            double energy = 0;
+            while (true) {
+                long readBegin = System.nanoTime();
+                int length = reader.read(buffer, 0, frameLength);
+                long readEnd = System.nanoTime();
+                result.readNanos += readEnd - readBegin;
+                if (length <= 0) {
+                    break;
+                }
+                chain.process(buffer, 0, length);
+                for (int i = 0; i < length; i++) {
+                    int sample = buffer[i];
+                    energy += sample * sample;
+                    if (sample < 0) {
+                        sample = -sample;
+                    }
+                    if (sample > peak) {
+                        peak = sample;
+                    }
+                }
+                long processEnd = System.nanoTime();
+                result.processNanos += processEnd - readEnd;
+                frame.length = length;
+                frame.sequence = sequence++;
+                frame.timestampNanos = frames * 1000000000L / sampleRate;
+                for (AudioSink sink : sinks) {
+                    sink.write(frame);
+                }
+                result.sinkNanos += System.nanoTime() - processEnd;
+                frames += length / channelCount;
+            }
+            result.frameCount = frames;
+            long samples = frames * channelCount;
+            if (peak > 0) {
+                result.peakDb = 20 * Math.log10(peak / 32768.0);
+            }
+            if (samples > 0 && energy > 0) {
+                result.rmsDb = 10 * Math.log10(energy / samples / (32768.0 * 32768.0));
+            }
+        } catch (Exception e) {
+            result.error = e;
+            Log.e(TAG, file + " failed " + e);
+        } finally {
+            long closeBegin = System.nanoTime();
+            for (int i = 0; i < openedSinks; i++) {
+                try {
+                    sinks.get(i).close();
+                } catch (IOException e) {
+                    if (result.error == null) {
+                        result.error = e;
+                    }
+                }
+            }
+            result.sinkNanos += System.nanoTime() - closeBegin;
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, file + " close failed " + e);
+                }
+            }
+        }
+        result.totalNanos = System.nanoTime() - begin;
+        return result;
+    }
+
+    /**
+     * 把文件列表二分 直到每个任务只剩一个文件
+     */
+    private class FileRangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> mFiles;
+        private final int mFrom;
+        private final int mTo;
+        private final FileResult[] mResults;
+        private final BatchPipeline mPipeline;
+        private final BatchListener mListener;
+        private final AtomicInteger mCompleted;
+
+        FileRangeTask(List<File> files, int from, int to, FileResult[] results, BatchPipeline pipeline,
+                      BatchListener listener, AtomicInteger completed) {
+            this.mFiles = files;
+            this.mFrom = from;
+            this.mTo = to;
+            this.mResults = results;
+            this.mPipeline = pipeline;
+            this.mListener = listener;
+            this.mCompleted = completed;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom == 1) {
+                FileResult result = process(mFiles.get(mFrom), mPipeline);
+                mResults[mFrom] = result;
+                int completed = mCompleted.incrementAndGet();
+                if (mListener != null) {
+                    synchronized (mListener) {
+                        mListener.onFileComplete(result);
+                        mListener.onProgress(completed, mFiles.size());
+                    }
+                }
+                return;
+            }
+            if (mTo <= mFrom) {
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new FileRangeTask(mFiles, mFrom, middle, mResults, mPipeline, mListener, mCompleted),
+                    new FileRangeTask(mFiles, middle, mTo, mResults, mPipeline, mListener, mCompleted));
+        }
+    }
+}
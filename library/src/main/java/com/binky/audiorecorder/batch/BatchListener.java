@@ -0,0 +1,23 @@
+package com.binky.audiorecorder.batch;
+
+/**
+ * 批处理进度的回调 在处理线程中执行 同一时间只会有一个回调在执行
+ */
+
+public class BatchListener {
+
+    /**
+     * 一个文件处理完成 包括失败
+     */
+    public void onFileComplete(FileResult result) {
+    }
+
+    /**
+     * 处理进度
+     *
+     * @param completed 已完成的文件数
+     * @param total     文件总数
+     */
+    public void onProgress(int completed, int total) {
+    }
+}
@@ -0,0 +1,35 @@
+package com.binky.audiorecorder.batch;
+
+import com.binky.audiorecorder.process.AudioProcessor;
+import com.binky.audiorecorder.sink.AudioSink;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 离线批处理中每个文件的处理流程 每个文件都会新建一组处理器和sink
+ * <p>
+ * 多个文件会在不同线程中并发处理 这里的方法需要线程安全
+ */
+
+public class BatchPipeline {
+
+    /**
+     * 为一个文件创建处理器 按顺序执行
+     *
+     * @param input 输入文件
+     */
+    public List<AudioProcessor> createProcessors(File input) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 为一个文件创建输出 处理后的数据依次写入每个sink
+     *
+     * @param input 输入文件
+     */
+    public List<AudioSink> createSinks(File input) {
+        return Collections.emptyList();
+    }
+}
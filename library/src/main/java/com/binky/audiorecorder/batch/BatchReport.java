@@ -0,0 +1,82 @@
+package com.binky.audiorecorder.batch;
+
+import java.util.List;
+
+/**
+ * 一次批处理的汇总
+ */
+
+public class BatchReport {
+
+    private final List<FileResult> mResults;
+    private final int mParallelism;
+    private final long mWallNanos;
+
+    BatchReport(List<FileResult> results, int parallelism, long wallNanos) {
+        this.mResults = results;
+        this.mParallelism = parallelism;
+        this.mWallNanos = wallNanos;
+    }
+
+    /**
+     * 每个文件的结果 顺序和输入一致
+     */
+    public List<FileResult> getResults() {
+        return mResults;
+    }
+
+    /**
+     * 实际使用的并发数 受内存预算限制可能小于设置的线程数
+     */
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    public long getWallNanos() {
+        return mWallNanos;
+    }
+
+    public int getFailedCount() {
+        int failed = 0;
+        for (FileResult result : mResults) {
+            if (!result.isSuccess()) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    public long getTotalBytes() {
+        long bytes = 0;
+        for (FileResult result : mResults) {
+            bytes += result.getBytes();
+        }
+        return bytes;
+    }
+
+    public long getTotalDurationMillis() {
+        long millis = 0;
+        for (FileResult result : mResults) {
+            millis += result.getDurationMillis();
+        }
+        return millis;
+    }
+
+    /**
+     * 所有音频时长除以实际经过的时间
+     */
+    public double getRealtimeFactor() {
+        return mWallNanos == 0 ? 0 : getTotalDurationMillis() * 1e6 / mWallNanos;
+    }
+
+    public double getThroughputBytesPerSecond() {
+        return mWallNanos == 0 ? 0 : getTotalBytes() * 1e9 / mWallNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchReport{files=%d, failed=%d, parallelism=%d, audio=%.1fs, wall=%.1fms, %.0fx realtime, %.1f MB/s}",
+                mResults.size(), getFailedCount(), mParallelism, getTotalDurationMillis() / 1000.0,
+                mWallNanos / 1e6, getRealtimeFactor(), getThroughputBytesPerSecond() / 1024 / 1024);
+    }
+}
@@ -0,0 +1,108 @@
+package com.binky.audiorecorder.batch;
+
+import java.io.File;
+
+/**
+ * 单个文件的处理结果和耗时
+ */
+
+public class FileResult {
+
+    File file;
+    int sampleRate;
+    int channelCount;
+    long frameCount;
+    long bytes;
+    double peakDb = Double.NEGATIVE_INFINITY;
+    double rmsDb = Double.NEGATIVE_INFINITY;
+    long readNanos;
+    long processNanos;
+    long sinkNanos;
+    long totalNanos;
+    Exception error;
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * 每个声道的采样点数
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getDurationMillis() {
+        return sampleRate == 0 ? 0 : frameCount * 1000 / sampleRate;
+    }
+
+    /**
+     * 音频数据的字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 处理后的峰值电平 单位dBFS
+     */
+    public double getPeakDb() {
+        return peakDb;
+    }
+
+    /**
+     * 处理后的平均电平 单位dBFS
+     */
+    public double getRmsDb() {
+        return rmsDb;
+    }
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    public long getProcessNanos() {
+        return processNanos;
+    }
+
+    public long getSinkNanos() {
+        return sinkNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * 处理一秒音频需要的时间的倒数
+     */
+    public double getRealtimeFactor() {
+        return totalNanos == 0 ? 0 : getDurationMillis() * 1e6 / totalNanos;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) {
+            return file.getName() + " failed: " + error;
+        }
+        return String.format("%s %dms peak=%.1fdB rms=%.1fdB read=%.1fms process=%.1fms sink=%.1fms total=%.1fms %.0fx",
+                file.getName(), getDurationMillis(), peakDb, rmsDb,
+                readNanos / 1e6, processNanos / 1e6, sinkNanos / 1e6, totalNanos / 1e6, getRealtimeFactor());
+    }
+}
@@ -0,0 +1,84 @@
+package com.binky.audiorecorder.codec;
+
+import java.io.IOException;
+
+/**
+ * 按位读取 高位在前
+ */
+
+class BitReader {
+
+    private byte[] mData;
+    private int mPosition;
+    private int mEnd;
+    private long mAccumulator;
+    private int mBitCount;
+
+    void reset(byte[] data, int offset, int length) {
+        mData = data;
+        mPosition = offset;
+        mEnd = offset + length;
+        mAccumulator = 0;
+        mBitCount = 0;
+    }
+
+    int readBits(int bits) throws IOException {
+        if (bits == 0) {
+            return 0;
+        }
+        while (mBitCount < bits) {
+            if (mPosition >= mEnd) {
+                throw new IOException("unexpected end of flac frame");
+            }
+            mAccumulator = (mAccumulator << 8) | (mData[mPosition++] & 0xFF);
+            mBitCount += 8;
+        }
+        mBitCount -= bits;
+        return (int) ((mAccumulator >>> mBitCount) & (0xFFFFFFFFL >>> (32 - bits)));
+    }
+
+    int readSigned(int bits) throws IOException {
+        int value = readBits(bits);
+        return (value << (32 - bits)) >> (32 - bits);
+    }
+
+    int readUnary() throws IOException {
+        int q = 0;
+        while (readBits(1) == 0) {
+            q++;
+        }
+        return q;
+    }
+
+    int readRice(int parameter) throws IOException {
+        int u = (readUnary() << parameter) | readBits(parameter);
+        return (u >>> 1) ^ -(u & 1);
+    }
+
+    long readUtf8() throws IOException {
+        int first = readBits(8);
+        if ((first & 0x80) == 0) {
+            return first;
+        }
+        int bytes = Integer.numberOfLeadingZeros(~(first << 24));
+        if (bytes < 2 || bytes > 7) {
+            throw new IOException("invalid utf8 frame number");
+        }
+        long value = first & (0x7F >> bytes);
+        for (int i = 1; i < bytes; i++) {
+            value = (value << 6) | (readBits(8) & 0x3F);
+        }
+        return value;
+    }
+
+    void alignToByte() {
+        mBitCount -= mBitCount % 8;
+    }
+
+    /**
+     * 当前已经消费的字节位置 需要先对齐
+     */
+    int bytePosition() {
+        return mPosition - mBitCount / 8;
+    }
+}
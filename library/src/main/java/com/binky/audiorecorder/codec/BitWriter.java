@@ -0,0 +1,109 @@
+package com.binky.audiorecorder.codec;
+
+/**
+ * 按位写入的缓冲 高位在前 缓冲在构造时分配 容量不够时扩容
+ */
+
+class BitWriter {
+
+    private byte[] mBuffer;
+    private int mBytePosition;
+    private long mAccumulator;
+    private int mBitCount;
+
+    BitWriter(int capacity) {
+        mBuffer = new byte[capacity];
+    }
+
+    void reset() {
+        mBytePosition = 0;
+        mAccumulator = 0;
+        mBitCount = 0;
+    }
+
+    /**
+     * 写入value的低bits位 bits不超过32
+     */
+    void writeBits(int value, int bits) {
+        if (bits == 0) {
+            return;
+        }
+        mAccumulator = (mAccumulator << bits) | (value & (0xFFFFFFFFL >>> (32 - bits)));
+        mBitCount += bits;
+        while (mBitCount >= 8) {
+            mBitCount -= 8;
+            put((byte) (mAccumulator >>> mBitCount));
+        }
+    }
+
+    void writeSigned(int value, int bits) {
+        writeBits(value, bits);
+    }
+
+    /**
+     * 写入q个0和一个1
+     */
+    void writeUnary(int q) {
+        while (q >= 32) {
+            writeBits(0, 32);
+            q -= 32;
+        }
+        writeBits(1, q + 1);
+    }
+
+    /**
+     * Rice编码 有符号数先做zigzag映射
+     */
+    void writeRice(int value, int parameter) {
+        int u = (value << 1) ^ (value >> 31);
+        writeUnary(u >>> parameter);
+        writeBits(u, parameter);
+    }
+
+    /**
+     * FLAC中帧序号使用的类UTF-8编码
+     */
+    void writeUtf8(long value) {
+        if (value < 0x80) {
+            writeBits((int) value, 8);
+            return;
+        }
+        int bytes = value < 0x800 ? 2 : value < 0x10000 ? 3 : value < 0x200000 ? 4
+                : value < 0x4000000 ? 5 : value < 0x80000000L ? 6 : 7;
+        int shift = (bytes - 1) * 6;
+        int lead = bytes == 7 ? 0xFE : (0xFF00 >> bytes) & 0xFF;
+        writeBits(lead | (int) (value >>> shift), 8);
+        for (shift -= 6; shift >= 0; shift -= 6) {
+            writeBits(0x80 | (int) ((value >>> shift) & 0x3F), 8);
+        }
+    }
+
+    /**
+     * 补齐到字节边界
+     */
+    void alignToByte() {
+        if (mBitCount > 0) {
+            writeBits(0, 8 - mBitCount);
+        }
+    }
+
+    /**
+     * 已经写入的完整字节数
+     */
+    int length() {
+        return mBytePosition;
+    }
+
+    byte[] buffer() {
+        return mBuffer;
+    }
+
+    private void put(byte b) {
+        if (mBytePosition == mBuffer.length) {
+            byte[] grown = new byte[mBuffer.length * 2];
+            System.arraycopy(mBuffer, 0, grown, 0, mBytePosition);
+            mBuffer = grown;
+        }
+        mBuffer[mBytePosition++] = b;
+    }
+}
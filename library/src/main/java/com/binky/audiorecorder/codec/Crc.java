@@ -0,0 +1,45 @@
+package com.binky.audiorecorder.codec;
+
+/**
+ * FLAC帧头使用的CRC-8(多项式0x07)和帧尾使用的CRC-16(多项式0x8005)
+ */
+
+final class Crc {
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            for (int j = 0; j < 8; j++) {
+                crc8 = (crc8 & 0x80) != 0 ? ((crc8 << 1) ^ 0x07) : (crc8 << 1);
+            }
+            CRC8_TABLE[i] = crc8 & 0xFF;
+            int crc16 = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc16 = (crc16 & 0x8000) != 0 ? ((crc16 << 1) ^ 0x8005) : (crc16 << 1);
+            }
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+        }
+    }
+
+    private Crc() {
+    }
+
+    static int crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    static int crc16(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+}
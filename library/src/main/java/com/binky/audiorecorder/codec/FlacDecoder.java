@@ -0,0 +1,256 @@
+package com.binky.audiorecorder.codec;
+
+import java.io.IOException;
+
+/**
+ * FLAC帧解码器 支持 CONSTANT / VERBATIM / FIXED / LPC 子帧和独立声道、左右差、中侧声道编码
+ * 只支持16位采样 解码结果为交错排列的PCM
+ */
+
+public class FlacDecoder {
+
+    private final BitReader mReader = new BitReader();
+    private int[][] mChannels = new int[0][0];
+    private int mBlockSize;
+    private int mChannelCount;
+    private long mFrameNumber;
+
+    /**
+     * 解码一帧
+     *
+     * @param data   帧数据 从同步码开始
+     * @param offset 起始位置
+     * @param length 数据长度
+     * @return 这一帧占用的字节数
+     */
+    public int decodeFrame(byte[] data, int offset, int length) throws IOException {
+        BitReader reader = mReader;
+        reader.reset(data, offset, length);
+        if (reader.readBits(14) != 0x3FFE) {
+            throw new IOException("flac frame sync not found");
+        }
+        reader.readBits(1);
+        reader.readBits(1);
+        int blockSizeCode = reader.readBits(4);
+        int sampleRateCode = reader.readBits(4);
+        int channelAssignment = reader.readBits(4);
+        int sampleSizeCode = reader.readBits(3);
+        reader.readBits(1);
+        if (sampleSizeCode != 0x4 && sampleSizeCode != 0) {
+            throw new IOException("only 16 bit flac is supported");
+        }
+        mFrameNumber = reader.readUtf8();
+        int blockSize;
+        if (blockSizeCode == 1) {
+            blockSize = 192;
+        } else if (blockSizeCode >= 2 && blockSizeCode <= 5) {
+            blockSize = 576 << (blockSizeCode - 2);
+        } else if (blockSizeCode == 6) {
+            blockSize = reader.readBits(8) + 1;
+        } else if (blockSizeCode == 7) {
+            blockSize = reader.readBits(16) + 1;
+        } else if (blockSizeCode >= 8) {
+            blockSize = 256 << (blockSizeCode - 8);
+        } else {
+            throw new IOException("reserved flac block size");
+        }
+        if (sampleRateCode == 12) {
+            reader.readBits(8);
+        } else if (sampleRateCode == 13 || sampleRateCode == 14) {
+            reader.readBits(16);
+        }
+        int headerLength = reader.bytePosition() - offset;
+        int crc8 = reader.readBits(8);
+        if (crc8 != Crc.crc8(data, offset, headerLength)) {
+            throw new IOException("flac frame header crc mismatch");
+        }
+
+        int channels = channelAssignment < 8 ? channelAssignment + 1 : 2;
+        if (channelAssignment > 10) {
+            throw new IOException("reserved flac channel assignment");
+        }
+        ensureCapacity(channels, blockSize);
+        for (int c = 0; c < channels; c++) {
+            int bps = 16;
+            if ((channelAssignment == 8 && c == 1) || (channelAssignment == 9 && c == 0)
+                    || (channelAssignment == 10 && c == 1)) {
+                bps = 17;
+            }
+            decodeSubframe(mChannels[c], blockSize, bps);
+        }
+        reader.alignToByte();
+        int frameLength = reader.bytePosition() - offset;
+        int crc16 = reader.readBits(16);
+        if (crc16 != Crc.crc16(data, offset, frameLength)) {
+            throw new IOException("flac frame crc mismatch");
+        }
+        decorrelate(channelAssignment, blockSize);
+        mBlockSize = blockSize;
+        mChannelCount = channels;
+        return frameLength + 2;
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public long getFrameNumber() {
+        return mFrameNumber;
+    }
+
+    /**
+     * 把最近一次解码的结果交错写入out
+     *
+     * @return 写入的short数量
+     */
+    public int copyInterleaved(short[] out, int offset) {
+        int channels = mChannelCount;
+        for (int c = 0; c < channels; c++) {
+            int[] samples = mChannels[c];
+            for (int i = 0, p = offset + c; i < mBlockSize; i++, p += channels) {
+                out[p] = (short) samples[i];
+            }
+        }
+        return mBlockSize * channels;
+    }
+
+    private void ensureCapacity(int channels, int blockSize) {
+        if (mChannels.length < channels || mChannels[0].length < blockSize) {
+            mChannels = new int[Math.max(channels, mChannels.length)][Math.max(blockSize, mChannels.length > 0 ? mChannels[0].length : 0)];
+        }
+    }
+
+    private void decodeSubframe(int[] out, int blockSize, int bps) throws IOException {
+        BitReader reader = mReader;
+        reader.readBits(1);
+        int type = reader.readBits(6);
+        int wasted = 0;
+        if (reader.readBits(1) == 1) {
+            wasted = reader.readUnary() + 1;
+            bps -= wasted;
+        }
+        if (type == 0) {
+            int value = reader.readSigned(bps);
+            for (int i = 0; i < blockSize; i++) {
+                out[i] = value;
+            }
+        } else if (type == 1) {
+            for (int i = 0; i < blockSize; i++) {
+                out[i] = reader.readSigned(bps);
+            }
+        } else if (type >= 8 && type <= 12) {
+            int order = type & 0x7;
+            for (int i = 0; i < order; i++) {
+                out[i] = reader.readSigned(bps);
+            }
+            decodeResidual(out, blockSize, order);
+            restoreFixed(out, blockSize, order);
+        } else if (type >= 32) {
+            int order = (type & 0x1F) + 1;
+            for (int i = 0; i < order; i++) {
+                out[i] = reader.readSigned(bps);
+            }
+            int precision = reader.readBits(4) + 1;
+            int shift = reader.readSigned(5);
+            int[] coefficients = new int[order];
+            for (int i = 0; i < order; i++) {
+                coefficients[i] = reader.readSigned(precision);
+            }
+            decodeResidual(out, blockSize, order);
+            for (int i = order; i < blockSize; i++) {
+                long sum = 0;
+                for (int j = 0; j < order; j++) {
+                    sum += (long) coefficients[j] * out[i - j - 1];
+                }
+                out[i] += (int) (sum >> shift);
+            }
+        } else {
+            throw new IOException("reserved flac subframe type " + type);
+        }
+        if (wasted > 0) {
+            for (int i = 0; i < blockSize; i++) {
+                out[i] <<= wasted;
+            }
+        }
+    }
+
+    private void decodeResidual(int[] out, int blockSize, int order) throws IOException {
+        BitReader reader = mReader;
+        int method = reader.readBits(2);
+        if (method > 1) {
+            throw new IOException("reserved flac residual coding method");
+        }
+        int parameterBits = method == 0 ? 4 : 5;
+        int escape = method == 0 ? 0xF : 0x1F;
+        int partitionOrder = reader.readBits(4);
+        int partitions = 1 << partitionOrder;
+        int partitionSize = blockSize >> partitionOrder;
+        int index = order;
+        for (int p = 0; p < partitions; p++) {
+            int end = (p + 1) * partitionSize;
+            int parameter = reader.readBits(parameterBits);
+            if (parameter == escape) {
+                int bits = reader.readBits(5);
+                for (; index < end; index++) {
+                    out[index] = reader.readSigned(bits);
+                }
+            } else {
+                for (; index < end; index++) {
+                    out[index] = reader.readRice(parameter);
+                }
+            }
+        }
+    }
+
+    private static void restoreFixed(int[] s, int blockSize, int order) {
+        for (int i = order; i < blockSize; i++) {
+            switch (order) {
+                case 0:
+                    break;
+                case 1:
+                    s[i] += s[i - 1];
+                    break;
+                case 2:
+                    s[i] += 2 * s[i - 1] - s[i - 2];
+                    break;
+                case 3:
+                    s[i] += 3 * s[i - 1] - 3 * s[i - 2] + s[i - 3];
+                    break;
+                default:
+                    s[i] += 4 * s[i - 1] - 6 * s[i - 2] + 4 * s[i - 3] - s[i - 4];
+                    break;
+            }
+        }
+    }
+
+    private void decorrelate(int channelAssignment, int blockSize) {
+        int[] a = mChannels[0];
+        int[] b = mChannels.length > 1 ? mChannels[1] : null;
+        switch (channelAssignment) {
+            case 8:
+                for (int i = 0; i < blockSize; i++) {
+                    b[i] = a[i] - b[i];
+                }
+                break;
+            case 9:
+                for (int i = 0; i < blockSize; i++) {
+                    a[i] += b[i];
+                }
+                break;
+            case 10:
+                for (int i = 0; i < blockSize; i++) {
+                    int side = b[i];
+                    int mid = (a[i] << 1) | (side & 1);
+                    a[i] = (mid + side) >> 1;
+                    b[i] = (mid - side) >> 1;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.binky.audiorecorder.codec;
+
+/**
+ * 16位PCM的FLAC帧编码器
+ * <p>
+ * 每个声道独立编码 子帧使用 CONSTANT / FIXED(0~4阶) / VERBATIM 中比特数最少的一种
+ * 残差使用Rice编码并搜索最优分区阶数 同样的输入总是得到同样的输出
+ * 编码过程只使用构造时分配的缓冲 一个实例只能在一个线程中使用
+ */
+
+public class FlacEncoder {
+
+    public static final int BITS_PER_SAMPLE = 16;
+    /**
+     * FLAC帧头最多能表示的声道数
+     */
+    public static final int MAX_CHANNELS = 8;
+    private static final int MAX_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int MAX_RICE_PARAMETER = 14;
+
+    private final int mChannelCount;
+    private final int mMaxBlockSize;
+    private final BitWriter mWriter;
+    private final int[] mSamples;
+    private final int[][] mResiduals;
+    private final int[] mRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+
+    /**
+     * @param channelCount 声道数 1~8
+     * @param maxBlockSize 每帧每声道最多的采样数 不超过65535
+     */
+    public FlacEncoder(int channelCount, int maxBlockSize) {
+        if (channelCount < 1 || channelCount > MAX_CHANNELS) {
+            throw new IllegalArgumentException("flac supports 1~8 channels : " + channelCount);
+        }
+        if (maxBlockSize < 16 || maxBlockSize > 65535) {
+            throw new IllegalArgumentException("invalid flac block size : " + maxBlockSize);
+        }
+        this.mChannelCount = channelCount;
+        this.mMaxBlockSize = maxBlockSize;
+        this.mWriter = new BitWriter(maxFrameSize(channelCount, maxBlockSize));
+        this.mSamples = new int[maxBlockSize];
+        this.mResiduals = new int[MAX_ORDER + 1][maxBlockSize];
+    }
+
+    /**
+     * 一帧编码后的最大字节数
+     */
+    public static int maxFrameSize(int channelCount, int blockSize) {
+        return 18 + channelCount * (1 + (blockSize * BITS_PER_SAMPLE + 7) / 8) + 2;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getMaxBlockSize() {
+        return mMaxBlockSize;
+    }
+
+    /**
+     * 编码一帧 结果通过{@link #getBuffer()}获取
+     *
+     * @param interleaved 交错排列的16位PCM
+     * @param offset      起始位置
+     * @param blockSize   每声道的采样数
+     * @param frameNumber 帧序号 固定块大小时从0递增
+     * @return 编码后的字节数
+     */
+    public int encodeFrame(short[] interleaved, int offset, int blockSize, long frameNumber) {
+        if (blockSize < 1 || blockSize > mMaxBlockSize) {
+            throw new IllegalArgumentException("block size out of range : " + blockSize);
+        }
+        BitWriter writer = mWriter;
+        writer.reset();
+        // frame header
+        writer.writeBits(0x3FFE, 14);
+        writer.writeBits(0, 1);
+        writer.writeBits(0, 1);
+        writer.writeBits(0x7, 4);
+        writer.writeBits(0, 4);
+        writer.writeBits(mChannelCount - 1, 4);
+        writer.writeBits(0x4, 3);
+        writer.writeBits(0, 1);
+        writer.writeUtf8(frameNumber);
+        writer.writeBits(blockSize - 1, 16);
+        writer.writeBits(Crc.crc8(writer.buffer(), 0, writer.length()), 8);
+
+        for (int channel = 0; channel < mChannelCount; channel++) {
+            int[] samples = mSamples;
+            for (int i = 0, p = offset + channel; i < blockSize; i++, p += mChannelCount) {
+                samples[i] = interleaved[p];
+            }
+            encodeSubframe(samples, blockSize);
+        }
+        writer.alignToByte();
+        int crc = Crc.crc16(writer.buffer(), 0, writer.length());
+        writer.writeBits(crc, 16);
+        return writer.length();
+    }
+
+    /**
+     * 最近一次编码的结果 长度为encodeFrame的返回值 下一次编码时会被覆盖
+     */
+    public byte[] getBuffer() {
+        return mWriter.buffer();
+    }
+
+    private void encodeSubframe(int[] samples, int blockSize) {
+        BitWriter writer = mWriter;
+        boolean constant = true;
+        for (int i = 1; i < blockSize; i++) {
+            if (samples[i] != samples[0]) {
+                constant = false;
+                break;
+            }
+        }
+        if (constant) {
+            writer.writeBits(0, 8);
+            writer.writeSigned(samples[0], BITS_PER_SAMPLE);
+            return;
+        }
+
+        int maxOrder = Math.min(MAX_ORDER, blockSize - 1);
+        computeResiduals(samples, blockSize, maxOrder);
+        long bestBits = (long) blockSize * BITS_PER_SAMPLE;
+        int bestOrder = -1;
+        int bestPartitionOrder = 0;
+        for (int order = 0; order <= maxOrder; order++) {
+            long bits = order * BITS_PER_SAMPLE + 6;
+            int[] residual = mResiduals[order];
+            long bestResidualBits = Long.MAX_VALUE;
+            int bestPartition = 0;
+            for (int partitionOrder = 0; partitionOrder <= MAX_PARTITION_ORDER; partitionOrder++) {
+                if (!validPartitionOrder(blockSize, order, partitionOrder)) {
+                    break;
+                }
+                long partitionBits = partitionBits(residual, blockSize, order, partitionOrder, false);
+                if (partitionBits < bestResidualBits) {
+                    bestResidualBits = partitionBits;
+                    bestPartition = partitionOrder;
+                }
+            }
+            bits += bestResidualBits;
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = order;
+                bestPartitionOrder = bestPartition;
+            }
+        }
+
+        if (bestOrder < 0) {
+            writer.writeBits(0x02, 8);
+            for (int i = 0; i < blockSize; i++) {
+                writer.writeSigned(samples[i], BITS_PER_SAMPLE);
+            }
+            return;
+        }
+        writer.writeBits((0x08 | bestOrder) << 1, 8);
+        for (int i = 0; i < bestOrder; i++) {
+            writer.writeSigned(samples[i], BITS_PER_SAMPLE);
+        }
+        int[] residual = mResiduals[bestOrder];
+        partitionBits(residual, blockSize, bestOrder, bestPartitionOrder, true);
+        writer.writeBits(0, 2);
+        writer.writeBits(bestPartitionOrder, 4);
+        int partitions = 1 << bestPartitionOrder;
+        int partitionSize = blockSize >> bestPartitionOrder;
+        int index = bestOrder;
+        for (int p = 0; p < partitions; p++) {
+            int parameter = mRiceParameters[p];
+            writer.writeBits(parameter, 4);
+            int end = (p + 1) * partitionSize;
+            for (; index < end; index++) {
+                writer.writeRice(residual[index], parameter);
+            }
+        }
+    }
+
+    /**
+     * 计算0~maxOrder阶固定预测的残差 前order个位置不使用
+     */
+    private void computeResiduals(int[] s, int blockSize, int maxOrder) {
+        int[] r0 = mResiduals[0];
+        int[] r1 = mResiduals[1];
+        int[] r2 = mResiduals[2];
+        int[] r3 = mResiduals[3];
+        int[] r4 = mResiduals[4];
+        System.arraycopy(s, 0, r0, 0, blockSize);
+        for (int i = 1; i < blockSize; i++) {
+            r1[i] = s[i] - s[i - 1];
+        }
+        for (int i = 2; i < blockSize; i++) {
+            r2[i] = r1[i] - r1[i - 1];
+        }
+        for (int i = 3; i < blockSize; i++) {
+            r3[i] = r2[i] - r2[i - 1];
+        }
+        for (int i = 4; i < blockSize && maxOrder >= 4; i++) {
+            r4[i] = r3[i] - r3[i - 1];
+        }
+    }
+
+    private static boolean validPartitionOrder(int blockSize, int order, int partitionOrder) {
+        if (partitionOrder == 0) {
+            return true;
+        }
+        return blockSize % (1 << partitionOrder) == 0 && (blockSize >> partitionOrder) > order;
+    }
+
+    /**
+     * 计算给定分区阶数下残差需要的比特数 并把每个分区最优的Rice参数写到mRiceParameters
+     */
+    private long partitionBits(int[] residual, int blockSize, int order, int partitionOrder, boolean store) {
+        int partitions = 1 << partitionOrder;
+        int partitionSize = blockSize >> partitionOrder;
+        long total = 0;
+        int index = order;
+        for (int p = 0; p < partitions; p++) {
+            int end = (p + 1) * partitionSize;
+            int count = end - index;
+            long sum = 0;
+            for (int i = index; i < end; i++) {
+                int v = residual[i];
+                sum += (v << 1) ^ (v >> 31);
+            }
+            int parameter = 0;
+            if (count > 0) {
+                long mean = sum / count;
+                while (parameter < MAX_RICE_PARAMETER && (1L << (parameter + 1)) <= mean) {
+                    parameter++;
+                }
+            }
+            long bits = riceBits(residual, index, end, parameter);
+            if (parameter > 0) {
+                long lower = riceBits(residual, index, end, parameter - 1);
+                if (lower < bits) {
+                    bits = lower;
+                    parameter--;
+                }
+            }
+            if (parameter < MAX_RICE_PARAMETER) {
+                long upper = riceBits(residual, index, end, parameter + 1);
+                if (upper < bits) {
+                    bits = upper;
+                    parameter++;
+                }
+            }
+            if (store) {
+                mRiceParameters[p] = parameter;
+            }
+            total += 4 + bits;
+            index = end;
+        }
+        return total;
+    }
+
+    private static long riceBits(int[] residual, int from, int to, int parameter) {
+        long bits = (long) (to - from) * (parameter + 1);
+        for (int i = from; i < to; i++) {
+            int v = residual[i];
+            bits += ((v << 1) ^ (v >> 31)) >>> parameter;
+        }
+        return bits;
+    }
+}
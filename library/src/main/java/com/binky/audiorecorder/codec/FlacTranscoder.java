@@ -0,0 +1,373 @@
+package com.binky.audiorecorder.codec;
+
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import com.binky.audiorecorder.file.WavReader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 把16位PCM WAV文件转成FLAC文件 FLAC帧之间互不依赖 可以在多个线程中并发编码
+ * <p>
+ * 读取线程按顺序切块并计算MD5 编码任务交给work-stealing线程池
+ * 编码结果按提交顺序放在一个有界的重排队列里 队首完成后依次写出 所以输出和单线程编码逐字节一致
+ * STREAMINFO和SEEKTABLE先写占位 最后回填帧大小范围、MD5和每个seek点的偏移
+ */
+
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class FlacTranscoder {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static final int STREAMINFO = 0;
+    private static final int SEEKTABLE = 3;
+    private static final int STREAMINFO_SIZE = 34;
+    private static final int SEEKPOINT_SIZE = 18;
+
+    private final int mThreads;
+    private int mBlockSize = DEFAULT_BLOCK_SIZE;
+    private int mSeekIntervalSeconds = 10;
+
+    /**
+     * @param threads 编码线程数 1表示在调用线程中串行编码
+     */
+    public FlacTranscoder(int threads) {
+        this.mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * 设置每帧每声道的采样数 默认4096
+     */
+    public FlacTranscoder setBlockSize(int blockSize) {
+        this.mBlockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * 设置seek点的间隔 单位秒 小于等于0时不写SEEKTABLE 默认10秒
+     */
+    public FlacTranscoder setSeekInterval(int seconds) {
+        this.mSeekIntervalSeconds = seconds;
+        return this;
+    }
+
+    public Result transcode(File input, File output) throws IOException {
+        long begin = System.nanoTime();
+        WavReader reader = new WavReader(input);
+        ForkJoinPool pool = mThreads > 1 ? new ForkJoinPool(mThreads) : null;
+        try {
+            int channelCount = reader.getChannelCount();
+            int sampleRate = reader.getSampleRate();
+            long totalSamples = reader.getFrameCount();
+            long seekInterval = mSeekIntervalSeconds > 0 ? (long) mSeekIntervalSeconds * sampleRate : 0;
+            int seekPoints = seekInterval > 0 && totalSamples > 0 ? (int) ((totalSamples + seekInterval - 1) / seekInterval) : 0;
+
+            Result result = new Result();
+            result.sampleRate = sampleRate;
+            result.channelCount = channelCount;
+            result.totalSamples = totalSamples;
+            result.inputBytes = reader.getDataSize();
+            result.seekSamples = new long[seekPoints];
+            result.seekOffsets = new long[seekPoints];
+            result.seekFrameSamples = new int[seekPoints];
+
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16);
+            long headerSize;
+            try {
+                headerSize = writeHeaderPlaceholder(out, seekPoints);
+                encodeFrames(reader, pool, out, result, seekInterval);
+            } finally {
+                out.close();
+            }
+            patchHeader(output, result, headerSize);
+            result.outputBytes = output.length();
+            result.wallNanos = System.nanoTime() - begin;
+            return result;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            reader.close();
+        }
+    }
+
+    private void encodeFrames(WavReader reader, ForkJoinPool pool, OutputStream out, Result result,
+                              long seekInterval) throws IOException {
+        final int channelCount = reader.getChannelCount();
+        final int blockSize = mBlockSize;
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        // 同时在编码的帧数 决定了输入缓冲和重排队列的大小
+        int inFlight = pool == null ? 1 : mThreads * 4;
+        short[][] blocks = new short[inFlight][blockSize * channelCount];
+        byte[] pcmBytes = new byte[blockSize * channelCount * 2];
+        ArrayDeque<EncodeTask> pending = new ArrayDeque<>(inFlight);
+        final ThreadLocal<FlacEncoder> encoders = new ThreadLocal<FlacEncoder>() {
+            @Override
+            protected FlacEncoder initialValue() {
+                return new FlacEncoder(channelCount, blockSize);
+            }
+        };
+        FlacEncoder serialEncoder = pool == null ? new FlacEncoder(channelCount, blockSize) : null;
+
+        long frameNumber = 0;
+        long sample = 0;
+        long written = 0;
+        while (true) {
+            if (pending.size() == inFlight) {
+                // 队首完成之前不能复用它的输入缓冲 也不能写后面的帧
+                EncodeTask head = pending.poll();
+                written = writeFrame(out, head.join(), head.mStartSample, head.mSamples, result, written, seekInterval);
+            }
+            short[] block = blocks[(int) (frameNumber % inFlight)];
+            int length = readBlock(reader, block);
+            if (length <= 0) {
+                break;
+            }
+            updateMd5(md5, block, length, pcmBytes);
+            int samples = length / channelCount;
+
+            if (pool == null) {
+                int size = serialEncoder.encodeFrame(block, 0, samples, frameNumber);
+                written = writeFrame(out, Arrays.copyOf(serialEncoder.getBuffer(), size), sample, samples,
+                        result, written, seekInterval);
+            } else {
+                EncodeTask task = new EncodeTask(encoders, block, samples, frameNumber, sample);
+                pool.execute(task);
+                pending.add(task);
+            }
+            sample += samples;
+            frameNumber++;
+        }
+        while (!pending.isEmpty()) {
+            EncodeTask head = pending.poll();
+            written = writeFrame(out, head.join(), head.mStartSample, head.mSamples, result, written, seekInterval);
+        }
+        result.frames = frameNumber;
+        result.md5 = md5.digest();
+    }
+
+    /**
+     * 读满一块 只有最后一块可能不满
+     */
+    private int readBlock(WavReader reader, short[] block) throws IOException {
+        int total = 0;
+        while (total < block.length) {
+            int read = reader.read(block, total, block.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void updateMd5(MessageDigest md5, short[] block, int length, byte[] bytes) {
+        for (int i = 0, j = 0; i < length; i++, j += 2) {
+            bytes[j] = (byte) block[i];
+            bytes[j + 1] = (byte) (block[i] >> 8);
+        }
+        md5.update(bytes, 0, length * 2);
+    }
+
+    private long writeFrame(OutputStream out, byte[] frame, long startSample, int samples, Result result,
+                            long written, long seekInterval) throws IOException {
+        // 每个间隔第一个起点不早于间隔开始的帧作为seek点
+        long[] seekSamples = result.seekSamples;
+        while (result.seekCount < seekSamples.length && startSample >= result.seekCount * seekInterval) {
+            if (result.seekCount > 0 && seekSamples[result.seekCount - 1] == startSample) {
+                break;
+            }
+            seekSamples[result.seekCount] = startSample;
+            result.seekOffsets[result.seekCount] = written;
+            result.seekFrameSamples[result.seekCount] = samples;
+            result.seekCount++;
+        }
+        out.write(frame);
+        if (result.minFrameSize == 0 || frame.length < result.minFrameSize) {
+            result.minFrameSize = frame.length;
+        }
+        if (frame.length > result.maxFrameSize) {
+            result.maxFrameSize = frame.length;
+        }
+        return written + frame.length;
+    }
+
+    private long writeHeaderPlaceholder(OutputStream out, int seekPoints) throws IOException {
+        out.write(new byte[]{'f', 'L', 'a', 'C'});
+        writeBlockHeader(out, seekPoints == 0, STREAMINFO, STREAMINFO_SIZE);
+        out.write(new byte[STREAMINFO_SIZE]);
+        long size = 4 + 4 + STREAMINFO_SIZE;
+        if (seekPoints > 0) {
+            writeBlockHeader(out, true, SEEKTABLE, seekPoints * SEEKPOINT_SIZE);
+            out.write(new byte[seekPoints * SEEKPOINT_SIZE]);
+            size += 4 + seekPoints * SEEKPOINT_SIZE;
+        }
+        return size;
+    }
+
+    private static void writeBlockHeader(OutputStream out, boolean last, int type, int length) throws IOException {
+        out.write((last ? 0x80 : 0) | type);
+        out.write(length >> 16);
+        out.write(length >> 8);
+        out.write(length);
+    }
+
+    private void patchHeader(File output, Result result, long headerSize) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            BitWriter info = new BitWriter(STREAMINFO_SIZE);
+            int blockSize = (int) Math.min(mBlockSize, Math.max(1, result.totalSamples));
+            info.writeBits(blockSize, 16);
+            info.writeBits(blockSize, 16);
+            info.writeBits(result.minFrameSize, 24);
+            info.writeBits(result.maxFrameSize, 24);
+            info.writeBits(result.sampleRate, 20);
+            info.writeBits(result.channelCount - 1, 3);
+            info.writeBits(FlacEncoder.BITS_PER_SAMPLE - 1, 5);
+            info.writeBits((int) (result.totalSamples >>> 32) & 0xF, 4);
+            info.writeBits((int) result.totalSamples, 32);
+            file.seek(8);
+            file.write(info.buffer(), 0, info.length());
+            file.write(result.md5);
+
+            if (result.seekSamples.length > 0) {
+                file.seek(8 + STREAMINFO_SIZE + 4);
+                for (int i = 0; i < result.seekSamples.length; i++) {
+                    if (i < result.seekCount) {
+                        file.writeLong(result.seekSamples[i]);
+                        file.writeLong(result.seekOffsets[i]);
+                        file.writeShort(result.seekFrameSamples[i]);
+                    } else {
+                        // 占位点
+                        file.writeLong(-1L);
+                        file.writeLong(0);
+                        file.writeShort(0);
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+        result.headerBytes = headerSize;
+    }
+
+    /**
+     * 编码一帧 每个线程复用自己的编码器
+     */
+    private static class EncodeTask extends RecursiveTask<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ThreadLocal<FlacEncoder> mEncoders;
+        private final short[] mBlock;
+        final int mSamples;
+        private final long mFrameNumber;
+        final long mStartSample;
+
+        EncodeTask(ThreadLocal<FlacEncoder> encoders, short[] block, int samples, long frameNumber, long startSample) {
+            this.mEncoders = encoders;
+            this.mBlock = block;
+            this.mSamples = samples;
+            this.mFrameNumber = frameNumber;
+            this.mStartSample = startSample;
+        }
+
+        @Override
+        protected byte[] compute() {
+            FlacEncoder encoder = mEncoders.get();
+            int size = encoder.encodeFrame(mBlock, 0, mSamples, mFrameNumber);
+            return Arrays.copyOf(encoder.getBuffer(), size);
+        }
+    }
+
+    public static class Result {
+        int sampleRate;
+        int channelCount;
+        long totalSamples;
+        long frames;
+        long inputBytes;
+        long outputBytes;
+        long headerBytes;
+        int minFrameSize;
+        int maxFrameSize;
+        byte[] md5;
+        long[] seekSamples;
+        long[] seekOffsets;
+        int[] seekFrameSamples;
+        int seekCount;
+        long wallNanos;
+
+        public long getTotalSamples() {
+            return totalSamples;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getInputBytes() {
+            return inputBytes;
+        }
+
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        /**
+         * 元数据块之后第一帧的位置 seek点的偏移从这里算起
+         */
+        public long getHeaderBytes() {
+            return headerBytes;
+        }
+
+        /**
+         * 未编码PCM的MD5 和STREAMINFO中的一致
+         */
+        public byte[] getMd5() {
+            return md5;
+        }
+
+        public int getSeekPointCount() {
+            return seekCount;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public double getCompressionRatio() {
+            return inputBytes == 0 ? 0 : outputBytes / (double) inputBytes;
+        }
+
+        /**
+         * 转码速度 音频时长除以耗时
+         */
+        public double getRealtimeFactor() {
+            return wallNanos == 0 || sampleRate == 0 ? 0 : totalSamples * 1e9 / sampleRate / wallNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("FlacTranscoder.Result{samples=%d, frames=%d, ratio=%.3f, seekPoints=%d, wall=%.1fms, %.0fx realtime}",
+                    totalSamples, frames, getCompressionRatio(), seekCount, wallNanos / 1e6, getRealtimeFactor());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.binky.audiorecorder.codec;
+
+/**
+ * IMA ADPCM 编解码 4比特每采样 压缩比约为4:1
+ * <p>
+ * 每个块的格式为 每声道4字节头(第一个采样int16小端 步长索引 保留字节) 之后是每个声道依次排列的4比特编码
+ * 这是库内部内存会话使用的格式 与WAV中IMA ADPCM的交错方式不同
+ */
+
+public class ImaAdpcm {
+
+    private static final int[] INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8,
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    /**
+     * 两个块之间延续的步长索引 使后一块一开始就有合适的步长
+     */
+    private final int[] mStepIndex;
+    private final int mChannelCount;
+
+    public ImaAdpcm(int channelCount) {
+        this.mChannelCount = channelCount;
+        this.mStepIndex = new int[channelCount];
+    }
+
+    /**
+     * 编码一个块需要的字节数
+     */
+    public static int encodedSize(int channelCount, int samplesPerChannel) {
+        return channelCount * (4 + (Math.max(0, samplesPerChannel - 1) + 1) / 2);
+    }
+
+    /**
+     * 编码一个块
+     *
+     * @param interleaved       交错排列的PCM
+     * @param offset            起始位置
+     * @param samplesPerChannel 每声道采样数
+     * @param out               输出缓冲 大小至少为{@link #encodedSize(int, int)}
+     * @param outOffset         输出起始位置
+     * @return 写入的字节数
+     */
+    public int encode(short[] interleaved, int offset, int samplesPerChannel, byte[] out, int outOffset) {
+        int channels = mChannelCount;
+        int position = outOffset;
+        for (int c = 0; c < channels; c++) {
+            int predictor = interleaved[offset + c];
+            int index = mStepIndex[c];
+            out[position++] = (byte) predictor;
+            out[position++] = (byte) (predictor >> 8);
+            out[position++] = (byte) index;
+            out[position++] = 0;
+            int nibbleCount = 0;
+            int packed = 0;
+            for (int i = 1, p = offset + c + channels; i < samplesPerChannel; i++, p += channels) {
+                int step = STEP_TABLE[index];
+                int diff = interleaved[p] - predictor;
+                int nibble = 0;
+                if (diff < 0) {
+                    nibble = 8;
+                    diff = -diff;
+                }
+                int delta = step >> 3;
+                if (diff >= step) {
+                    nibble |= 4;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    nibble |= 2;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    nibble |= 1;
+                    delta += step;
+                }
+                predictor += (nibble & 8) != 0 ? -delta : delta;
+                predictor = clamp(predictor);
+                index = clampIndex(index + INDEX_TABLE[nibble]);
+                if ((nibbleCount & 1) == 0) {
+                    packed = nibble;
+                } else {
+                    out[position++] = (byte) (packed | (nibble << 4));
+                }
+                nibbleCount++;
+            }
+            if ((nibbleCount & 1) == 1) {
+                out[position++] = (byte) packed;
+            }
+            mStepIndex[c] = index;
+        }
+        return position - outOffset;
+    }
+
+    /**
+     * 解码一个块
+     *
+     * @param data              编码数据
+     * @param offset            起始位置
+     * @param samplesPerChannel 每声道采样数
+     * @param out               交错排列的输出
+     * @param outOffset         输出起始位置
+     * @return 消费的字节数
+     */
+    public static int decode(byte[] data, int offset, int samplesPerChannel, int channels, short[] out, int outOffset) {
+        int position = offset;
+        for (int c = 0; c < channels; c++) {
+            int predictor = (short) ((data[position] & 0xFF) | (data[position + 1] << 8));
+            int index = clampIndex(data[position + 2] & 0xFF);
+            position += 4;
+            out[outOffset + c] = (short) predictor;
+            int p = outOffset + c + channels;
+            for (int i = 1; i < samplesPerChannel; i++, p += channels) {
+                int nibble = ((i - 1) & 1) == 0 ? data[position] & 0x0F : (data[position++] >> 4) & 0x0F;
+                int step = STEP_TABLE[index];
+                int delta = step >> 3;
+                if ((nibble & 4) != 0) {
+                    delta += step;
+                }
+                if ((nibble & 2) != 0) {
+                    delta += step >> 1;
+                }
+                if ((nibble & 1) != 0) {
+                    delta += step >> 2;
+                }
+                predictor += (nibble & 8) != 0 ? -delta : delta;
+                predictor = clamp(predictor);
+                index = clampIndex(index + INDEX_TABLE[nibble]);
+                out[p] = (short) predictor;
+            }
+            if (((samplesPerChannel - 1) & 1) == 1) {
+                position++;
+            }
+        }
+        return position - offset;
+    }
+
+    private static int clamp(int value) {
+        return value > Short.MAX_VALUE ? Short.MAX_VALUE : value < Short.MIN_VALUE ? Short.MIN_VALUE : value;
+    }
+
+    private static int clampIndex(int index) {
+        return index < 0 ? 0 : index > 88 ? 88 : index;
+    }
+}
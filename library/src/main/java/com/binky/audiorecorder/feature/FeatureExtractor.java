@@ -0,0 +1,298 @@
+package com.binky.audiorecorder.feature;
+
+import com.binky.audiorecorder.process.AudioProcessor;
+import com.binky.audiorecorder.utils.RealFft;
+
+/**
+ * 流式的log-mel/MFCC特征提取 可以作为{@link AudioProcessor}加到处理链的最后 不修改录音数据
+ * <p>
+ * 多声道先平均成单声道 按hop逐段积累 跨越录音帧的边界时接着上一次的数据计算 每满一个hop输出一帧特征:
+ * 预加重(可选) -> hann窗 -> 补零到FFT长度 -> 功率谱 -> 梅尔滤波器组 -> 自然对数 -> DCT(可选 得到MFCC)
+ * <p>
+ * 窗、滤波器组和DCT矩阵在prepare中预先计算 process中不分配内存 特征写入复用的环形缓冲后回调{@link FeatureListener}
+ */
+
+public class FeatureExtractor implements AudioProcessor {
+
+    /**
+     * 取对数前加到能量上 避免静音时得到负无穷
+     */
+    public static final float LOG_FLOOR = 1e-10f;
+
+    private final Config mConfig;
+    private FeatureListener mListener;
+    private int mChannelCount = 1;
+    private int mWindowSize;
+    private int mHopSize;
+    private int mFftSize;
+    private int mFeatureSize;
+    private RealFft mFft;
+    private MelFilterBank mMelBank;
+    private float[] mWindow;
+    private float[][] mDct;
+    private float[] mInput;
+    private int mFill;
+    private float[] mFrame;
+    private float[] mPower;
+    private float[] mMel;
+    private float mLastSample;
+    private float[][] mRing;
+    private int mPosition = -1;
+    private long mFrameCount;
+
+    public FeatureExtractor(Config config) {
+        this.mConfig = config;
+    }
+
+    public FeatureExtractor() {
+        this(new Config());
+    }
+
+    /**
+     * 设置特征回调 在处理线程中执行 回调中不要做耗时操作
+     */
+    public FeatureExtractor setListener(FeatureListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        Config config = mConfig;
+        mChannelCount = Math.max(1, channelCount);
+        mWindowSize = Math.max(2, Math.round(sampleRate * config.windowMs / 1000f));
+        mHopSize = Math.max(1, Math.min(mWindowSize, Math.round(sampleRate * config.hopMs / 1000f)));
+        int fftSize = config.fftSize > 0 ? config.fftSize : Math.max(4, Integer.highestOneBit(mWindowSize - 1) << 1);
+        if (fftSize < mWindowSize || Integer.bitCount(fftSize) != 1) {
+            throw new IllegalArgumentException("fft size " + fftSize + " must be power of 2 and >= window " + mWindowSize);
+        }
+        if (mFft == null || mFftSize != fftSize) {
+            mFft = new RealFft(fftSize);
+        }
+        mFftSize = fftSize;
+        float maxHz = config.maxHz > 0 ? Math.min(config.maxHz, sampleRate / 2f) : sampleRate / 2f;
+        mMelBank = new MelFilterBank(config.melBands, fftSize, sampleRate, config.minHz, maxHz);
+
+        mWindow = new float[mWindowSize];
+        for (int i = 0; i < mWindowSize; i++) {
+            // 周期hann窗 系数里带上1/32768 相当于把信号归一化到[-1, 1]
+            mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / mWindowSize)) / 32768f;
+        }
+        if (config.mfccCount > 0) {
+            int count = Math.min(config.mfccCount, config.melBands);
+            mDct = new float[count][config.melBands];
+            // 正交归一化的DCT-II
+            for (int j = 0; j < count; j++) {
+                double scale = Math.sqrt((j == 0 ? 1.0 : 2.0) / config.melBands);
+                for (int b = 0; b < config.melBands; b++) {
+                    mDct[j][b] = (float) (scale * Math.cos(Math.PI * j * (b + 0.5) / config.melBands));
+                }
+            }
+            mFeatureSize = count;
+        } else {
+            mDct = null;
+            mFeatureSize = config.melBands;
+        }
+        mInput = new float[mWindowSize];
+        mFrame = new float[fftSize];
+        mPower = new float[fftSize / 2 + 1];
+        mMel = new float[config.melBands];
+        mRing = new float[Math.max(1, config.ringSize)][mFeatureSize];
+        mFill = 0;
+        mLastSample = 0f;
+        mPosition = -1;
+        mFrameCount = 0;
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        int end = offset + length - length % channels;
+        float preemphasis = mConfig.preemphasis;
+        float[] input = mInput;
+        int fill = mFill;
+        for (int i = offset; i < end; i += channels) {
+            float x = buffer[i];
+            if (channels > 1) {
+                for (int c = 1; c < channels; c++) {
+                    x += buffer[i + c];
+                }
+                x /= channels;
+            }
+            input[fill] = x - preemphasis * mLastSample;
+            mLastSample = x;
+            if (++fill == mWindowSize) {
+                computeFrame();
+                System.arraycopy(input, mHopSize, input, 0, mWindowSize - mHopSize);
+                fill = mWindowSize - mHopSize;
+            }
+        }
+        mFill = fill;
+    }
+
+    private void computeFrame() {
+        float[] frame = mFrame;
+        float[] input = mInput;
+        float[] window = mWindow;
+        int n = mWindowSize;
+        for (int i = 0; i < n; i++) {
+            frame[i] = input[i] * window[i];
+        }
+        for (int i = n; i < mFftSize; i++) {
+            frame[i] = 0f;
+        }
+        mFft.powerSpectrum(frame, mPower);
+
+        int position = mPosition + 1 == mRing.length ? 0 : mPosition + 1;
+        float[] row = mRing[position];
+        float[] mel = mDct == null ? row : mMel;
+        mMelBank.apply(mPower, mel);
+        int bands = mMelBank.getBands();
+        for (int b = 0; b < bands; b++) {
+            mel[b] = (float) Math.log(mel[b] + LOG_FLOOR);
+        }
+        if (mDct != null) {
+            for (int j = 0; j < mFeatureSize; j++) {
+                float[] basis = mDct[j];
+                float sum = 0f;
+                for (int b = 0; b < bands; b++) {
+                    sum += basis[b] * mel[b];
+                }
+                row[j] = sum;
+            }
+        }
+        mPosition = position;
+        long index = mFrameCount++;
+        FeatureListener listener = mListener;
+        if (listener != null) {
+            listener.onFeature(mRing, position, index);
+        }
+    }
+
+    /**
+     * 按时间顺序复制最近的若干帧特征 最新的一帧在最后
+     *
+     * @param out 每行长度不小于{@link #getFeatureSize()} 行数为需要的帧数
+     * @return 实际复制的帧数 已经输出的帧不够时只复制到out的前面几行
+     */
+    public int copyRecent(float[][] out) {
+        int count = (int) Math.min(Math.min(out.length, mRing.length), mFrameCount);
+        int position = mPosition - count + 1;
+        if (position < 0) {
+            position += mRing.length;
+        }
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(mRing[position], 0, out[i], 0, mFeatureSize);
+            if (++position == mRing.length) {
+                position = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 每帧特征的维数 MFCC个数或者梅尔滤波器个数
+     */
+    public int getFeatureSize() {
+        return mFeatureSize;
+    }
+
+    /**
+     * 帧移 单位为每声道的采样点数
+     */
+    public int getHopSize() {
+        return mHopSize;
+    }
+
+    public int getWindowSize() {
+        return mWindowSize;
+    }
+
+    public int getFftSize() {
+        return mFftSize;
+    }
+
+    /**
+     * 本次录音已经输出的特征帧数
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 特征提取的参数
+     */
+    public static class Config {
+        private float windowMs = 25f;
+        private float hopMs = 10f;
+        private int fftSize;
+        private int melBands = 40;
+        private float minHz = 20f;
+        private float maxHz;
+        private int mfccCount;
+        private float preemphasis;
+        private int ringSize = 100;
+
+        /**
+         * @param windowMs 分析窗长度 单位毫秒 默认25
+         */
+        public Config setWindowMs(float windowMs) {
+            this.windowMs = windowMs;
+            return this;
+        }
+
+        /**
+         * @param hopMs 帧移 单位毫秒 默认10 不大于窗长度
+         */
+        public Config setHopMs(float hopMs) {
+            this.hopMs = hopMs;
+            return this;
+        }
+
+        /**
+         * @param fftSize FFT长度 2的整数次幂 0表示不小于窗长度的最小值
+         */
+        public Config setFftSize(int fftSize) {
+            this.fftSize = fftSize;
+            return this;
+        }
+
+        /**
+         * 梅尔滤波器组
+         *
+         * @param bands 滤波器个数 默认40
+         * @param minHz 最低频率 默认20
+         * @param maxHz 最高频率 0表示采样率的一半
+         */
+        public Config setMelBank(int bands, float minHz, float maxHz) {
+            this.melBands = bands;
+            this.minHz = minHz;
+            this.maxHz = maxHz;
+            return this;
+        }
+
+        /**
+         * @param count 输出的MFCC个数 包括c0 0表示直接输出log-mel 默认0
+         */
+        public Config setMfccCount(int count) {
+            this.mfccCount = count;
+            return this;
+        }
+
+        /**
+         * @param coefficient 预加重系数 y[n] = x[n] - a * x[n-1] 常用0.97 默认0不做预加重
+         */
+        public Config setPreemphasis(float coefficient) {
+            this.preemphasis = coefficient;
+            return this;
+        }
+
+        /**
+         * @param frames 环形缓冲保存的特征帧数 默认100 即10ms帧移时的1秒
+         */
+        public Config setRingSize(int frames) {
+            this.ringSize = frames;
+            return this;
+        }
+    }
+}
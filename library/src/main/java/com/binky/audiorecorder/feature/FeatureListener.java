@@ -0,0 +1,20 @@
+package com.binky.audiorecorder.feature;
+
+/**
+ * 接收{@link FeatureExtractor}计算出的特征
+ */
+
+public interface FeatureListener {
+
+    /**
+     * 每计算出一帧特征回调一次 在调用{@link FeatureExtractor#process(short[], int, int)}的线程中执行
+     * <p>
+     * ring是复用的环形缓冲 保存最近ring.length帧 最新的一帧在ring[position] 更早的依次在前面并回绕
+     * 方法返回后ring的内容会被后面的帧覆盖 需要保留时自己复制 也可以用{@link FeatureExtractor#copyRecent(float[][])}
+     *
+     * @param ring       特征环形缓冲 每行是一帧
+     * @param position   最新一帧所在的行
+     * @param frameIndex 这一帧的序号 从0开始 对应的采样点从frameIndex * hop开始
+     */
+    void onFeature(float[][] ring, int position, long frameIndex);
+}
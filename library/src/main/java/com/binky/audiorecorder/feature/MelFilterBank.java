@@ -0,0 +1,83 @@
+package com.binky.audiorecorder.feature;
+
+/**
+ * 三角形梅尔滤波器组 使用HTK的梅尔刻度 mel = 2595 * log10(1 + f / 700)
+ * <p>
+ * 每个滤波器只在相邻两个中心频率之间非零 构造时只保存非零的一段权重 计算时不用遍历所有频点
+ */
+
+public class MelFilterBank {
+
+    private final int mBands;
+    private final int[] mStart;
+    private final float[][] mWeights;
+
+    /**
+     * @param bands      滤波器个数
+     * @param fftSize    FFT长度 功率谱有fftSize/2+1个频点
+     * @param sampleRate 采样率
+     * @param minHz      最低频率
+     * @param maxHz      最高频率 不超过采样率的一半
+     */
+    public MelFilterBank(int bands, int fftSize, int sampleRate, float minHz, float maxHz) {
+        if (bands <= 0 || minHz < 0 || maxHz <= minHz || maxHz > sampleRate / 2f) {
+            throw new IllegalArgumentException("invalid mel bank: " + bands + " bands, " + minHz + "~" + maxHz + "Hz");
+        }
+        this.mBands = bands;
+        mStart = new int[bands];
+        mWeights = new float[bands][];
+        double minMel = hzToMel(minHz);
+        double maxMel = hzToMel(maxHz);
+        double[] edges = new double[bands + 2];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = melToHz(minMel + (maxMel - minMel) * i / (bands + 1));
+        }
+        int bins = fftSize / 2 + 1;
+        double binHz = (double) sampleRate / fftSize;
+        for (int b = 0; b < bands; b++) {
+            double left = edges[b];
+            double center = edges[b + 1];
+            double right = edges[b + 2];
+            int start = Math.max(0, (int) Math.ceil(left / binHz));
+            int end = Math.min(bins - 1, (int) Math.floor(right / binHz));
+            float[] weights = new float[Math.max(0, end - start + 1)];
+            for (int k = start; k <= end; k++) {
+                double f = k * binHz;
+                double w = f <= center ? (f - left) / (center - left) : (right - f) / (right - center);
+                weights[k - start] = (float) Math.max(0, w);
+            }
+            mStart[b] = start;
+            mWeights[b] = weights;
+        }
+    }
+
+    public static double hzToMel(double hz) {
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+
+    public static double melToHz(double mel) {
+        return 700 * (Math.pow(10, mel / 2595) - 1);
+    }
+
+    public int getBands() {
+        return mBands;
+    }
+
+    /**
+     * 计算每个滤波器的能量
+     *
+     * @param power  功率谱
+     * @param output 输出 长度至少为滤波器个数
+     */
+    public void apply(float[] power, float[] output) {
+        for (int b = 0; b < mBands; b++) {
+            float[] weights = mWeights[b];
+            int start = mStart[b];
+            float sum = 0f;
+            for (int i = 0; i < weights.length; i++) {
+                sum += weights[i] * power[start + i];
+            }
+            output[b] = sum;
+        }
+    }
+}
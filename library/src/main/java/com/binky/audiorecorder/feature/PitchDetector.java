@@ -0,0 +1,349 @@
+package com.binky.audiorecorder.feature;
+
+import com.binky.audiorecorder.process.AudioProcessor;
+import com.binky.audiorecorder.utils.Fft;
+
+/**
+ * 基于YIN算法的实时基频检测 可以作为{@link AudioProcessor}加到处理链中 不修改录音数据
+ * <p>
+ * 积分窗长度W等于最长周期 每个hop对最近W+最长周期个采样点计算差函数
+ * <pre>
+ *     d(t) = sum[j=0..W-1] (x[j] - x[j+t])^2 = e(0) + e(t) - 2 r(t)
+ * </pre>
+ * 再做累积均值归一化 取第一个低于阈值的局部最小值 用抛物线插值得到小数周期
+ * <p>
+ * r(t)可以直接计算 复杂度O(W*最长周期) 也可以用一次打包的复数FFT和一次逆FFT计算 复杂度O(N log N)
+ * {@link Method#AUTO}按两者的运算量选择 低频下限越低FFT越划算 所有缓冲在prepare中创建
+ */
+
+public class PitchDetector implements AudioProcessor {
+
+    /**
+     * 差函数的计算方式
+     */
+    public enum Method {
+        /**
+         * 按运算量自动选择
+         */
+        AUTO,
+        /**
+         * 直接逐点计算
+         */
+        DIRECT,
+        /**
+         * 用FFT计算互相关
+         */
+        FFT
+    }
+
+    private final Config mConfig;
+    private PitchListener mListener;
+    private int mSampleRate;
+    private int mChannelCount = 1;
+    private int mMinLag;
+    private int mMaxLag;
+    private int mWindowSize;
+    private int mBufferSize;
+    private int mHopSize;
+    private boolean mUseFft;
+    private float mSilenceEnergy;
+    private float[] mInput;
+    private int mFill;
+    private long mAnalysisStart;
+    private float[] mDiff;
+    private Fft mFft;
+    private float[] mRe;
+    private float[] mIm;
+    private float[] mCorrRe;
+    private float[] mCorrIm;
+    private float mFrequency;
+    private float mConfidence;
+
+    public PitchDetector(Config config) {
+        this.mConfig = config;
+    }
+
+    public PitchDetector() {
+        this(new Config());
+    }
+
+    /**
+     * 设置基频回调 在处理线程中执行 回调中不要做耗时操作
+     */
+    public PitchDetector setListener(PitchListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        Config config = mConfig;
+        if (config.minHz <= 0 || config.maxHz <= config.minHz || config.maxHz > sampleRate / 2f) {
+            throw new IllegalArgumentException("invalid pitch range " + config.minHz + "~" + config.maxHz + "Hz");
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = Math.max(1, channelCount);
+        mMinLag = Math.max(2, (int) Math.floor(sampleRate / config.maxHz));
+        mMaxLag = (int) Math.ceil(sampleRate / config.minHz);
+        mWindowSize = mMaxLag;
+        // 抛物线插值需要最长周期之后再多一个点
+        mBufferSize = mWindowSize + mMaxLag + 1;
+        mHopSize = Math.max(1, Math.min(mBufferSize, Math.round(sampleRate * config.hopMs / 1000f)));
+        float rms = (float) Math.pow(10, config.silenceDb / 20.0) * 32768f;
+        mSilenceEnergy = rms * rms * mWindowSize;
+
+        int fftSize = Integer.highestOneBit(mBufferSize - 1) << 1;
+        switch (config.method) {
+            case DIRECT:
+                mUseFft = false;
+                break;
+            case FFT:
+                mUseFft = true;
+                break;
+            default:
+                // 两次N点复数FFT每层蝶形约10次浮点运算 直接计算每个点2次
+                long direct = 2L * mWindowSize * mMaxLag;
+                long fft = 2L * 10 * fftSize * Integer.numberOfTrailingZeros(fftSize) + 12L * fftSize;
+                mUseFft = fft < direct;
+                break;
+        }
+        if (mUseFft) {
+            if (mFft == null || mFft.size() != fftSize) {
+                mFft = new Fft(fftSize);
+            }
+            mRe = new float[fftSize];
+            mIm = new float[fftSize];
+            mCorrRe = new float[fftSize];
+            mCorrIm = new float[fftSize];
+        } else {
+            mRe = mIm = mCorrRe = mCorrIm = null;
+        }
+        mInput = new float[mBufferSize];
+        mDiff = new float[mMaxLag + 2];
+        mFill = 0;
+        mAnalysisStart = 0;
+        mFrequency = 0f;
+        mConfidence = 0f;
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        int end = offset + length - length % channels;
+        float[] input = mInput;
+        int fill = mFill;
+        for (int i = offset; i < end; i += channels) {
+            float x = buffer[i];
+            if (channels > 1) {
+                for (int c = 1; c < channels; c++) {
+                    x += buffer[i + c];
+                }
+                x /= channels;
+            }
+            input[fill] = x;
+            if (++fill == mBufferSize) {
+                analyze();
+                int keep = mBufferSize - mHopSize;
+                System.arraycopy(input, mHopSize, input, 0, keep);
+                fill = keep;
+                mAnalysisStart += mHopSize;
+            }
+        }
+        mFill = fill;
+    }
+
+    private void analyze() {
+        float[] x = mInput;
+        int w = mWindowSize;
+        int maxLag = mMaxLag + 1;
+        double energy0 = 0;
+        for (int j = 0; j < w; j++) {
+            energy0 += x[j] * x[j];
+        }
+        if (energy0 < mSilenceEnergy) {
+            report(0f, 0f);
+            return;
+        }
+        float[] d = mDiff;
+        if (mUseFft) {
+            crossCorrelate();
+            // e(t)从e(0)开始滑动更新
+            double energy = energy0;
+            for (int t = 1; t <= maxLag; t++) {
+                energy += x[t + w - 1] * x[t + w - 1] - x[t - 1] * x[t - 1];
+                d[t] = (float) (energy0 + energy - 2 * mCorrRe[t]);
+            }
+        } else {
+            for (int t = 1; t <= maxLag; t++) {
+                float sum = 0f;
+                for (int j = 0; j < w; j++) {
+                    float delta = x[j] - x[j + t];
+                    sum += delta * delta;
+                }
+                d[t] = sum;
+            }
+        }
+
+        // 累积均值归一化 d'(t) = d(t) * t / sum[1..t] d
+        d[0] = 1f;
+        double running = 0;
+        for (int t = 1; t <= maxLag; t++) {
+            running += Math.max(0f, d[t]);
+            d[t] = running > 0 ? (float) (Math.max(0f, d[t]) * t / running) : 1f;
+        }
+
+        float threshold = mConfig.threshold;
+        int best = -1;
+        for (int t = mMinLag; t < maxLag; t++) {
+            if (d[t] < threshold) {
+                while (t + 1 < maxLag && d[t + 1] < d[t]) {
+                    t++;
+                }
+                best = t;
+                break;
+            }
+        }
+        if (best < 0) {
+            // 没有低于阈值的点 取全局最小值 置信度会比较低
+            best = mMinLag;
+            for (int t = mMinLag + 1; t < maxLag; t++) {
+                if (d[t] < d[best]) {
+                    best = t;
+                }
+            }
+        }
+        float period = best;
+        float a = d[best - 1];
+        float b = d[best];
+        float c = d[best + 1];
+        float denominator = a - 2 * b + c;
+        if (denominator > 0) {
+            float shift = 0.5f * (a - c) / denominator;
+            if (shift > -1 && shift < 1) {
+                period += shift;
+            }
+        }
+        report(mSampleRate / period, Math.max(0f, Math.min(1f, 1f - b)));
+    }
+
+    /**
+     * 用一次复数FFT同时变换前W个点a和整个缓冲b 频域相乘后逆变换得到r(t) = sum a[j] * b[j+t]
+     * 缓冲长度不超过FFT长度 t不超过最长周期时不会发生循环回绕
+     */
+    private void crossCorrelate() {
+        float[] re = mRe;
+        float[] im = mIm;
+        float[] x = mInput;
+        int n = re.length;
+        for (int i = 0; i < n; i++) {
+            re[i] = i < mWindowSize ? x[i] : 0f;
+            im[i] = i < mBufferSize ? x[i] : 0f;
+        }
+        mFft.forward(re, im);
+        float[] cr = mCorrRe;
+        float[] ci = mCorrIm;
+        for (int k = 0; k < n; k++) {
+            int m = (n - k) & (n - 1);
+            float ar = 0.5f * (re[k] + re[m]);
+            float ai = 0.5f * (im[k] - im[m]);
+            float br = 0.5f * (im[k] + im[m]);
+            float bi = -0.5f * (re[k] - re[m]);
+            // conj(A) * B
+            cr[k] = ar * br + ai * bi;
+            ci[k] = ar * bi - ai * br;
+        }
+        mFft.inverse(cr, ci);
+    }
+
+    private void report(float frequency, float confidence) {
+        mFrequency = frequency;
+        mConfidence = confidence;
+        PitchListener listener = mListener;
+        if (listener != null) {
+            listener.onPitch(frequency, confidence, mAnalysisStart);
+        }
+    }
+
+    /**
+     * 最近一次的基频 静音时为0
+     */
+    public float getFrequency() {
+        return mFrequency;
+    }
+
+    public float getConfidence() {
+        return mConfidence;
+    }
+
+    /**
+     * 帧移 单位为每声道的采样点数
+     */
+    public int getHopSize() {
+        return mHopSize;
+    }
+
+    /**
+     * 每次分析用到的采样点数 也是第一次输出前的延时
+     */
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    public boolean isUsingFft() {
+        return mUseFft;
+    }
+
+    /**
+     * 基频检测的参数
+     */
+    public static class Config {
+        private float minHz = 60f;
+        private float maxHz = 1000f;
+        private float hopMs = 10f;
+        private float threshold = 0.15f;
+        private float silenceDb = -60f;
+        private Method method = Method.AUTO;
+
+        /**
+         * @param minHz 最低基频 决定积分窗长度和延时 默认60
+         * @param maxHz 最高基频 默认1000
+         */
+        public Config setRange(float minHz, float maxHz) {
+            this.minHz = minHz;
+            this.maxHz = maxHz;
+            return this;
+        }
+
+        /**
+         * @param hopMs 两次输出之间的间隔 单位毫秒 默认10 超过一次分析的长度时按分析长度计算
+         */
+        public Config setHopMs(float hopMs) {
+            this.hopMs = hopMs;
+            return this;
+        }
+
+        /**
+         * @param threshold 归一化差函数的绝对阈值 越小越不容易误报但清音越多 常用0.1~0.2 默认0.15
+         */
+        public Config setThreshold(float threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * @param silenceDb 积分窗内的均方根电平低于该值时认为是静音 单位dBFS 默认-60
+         */
+        public Config setSilenceDb(float silenceDb) {
+            this.silenceDb = silenceDb;
+            return this;
+        }
+
+        /**
+         * @param method 差函数的计算方式 默认{@link Method#AUTO}
+         */
+        public Config setMethod(Method method) {
+            this.method = method == null ? Method.AUTO : method;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.binky.audiorecorder.feature;
+
+/**
+ * 接收{@link PitchDetector}的基频估计
+ */
+
+public interface PitchListener {
+
+    /**
+     * 每个hop回调一次 在调用{@link PitchDetector#process(short[], int, int)}的线程中执行
+     *
+     * @param frequency   基频 单位Hz 静音时为0
+     * @param confidence  置信度 0~1 即1减去归一化差函数的最小值 低于1-threshold时一般认为是清音或噪声
+     * @param sampleIndex 分析窗第一个采样点的位置 单位为每声道的采样点数 从prepare之后开始计算
+     */
+    void onPitch(float frequency, float confidence, long sampleIndex);
+}
@@ -0,0 +1,492 @@
+package com.binky.audiorecorder.feature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.binky.audiorecorder.process.AudioProcessor;
+
+/**
+ * 基于Goertzel滤波器组的DTMF和单频信号检测 可以作为{@link AudioProcessor}加到处理链中 不修改录音数据
+ * <p>
+ * 每个目标频率一个Goertzel滤波器 每个采样点的开销是O(K) 不需要FFT 也不分配内存
+ * 分析块长度默认25ms 用两组错开半块的滤波器 每半块得到一次结果 40ms的按键至少完整覆盖两个连续的块
+ * <p>
+ * DTMF每块的判定: 行频和列频中最强的各一个 电平不低于下限 比同组的次强频率高出一定的dB
+ * 两者的功率差(twist)在允许范围内 并且两个频率的能量占整块能量的大部分(排除语音)
+ * 自定义频率只检查电平和能量占比
+ * <p>
+ * 连续若干块判定为同一个信号才回调开始 连续若干块不是才回调结束 开始和结束的位置在最近几块的采样点上
+ * 用5ms的滑动DFT得到目标频率的幅度包络 找到幅度越过稳定值一半的那个采样点 不受块边界的限制
+ */
+
+public class ToneDetector implements AudioProcessor {
+
+    private static final float[] DTMF_ROWS = {697f, 770f, 852f, 941f};
+    private static final float[] DTMF_COLUMNS = {1209f, 1336f, 1477f, 1633f};
+    private static final String[][] DTMF_KEYS = {
+            {"1", "2", "3", "A"},
+            {"4", "5", "6", "B"},
+            {"7", "8", "9", "C"},
+            {"*", "0", "#", "D"}};
+
+    private final Config mConfig;
+    private final List<String> mToneNames = new ArrayList<>();
+    private final List<Float> mToneFrequencies = new ArrayList<>();
+    private ToneListener mListener;
+    private int mChannelCount = 1;
+    private int mBlockSize;
+    private int mFilterCount;
+    private int mDtmfOffset;
+    private double[] mCoefficients;
+    private double[] mOmega;
+    private double[] mStepSin;
+    private double[] mWindowCos;
+    private double[] mWindowSin;
+    private double[] mSlideState = new double[8];
+    private double[][] mS1;
+    private double[][] mS2;
+    private double[] mBlockEnergy;
+    private int[] mBlockFill;
+    private float[] mPower;
+    private String[] mCustomNames;
+    private Track[] mTracks;
+    private float[] mHistory;
+    private int mHistoryMask;
+    private int mEnvelopeSize;
+    private int mDtmfRow;
+    private int mDtmfColumn;
+    private long mSampleIndex;
+    private double mMinPower;
+    private float mMaxNormalTwist;
+    private float mMaxReverseTwist;
+    private float mPeakRatio;
+
+    /**
+     * 一路信号的去抖状态 DTMF一路 每个自定义频率各一路
+     */
+    private static class Track {
+        String candidate;
+        int onCount;
+        int offCount;
+        boolean active;
+        long firstPassStart;
+        long lastPassStart;
+        long firstFailEnd;
+        long startSample;
+        /**
+         * 信号稳定时目标频率的振幅平方之和
+         */
+        double tonePower;
+        int filterA;
+        int filterB;
+    }
+
+    public ToneDetector(Config config) {
+        this.mConfig = config;
+    }
+
+    public ToneDetector() {
+        this(new Config());
+    }
+
+    public ToneDetector setListener(ToneListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    /**
+     * 添加一个需要检测的单频信号 下一次prepare后生效
+     *
+     * @param name      回调中的名字
+     * @param frequency 频率 单位Hz
+     */
+    public synchronized ToneDetector addTone(String name, float frequency) {
+        mToneNames.add(name);
+        mToneFrequencies.add(frequency);
+        return this;
+    }
+
+    @Override
+    public synchronized void prepare(int sampleRate, int channelCount) {
+        Config config = mConfig;
+        mChannelCount = Math.max(1, channelCount);
+        // 两组滤波器错开半块 块长度取偶数
+        mBlockSize = Math.max(2, Math.round(sampleRate * config.blockMs / 1000f) & ~1);
+        int custom = mToneNames.size();
+        mDtmfOffset = custom;
+        mFilterCount = custom + (config.dtmf ? 8 : 0);
+        mCoefficients = new double[mFilterCount];
+        mOmega = new double[mFilterCount];
+        mCustomNames = new String[custom];
+        for (int i = 0; i < custom; i++) {
+            mCustomNames[i] = mToneNames.get(i);
+            mOmega[i] = 2 * Math.PI * mToneFrequencies.get(i) / sampleRate;
+        }
+        if (config.dtmf) {
+            for (int i = 0; i < 4; i++) {
+                mOmega[custom + i] = 2 * Math.PI * DTMF_ROWS[i] / sampleRate;
+                mOmega[custom + 4 + i] = 2 * Math.PI * DTMF_COLUMNS[i] / sampleRate;
+            }
+        }
+        // 5ms的主瓣宽度可以分开DTMF行频和列频中最近的941Hz和1209Hz
+        mEnvelopeSize = Math.max(4, sampleRate / 200);
+        mStepSin = new double[mFilterCount];
+        mWindowCos = new double[mFilterCount];
+        mWindowSin = new double[mFilterCount];
+        for (int k = 0; k < mFilterCount; k++) {
+            mCoefficients[k] = 2 * Math.cos(mOmega[k]);
+            mStepSin[k] = Math.sin(mOmega[k]);
+            mWindowCos[k] = Math.cos(mOmega[k] * mEnvelopeSize);
+            mWindowSin[k] = Math.sin(mOmega[k] * mEnvelopeSize);
+        }
+        mS1 = new double[2][mFilterCount];
+        mS2 = new double[2][mFilterCount];
+        mBlockEnergy = new double[2];
+        // 第二组晚半块开始
+        mBlockFill = new int[]{0, -mBlockSize / 2};
+        mPower = new float[mFilterCount];
+        mTracks = new Track[custom + 1];
+        for (int i = 0; i < mTracks.length; i++) {
+            mTracks[i] = new Track();
+        }
+        int history = mBlockSize * 3 + (Math.max(config.minOnBlocks, config.minOffBlocks) + 1) * mBlockSize / 2
+                + 2 * mEnvelopeSize;
+        mHistory = new float[Integer.highestOneBit(history - 1) << 1];
+        mHistoryMask = mHistory.length - 1;
+        mSampleIndex = 0;
+
+        // 振幅为A的正弦在N点Goertzel上的功率约为(A*N/2)^2
+        double amplitude = Math.pow(10, config.minLevelDb / 20.0) * 32768;
+        mMinPower = amplitude * amplitude * mBlockSize * mBlockSize / 4;
+        mMaxNormalTwist = (float) Math.pow(10, config.maxNormalTwistDb / 10.0);
+        mMaxReverseTwist = (float) Math.pow(10, config.maxReverseTwistDb / 10.0);
+        mPeakRatio = (float) Math.pow(10, config.peakRatioDb / 10.0);
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        int end = offset + length - length % channels;
+        int filters = mFilterCount;
+        double[] coefficients = mCoefficients;
+        for (int i = offset; i < end; i += channels) {
+            float x = buffer[i];
+            if (channels > 1) {
+                for (int c = 1; c < channels; c++) {
+                    x += buffer[i + c];
+                }
+                x /= channels;
+            }
+            mHistory[(int) mSampleIndex & mHistoryMask] = x;
+            mSampleIndex++;
+            for (int phase = 0; phase < 2; phase++) {
+                if (mBlockFill[phase] < 0) {
+                    mBlockFill[phase]++;
+                    continue;
+                }
+                double[] s1 = mS1[phase];
+                double[] s2 = mS2[phase];
+                for (int k = 0; k < filters; k++) {
+                    double s = x + coefficients[k] * s1[k] - s2[k];
+                    s2[k] = s1[k];
+                    s1[k] = s;
+                }
+                mBlockEnergy[phase] += x * x;
+                if (++mBlockFill[phase] == mBlockSize) {
+                    evaluate(phase);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一块结束 计算每个频率的功率并更新每一路的状态
+     */
+    private void evaluate(int phase) {
+        double[] s1 = mS1[phase];
+        double[] s2 = mS2[phase];
+        float[] power = mPower;
+        for (int k = 0; k < mFilterCount; k++) {
+            power[k] = (float) (s1[k] * s1[k] + s2[k] * s2[k] - mCoefficients[k] * s1[k] * s2[k]);
+            s1[k] = 0;
+            s2[k] = 0;
+        }
+        double energy = mBlockEnergy[phase];
+        mBlockEnergy[phase] = 0;
+        mBlockFill[phase] = 0;
+        long end = mSampleIndex;
+        long start = end - mBlockSize;
+        // 纯正弦的Goertzel功率等于N*能量/2 相除得到这个频率占整块能量的比例
+        double scale = energy > 0 ? 2.0 / (mBlockSize * energy) : 0;
+        // 功率换算成振幅的平方
+        double amplitude = 4.0 / ((double) mBlockSize * mBlockSize);
+
+        for (int i = 0; i < mCustomNames.length; i++) {
+            boolean pass = power[i] >= mMinPower && power[i] * scale >= mConfig.minToneRatio;
+            update(mTracks[i], pass ? mCustomNames[i] : null, i, -1, power[i] * amplitude, start, end);
+        }
+        if (mConfig.dtmf) {
+            String key = dtmfKey(power, scale);
+            update(mTracks[mCustomNames.length], key, mDtmfRow, mDtmfColumn,
+                    key == null ? 0 : (power[mDtmfRow] + power[mDtmfColumn]) * amplitude, start, end);
+        }
+    }
+
+    private String dtmfKey(float[] power, double scale) {
+        int base = mDtmfOffset;
+        int row = strongest(power, base);
+        int column = strongest(power, base + 4);
+        float rowPower = power[base + row];
+        float columnPower = power[base + 4 + column];
+        if (rowPower < mMinPower || columnPower < mMinPower) {
+            return null;
+        }
+        // 低频组比高频组强为正向twist 反之为反向twist
+        if (rowPower > columnPower * mMaxNormalTwist || columnPower > rowPower * mMaxReverseTwist) {
+            return null;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (i != row && power[base + i] * mPeakRatio > rowPower) {
+                return null;
+            }
+            if (i != column && power[base + 4 + i] * mPeakRatio > columnPower) {
+                return null;
+            }
+        }
+        if ((rowPower + columnPower) * scale < mConfig.minToneRatio) {
+            return null;
+        }
+        mDtmfRow = base + row;
+        mDtmfColumn = base + 4 + column;
+        return DTMF_KEYS[row][column];
+    }
+
+    private static int strongest(float[] power, int from) {
+        int best = 0;
+        for (int i = 1; i < 4; i++) {
+            if (power[from + i] > power[from + best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private void update(Track track, String tone, int filterA, int filterB, double tonePower, long start, long end) {
+        Config config = mConfig;
+        if (track.active) {
+            if (track.candidate.equals(tone)) {
+                track.offCount = 0;
+                track.lastPassStart = start;
+                track.tonePower = Math.max(track.tonePower, tonePower);
+                return;
+            }
+            if (++track.offCount == 1) {
+                track.firstFailEnd = end;
+            }
+            if (track.offCount < config.minOffBlocks) {
+                return;
+            }
+            track.active = false;
+            long endSample = findEdge(track, track.lastPassStart, track.firstFailEnd, false);
+            if (mListener != null) {
+                mListener.onToneEnd(track.candidate, track.startSample, Math.max(track.startSample, endSample));
+            }
+            track.candidate = null;
+            track.onCount = 0;
+        }
+        if (tone == null) {
+            track.candidate = null;
+            track.onCount = 0;
+            return;
+        }
+        if (tone.equals(track.candidate)) {
+            track.onCount++;
+            track.tonePower = Math.max(track.tonePower, tonePower);
+        } else {
+            track.candidate = tone;
+            track.onCount = 1;
+            track.firstPassStart = start;
+            track.tonePower = tonePower;
+            track.filterA = filterA;
+            track.filterB = filterB;
+        }
+        if (track.onCount >= config.minOnBlocks) {
+            track.active = true;
+            track.offCount = 0;
+            track.lastPassStart = start;
+            // 前一块可能因为混着其他声音没有通过 信号最早可以从前一整块开始
+            track.startSample = findEdge(track, track.firstPassStart - mBlockSize, track.firstPassStart + mBlockSize, true);
+            if (mListener != null) {
+                mListener.onToneStart(tone, track.startSample);
+            }
+        }
+    }
+
+    /**
+     * 在历史采样点中找目标频率的幅度包络越过稳定值一半的位置 窗口以i为中心 [i-half, i-half+size)
+     *
+     * @param from   搜索范围的开始
+     * @param to     搜索范围的结束
+     * @param rising true找第一个越过的点 作为开始位置 false找最后一个越过的点 作为结束位置
+     */
+    private long findEdge(Track track, long from, long to, boolean rising) {
+        int size = mEnvelopeSize;
+        int half = size / 2;
+        long oldest = Math.max(0, mSampleIndex - mHistory.length) + half;
+        long newest = mSampleIndex - (size - half);
+        long lo = Math.max(from, oldest);
+        long hi = Math.min(to, newest);
+        long edge = rising ? from : to;
+        if (lo >= hi) {
+            return edge;
+        }
+        // 幅度和窗口重叠的长度成正比 幅度降到一半时窗口中心正好在边界上
+        double threshold = 0.25 * track.tonePower * size * size / 4;
+        double[] state = mSlideState;
+        if (!startSlidingDft(state, 0, track.filterA, lo - half)) {
+            return edge;
+        }
+        boolean second = startSlidingDft(state, 4, track.filterB, lo - half);
+        for (long i = lo; i < hi; i++) {
+            double power = state[0] * state[0] + state[1] * state[1];
+            if (second) {
+                power += state[4] * state[4] + state[5] * state[5];
+            }
+            if (power >= threshold) {
+                if (rising) {
+                    return i;
+                }
+                edge = i;
+            }
+            slide(state, 0, track.filterA, i - half);
+            if (second) {
+                slide(state, 4, track.filterB, i - half);
+            }
+        }
+        return edge;
+    }
+
+    /**
+     * 计算从first开始一个窗口的DFT
+     *
+     * @param state 从at开始依次是DFT的实部、虚部 下一个移出点的相位的cos、sin
+     */
+    private boolean startSlidingDft(double[] state, int at, int filter, long first) {
+        if (filter < 0) {
+            return false;
+        }
+        double omega = mOmega[filter];
+        double re = 0;
+        double im = 0;
+        for (int j = 0; j < mEnvelopeSize; j++) {
+            double x = mHistory[(int) (first + j) & mHistoryMask];
+            re += x * Math.cos(omega * j);
+            im -= x * Math.sin(omega * j);
+        }
+        state[at] = re;
+        state[at + 1] = im;
+        state[at + 2] = 1;
+        state[at + 3] = 0;
+        return true;
+    }
+
+    /**
+     * 窗口后移一个点 移出out 移入out+size 相位以窗口第一次的开始为参考 用旋转因子递推 不需要每个点算三角函数
+     */
+    private void slide(double[] state, int at, int filter, long out) {
+        double c = state[at + 2];
+        double s = state[at + 3];
+        // 移入点的相位比移出点多omega*size
+        double windowCos = mWindowCos[filter];
+        double windowSin = mWindowSin[filter];
+        double inCos = c * windowCos - s * windowSin;
+        double inSin = s * windowCos + c * windowSin;
+        double xOut = mHistory[(int) out & mHistoryMask];
+        double xIn = mHistory[(int) (out + mEnvelopeSize) & mHistoryMask];
+        state[at] += xIn * inCos - xOut * c;
+        state[at + 1] -= xIn * inSin - xOut * s;
+        double stepCos = mCoefficients[filter] / 2;
+        double stepSin = mStepSin[filter];
+        state[at + 2] = c * stepCos - s * stepSin;
+        state[at + 3] = s * stepCos + c * stepSin;
+    }
+
+    /**
+     * 检测的参数
+     */
+    public static class Config {
+        private boolean dtmf = true;
+        private float blockMs = 25f;
+        private int minOnBlocks = 2;
+        private int minOffBlocks = 2;
+        private float minLevelDb = -36f;
+        private float maxNormalTwistDb = 8f;
+        private float maxReverseTwistDb = 4f;
+        private float peakRatioDb = 6f;
+        private float minToneRatio = 0.6f;
+
+        /**
+         * @param enable 是否检测DTMF 默认检测
+         */
+        public Config setDtmf(boolean enable) {
+            this.dtmf = enable;
+            return this;
+        }
+
+        /**
+         * @param blockMs 分析块长度 单位毫秒 默认25 越长频率分辨率越高 DTMF相邻频率间隔约70Hz 不要短于20ms
+         */
+        public Config setBlockMs(float blockMs) {
+            this.blockMs = blockMs;
+            return this;
+        }
+
+        /**
+         * 去抖 结果每半块更新一次
+         *
+         * @param minOnBlocks  连续多少次检测到才认为开始 默认2
+         * @param minOffBlocks 连续多少次没有检测到才认为结束 默认2
+         */
+        public Config setDebounce(int minOnBlocks, int minOffBlocks) {
+            this.minOnBlocks = Math.max(1, minOnBlocks);
+            this.minOffBlocks = Math.max(1, minOffBlocks);
+            return this;
+        }
+
+        /**
+         * @param minLevelDb 每个频率的最低电平 单位dBFS 默认-36
+         */
+        public Config setMinLevelDb(float minLevelDb) {
+            this.minLevelDb = minLevelDb;
+            return this;
+        }
+
+        /**
+         * DTMF两个频率的功率差
+         *
+         * @param normalDb  低频组比高频组强的上限 默认8
+         * @param reverseDb 高频组比低频组强的上限 默认4
+         */
+        public Config setTwist(float normalDb, float reverseDb) {
+            this.maxNormalTwistDb = normalDb;
+            this.maxReverseTwistDb = reverseDb;
+            return this;
+        }
+
+        /**
+         * @param peakRatioDb DTMF每组最强的频率至少比同组其他频率高出的dB 默认6
+         */
+        public Config setPeakRatioDb(float peakRatioDb) {
+            this.peakRatioDb = peakRatioDb;
+            return this;
+        }
+
+        /**
+         * @param ratio 目标频率的能量占整块能量的最低比例 DTMF为两个频率之和 默认0.6
+         */
+        public Config setMinToneRatio(float ratio) {
+            this.minToneRatio = ratio;
+            return this;
+        }
+    }
+}
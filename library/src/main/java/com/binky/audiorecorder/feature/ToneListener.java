@@ -0,0 +1,28 @@
+package com.binky.audiorecorder.feature;
+
+/**
+ * 接收{@link ToneDetector}检测到的DTMF按键和单频信号
+ * <p>
+ * 位置都是每声道的采样点序号 从prepare之后开始计算 回调在调用process的线程中执行
+ * 开始事件在信号持续了去抖需要的时长后才回调 所以比startSample晚 结束事件同理
+ */
+
+public interface ToneListener {
+
+    /**
+     * 检测到信号开始
+     *
+     * @param tone        DTMF按键("0"~"9" "*" "#" "A"~"D")或者{@link ToneDetector#addTone(String, float)}时指定的名字
+     * @param startSample 信号开始的位置
+     */
+    void onToneStart(String tone, long startSample);
+
+    /**
+     * 信号结束
+     *
+     * @param tone        同{@link #onToneStart(String, long)}
+     * @param startSample 信号开始的位置
+     * @param endSample   信号结束的位置 不包含
+     */
+    void onToneEnd(String tone, long startSample, long endSample);
+}
@@ -1,13 +1,22 @@
 package com.binky.audiorecorder.file;
 
 import android.media.AudioFormat;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.text.TextUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
 import com.binky.audiorecorder.AudioRecorder;
+import com.binky.audiorecorder.record.ChannelMask;
+import com.binky.audiorecorder.trace.Trace;
 import com.binky.audiorecorder.utils.Log;
 
 
@@ -24,6 +33,54 @@ public class AudioFileHelper {
     private File mTargetFile;
     private AudioRecorder.RecordConfig mRecordConfig;
     private boolean mIsWav = true;
+    /**
+     * 录音结束后峰值归一化的目标 单位dBFS NaN表示不做归一化
+     */
+    private float mNormalizePeakDb = Float.NaN;
+    private int mPeak;
+    /**
+     * 16位数据的平方和 录音结束后计算均方根电平写入目录
+     */
+    private double mSumSquares;
+    private long mDataOffset;
+    /**
+     * 收尾时写入文件的标记和INFO
+     */
+    private WavMetadata mMetadata;
+    /**
+     * 保存目录的存储预算 为null时只检查磁盘剩余空间 不删除文件
+     */
+    private StorageBudget mStorageBudget;
+    /**
+     * 本次录音使用的存储预算 在open中确定 写入过程中的空间检查都用它
+     */
+    private StorageBudget mActiveBudget;
+    /**
+     * 保存成功的录音记录到这里 为null时不记录
+     */
+    private RecordingCatalog mCatalog;
+    /**
+     * 开始录音的时间 写入目录
+     */
+    private long mStartMillis;
+    /**
+     * 最长录音时间 用来预估文件大小 0表示未知
+     */
+    private long mMaxDurationMillis;
+    private int mBlockAlign = 2;
+    private int mByteRate;
+    /**
+     * 本次录音的数据区最多能写入的字节数
+     */
+    private long mWriteLimit;
+    /**
+     * 已经预分配的数据区字节数
+     */
+    private long mPreallocated;
+    private long mWritten;
+    private long mNextSpaceCheck;
+    private boolean mLimitReached;
+    private boolean mTrackLevel;
 
     public AudioFileHelper(AudioFileListener listener) {
         this.mAudioFileListener = listener;
@@ -41,6 +98,59 @@ public class AudioFileHelper {
         this.mIsWav = wav;
     }
 
+    /**
+     * 录音结束后把整个文件的峰值归一化到peakDb 通过分块的定位读写原地修改文件 不会把整个录音读进内存
+     *
+     * @param peakDb 目标峰值 单位dBFS 例如 -1 传入Float.NaN关闭
+     */
+    public void setNormalizePeak(float peakDb) {
+        this.mNormalizePeakDb = peakDb;
+    }
+
+    /**
+     * 设置本次录音的标记和INFO 收尾时追加到WAV文件的数据区之后 只对wav格式有效
+     */
+    public void setMetadata(WavMetadata metadata) {
+        this.mMetadata = metadata;
+    }
+
+    /**
+     * 设置保存目录的存储预算 开始录音时超出预算会删除最旧的录音 传null只检查磁盘剩余空间
+     */
+    public void setStorageBudget(StorageBudget budget) {
+        this.mStorageBudget = budget;
+    }
+
+    /**
+     * 设置录音目录 保存成功后记录路径、格式、时长、响度和标记 存储预算删除的录音同时从目录中删除
+     */
+    public void setCatalog(RecordingCatalog catalog) {
+        this.mCatalog = catalog;
+    }
+
+    /**
+     * 设置最长录音时间 开始时按它预估文件大小 检查空间并预分配
+     *
+     * @param maxDurationMillis 最长录音时间 单位毫秒 小于等于0表示未知
+     */
+    public void setMaxDuration(long maxDurationMillis) {
+        this.mMaxDurationMillis = Math.max(0, maxDurationMillis);
+    }
+
+    /**
+     * 已经写入的单声道采样点数 也就是下一个采样点在文件数据区中的位置
+     */
+    public long getWrittenFrames() {
+        return mWritten / mBlockAlign;
+    }
+
+    /**
+     * 本次录音还能写入的字节数
+     */
+    public long getRemainingBytes() {
+        return Math.max(0, mWriteLimit - mWritten);
+    }
+
     public void start() {
         try {
             open(mSavePath);
@@ -57,7 +167,32 @@ public class AudioFileHelper {
             return;
         }
         try {
-            write(mRandomAccessFile, data, offset, size);
+            if (mLimitReached) {
+                return;
+            }
+            if (mWritten + size > mPreallocated && mWritten >= mNextSpaceCheck) {
+                updateWriteLimit();
+            }
+            // 在写入失败之前停下 只写入还能容纳的整帧
+            if (mWritten + size > mWriteLimit) {
+                size = (int) ((mWriteLimit - mWritten) / mBlockAlign * mBlockAlign);
+                mLimitReached = true;
+            }
+            if (size > 0) {
+                if (mTrackLevel) {
+                    trackPeak(data, offset, size);
+                }
+                Trace.event(Trace.FILE_WRITE_BEGIN, size);
+                write(mRandomAccessFile, data, offset, size);
+                mWritten += size;
+                Trace.event(Trace.FILE_WRITE_END, mWritten);
+            }
+            if (mLimitReached) {
+                Log.e(TAG, "storage limit reached after " + mWritten + " bytes");
+                if (mAudioFileListener != null) {
+                    mAudioFileListener.onStorageLimit(mWritten);
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
             if (mAudioFileListener!= null) {
@@ -109,54 +244,81 @@ public class AudioFileHelper {
             bSamples = 8;
         }
 
-        if (mRecordConfig.getChannelConfig() == AudioFormat.CHANNEL_IN_MONO) {
-            nChannels = 1;
-        } else {
-            nChannels = 2;
-        }
+        nChannels = (short) mRecordConfig.getChannelCount();
         sRate = mRecordConfig.getSampleRate();
+        mBlockAlign = nChannels * bSamples / 8;
+        mByteRate = sRate * mBlockAlign;
+        long headerSize = mIsWav ? WavHeader.headerSize(nChannels, bSamples) : 0;
+        long expected = mMaxDurationMillis > 0 ? mMaxDurationMillis * mByteRate / 1000 : 0;
+        StorageBudget budget = mStorageBudget != null ? mStorageBudget : new StorageBudget(mTargetFile.getParentFile(), 0);
+        mActiveBudget = budget;
+        if (mStorageBudget != null) {
+            uncatalog(mStorageBudget.ensureWritable(headerSize + expected, null));
+        }
+        long writable = budget.getWritableBytes(null) - headerSize;
+        if (writable < mBlockAlign) {
+            throw new IOException("no storage space left, " + budget);
+        }
+        mWriteLimit = writable / mBlockAlign * mBlockAlign;
+        if (expected > 0) {
+            mWriteLimit = Math.min(mWriteLimit, expected);
+        }
+        mWritten = 0;
+        mLimitReached = false;
+        mNextSpaceCheck = mByteRate;
+
         mRandomAccessFile = new RandomAccessFile(mTargetFile, "rw");
         mRandomAccessFile.setLength(0);
+        mPeak = 0;
+        mSumSquares = 0;
+        mStartMillis = System.currentTimeMillis();
+        mTrackLevel = bSamples == 16 && (mCatalog != null || !Float.isNaN(mNormalizePeakDb));
         if (mIsWav) {
-            // Set file length to
-            // 0, to prevent unexpected behavior in case the file already existed
-            // 16K、16bit、单声道
-            /* RIFF header */
-            // riff id
-            mRandomAccessFile.writeBytes("RIFF");
-            // riff chunk size *PLACEHOLDER*
-            mRandomAccessFile.writeInt(0);
-            // wave type
-            mRandomAccessFile.writeBytes("WAVE");
-
-            /* fmt chunk */
-            // fmt id
-            mRandomAccessFile.writeBytes("fmt ");
-            // fmt chunk size
-            mRandomAccessFile.writeInt(Integer.reverseBytes(16));
-            // AudioFormat,1 for PCM
-            mRandomAccessFile.writeShort(Short.reverseBytes((short) 1));
-            // Number of channels, 1 for mono, 2 for stereo
-            mRandomAccessFile.writeShort(Short.reverseBytes(nChannels));
-            // Sample rate
-            mRandomAccessFile.writeInt(Integer.reverseBytes(sRate));
-            // Byte rate,SampleRate*NumberOfChannels*BitsPerSample/8
-            mRandomAccessFile.writeInt(Integer.reverseBytes(sRate * bSamples * nChannels / 8));
-            // Block align, NumberOfChannels*BitsPerSample/8
-            mRandomAccessFile.writeShort(Short.reverseBytes((short) (nChannels * bSamples / 8)));
-            // Bits per sample
-            mRandomAccessFile.writeShort(Short.reverseBytes(bSamples));
-
-            /* data chunk */
-            // data id
-            mRandomAccessFile.writeBytes("data");
-            // data chunk size *PLACEHOLDER*
-            mRandomAccessFile.writeInt(0);
+            WavHeader.write(mRandomAccessFile, sRate, nChannels, bSamples,
+                    ChannelMask.toWavChannelMask(mRecordConfig.getChannelConfig()));
+        }
+        mDataOffset = mRandomAccessFile.getFilePointer();
+        mPreallocated = expected > 0 ? preallocate(mRandomAccessFile, mDataOffset, mWriteLimit) : 0;
+        if (mPreallocated < mWriteLimit) {
+            Log.d(TAG, "write limit " + mWriteLimit + " bytes, preallocated " + mPreallocated);
         }
         Log.d(TAG, "saved file path: " + path);
 
     }
 
+    /**
+     * 一次性给数据区分配空间 文件在磁盘上尽量连续 录音过程中不会因为空间不足写入失败
+     * setLength在多数文件系统上只会生成稀疏文件 所以只在API 21以上用posix_fallocate
+     *
+     * @return 实际预分配的字节数
+     */
+    private static long preallocate(RandomAccessFile file, long offset, long size) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || size <= 0) {
+            return 0;
+        }
+        try {
+            Os.posix_fallocate(file.getFD(), offset, size);
+            return size;
+        } catch (ErrnoException e) {
+            Log.e(TAG, "posix_fallocate failed " + e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * 没有预分配的部分每写入一秒数据检查一次磁盘剩余空间 其他应用也可能在占用空间
+     */
+    private void updateWriteLimit() {
+        mNextSpaceCheck = mWritten + mByteRate;
+        long usable = mTargetFile.getParentFile().getUsableSpace() - mActiveBudget.getReserveBytes();
+        long limit = Math.max(mPreallocated, mWritten + Math.max(0, usable) / mBlockAlign * mBlockAlign);
+        if (limit < mWriteLimit) {
+            mWriteLimit = limit;
+        }
+    }
+
     private void write(RandomAccessFile file, byte[] data, int offset, int size) throws IOException {
         file.write(data, offset, size);
     }
@@ -169,14 +331,21 @@ public class AudioFileHelper {
                 }
                 return;
             }
+            // 去掉预分配但没有用到的部分
+            mRandomAccessFile.setLength(mDataOffset + mWritten);
+            float gain = normalize();
             if (mIsWav) {
-                mRandomAccessFile.seek(4); // riff chunk size
-                mRandomAccessFile.writeInt(Integer.reverseBytes((int) (mRandomAccessFile.length() - 8)));
-                mRandomAccessFile.seek(40); // data chunk size
-                mRandomAccessFile.writeInt(Integer.reverseBytes((int) (mRandomAccessFile.length() - 44)));
+                if (mMetadata != null) {
+                    mMetadata.writeTo(mRandomAccessFile);
+                }
+                WavHeader.finish(mRandomAccessFile, mWritten);
+            }
+            if (mStorageBudget != null) {
+                uncatalog(mStorageBudget.ensureWritable(0, mTargetFile));
             }
 
             Log.d(TAG, "file size: " + mRandomAccessFile.length());
+            catalog(gain);
             if (mAudioFileListener!= null) {
                 mAudioFileListener.onSuccess(mSavePath);
             }
@@ -190,6 +359,114 @@ public class AudioFileHelper {
         }
     }
 
+    /**
+     * 把保存好的录音写入目录 目录写入失败不影响录音本身
+     *
+     * @param gain 归一化时的增益 用来修正录音过程中统计的电平
+     */
+    private void catalog(float gain) {
+        if (mCatalog == null) {
+            return;
+        }
+        long frames = mWritten / mBlockAlign;
+        float peakDb = Float.NaN;
+        float rmsDb = Float.NaN;
+        if (mTrackLevel) {
+            peakDb = toDb(Math.min(Short.MAX_VALUE, mPeak * gain));
+            long samples = mWritten / 2;
+            rmsDb = samples > 0 ? toDb(Math.sqrt(mSumSquares / samples) * gain) : Float.NaN;
+        }
+        List<WavMarker> markers = mIsWav && mMetadata != null ? mMetadata.getMarkers() : null;
+        int channels = mRecordConfig.getChannelCount();
+        try {
+            mCatalog.put(new RecordingEntry(mTargetFile.getPath(), mStartMillis, mIsWav, frames,
+                    mRecordConfig.getSampleRate(), channels, mBlockAlign * 8 / channels,
+                    mRandomAccessFile.length(), peakDb, rmsDb, markers));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void uncatalog(List<File> evicted) {
+        if (mCatalog == null) {
+            return;
+        }
+        for (File file : evicted) {
+            try {
+                mCatalog.remove(file.getPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static float toDb(double amplitude) {
+        return amplitude > 0 ? (float) (20 * Math.log10(amplitude / 32768.0)) : Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * 记录16位小端PCM数据的最大绝对值和平方和
+     */
+    private void trackPeak(byte[] data, int offset, int size) {
+        int peak = mPeak;
+        double sumSquares = 0;
+        int end = offset + size - 1;
+        for (int i = offset; i < end; i += 2) {
+            int sample = (short) ((data[i] & 0xFF) | (data[i + 1] << 8));
+            sumSquares += sample * sample;
+            if (sample < 0) {
+                sample = -sample;
+            }
+            if (sample > peak) {
+                peak = sample;
+            }
+        }
+        mPeak = peak;
+        mSumSquares += sumSquares;
+    }
+
+    /**
+     * 第二遍处理 按记录的峰值计算增益 分块定位读写数据区
+     *
+     * @return 实际使用的增益 没有处理时返回1
+     */
+    private float normalize() throws IOException {
+        if (Float.isNaN(mNormalizePeakDb) || mPeak <= 0
+                || mRecordConfig.getAudioFormat() != AudioFormat.ENCODING_PCM_16BIT) {
+            return 1f;
+        }
+        float gain = (float) (Math.pow(10, mNormalizePeakDb / 20.0) * Short.MAX_VALUE / mPeak);
+        if (Math.abs(gain - 1f) < 0.01f) {
+            return 1f;
+        }
+        long startNanos = System.nanoTime();
+        FileChannel channel = mRandomAccessFile.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        long position = mDataOffset;
+        long end = channel.size();
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            read &= ~1;
+            for (int i = 0; i < read; i += 2) {
+                float sample = buffer.getShort(i) * gain;
+                buffer.putShort(i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample)));
+            }
+            buffer.position(0);
+            buffer.limit(read);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+            position += read;
+        }
+        Log.d(TAG, "normalize gain " + gain + " cost " + (System.nanoTime() - startNanos) / 1000 + "us");
+        return gain;
+    }
+
     public void cancel() {
         if (null == mRandomAccessFile || null == mTargetFile) {
             return;
@@ -11,6 +11,12 @@ public interface AudioFileListener {
      */
     void onFailure(String reason);
 
+    /**
+     * 存储空间或预算用完 之后的数据不再写入 文件仍然可以正常收尾
+     * @param writtenBytes 已经写入的音频数据字节数
+     */
+    void onStorageLimit(long writtenBytes);
+
     /**
      * 文件保存成功
      * @param savePath 保存文件的路径
@@ -0,0 +1,148 @@
+package com.binky.audiorecorder.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 按原始时间线读取跳过静音存储的WAV文件
+ * <p>
+ * 有声段从数据区读取 静音段在读取时直接填0 不占用存储 也可以通过{@link #getTimeline()}找到有声段直接定位
+ * 没有时间线的普通WAV文件按整段有声处理
+ */
+
+public class DtxReader implements Closeable {
+
+    private final WavReader mReader;
+    private final DtxTimeline mTimeline;
+    private final int mChannelCount;
+    private final long mLoadNanos;
+    private long mLookupNanos;
+    private long mPosition;
+    private int mRun;
+
+    public DtxReader(File file) throws IOException {
+        long startNanos = System.nanoTime();
+        DtxTimeline timeline = DtxTimeline.read(file);
+        mLoadNanos = System.nanoTime() - startNanos;
+        mReader = new WavReader(file);
+        if (timeline == null) {
+            timeline = new DtxTimeline();
+            timeline.append(false, mReader.getFrameCount());
+        }
+        mTimeline = timeline;
+        mChannelCount = mReader.getChannelCount();
+        seek(0);
+    }
+
+    public DtxTimeline getTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * 读取文件中时间线索引的耗时
+     */
+    public long getLoadNanos() {
+        return mLoadNanos;
+    }
+
+    /**
+     * 最近一次定位在时间线索引中查找的耗时 不包括数据区的定位
+     */
+    public long getLookupNanos() {
+        return mLookupNanos;
+    }
+
+    public int getSampleRate() {
+        return mReader.getSampleRate();
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    /**
+     * 原始录音的长度 以每声道的采样点计
+     */
+    public long getFrameCount() {
+        return mTimeline.getTimelineFrames();
+    }
+
+    public long getDurationMillis() {
+        return getFrameCount() * 1000 / mReader.getSampleRate();
+    }
+
+    /**
+     * 当前在原始时间线上的位置
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * 跳到原始时间线上的位置 以每声道的采样点计
+     */
+    public void seek(long frame) {
+        long startNanos = System.nanoTime();
+        mPosition = Math.max(0, Math.min(frame, mTimeline.getTimelineFrames()));
+        mRun = Math.max(0, mTimeline.findRun(mPosition));
+        long stored = mTimeline.toStoredFrame(mPosition);
+        mLookupNanos = System.nanoTime() - startNanos;
+        mReader.seek(stored);
+    }
+
+    /**
+     * 跳到frame之后(包含)的第一段声音的开始 当前就在有声段中时不移动
+     *
+     * @return 新的位置 后面没有声音时返回-1 位置不变
+     */
+    public long seekToSpeech(long frame) {
+        int run = mTimeline.nextSpeechRun(frame);
+        if (run < 0) {
+            return -1;
+        }
+        seek(Math.max(frame, mTimeline.getRunStart(run)));
+        return mPosition;
+    }
+
+    /**
+     * 按原始时间线读取交错排列的采样点 静音段填0
+     *
+     * @return 读到的采样点数 包括所有声道 结束时返回-1
+     */
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        DtxTimeline timeline = mTimeline;
+        if (mPosition >= timeline.getTimelineFrames()) {
+            return -1;
+        }
+        int channels = mChannelCount;
+        int total = 0;
+        length -= length % channels;
+        while (total < length && mPosition < timeline.getTimelineFrames()) {
+            long runEnd = timeline.getRunStart(mRun) + timeline.getRunLength(mRun);
+            if (mPosition >= runEnd) {
+                mRun++;
+                continue;
+            }
+            int count = (int) Math.min((length - total) / channels, runEnd - mPosition) * channels;
+            if (timeline.isSilent(mRun)) {
+                Arrays.fill(buffer, offset + total, offset + total + count, (short) 0);
+            } else {
+                int read = mReader.read(buffer, offset + total, count);
+                if (read < count) {
+                    // 数据区比时间线短 文件不完整
+                    throw new IOException("dtx data truncated at frame " + mPosition);
+                }
+            }
+            total += count;
+            mPosition += count / channels;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
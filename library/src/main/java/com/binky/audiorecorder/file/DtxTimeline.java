@@ -0,0 +1,268 @@
+package com.binky.audiorecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 跳过静音存储(DTX)的时间线索引
+ * <p>
+ * 原始录音按时间顺序分成交替的有声段和静音段 每段只记录长度 有声段的数据依次保存在WAV的数据区 静音段不保存
+ * 文件收尾时在数据区之后追加一个"dtx "chunk 每段一个int 正数为有声段 负数为静音段 单位是每声道的采样点
+ * 普通播放器会跳过这个chunk 只播放拼接后的有声部分
+ * <p>
+ * 内存中同时保存每段在时间线和数据区中的起点 按时间查找是一次二分查找
+ * 不是线程安全的 录音时只在写入线程中追加
+ */
+
+public class DtxTimeline {
+
+    private static final int ID_RIFF = 0x46464952;
+    private static final int ID_WAVE = 0x45564157;
+    private static final int ID_DATA = 0x61746164;
+    private static final int ID_DTX = 0x20787464;
+    private static final int VERSION = 1;
+
+    private int mCount;
+    private int[] mLengths = new int[64];
+    private long[] mTimelineStarts = new long[64];
+    private long[] mStoredStarts = new long[64];
+    private long mTimelineFrames;
+    private long mStoredFrames;
+
+    /**
+     * 在时间线末尾追加一段 和上一段同类时合并
+     *
+     * @param silent 是否是静音段
+     * @param frames 长度 以每声道的采样点计
+     */
+    public void append(boolean silent, long frames) {
+        while (frames > 0) {
+            if (mCount > 0 && isSilent(mCount - 1) == silent && getRunLength(mCount - 1) < Integer.MAX_VALUE) {
+                int last = mCount - 1;
+                int add = (int) Math.min(frames, Integer.MAX_VALUE - getRunLength(last));
+                mLengths[last] += silent ? -add : add;
+                advance(silent, add);
+                frames -= add;
+                continue;
+            }
+            int length = (int) Math.min(frames, Integer.MAX_VALUE);
+            if (mCount == mLengths.length) {
+                int capacity = mCount * 2;
+                mLengths = Arrays.copyOf(mLengths, capacity);
+                mTimelineStarts = Arrays.copyOf(mTimelineStarts, capacity);
+                mStoredStarts = Arrays.copyOf(mStoredStarts, capacity);
+            }
+            mLengths[mCount] = silent ? -length : length;
+            mTimelineStarts[mCount] = mTimelineFrames;
+            mStoredStarts[mCount] = mStoredFrames;
+            mCount++;
+            advance(silent, length);
+            frames -= length;
+        }
+    }
+
+    private void advance(boolean silent, int frames) {
+        mTimelineFrames += frames;
+        if (!silent) {
+            mStoredFrames += frames;
+        }
+    }
+
+    public int getRunCount() {
+        return mCount;
+    }
+
+    public boolean isSilent(int run) {
+        return mLengths[run] < 0;
+    }
+
+    public long getRunLength(int run) {
+        return Math.abs((long) mLengths[run]);
+    }
+
+    /**
+     * 这一段在原始时间线上的起点
+     */
+    public long getRunStart(int run) {
+        return mTimelineStarts[run];
+    }
+
+    /**
+     * 这一段在数据区中的起点 静音段是下一个有声段的起点
+     */
+    public long getStoredStart(int run) {
+        return mStoredStarts[run];
+    }
+
+    /**
+     * 原始录音的长度 以每声道的采样点计
+     */
+    public long getTimelineFrames() {
+        return mTimelineFrames;
+    }
+
+    /**
+     * 实际保存的长度
+     */
+    public long getStoredFrames() {
+        return mStoredFrames;
+    }
+
+    /**
+     * 跳过没有保存的静音长度
+     */
+    public long getSkippedFrames() {
+        return mTimelineFrames - mStoredFrames;
+    }
+
+    /**
+     * 实际保存的长度占原始录音的比例 没有数据时为1
+     */
+    public double getStoredRatio() {
+        return mTimelineFrames == 0 ? 1 : (double) mStoredFrames / mTimelineFrames;
+    }
+
+    /**
+     * 包含时间点frame的段 超出范围时返回第一段或最后一段 没有数据时返回-1
+     */
+    public int findRun(long frame) {
+        if (mCount == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = mCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mTimelineStarts[middle] <= frame) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 时间点对应的数据区位置 落在静音段时返回下一个有声段的起点
+     */
+    public long toStoredFrame(long frame) {
+        int run = findRun(frame);
+        if (run < 0) {
+            return 0;
+        }
+        if (isSilent(run)) {
+            return mStoredStarts[run];
+        }
+        return mStoredStarts[run] + Math.min(getRunLength(run), Math.max(0, frame - mTimelineStarts[run]));
+    }
+
+    /**
+     * 从frame开始(包含)的第一个有声段 没有时返回-1
+     */
+    public int nextSpeechRun(long frame) {
+        int run = findRun(frame);
+        if (run < 0) {
+            return -1;
+        }
+        if (!isSilent(run) && frame < mTimelineStarts[run] + getRunLength(run)) {
+            return run;
+        }
+        for (run++; run < mCount; run++) {
+            if (!isSilent(run)) {
+                return run;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在文件末尾追加"dtx " chunk 需要在{@link WavHeader#finish(RandomAccessFile, long)}之前调用
+     */
+    public void writeTo(RandomAccessFile file) throws IOException {
+        int size = 8 + mCount * 4;
+        ByteBuffer chunk = ByteBuffer.allocate(8 + size).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.putInt(ID_DTX);
+        chunk.putInt(size);
+        chunk.putInt(VERSION);
+        chunk.putInt(mCount);
+        for (int i = 0; i < mCount; i++) {
+            chunk.putInt(mLengths[i]);
+        }
+        long end = file.length();
+        file.seek(end);
+        // chunk必须从偶数位置开始
+        if ((end & 1) != 0) {
+            file.write(0);
+        }
+        file.write(chunk.array(), 0, chunk.position());
+    }
+
+    /**
+     * 只读取文件中的时间线 数据区通过定位跳过
+     *
+     * @param file WAV文件
+     * @return 文件中的时间线 不是DTX文件或录音中断没有写入时返回null
+     */
+    public static DtxTimeline read(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != ID_RIFF || header.getInt(8) != ID_WAVE) {
+                throw new IOException("not a RIFF/WAVE file");
+            }
+            long position = 12;
+            long length = channel.size();
+            ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            while (position + 8 <= length) {
+                chunk.clear();
+                readFully(channel, chunk, position);
+                int id = chunk.getInt(0);
+                long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                position += 8;
+                if (id == ID_DATA && (size == 0 || position + size > length)) {
+                    return null;
+                }
+                if (id == ID_DTX) {
+                    ByteBuffer body = ByteBuffer.allocate((int) Math.min(size, length - position)).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(channel, body, position);
+                    if (body.capacity() < 8 || body.getInt(0) != VERSION) {
+                        throw new IOException("unsupported dtx chunk");
+                    }
+                    int count = Math.min(body.getInt(4), (body.capacity() - 8) / 4);
+                    DtxTimeline timeline = new DtxTimeline();
+                    for (int i = 0; i < count; i++) {
+                        int run = body.getInt(8 + i * 4);
+                        timeline.append(run < 0, Math.abs((long) run));
+                    }
+                    return timeline;
+                }
+                position += size + (size & 1);
+            }
+            return null;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DtxTimeline{runs=" + mCount + ", timeline=" + mTimelineFrames + ", stored=" + mStoredFrames + '}';
+    }
+}
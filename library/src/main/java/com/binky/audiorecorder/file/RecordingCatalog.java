@@ -0,0 +1,564 @@
+package com.binky.audiorecorder.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.binky.audiorecorder.utils.Log;
+
+/**
+ * 录音目录 保存每个录音的路径、格式、时长、响度和标记 列表页和按条件筛选都不需要打开录音文件
+ * <p>
+ * 磁盘上是一个只追加的二进制日志: int magic, int version, 之后每条记录是
+ * int 长度, byte 类型(PUT/DELETE), 内容, int 类型和内容的CRC32
+ * 同一个路径的新记录覆盖旧记录 末尾写了一半或者校验失败的记录在加载时忽略 下一次追加前截掉
+ * 文件头不认识的文件(其他版本写的或者不是目录文件)不会被覆盖 第一次写入前改名成.bak 之后从空目录开始
+ * 失效的记录多于有效记录时重写成只包含有效记录的新文件 写完fsync之后再替换
+ * <p>
+ * 第一次查询或写入时才读取日志 建立内存索引 按日期、时长、响度的查询是在排好序的数组上二分查找
+ * 所有方法都是线程安全的
+ */
+
+public class RecordingCatalog {
+
+    public static final String TAG = "RecordingCatalog";
+
+    private static final int MAGIC = 0x424B4354; // "BKCT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    /**
+     * 失效记录少于这个数时不压缩
+     */
+    private static final int MIN_COMPACT_RECORDS = 32;
+
+    private static final Comparator<RecordingEntry> BY_DATE = new Comparator<RecordingEntry>() {
+        @Override
+        public int compare(RecordingEntry a, RecordingEntry b) {
+            return compareLong(a.createdMillis, b.createdMillis);
+        }
+    };
+    private static final Comparator<RecordingEntry> BY_DURATION = new Comparator<RecordingEntry>() {
+        @Override
+        public int compare(RecordingEntry a, RecordingEntry b) {
+            return compareLong(a.getDurationMillis(), b.getDurationMillis());
+        }
+    };
+    private static final Comparator<RecordingEntry> BY_LOUDNESS = new Comparator<RecordingEntry>() {
+        @Override
+        public int compare(RecordingEntry a, RecordingEntry b) {
+            return Float.compare(a.rmsDb, b.rmsDb);
+        }
+    };
+
+    private final File mFile;
+    private LinkedHashMap<String, RecordingEntry> mEntries;
+    /**
+     * 按条件排序的索引 目录变化后置空 下一次查询时重建
+     */
+    private RecordingEntry[] mByDate;
+    private RecordingEntry[] mByDuration;
+    private RecordingEntry[] mByLoudness;
+    private RandomAccessFile mOutput;
+    /**
+     * 日志中完整有效的部分 之后的内容在下一次追加前截掉
+     */
+    private long mValidLength;
+    private int mDeadRecords;
+    private long mLoadNanos = -1;
+    private final ByteArrayOutputStream mRecordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream mRecordOutput = new DataOutputStream(mRecordBytes);
+    private final CRC32 mCrc = new CRC32();
+
+    /**
+     * @param file 日志文件 不存在时在第一次写入时创建 不要放在{@link StorageBudget}会删除的.wav/.pcm名字下
+     */
+    public RecordingCatalog(File file) {
+        this.mFile = file;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * 添加或者更新一个录音 记录写入磁盘后才返回
+     */
+    public synchronized void put(RecordingEntry entry) throws IOException {
+        ensureLoaded();
+        mRecordBytes.reset();
+        writeEntry(mRecordOutput, entry);
+        append(TYPE_PUT);
+        if (mEntries.put(entry.path, entry) != null) {
+            mDeadRecords++;
+        }
+        invalidateIndex();
+        compactIfNeeded();
+    }
+
+    /**
+     * 删除一个录音的记录 不会删除录音文件
+     *
+     * @return 目录中是否有这个录音
+     */
+    public synchronized boolean remove(String path) throws IOException {
+        ensureLoaded();
+        if (!mEntries.containsKey(path)) {
+            return false;
+        }
+        mRecordBytes.reset();
+        mRecordOutput.writeUTF(path);
+        append(TYPE_DELETE);
+        mEntries.remove(path);
+        // 删除记录和被删除的PUT都失效了
+        mDeadRecords += 2;
+        invalidateIndex();
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * 删除录音文件已经不存在的记录 只检查文件是否存在 不读取文件内容
+     *
+     * @return 删除的记录数
+     */
+    public synchronized int removeMissing() throws IOException {
+        ensureLoaded();
+        List<String> missing = new ArrayList<>();
+        for (String path : mEntries.keySet()) {
+            if (!new File(path).exists()) {
+                missing.add(path);
+            }
+        }
+        for (String path : missing) {
+            remove(path);
+        }
+        return missing.size();
+    }
+
+    public synchronized RecordingEntry get(String path) throws IOException {
+        ensureLoaded();
+        return mEntries.get(path);
+    }
+
+    public synchronized int size() throws IOException {
+        ensureLoaded();
+        return mEntries.size();
+    }
+
+    /**
+     * 所有录音 按添加顺序 更新过的录音排在它第一次添加的位置
+     */
+    public synchronized List<RecordingEntry> getEntries() throws IOException {
+        ensureLoaded();
+        return new ArrayList<>(mEntries.values());
+    }
+
+    /**
+     * 开始时间在[fromMillis, toMillis]之间的录音 按开始时间排序
+     */
+    public synchronized List<RecordingEntry> findByDate(long fromMillis, long toMillis) throws IOException {
+        ensureLoaded();
+        if (mByDate == null) {
+            mByDate = sorted(BY_DATE);
+        }
+        RecordingEntry[] index = mByDate;
+        List<RecordingEntry> result = new ArrayList<>();
+        int low = 0;
+        int high = index.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index[middle].createdMillis < fromMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < index.length && index[i].createdMillis <= toMillis; i++) {
+            result.add(index[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 时长在[minMillis, maxMillis]之间的录音 按时长排序
+     */
+    public synchronized List<RecordingEntry> findByDuration(long minMillis, long maxMillis) throws IOException {
+        ensureLoaded();
+        if (mByDuration == null) {
+            mByDuration = sorted(BY_DURATION);
+        }
+        RecordingEntry[] index = mByDuration;
+        List<RecordingEntry> result = new ArrayList<>();
+        int low = 0;
+        int high = index.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (index[middle].getDurationMillis() < minMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < index.length && index[i].getDurationMillis() <= maxMillis; i++) {
+            result.add(index[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 均方根电平在[minDb, maxDb]之间的录音 按电平排序 没有响度信息的录音不会出现在结果中
+     */
+    public synchronized List<RecordingEntry> findByLoudness(float minDb, float maxDb) throws IOException {
+        ensureLoaded();
+        if (mByLoudness == null) {
+            mByLoudness = sorted(BY_LOUDNESS);
+        }
+        RecordingEntry[] index = mByLoudness;
+        List<RecordingEntry> result = new ArrayList<>();
+        int low = 0;
+        int high = index.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Float.compare(index[middle].rmsDb, minDb) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        // NaN排在最后 比较时大于任何值
+        for (int i = low; i < index.length && Float.compare(index[i].rmsDb, maxDb) <= 0; i++) {
+            result.add(index[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 读取日志建立索引的耗时 还没有加载时返回-1
+     */
+    public synchronized long getLoadNanos() {
+        return mLoadNanos;
+    }
+
+    /**
+     * 日志中失效的记录数
+     */
+    public synchronized int getDeadRecords() {
+        return mDeadRecords;
+    }
+
+    /**
+     * 立即加载 例如在启动后的后台线程中调用 之后的第一次查询不会等待读取
+     */
+    public synchronized void load() {
+        ensureLoaded();
+    }
+
+    /**
+     * 只保留有效记录重写日志 先写临时文件 fsync之后再替换 中途被杀不会丢失原来的日志
+     */
+    public synchronized void compact() throws IOException {
+        ensureLoaded();
+        long startNanos = System.nanoTime();
+        closeOutput();
+        backupUnknownFile();
+        File temp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile output = new RandomAccessFile(temp, "rw");
+        long length;
+        try {
+            output.setLength(0);
+            mRecordBytes.reset();
+            mRecordOutput.writeInt(MAGIC);
+            mRecordOutput.writeInt(VERSION);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            DataOutputStream recordOutput = new DataOutputStream(record);
+            for (RecordingEntry entry : mEntries.values()) {
+                record.reset();
+                writeEntry(recordOutput, entry);
+                writeRecord(mRecordOutput, TYPE_PUT, record);
+            }
+            output.write(mRecordBytes.toByteArray());
+            output.getChannel().force(false);
+            length = output.length();
+        } finally {
+            output.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("rename " + temp + " failed");
+        }
+        mValidLength = length;
+        Log.d(TAG, "compacted " + mDeadRecords + " dead records, " + mEntries.size() + " entries " + length
+                + " bytes cost " + (System.nanoTime() - startNanos) / 1000 + "us");
+        mDeadRecords = 0;
+    }
+
+    public synchronized void close() {
+        closeOutput();
+    }
+
+    private void ensureLoaded() {
+        if (mEntries != null) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        mEntries = new LinkedHashMap<>();
+        mDeadRecords = 0;
+        mValidLength = 0;
+        int records = 0;
+        byte[] bytes = readFile(mFile);
+        if (bytes != null && bytes.length >= HEADER_SIZE) {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    Log.e(TAG, "unknown catalog format " + mFile + ", starting empty, kept as backup on first write");
+                } else {
+                    mValidLength = HEADER_SIZE;
+                    records = parseRecords(bytes, input);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        mLoadNanos = System.nanoTime() - startNanos;
+        Log.d(TAG, "loaded " + mEntries.size() + " entries from " + records + " records "
+                + (bytes == null ? 0 : bytes.length) + " bytes cost " + mLoadNanos / 1000 + "us");
+        if (mValidLength < (bytes == null ? 0 : bytes.length)) {
+            Log.e(TAG, "ignored " + (bytes.length - mValidLength) + " bytes of incomplete records");
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * 逐条读取记录 遇到不完整或者校验失败的记录时停下 之后的内容都当作没有写完
+     *
+     * @return 读到的完整记录数
+     */
+    private int parseRecords(byte[] bytes, DataInputStream input) throws IOException {
+        int records = 0;
+        long position = HEADER_SIZE;
+        while (position + 4 + 1 + 4 <= bytes.length) {
+            int length = input.readInt();
+            if (length < 0 || position + 4 + 1 + length + 4 > bytes.length) {
+                break;
+            }
+            int body = (int) position + 4;
+            mCrc.reset();
+            mCrc.update(bytes, body, 1 + length);
+            int crc = ((bytes[body + 1 + length] & 0xFF) << 24) | ((bytes[body + 2 + length] & 0xFF) << 16)
+                    | ((bytes[body + 3 + length] & 0xFF) << 8) | (bytes[body + 4 + length] & 0xFF);
+            if (crc != (int) mCrc.getValue()) {
+                break;
+            }
+            byte type = input.readByte();
+            if (type == TYPE_PUT) {
+                RecordingEntry entry = readEntry(input);
+                if (mEntries.put(entry.path, entry) != null) {
+                    mDeadRecords++;
+                }
+            } else if (type == TYPE_DELETE) {
+                mDeadRecords += mEntries.remove(input.readUTF()) != null ? 2 : 1;
+            } else {
+                // 新版本的记录类型 跳过
+                mDeadRecords++;
+                input.skipBytes(length);
+            }
+            input.skipBytes(4);
+            position += 4 + 1 + length + 4;
+            mValidLength = position;
+            records++;
+        }
+        return records;
+    }
+
+    private static byte[] readFile(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return bytes;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 把mRecordBytes中的内容作为一条记录追加到日志末尾
+     */
+    private void append(byte type) throws IOException {
+        if (mOutput == null) {
+            openOutput();
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream(mRecordBytes.size() + 9);
+        writeRecord(new DataOutputStream(record), type, mRecordBytes);
+        mOutput.seek(mValidLength);
+        mOutput.write(record.toByteArray());
+        mOutput.getChannel().force(false);
+        mValidLength += record.size();
+    }
+
+    private void openOutput() throws IOException {
+        File parent = mFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        backupUnknownFile();
+        mOutput = new RandomAccessFile(mFile, "rw");
+        if (mValidLength < HEADER_SIZE) {
+            mOutput.setLength(0);
+            mOutput.writeInt(MAGIC);
+            mOutput.writeInt(VERSION);
+            mValidLength = HEADER_SIZE;
+        } else if (mOutput.length() > mValidLength) {
+            // 截掉上次没有写完的记录
+            mOutput.setLength(mValidLength);
+        }
+    }
+
+    /**
+     * 没有认出文件头时原来的文件可能是其他版本的目录 改名保留 不能截断
+     */
+    private void backupUnknownFile() throws IOException {
+        if (mValidLength >= HEADER_SIZE || mFile.length() == 0) {
+            return;
+        }
+        File backup = new File(mFile.getPath() + ".bak");
+        for (int i = 1; backup.exists(); i++) {
+            backup = new File(mFile.getPath() + ".bak" + i);
+        }
+        if (!mFile.renameTo(backup)) {
+            throw new IOException("rename " + mFile + " to " + backup + " failed");
+        }
+        Log.e(TAG, "moved unknown catalog " + mFile + " to " + backup);
+    }
+
+    private void closeOutput() {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mOutput = null;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (mDeadRecords < MIN_COMPACT_RECORDS || mDeadRecords <= mEntries.size()) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            // 压缩失败不影响已经追加的记录
+            e.printStackTrace();
+        }
+    }
+
+    private void invalidateIndex() {
+        mByDate = null;
+        mByDuration = null;
+        mByLoudness = null;
+    }
+
+    private RecordingEntry[] sorted(Comparator<RecordingEntry> comparator) {
+        RecordingEntry[] index = mEntries.values().toArray(new RecordingEntry[mEntries.size()]);
+        Arrays.sort(index, comparator);
+        return index;
+    }
+
+    private void writeRecord(DataOutputStream output, byte type, ByteArrayOutputStream body) throws IOException {
+        byte[] bytes = body.toByteArray();
+        mCrc.reset();
+        mCrc.update(type);
+        mCrc.update(bytes, 0, bytes.length);
+        output.writeInt(bytes.length);
+        output.writeByte(type);
+        output.write(bytes);
+        output.writeInt((int) mCrc.getValue());
+    }
+
+    private static void writeEntry(DataOutputStream output, RecordingEntry entry) throws IOException {
+        output.writeUTF(entry.path);
+        output.writeLong(entry.createdMillis);
+        output.writeBoolean(entry.wav);
+        output.writeLong(entry.frameCount);
+        output.writeInt(entry.sampleRate);
+        output.writeShort(entry.channelCount);
+        output.writeShort(entry.bitsPerSample);
+        output.writeLong(entry.sizeBytes);
+        output.writeFloat(entry.peakDb);
+        output.writeFloat(entry.rmsDb);
+        output.writeInt(entry.markers.size());
+        for (WavMarker marker : entry.markers) {
+            output.writeInt(marker.id);
+            output.writeLong(marker.position);
+            output.writeLong(marker.length);
+            output.writeBoolean(marker.label != null);
+            if (marker.label != null) {
+                output.writeUTF(marker.label);
+            }
+        }
+    }
+
+    private static RecordingEntry readEntry(DataInputStream input) throws IOException {
+        String path = input.readUTF();
+        long createdMillis = input.readLong();
+        boolean wav = input.readBoolean();
+        long frameCount = input.readLong();
+        int sampleRate = input.readInt();
+        int channelCount = input.readShort();
+        int bitsPerSample = input.readShort();
+        long sizeBytes = input.readLong();
+        float peakDb = input.readFloat();
+        float rmsDb = input.readFloat();
+        int count = input.readInt();
+        List<WavMarker> markers = null;
+        if (count > 0) {
+            markers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = input.readInt();
+                long position = input.readLong();
+                long length = input.readLong();
+                String label = input.readBoolean() ? input.readUTF() : null;
+                markers.add(new WavMarker(id, position, length, label));
+            }
+        }
+        return new RecordingEntry(path, createdMillis, wav, frameCount, sampleRate, channelCount, bitsPerSample,
+                sizeBytes, peakDb, rmsDb, markers);
+    }
+
+    private static int compareLong(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RecordingCatalog{file=" + mFile + ", entries=" + (mEntries == null ? "not loaded" : mEntries.size())
+                + ", dead=" + mDeadRecords + "}";
+    }
+}
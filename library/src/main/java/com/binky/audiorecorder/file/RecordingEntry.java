@@ -0,0 +1,108 @@
+package com.binky.audiorecorder.file;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link RecordingCatalog}中的一条录音信息 列表展示需要的格式、时长、响度和标记都在这里 不需要打开录音文件
+ */
+
+public class RecordingEntry {
+
+    final String path;
+    final long createdMillis;
+    final boolean wav;
+    final long frameCount;
+    final int sampleRate;
+    final int channelCount;
+    final int bitsPerSample;
+    final long sizeBytes;
+    final float peakDb;
+    final float rmsDb;
+    final List<WavMarker> markers;
+
+    /**
+     * @param path          录音文件路径 同一个路径只保留最新的一条
+     * @param createdMillis 开始录音的时间 System.currentTimeMillis()
+     * @param wav           true为wav文件 false为没有文件头的pcm
+     * @param frameCount    每个声道的采样点数
+     * @param sampleRate    采样率
+     * @param channelCount  声道数
+     * @param bitsPerSample 位深
+     * @param sizeBytes     文件大小
+     * @param peakDb        峰值电平 单位dBFS
+     * @param rmsDb         整段录音的均方根电平 单位dBFS
+     * @param markers       按位置排序的标记 可以为null
+     */
+    public RecordingEntry(String path, long createdMillis, boolean wav, long frameCount, int sampleRate,
+                          int channelCount, int bitsPerSample, long sizeBytes, float peakDb, float rmsDb,
+                          List<WavMarker> markers) {
+        this.path = path;
+        this.createdMillis = createdMillis;
+        this.wav = wav;
+        this.frameCount = frameCount;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.bitsPerSample = bitsPerSample;
+        this.sizeBytes = sizeBytes;
+        this.peakDb = peakDb;
+        this.rmsDb = rmsDb;
+        this.markers = markers == null ? Collections.<WavMarker>emptyList() : Collections.unmodifiableList(markers);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public boolean isWav() {
+        return wav;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getDurationMillis() {
+        return sampleRate == 0 ? 0 : frameCount * 1000 / sampleRate;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public float getPeakDb() {
+        return peakDb;
+    }
+
+    public float getRmsDb() {
+        return rmsDb;
+    }
+
+    public List<WavMarker> getMarkers() {
+        return markers;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordingEntry{path=" + path + ", created=" + createdMillis + ", duration=" + getDurationMillis()
+                + "ms, " + (wav ? "wav " : "pcm ") + sampleRate + "Hz/" + channelCount + "ch/" + bitsPerSample
+                + "bit, size=" + sizeBytes
+                + ", peak=" + peakDb + "dB, rms=" + rmsDb + "dB, markers=" + markers.size() + "}";
+    }
+}
@@ -0,0 +1,171 @@
+package com.binky.audiorecorder.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.binky.audiorecorder.utils.Log;
+
+/**
+ * 录音保存目录的存储预算
+ * <p>
+ * 目录下所有录音文件(.wav/.pcm 包括子目录)的总大小不超过预算 超出时按最后使用时间删除最旧的录音
+ * 最后使用时间就是文件的修改时间 回放等操作后可以调用{@link #touch(File)}更新
+ * 同时保证磁盘上至少留有{@link #getReserveBytes()}的空间给系统和其他应用
+ */
+
+public class StorageBudget {
+
+    private static final String TAG = "StorageBudget";
+    /**
+     * 默认给磁盘保留的空间 10MB
+     */
+    public static final long DEFAULT_RESERVE_BYTES = 10L * 1024 * 1024;
+
+    private final File mDir;
+    private final long mMaxBytes;
+    private long mReserveBytes = DEFAULT_RESERVE_BYTES;
+
+    /**
+     * @param dir      录音保存目录
+     * @param maxBytes 目录下录音文件的总大小上限 小于等于0表示不限制 只检查磁盘剩余空间
+     */
+    public StorageBudget(File dir, long maxBytes) {
+        this.mDir = dir;
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 设置磁盘上保留的空间 录音不会占用这部分空间
+     */
+    public StorageBudget setReserveBytes(long reserveBytes) {
+        this.mReserveBytes = Math.max(0, reserveBytes);
+        return this;
+    }
+
+    public File getDir() {
+        return mDir;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public long getReserveBytes() {
+        return mReserveBytes;
+    }
+
+    /**
+     * 目录下录音文件的总大小
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (File file : listRecordings()) {
+            used += file.length();
+        }
+        return used;
+    }
+
+    /**
+     * 标记一个录音刚被使用过 淘汰时最后考虑
+     */
+    public static void touch(File file) {
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            Log.e(TAG, "touch " + file + " failed");
+        }
+    }
+
+    /**
+     * 按预算和磁盘剩余空间 算出还能写入的字节数 不会删除任何文件
+     *
+     * @param current 正在写入的文件 它已经占用的大小不计入
+     */
+    public long getWritableBytes(File current) {
+        long currentSize = current != null && current.exists() ? current.length() : 0;
+        long writable = mDir.getUsableSpace() - mReserveBytes;
+        if (mMaxBytes > 0) {
+            writable = Math.min(writable, mMaxBytes - (getUsedBytes() - currentSize));
+        }
+        return Math.max(0, writable);
+    }
+
+    /**
+     * 删除最旧的录音 直到可以再写入needBytes字节 或者没有可以删除的文件
+     *
+     * @param needBytes 需要的字节数
+     * @param keep      不能删除的文件 例如正在写入的录音 可以为null
+     * @return 删除的文件
+     */
+    public List<File> ensureWritable(long needBytes, File keep) {
+        List<File> evicted = new ArrayList<>();
+        File[] files = listRecordings();
+        // 最后使用时间最早的排在前面
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long l = a.lastModified();
+                long r = b.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        long used = 0;
+        long keepSize = 0;
+        for (File file : files) {
+            used += file.length();
+            if (file.equals(keep)) {
+                keepSize = file.length();
+            }
+        }
+        used -= keepSize;
+        long freeSpace = mDir.getUsableSpace() - mReserveBytes;
+        for (File file : files) {
+            boolean overBudget = mMaxBytes > 0 && used + needBytes > mMaxBytes;
+            boolean overDisk = freeSpace < needBytes;
+            if (!overBudget && !overDisk) {
+                break;
+            }
+            if (file.equals(keep)) {
+                continue;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                used -= size;
+                freeSpace += size;
+                evicted.add(file);
+                Log.d(TAG, "evicted " + file + " " + size + " bytes");
+            }
+        }
+        return evicted;
+    }
+
+    private File[] listRecordings() {
+        List<File> files = new ArrayList<>();
+        collect(mDir, files);
+        return files.toArray(new File[files.size()]);
+    }
+
+    private static void collect(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else {
+                String name = child.getName().toLowerCase();
+                if (name.endsWith(".wav") || name.endsWith(".pcm")) {
+                    files.add(child);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StorageBudget{dir=" + mDir + ", max=" + mMaxBytes + ", reserve=" + mReserveBytes
+                + ", used=" + getUsedBytes() + ", usable=" + mDir.getUsableSpace() + "}";
+    }
+}
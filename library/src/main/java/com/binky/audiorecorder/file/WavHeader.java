@@ -0,0 +1,134 @@
+package com.binky.audiorecorder.file;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * WAV文件头的写入和收尾
+ * <p>
+ * 单声道、立体声的16位PCM写标准的44字节文件头 超过2个声道或超过16位时按规范写WAVE_FORMAT_EXTENSIBLE
+ * fmt chunk多出声道掩码和子格式 文件头68字节
+ */
+
+public final class WavHeader {
+
+    /**
+     * 标准PCM文件头的长度
+     */
+    public static final int HEADER_SIZE = 44;
+    /**
+     * WAVE_FORMAT_EXTENSIBLE文件头的长度
+     */
+    public static final int EXTENSIBLE_HEADER_SIZE = 68;
+
+    private static final short WAVE_FORMAT_PCM = 1;
+    private static final short WAVE_FORMAT_EXTENSIBLE = (short) 0xFFFE;
+    /**
+     * KSDATAFORMAT_SUBTYPE_PCM的GUID 前两个字节是格式 后面是固定的后缀
+     */
+    private static final byte[] SUBTYPE_PCM_SUFFIX = {
+            0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71};
+
+    private WavHeader() {
+    }
+
+    /**
+     * 在当前位置写入文件头 多声道时不指定声道掩码
+     *
+     * @see #write(RandomAccessFile, int, int, int, int)
+     */
+    public static void write(RandomAccessFile file, int sampleRate, int channelCount, int bitsPerSample) throws IOException {
+        write(file, sampleRate, channelCount, bitsPerSample, 0);
+    }
+
+    /**
+     * 是否需要写WAVE_FORMAT_EXTENSIBLE
+     */
+    public static boolean isExtensible(int channelCount, int bitsPerSample) {
+        return channelCount > 2 || bitsPerSample > 16;
+    }
+
+    /**
+     * 文件头的长度
+     */
+    public static int headerSize(int channelCount, int bitsPerSample) {
+        return isExtensible(channelCount, bitsPerSample) ? EXTENSIBLE_HEADER_SIZE : HEADER_SIZE;
+    }
+
+    /**
+     * 在当前位置写入文件头 大小字段先写0 录音结束后通过{@link #finish(RandomAccessFile, long)}补全
+     *
+     * @param file          文件
+     * @param sampleRate    采样率
+     * @param channelCount  声道数
+     * @param bitsPerSample 位深
+     * @param channelMask   WAVE_FORMAT_EXTENSIBLE的声道掩码 0表示声道和扬声器位置没有对应关系 只在多声道时写入
+     *                      可以用{@link com.binky.audiorecorder.record.ChannelMask#toWavChannelMask(int)}得到
+     */
+    public static void write(RandomAccessFile file, int sampleRate, int channelCount, int bitsPerSample,
+                             int channelMask) throws IOException {
+        short nChannels = (short) channelCount;
+        short bSamples = (short) bitsPerSample;
+        boolean extensible = isExtensible(channelCount, bitsPerSample);
+        /* RIFF header */
+        // riff id
+        file.writeBytes("RIFF");
+        // riff chunk size *PLACEHOLDER*
+        file.writeInt(0);
+        // wave type
+        file.writeBytes("WAVE");
+
+        /* fmt chunk */
+        // fmt id
+        file.writeBytes("fmt ");
+        // fmt chunk size
+        file.writeInt(Integer.reverseBytes(extensible ? 40 : 16));
+        // AudioFormat,1 for PCM
+        file.writeShort(Short.reverseBytes(extensible ? WAVE_FORMAT_EXTENSIBLE : WAVE_FORMAT_PCM));
+        // Number of channels, 1 for mono, 2 for stereo
+        file.writeShort(Short.reverseBytes(nChannels));
+        // Sample rate
+        file.writeInt(Integer.reverseBytes(sampleRate));
+        // Byte rate,SampleRate*NumberOfChannels*BitsPerSample/8
+        file.writeInt(Integer.reverseBytes(sampleRate * bSamples * nChannels / 8));
+        // Block align, NumberOfChannels*BitsPerSample/8
+        file.writeShort(Short.reverseBytes((short) (nChannels * bSamples / 8)));
+        // Bits per sample
+        file.writeShort(Short.reverseBytes(bSamples));
+        if (extensible) {
+            // cbSize
+            file.writeShort(Short.reverseBytes((short) 22));
+            // Valid bits per sample
+            file.writeShort(Short.reverseBytes(bSamples));
+            // Channel mask
+            file.writeInt(Integer.reverseBytes(channelMask));
+            // SubFormat GUID
+            file.writeShort(Short.reverseBytes(WAVE_FORMAT_PCM));
+            file.write(SUBTYPE_PCM_SUFFIX);
+        }
+
+        /* data chunk */
+        // data id
+        file.writeBytes("data");
+        // data chunk size *PLACEHOLDER*
+        file.writeInt(0);
+    }
+
+    /**
+     * 补全RIFF和data的大小字段 data之后追加的chunk也计入RIFF大小
+     *
+     * @param file     文件
+     * @param dataSize 音频数据的字节数
+     */
+    public static void finish(RandomAccessFile file, long dataSize) throws IOException {
+        // data chunk紧跟在fmt chunk之后 根据fmt chunk的大小找到data的大小字段
+        file.seek(16);
+        int formatSize = Integer.reverseBytes(file.readInt());
+        long dataSizeOffset = 20 + formatSize + 4;
+        long riffSize = Math.max(dataSize + dataSizeOffset + 4, file.length()) - 8;
+        file.seek(4); // riff chunk size
+        file.writeInt(Integer.reverseBytes((int) riffSize));
+        file.seek(dataSizeOffset); // data chunk size
+        file.writeInt(Integer.reverseBytes((int) dataSize));
+    }
+}
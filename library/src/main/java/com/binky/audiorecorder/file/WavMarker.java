@@ -0,0 +1,61 @@
+package com.binky.audiorecorder.file;
+
+/**
+ * WAV文件中的一个标记 对应cue chunk中的一个cue点和LIST adtl中的标签
+ * <p>
+ * 长度大于0时表示一个区间 写成ltxt
+ */
+
+public class WavMarker {
+
+    final int id;
+    final long position;
+    final long length;
+    final String label;
+
+    WavMarker(int id, long position, long length, String label) {
+        this.id = id;
+        this.position = position;
+        this.length = length;
+        this.label = label;
+    }
+
+    /**
+     * cue点的编号 同一个文件中唯一
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * 在音频数据中的位置 以单声道采样点计
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * 区间长度 以单声道采样点计 0表示单个位置
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * 标签 可以为null
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public long getPositionMillis(int sampleRate) {
+        return position * 1000 / sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        return "WavMarker{id=" + id + ", position=" + position
+                + (length > 0 ? ", length=" + length : "")
+                + (label == null ? "" : ", label=" + label) + "}";
+    }
+}
@@ -0,0 +1,396 @@
+package com.binky.audiorecorder.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WAV文件的标记和INFO信息
+ * <p>
+ * 录音过程中标记按位置有序保存在内存中 文件收尾时在数据区之后追加cue、LIST adtl和LIST INFO三个chunk
+ * 不需要改写音频数据 {@link #read(File)}只读取各个chunk的头 跳过数据区 加载时间和录音长度无关
+ * <p>
+ * 所有方法都是线程安全的 可以在任意线程中添加标记
+ */
+
+public class WavMetadata {
+
+    /**
+     * 常用的INFO字段
+     */
+    public static final String INFO_TITLE = "INAM";
+    public static final String INFO_COMMENT = "ICMT";
+    public static final String INFO_DATE = "ICRD";
+    public static final String INFO_SOFTWARE = "ISFT";
+    public static final String INFO_ARTIST = "IART";
+
+    private static final int ID_RIFF = 0x46464952;
+    private static final int ID_WAVE = 0x45564157;
+    private static final int ID_FMT = 0x20746D66;
+    private static final int ID_CUE = 0x20657563;
+    private static final int ID_LIST = 0x5453494C;
+    private static final int ID_ADTL = 0x6C746461;
+    private static final int ID_INFO = 0x4F464E49;
+    private static final int ID_LABL = 0x6C62616C;
+    private static final int ID_LTXT = 0x7478746C;
+    private static final int ID_DATA = 0x61746164;
+    private static final int ID_RGN = 0x206E6772;
+
+    private final List<WavMarker> mMarkers = new ArrayList<>();
+    private final Map<String, String> mInfo = new LinkedHashMap<>();
+    private int mNextId = 1;
+    private int mSampleRate;
+
+    /**
+     * 添加一个位置标记
+     *
+     * @param position 在音频数据中的位置 以单声道采样点计
+     * @param label    标签 可以为null
+     * @return 添加的标记
+     */
+    public WavMarker addMarker(long position, String label) {
+        return addRegion(position, 0, label);
+    }
+
+    /**
+     * 添加一个区间标记 例如一段语音
+     *
+     * @param position 区间开始的位置 以单声道采样点计
+     * @param length   区间长度 以单声道采样点计
+     * @param label    标签 可以为null
+     * @return 添加的标记
+     */
+    public synchronized WavMarker addRegion(long position, long length, String label) {
+        WavMarker marker = new WavMarker(mNextId++, Math.max(0, position), Math.max(0, length), label);
+        insert(marker);
+        return marker;
+    }
+
+    private void insert(WavMarker marker) {
+        // 录音中的标记基本按时间顺序添加 从尾部找插入位置
+        int index = mMarkers.size();
+        while (index > 0 && mMarkers.get(index - 1).position > marker.position) {
+            index--;
+        }
+        mMarkers.add(index, marker);
+        mNextId = Math.max(mNextId, marker.id + 1);
+    }
+
+    /**
+     * 设置一个INFO字段
+     *
+     * @param id    四个字符的字段名 例如{@link #INFO_TITLE} value为null时删除
+     * @param value 内容
+     */
+    public synchronized WavMetadata setInfo(String id, String value) {
+        if (id == null || id.length() != 4) {
+            throw new IllegalArgumentException("info id must be 4 characters: " + id);
+        }
+        if (value == null) {
+            mInfo.remove(id);
+        } else {
+            mInfo.put(id, value);
+        }
+        return this;
+    }
+
+    public synchronized String getInfo(String id) {
+        return mInfo.get(id);
+    }
+
+    public synchronized Map<String, String> getInfoMap() {
+        return new LinkedHashMap<>(mInfo);
+    }
+
+    /**
+     * 按位置排序的所有标记
+     */
+    public synchronized List<WavMarker> getMarkers() {
+        return new ArrayList<>(mMarkers);
+    }
+
+    public synchronized int getMarkerCount() {
+        return mMarkers.size();
+    }
+
+    /**
+     * 位置在[from, to)之间的标记 二分查找
+     */
+    public synchronized List<WavMarker> getMarkers(long from, long to) {
+        int begin = lowerBound(from);
+        int end = lowerBound(to);
+        if (begin >= end) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(mMarkers.subList(begin, end));
+    }
+
+    /**
+     * 位置不晚于position的最后一个标记 没有时返回null
+     */
+    public synchronized WavMarker getMarkerBefore(long position) {
+        int index = lowerBound(position + 1) - 1;
+        return index >= 0 ? mMarkers.get(index) : null;
+    }
+
+    /**
+     * 第一个位置不早于position的标记的下标
+     */
+    private int lowerBound(long position) {
+        int low = 0;
+        int high = mMarkers.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mMarkers.get(middle).position < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 从文件中读取时得到的采样率 录音中创建的为0
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mMarkers.isEmpty() && mInfo.isEmpty();
+    }
+
+    /**
+     * 在文件末尾追加cue、LIST adtl和LIST INFO 需要在{@link WavHeader#finish(RandomAccessFile, long)}之前调用
+     */
+    public synchronized void writeTo(RandomAccessFile file) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + mMarkers.size() * 48);
+        if (!mMarkers.isEmpty()) {
+            ByteBuffer cue = newChunk(ID_CUE, 4 + mMarkers.size() * 24);
+            cue.putInt(mMarkers.size());
+            for (WavMarker marker : mMarkers) {
+                cue.putInt(marker.id);
+                cue.putInt((int) marker.position);
+                cue.putInt(ID_DATA);
+                cue.putInt(0);
+                cue.putInt(0);
+                cue.putInt((int) marker.position);
+            }
+            out.write(cue.array(), 0, cue.position());
+
+            ByteArrayOutputStream adtl = new ByteArrayOutputStream();
+            for (WavMarker marker : mMarkers) {
+                byte[] text = marker.label == null ? null : toBytes(marker.label);
+                if (marker.length > 0) {
+                    ByteBuffer ltxt = newChunk(ID_LTXT, 20 + (text == null ? 0 : text.length));
+                    ltxt.putInt(marker.id);
+                    ltxt.putInt((int) marker.length);
+                    ltxt.putInt(ID_RGN);
+                    ltxt.putLong(0); // country language dialect codepage
+                    if (text != null) {
+                        ltxt.put(text);
+                    }
+                    writePadded(adtl, ltxt);
+                }
+                if (text != null) {
+                    ByteBuffer labl = newChunk(ID_LABL, 4 + text.length);
+                    labl.putInt(marker.id);
+                    labl.put(text);
+                    writePadded(adtl, labl);
+                }
+            }
+            writeList(out, ID_ADTL, adtl);
+        }
+        if (!mInfo.isEmpty()) {
+            ByteArrayOutputStream info = new ByteArrayOutputStream();
+            for (Map.Entry<String, String> entry : mInfo.entrySet()) {
+                byte[] text = toBytes(entry.getValue());
+                ByteBuffer field = ByteBuffer.allocate(8 + text.length + 1).order(ByteOrder.LITTLE_ENDIAN);
+                field.put(toBytes(entry.getKey()), 0, 4);
+                field.putInt(text.length);
+                field.put(text);
+                writePadded(info, field);
+            }
+            writeList(out, ID_INFO, info);
+        }
+        long end = file.length();
+        file.seek(end);
+        // chunk必须从偶数位置开始
+        if ((end & 1) != 0) {
+            file.write(0);
+        }
+        file.write(out.toByteArray());
+    }
+
+    private static ByteBuffer newChunk(int id, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + size + 1).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(id);
+        buffer.putInt(size);
+        return buffer;
+    }
+
+    private static void writePadded(ByteArrayOutputStream out, ByteBuffer chunk) {
+        int length = chunk.position();
+        out.write(chunk.array(), 0, length + (length & 1));
+    }
+
+    private static void writeList(ByteArrayOutputStream out, int type, ByteArrayOutputStream content) {
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ID_LIST);
+        header.putInt(4 + content.size());
+        header.putInt(type);
+        out.write(header.array(), 0, 12);
+        out.write(content.toByteArray(), 0, content.size());
+    }
+
+    /**
+     * 以0结尾的UTF-8字符串
+     */
+    private static byte[] toBytes(String text) {
+        try {
+            byte[] bytes = text.getBytes("UTF-8");
+            byte[] terminated = new byte[bytes.length + 1];
+            System.arraycopy(bytes, 0, terminated, 0, bytes.length);
+            return terminated;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = buffer.array();
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        try {
+            return new String(bytes, offset, end - offset, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 只读取文件中的标记和INFO 数据区通过定位跳过
+     *
+     * @param file WAV文件
+     * @return 文件中的标记 没有时为空
+     * @throws IOException 不是WAV文件或者chunk内容不完整
+     */
+    public static WavMetadata read(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != ID_RIFF || header.getInt(8) != ID_WAVE) {
+                throw new IOException("not a RIFF/WAVE file");
+            }
+            // 没有正常收尾的文件RIFF大小仍是0
+            boolean finished = header.getInt(4) != 0;
+            WavMetadata metadata = new WavMetadata();
+            long position = 12;
+            long length = channel.size();
+            ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            long[] cuePositions = new long[0];
+            int[] cueIds = new int[0];
+            Map<Integer, String> labels = new LinkedHashMap<>();
+            Map<Integer, Long> lengths = new LinkedHashMap<>();
+            while (position + 8 <= length) {
+                chunk.clear();
+                readFully(channel, chunk, position);
+                int id = chunk.getInt(0);
+                long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                position += 8;
+                if (id == ID_DATA && (!finished || position + size > length)) {
+                    // 没有正常收尾的文件 数据区之后不会有标记 空录音的数据区大小是0 之后仍可能有标记
+                    break;
+                }
+                if (id == ID_FMT || id == ID_CUE || id == ID_LIST) {
+                    ByteBuffer body = ByteBuffer.allocate((int) Math.min(size, length - position)).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(channel, body, position);
+                    if (body.capacity() < (id == ID_FMT ? 16 : 4)) {
+                        throw new IOException("chunk " + toString(chunk, 0, 4) + " too short: " + body.capacity());
+                    }
+                    if (id == ID_FMT) {
+                        metadata.mSampleRate = body.getInt(4);
+                    } else if (id == ID_CUE) {
+                        int count = Math.max(0, Math.min(body.getInt(0), (body.capacity() - 4) / 24));
+                        cueIds = new int[count];
+                        cuePositions = new long[count];
+                        for (int i = 0; i < count; i++) {
+                            cueIds[i] = body.getInt(4 + i * 24);
+                            cuePositions[i] = body.getInt(4 + i * 24 + 20) & 0xFFFFFFFFL;
+                        }
+                    } else {
+                        parseList(body, metadata, labels, lengths);
+                    }
+                }
+                position += size + (size & 1);
+            }
+            for (int i = 0; i < cueIds.length; i++) {
+                Long regionLength = lengths.get(cueIds[i]);
+                metadata.insert(new WavMarker(cueIds[i], cuePositions[i], regionLength == null ? 0 : regionLength,
+                        labels.get(cueIds[i])));
+            }
+            return metadata;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void parseList(ByteBuffer body, WavMetadata metadata, Map<Integer, String> labels,
+                                  Map<Integer, Long> lengths) {
+        int type = body.getInt(0);
+        int position = 4;
+        while (position + 8 <= body.capacity()) {
+            int id = body.getInt(position);
+            int size = body.getInt(position + 4);
+            int content = position + 8;
+            if (size < 0 || content + size > body.capacity()) {
+                break;
+            }
+            if (type == ID_ADTL && id == ID_LABL && size >= 4) {
+                labels.put(body.getInt(content), toString(body, content + 4, size - 4));
+            } else if (type == ID_ADTL && id == ID_LTXT && size >= 20) {
+                int cueId = body.getInt(content);
+                lengths.put(cueId, body.getInt(content + 4) & 0xFFFFFFFFL);
+                if (size > 20 && !labels.containsKey(cueId)) {
+                    labels.put(cueId, toString(body, content + 20, size - 20));
+                }
+            } else if (type == ID_INFO) {
+                metadata.mInfo.put(toString(body, position, 4), toString(body, content, size));
+            }
+            position = content + size + (size & 1);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "WavMetadata{markers=" + mMarkers.size() + ", info=" + mInfo + "}";
+    }
+}
@@ -0,0 +1,195 @@
+package com.binky.audiorecorder.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 16位PCM WAV文件的流式读取
+ * <p>
+ * 音频数据按固定大小的窗口做内存映射 顺序读取时同一时间只映射一个窗口 内存占用和文件大小无关
+ */
+
+public class WavReader implements Closeable {
+
+    /**
+     * 默认映射窗口 1MB
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 20;
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mWindowSize;
+    private int mSampleRate;
+    private int mChannelCount;
+    private int mBitsPerSample;
+    private long mDataOffset;
+    private long mDataSize;
+    private long mWindowStart;
+    private ShortBuffer mWindow;
+    private long mPosition;
+
+    public WavReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file       WAV文件
+     * @param windowSize 每次映射的字节数
+     */
+    public WavReader(File file, int windowSize) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        try {
+            parseHeader();
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+        int blockAlign = mChannelCount * 2;
+        mWindowSize = Math.max(blockAlign, windowSize / blockAlign * blockAlign);
+    }
+
+    /**
+     * 依次读取RIFF中的chunk 找到fmt和data 其他chunk跳过
+     */
+    private void parseHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) { // "RIFF" "WAVE"
+            throw new IOException("not a RIFF/WAVE file");
+        }
+        long position = 12;
+        long length = mChannel.size();
+        boolean hasFormat = false;
+        ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        while (position + 8 <= length) {
+            chunk.clear();
+            readFully(chunk, position);
+            int id = chunk.getInt(0);
+            long size = chunk.getInt(4) & 0xFFFFFFFFL;
+            position += 8;
+            if (id == 0x20746D66) { // "fmt "
+                ByteBuffer format = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(format, position);
+                int tag = format.getShort(0) & 0xFFFF;
+                mChannelCount = format.getShort(2) & 0xFFFF;
+                mSampleRate = format.getInt(4);
+                mBitsPerSample = format.getShort(14) & 0xFFFF;
+                if ((tag != WAVE_FORMAT_PCM && tag != WAVE_FORMAT_EXTENSIBLE) || mBitsPerSample != 16 || mChannelCount == 0) {
+                    throw new IOException("unsupported format tag=" + tag + " bits=" + mBitsPerSample);
+                }
+                hasFormat = true;
+            } else if (id == 0x61746164) { // "data"
+                if (!hasFormat) {
+                    throw new IOException("data chunk before fmt chunk");
+                }
+                mDataOffset = position;
+                // 录音中断时文件头里的大小可能没有补全 以实际文件长度为准
+                mDataSize = size == 0 || position + size > length ? length - position : size;
+                mDataSize -= mDataSize % (mChannelCount * 2);
+                return;
+            }
+            position += size + (size & 1);
+        }
+        throw new IOException("data chunk not found");
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    /**
+     * 音频数据在文件中的位置
+     */
+    public long getDataOffset() {
+        return mDataOffset;
+    }
+
+    public long getDataSize() {
+        return mDataSize;
+    }
+
+    /**
+     * 每个声道的采样点数
+     */
+    public long getFrameCount() {
+        return mDataSize / (mChannelCount * 2);
+    }
+
+    public long getDurationMillis() {
+        return getFrameCount() * 1000 / mSampleRate;
+    }
+
+    /**
+     * 跳到指定的单声道采样点位置
+     */
+    public void seek(long frame) {
+        mPosition = Math.max(0, Math.min(frame * mChannelCount * 2, mDataSize));
+    }
+
+    /**
+     * 读取交错排列的采样点
+     *
+     * @return 读到的采样点数 包括所有声道 结束时返回-1
+     */
+    public int read(short[] buffer, int offset, int length) throws IOException {
+        if (mPosition >= mDataSize) {
+            return -1;
+        }
+        int total = 0;
+        while (total < length && mPosition < mDataSize) {
+            ShortBuffer window = window();
+            int index = (int) ((mPosition - mWindowStart) / 2);
+            int count = Math.min(length - total, window.limit() - index);
+            window.position(index);
+            window.get(buffer, offset + total, count);
+            total += count;
+            mPosition += count * 2L;
+        }
+        return total;
+    }
+
+    private ShortBuffer window() throws IOException {
+        if (mWindow == null || mPosition < mWindowStart || mPosition >= mWindowStart + mWindow.limit() * 2L) {
+            mWindowStart = mPosition / mWindowSize * mWindowSize;
+            long size = Math.min(mWindowSize, mDataSize - mWindowStart);
+            MappedByteBuffer mapped = mChannel.map(FileChannel.MapMode.READ_ONLY, mDataOffset + mWindowStart, size);
+            mWindow = mapped.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        }
+        return mWindow;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWindow = null;
+        mFile.close();
+    }
+}
@@ -0,0 +1,28 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 录音数据处理器 在录音工作线程中对每一帧数据做原地处理
+ * 处理后的数据会被保存到文件、内存并回调给{@link com.binky.audiorecorder.StatusListener}
+ * <p>
+ * process方法每帧都会调用 实现中不要分配内存 需要的缓冲在prepare中创建
+ */
+
+public interface AudioProcessor {
+
+    /**
+     * 每次录音开始前调用 用于创建缓冲并重置内部状态
+     *
+     * @param sampleRate   采样率
+     * @param channelCount 声道数 数据为交错排列
+     */
+    void prepare(int sampleRate, int channelCount);
+
+    /**
+     * 原地处理一段PCM数据
+     *
+     * @param buffer 16位PCM数据
+     * @param offset 起始位置
+     * @param length 数据长度 单位为short
+     */
+    void process(short[] buffer, int offset, int length);
+}
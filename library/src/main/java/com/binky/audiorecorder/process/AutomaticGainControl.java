@@ -0,0 +1,311 @@
+package com.binky.audiorecorder.process;
+
+import java.util.Arrays;
+
+/**
+ * 自动增益控制 把录音电平调整到目标响度
+ * <p>
+ * 电平检测支持普通RMS(dBFS)和BS.1770 K计权响度(LUFS)两种方式
+ * 输出经过一段前视延时 增益可以在峰值到来之前提前下降 增益按起始/释放时间平滑变化
+ * 峰值保护取前视窗口内的滑动最大值 保护增益在窗口内线性下降 峰值输出时正好不超过上限
+ * 电平低于门限时保持当前增益 避免把底噪放大
+ */
+
+public class AutomaticGainControl implements AudioProcessor {
+
+    /**
+     * 电平检测方式
+     */
+    public enum Mode {
+        /**
+         * 均方根电平 单位dBFS
+         */
+        RMS,
+        /**
+         * K计权响度 单位LUFS
+         */
+        LOUDNESS
+    }
+
+    /**
+     * 每隔多少帧重新计算一次目标增益
+     */
+    private static final int UPDATE_INTERVAL = 64;
+    private static final float CEILING = 0.97f * DspUtils.FULL_SCALE;
+
+    private final float mTargetDb;
+    private Mode mMode = Mode.RMS;
+    private float mLookAheadMs = 5f;
+    private float mAttackMs = 3f;
+    private float mReleaseMs = 400f;
+    private float mWindowMs = 400f;
+    private float mMaxGainDb = 24f;
+    private float mMinGainDb = -24f;
+    private float mGateDb = -60f;
+
+    private int mChannelCount = 1;
+    private float[] mDelay = new float[0];
+    private int mDelayPosition;
+    /**
+     * 前视窗口内峰值的单调队列 从队头到队尾峰值递减 用于求滑动最大值
+     */
+    private float[] mPeakValues = new float[0];
+    private int[] mPeakFrames = new int[0];
+    private int mPeakHead;
+    private int mPeakCount;
+    private int mFrameIndex;
+    /**
+     * 最近lookAhead+1帧的峰值保护增益 取平均后增益线性变化
+     */
+    private float[] mLimits = new float[0];
+    private int mLimitPosition;
+    private double mLimitSum;
+    private double[] mShelfState = new double[0];
+    private double[] mHighPassState = new double[0];
+    private double[] mShelf = new double[5];
+    private double[] mHighPass = new double[5];
+    private float mLevelCoefficient;
+    private float mAttackCoefficient;
+    private float mReleaseCoefficient;
+    private float mMaxGain;
+    private float mMinGain;
+    private double mLevel;
+    private float mDesiredGain;
+    private float mGain;
+    private int mUpdateCounter;
+    private volatile float mCurrentGainDb;
+
+    /**
+     * @param targetDb 目标电平 RMS模式下单位为dBFS LOUDNESS模式下单位为LUFS 例如 -20
+     */
+    public AutomaticGainControl(float targetDb) {
+        this.mTargetDb = targetDb;
+    }
+
+    public AutomaticGainControl setMode(Mode mode) {
+        this.mMode = mode;
+        return this;
+    }
+
+    /**
+     * @param lookAheadMs 前视时长 也是本处理器引入的延时
+     */
+    public AutomaticGainControl setLookAheadMs(float lookAheadMs) {
+        this.mLookAheadMs = lookAheadMs;
+        return this;
+    }
+
+    public AutomaticGainControl setAttackMs(float attackMs) {
+        this.mAttackMs = attackMs;
+        return this;
+    }
+
+    public AutomaticGainControl setReleaseMs(float releaseMs) {
+        this.mReleaseMs = releaseMs;
+        return this;
+    }
+
+    /**
+     * @param windowMs 电平检测的积分时间
+     */
+    public AutomaticGainControl setWindowMs(float windowMs) {
+        this.mWindowMs = windowMs;
+        return this;
+    }
+
+    public AutomaticGainControl setGainRange(float minGainDb, float maxGainDb) {
+        this.mMinGainDb = minGainDb;
+        this.mMaxGainDb = maxGainDb;
+        return this;
+    }
+
+    /**
+     * @param gateDb 电平低于该值时不再调整增益
+     */
+    public AutomaticGainControl setGateDb(float gateDb) {
+        this.mGateDb = gateDb;
+        return this;
+    }
+
+    /**
+     * 当前使用的增益 单位dB
+     */
+    public float getCurrentGainDb() {
+        return mCurrentGainDb;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        mChannelCount = Math.max(1, channelCount);
+        int lookAhead = Math.max(1, (int) (mLookAheadMs * sampleRate / 1000));
+        mDelay = new float[lookAhead * mChannelCount];
+        mDelayPosition = 0;
+        // 输出的采样在延时线中经历lookAhead+1帧 窗口要覆盖这些帧
+        mPeakValues = new float[lookAhead + 1];
+        mPeakFrames = new int[lookAhead + 1];
+        mPeakHead = 0;
+        mPeakCount = 0;
+        mFrameIndex = 0;
+        mLimits = new float[lookAhead + 1];
+        mLimitPosition = 0;
+        mShelfState = new double[2 * mChannelCount];
+        mHighPassState = new double[2 * mChannelCount];
+        mShelf = highShelf(sampleRate, 1681.9744509555319, 3.99984385397, 0.7071752369554193);
+        mHighPass = highPass(sampleRate, 38.13547087613982, 0.5003270373253953);
+        mLevelCoefficient = DspUtils.timeToCoefficient(mWindowMs, sampleRate);
+        mAttackCoefficient = DspUtils.timeToCoefficient(mAttackMs, sampleRate);
+        mReleaseCoefficient = DspUtils.timeToCoefficient(mReleaseMs, sampleRate);
+        mMaxGain = DspUtils.dbToGain(mMaxGainDb);
+        mMinGain = DspUtils.dbToGain(mMinGainDb);
+        Arrays.fill(mLimits, mMaxGain);
+        mLimitSum = (double) mMaxGain * mLimits.length;
+        mLevel = 0;
+        mDesiredGain = 1f;
+        mGain = 1f;
+        mUpdateCounter = 0;
+        mCurrentGainDb = 0f;
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        boolean loudness = mMode == Mode.LOUDNESS;
+        float[] delay = mDelay;
+        int position = mDelayPosition;
+        double level = mLevel;
+        float desired = mDesiredGain;
+        float gain = mGain;
+        float applied = gain;
+        int end = offset + length - length % channels;
+        for (int i = offset; i < end; i += channels) {
+            double energy = 0;
+            float peak = 0f;
+            for (int c = 0; c < channels; c++) {
+                float x = buffer[i + c];
+                float abs = Math.abs(x);
+                if (abs > peak) {
+                    peak = abs;
+                }
+                double v = x / DspUtils.FULL_SCALE;
+                if (loudness) {
+                    v = biquad(mShelf, mShelfState, c, v);
+                    v = biquad(mHighPass, mHighPassState, c, v);
+                }
+                energy += v * v;
+            }
+            if (!loudness) {
+                energy /= channels;
+            }
+            level = mLevelCoefficient * level + (1 - mLevelCoefficient) * energy;
+            if (++mUpdateCounter >= UPDATE_INTERVAL) {
+                mUpdateCounter = 0;
+                desired = desiredGain(level, desired);
+            }
+            float coefficient = desired < gain ? mAttackCoefficient : mReleaseCoefficient;
+            gain = coefficient * gain + (1 - coefficient) * desired;
+            // 前视窗口内的峰值保护 窗口内每一帧的保护增益都不超过即将输出的采样的上限
+            // 平均后增益在lookAhead帧内线性下降 峰值输出时正好到位
+            float windowPeak = pushPeak(peak);
+            float limit = windowPeak * mMaxGain > CEILING ? CEILING / windowPeak : mMaxGain;
+            mLimitSum += limit - mLimits[mLimitPosition];
+            mLimits[mLimitPosition] = limit;
+            if (++mLimitPosition == mLimits.length) {
+                mLimitPosition = 0;
+            }
+            applied = Math.min(gain, (float) (mLimitSum / mLimits.length));
+            // 峰值过后增益按释放时间恢复
+            gain = applied;
+            for (int c = 0; c < channels; c++) {
+                float delayed = delay[position + c];
+                delay[position + c] = buffer[i + c];
+                buffer[i + c] = DspUtils.clip(delayed * applied);
+            }
+            position += channels;
+            if (position >= delay.length) {
+                position = 0;
+            }
+        }
+        mDelayPosition = position;
+        mLevel = level;
+        mDesiredGain = desired;
+        mGain = gain;
+        mCurrentGainDb = DspUtils.gainToDb(applied);
+    }
+
+    /**
+     * 当前帧的峰值加入单调队列 移出已经离开前视窗口的帧
+     *
+     * @return 前视窗口内的最大峰值
+     */
+    private float pushPeak(float peak) {
+        float[] values = mPeakValues;
+        int[] frames = mPeakFrames;
+        int capacity = values.length;
+        int frame = mFrameIndex++;
+        if (mPeakCount > 0 && frame - frames[mPeakHead] >= capacity) {
+            mPeakHead = (mPeakHead + 1) % capacity;
+            mPeakCount--;
+        }
+        while (mPeakCount > 0 && values[(mPeakHead + mPeakCount - 1) % capacity] <= peak) {
+            mPeakCount--;
+        }
+        int tail = (mPeakHead + mPeakCount) % capacity;
+        values[tail] = peak;
+        frames[tail] = frame;
+        mPeakCount++;
+        return values[mPeakHead];
+    }
+
+    private float desiredGain(double level, float previous) {
+        double levelDb = 10 * Math.log10(Math.max(level, 1e-12));
+        if (mMode == Mode.LOUDNESS) {
+            levelDb -= 0.691;
+        }
+        if (levelDb < mGateDb) {
+            return previous;
+        }
+        float gain = (float) Math.pow(10, (mTargetDb - levelDb) / 20);
+        return Math.max(mMinGain, Math.min(mMaxGain, gain));
+    }
+
+    /**
+     * 直接II型转置结构的二阶滤波 state中每个声道占两个位置
+     */
+    private static double biquad(double[] coefficients, double[] state, int channel, double x) {
+        int s = channel * 2;
+        double y = coefficients[0] * x + state[s];
+        state[s] = coefficients[1] * x - coefficients[3] * y + state[s + 1];
+        state[s + 1] = coefficients[2] * x - coefficients[4] * y;
+        return y;
+    }
+
+    /**
+     * K计权第一级 高频搁架 返回 b0 b1 b2 a1 a2 (a0归一化)
+     */
+    private static double[] highShelf(int sampleRate, double frequency, double gainDb, double q) {
+        double a = Math.pow(10, gainDb / 40);
+        double w0 = 2 * Math.PI * frequency / sampleRate;
+        double alpha = Math.sin(w0) / (2 * q);
+        double cos = Math.cos(w0);
+        double sqrtA = Math.sqrt(a);
+        double b0 = a * ((a + 1) + (a - 1) * cos + 2 * sqrtA * alpha);
+        double b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+        double b2 = a * ((a + 1) + (a - 1) * cos - 2 * sqrtA * alpha);
+        double a0 = (a + 1) - (a - 1) * cos + 2 * sqrtA * alpha;
+        double a1 = 2 * ((a - 1) - (a + 1) * cos);
+        double a2 = (a + 1) - (a - 1) * cos - 2 * sqrtA * alpha;
+        return new double[]{b0 / a0, b1 / a0, b2 / a0, a1 / a0, a2 / a0};
+    }
+
+    /**
+     * K计权第二级 高通 返回 b0 b1 b2 a1 a2 (a0归一化)
+     */
+    private static double[] highPass(int sampleRate, double frequency, double q) {
+        double w0 = 2 * Math.PI * frequency / sampleRate;
+        double alpha = Math.sin(w0) / (2 * q);
+        double cos = Math.cos(w0);
+        double a0 = 1 + alpha;
+        return new double[]{(1 + cos) / 2 / a0, -(1 + cos) / a0, (1 + cos) / 2 / a0,
+                -2 * cos / a0, (1 - alpha) / a0};
+    }
+}
@@ -0,0 +1,127 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 交错排列的多声道数据和按声道排列的float数据之间的转换 以及混合成单声道
+ * <p>
+ * 单声道和立体声单独展开 其他声道数按声道逐个处理 每次只写一个连续的输出数组 不分配内存
+ * 输出的float保持16位PCM的数值范围 不做归一化
+ */
+
+public final class ChannelMixer {
+
+    private ChannelMixer() {
+    }
+
+    /**
+     * 交错排列拆成每个声道一个数组
+     *
+     * @param in        交错排列的16位PCM
+     * @param offset    起始位置
+     * @param frames    帧数 每帧包含所有声道各一个采样点
+     * @param channels  声道数
+     * @param out       每个声道的输出 至少channels个 每个长度至少outOffset+frames
+     * @param outOffset 输出的起始位置
+     */
+    public static void deinterleave(short[] in, int offset, int frames, int channels, float[][] out, int outOffset) {
+        if (channels == 1) {
+            float[] mono = out[0];
+            for (int i = 0; i < frames; i++) {
+                mono[outOffset + i] = in[offset + i];
+            }
+            return;
+        }
+        if (channels == 2) {
+            float[] left = out[0];
+            float[] right = out[1];
+            for (int i = 0, p = offset; i < frames; i++, p += 2) {
+                left[outOffset + i] = in[p];
+                right[outOffset + i] = in[p + 1];
+            }
+            return;
+        }
+        for (int c = 0; c < channels; c++) {
+            float[] plane = out[c];
+            for (int i = 0, p = offset + c; i < frames; i++, p += channels) {
+                plane[outOffset + i] = in[p];
+            }
+        }
+    }
+
+    /**
+     * 每个声道的数组合并成交错排列 超出16位范围的部分削波
+     *
+     * @param in       每个声道的数据
+     * @param inOffset 输入的起始位置
+     * @param frames   帧数
+     * @param channels 声道数
+     * @param out      交错排列的输出 长度至少offset+frames*channels
+     * @param offset   输出的起始位置
+     */
+    public static void interleave(float[][] in, int inOffset, int frames, int channels, short[] out, int offset) {
+        for (int c = 0; c < channels; c++) {
+            float[] plane = in[c];
+            for (int i = 0, p = offset + c; i < frames; i++, p += channels) {
+                out[p] = DspUtils.clip(plane[inOffset + i]);
+            }
+        }
+    }
+
+    /**
+     * 所有声道取平均混合成单声道
+     *
+     * @param in        交错排列的16位PCM
+     * @param offset    起始位置
+     * @param frames    帧数
+     * @param channels  声道数
+     * @param out       单声道输出
+     * @param outOffset 输出的起始位置
+     */
+    public static void downmix(short[] in, int offset, int frames, int channels, float[] out, int outOffset) {
+        if (channels == 1) {
+            for (int i = 0; i < frames; i++) {
+                out[outOffset + i] = in[offset + i];
+            }
+            return;
+        }
+        if (channels == 2) {
+            for (int i = 0, p = offset; i < frames; i++, p += 2) {
+                out[outOffset + i] = (in[p] + in[p + 1]) * 0.5f;
+            }
+            return;
+        }
+        float scale = 1f / channels;
+        for (int i = 0, p = offset; i < frames; i++, p += channels) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += in[p + c];
+            }
+            out[outOffset + i] = sum * scale;
+        }
+    }
+
+    /**
+     * 按权重混合成单声道 例如只取部分麦克风或者做固定的波束合成
+     *
+     * @param in        交错排列的16位PCM
+     * @param offset    起始位置
+     * @param frames    帧数
+     * @param channels  声道数
+     * @param weights   每个声道的权重 长度至少channels 权重为0的声道跳过
+     * @param out       单声道输出
+     * @param outOffset 输出的起始位置
+     */
+    public static void mix(short[] in, int offset, int frames, int channels, float[] weights, float[] out, int outOffset) {
+        for (int i = 0; i < frames; i++) {
+            out[outOffset + i] = 0f;
+        }
+        for (int c = 0; c < channels; c++) {
+            float weight = weights[c];
+            if (weight == 0f) {
+                continue;
+            }
+            for (int i = 0, p = offset + c; i < frames; i++, p += channels) {
+                out[outOffset + i] += weight * in[p];
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 处理器中用到的工具方法
+ */
+
+final class DspUtils {
+
+    static final float FULL_SCALE = 32768f;
+
+    private DspUtils() {
+    }
+
+    /**
+     * 分贝转换成线性增益
+     */
+    static float dbToGain(float db) {
+        return (float) Math.pow(10, db / 20.0);
+    }
+
+    /**
+     * 线性增益转换成分贝
+     */
+    static float gainToDb(float gain) {
+        return (float) (20 * Math.log10(Math.max(gain, 1e-10f)));
+    }
+
+    /**
+     * 时间常数转换成一阶平滑系数 timeMs为0时不做平滑
+     */
+    static float timeToCoefficient(float timeMs, int sampleRate) {
+        if (timeMs <= 0 || sampleRate <= 0) {
+            return 0f;
+        }
+        return (float) Math.exp(-1.0 / (timeMs * 0.001 * sampleRate));
+    }
+
+    /**
+     * 限制在16位PCM的范围内
+     */
+    static short clip(float sample) {
+        if (sample > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (sample < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) sample;
+    }
+}
@@ -0,0 +1,120 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 交错排列的多声道数据的按声道视图 不复制数据 读写都直接作用在原数组上
+ * <p>
+ * 每个声道是一个{@link Plane} 第i个采样点在原数组中的位置是 offset + i * channelCount + channel
+ * 视图和所有Plane在构造时创建 每帧只需要{@link #wrap(short[], int, int)} 不会分配内存
+ * <p>
+ * 需要连续的float数组做FFT等运算时 用{@link ChannelMixer#deinterleave(short[], int, int, int, float[][], int)}
+ */
+
+public class FrameView {
+
+    private final int mChannelCount;
+    private final Plane[] mPlanes;
+    private short[] mBuffer;
+    private int mOffset;
+    private int mFrameCount;
+
+    /**
+     * 一个声道的采样点 下标是帧序号
+     */
+    public final class Plane {
+        private final int mChannel;
+
+        private Plane(int channel) {
+            this.mChannel = channel;
+        }
+
+        public short get(int frame) {
+            return mBuffer[mOffset + frame * mChannelCount + mChannel];
+        }
+
+        public void set(int frame, short value) {
+            mBuffer[mOffset + frame * mChannelCount + mChannel] = value;
+        }
+
+        /**
+         * 采样点数 等于视图的帧数
+         */
+        public int size() {
+            return mFrameCount;
+        }
+
+        public int getChannel() {
+            return mChannel;
+        }
+
+        /**
+         * 第一个采样点在原数组中的位置 和{@link #getStride()}一起用于自己写循环
+         */
+        public int getStart() {
+            return mOffset + mChannel;
+        }
+
+        /**
+         * 相邻采样点在原数组中的间隔 等于声道数
+         */
+        public int getStride() {
+            return mChannelCount;
+        }
+
+        public short[] getArray() {
+            return mBuffer;
+        }
+    }
+
+    public FrameView(int channelCount) {
+        if (channelCount < 1) {
+            throw new IllegalArgumentException("invalid channel count " + channelCount);
+        }
+        this.mChannelCount = channelCount;
+        this.mPlanes = new Plane[channelCount];
+        for (int c = 0; c < channelCount; c++) {
+            mPlanes[c] = new Plane(c);
+        }
+    }
+
+    /**
+     * 指向一段交错排列的数据 不完整的最后一帧会被忽略
+     *
+     * @param buffer 16位PCM数据
+     * @param offset 起始位置
+     * @param length 数据长度 单位为short
+     */
+    public FrameView wrap(short[] buffer, int offset, int length) {
+        this.mBuffer = buffer;
+        this.mOffset = offset;
+        this.mFrameCount = length / mChannelCount;
+        return this;
+    }
+
+    public Plane plane(int channel) {
+        return mPlanes[channel];
+    }
+
+    public short get(int channel, int frame) {
+        return mBuffer[mOffset + frame * mChannelCount + channel];
+    }
+
+    public void set(int channel, int frame, short value) {
+        mBuffer[mOffset + frame * mChannelCount + channel] = value;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public short[] getArray() {
+        return mBuffer;
+    }
+
+    public int getOffset() {
+        return mOffset;
+    }
+}
@@ -0,0 +1,41 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 固定增益 超出16位范围的部分直接削波
+ */
+
+public class GainProcessor implements AudioProcessor {
+
+    private volatile float mGain;
+
+    /**
+     * @param gainDb 增益 单位dB
+     */
+    public GainProcessor(float gainDb) {
+        setGainDb(gainDb);
+    }
+
+    public void setGainDb(float gainDb) {
+        this.mGain = DspUtils.dbToGain(gainDb);
+    }
+
+    public float getGainDb() {
+        return DspUtils.gainToDb(mGain);
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        float gain = mGain;
+        if (gain == 1f) {
+            return;
+        }
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            buffer[i] = DspUtils.clip(buffer[i] * gain);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 一阶高通滤波 默认截止频率很低时即为去直流(DC block)
+ * <pre>
+ *     y[n] = x[n] - x[n-1] + R * y[n-1]
+ * </pre>
+ */
+
+public class HighPassProcessor implements AudioProcessor {
+
+    /**
+     * 去直流时使用的截止频率
+     */
+    public static final float DC_BLOCK_CUTOFF_HZ = 10f;
+
+    private final float mCutoffHz;
+    private float mR;
+    private int mChannelCount = 1;
+    private float[] mLastInput = new float[1];
+    private float[] mLastOutput = new float[1];
+
+    /**
+     * 去直流滤波器
+     */
+    public HighPassProcessor() {
+        this(DC_BLOCK_CUTOFF_HZ);
+    }
+
+    /**
+     * @param cutoffHz 截止频率 单位Hz
+     */
+    public HighPassProcessor(float cutoffHz) {
+        this.mCutoffHz = cutoffHz;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        mR = (float) Math.exp(-2 * Math.PI * mCutoffHz / sampleRate);
+        mChannelCount = Math.max(1, channelCount);
+        mLastInput = new float[mChannelCount];
+        mLastOutput = new float[mChannelCount];
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        float r = mR;
+        float[] lastInput = mLastInput;
+        float[] lastOutput = mLastOutput;
+        int end = offset + length;
+        int channel = 0;
+        for (int i = offset; i < end; i++) {
+            float x = buffer[i];
+            float y = x - lastInput[channel] + r * lastOutput[channel];
+            lastInput[channel] = x;
+            lastOutput[channel] = y;
+            buffer[i] = DspUtils.clip(y);
+            if (++channel == channels) {
+                channel = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 峰值限制器 瞬时压低超过上限的峰值 之后按释放时间慢慢恢复 多声道时所有声道共用一个增益
+ */
+
+public class LimiterProcessor implements AudioProcessor {
+
+    private final float mCeiling;
+    private final float mReleaseMs;
+    private float mReleaseCoefficient;
+    private int mChannelCount = 1;
+    private float mGain = 1f;
+    private volatile float mMinGain = 1f;
+
+    /**
+     * @param ceilingDb 输出上限 单位dBFS 例如 -1
+     * @param releaseMs 增益恢复的时间
+     */
+    public LimiterProcessor(float ceilingDb, float releaseMs) {
+        this.mCeiling = DspUtils.dbToGain(ceilingDb) * DspUtils.FULL_SCALE;
+        this.mReleaseMs = releaseMs;
+    }
+
+    public LimiterProcessor(float ceilingDb) {
+        this(ceilingDb, 80f);
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        mChannelCount = Math.max(1, channelCount);
+        mReleaseCoefficient = DspUtils.timeToCoefficient(mReleaseMs, sampleRate);
+        mGain = 1f;
+        mMinGain = 1f;
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        float ceiling = mCeiling;
+        float gain = mGain;
+        float minGain = mMinGain;
+        int end = offset + length - length % channels;
+        for (int i = offset; i < end; i += channels) {
+            float peak = 0f;
+            for (int c = 0; c < channels; c++) {
+                float v = Math.abs((float) buffer[i + c]);
+                if (v > peak) {
+                    peak = v;
+                }
+            }
+            gain = mReleaseCoefficient * gain + (1 - mReleaseCoefficient);
+            if (peak * gain > ceiling) {
+                gain = ceiling / peak;
+            }
+            if (gain < minGain) {
+                minGain = gain;
+            }
+            for (int c = 0; c < channels; c++) {
+                buffer[i + c] = DspUtils.clip(buffer[i + c] * gain);
+            }
+        }
+        mGain = gain;
+        mMinGain = minGain;
+    }
+
+    /**
+     * 本次录音中最大的增益衰减 单位dB
+     */
+    public float getMaxReductionDb() {
+        return -DspUtils.gainToDb(mMinGain);
+    }
+}
@@ -0,0 +1,91 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 噪声门 电平低于阈值并持续超过保持时间后衰减到静音 多声道时所有声道共用一个增益
+ */
+
+public class NoiseGateProcessor implements AudioProcessor {
+
+    private final float mThreshold;
+    private final float mAttackMs;
+    private final float mReleaseMs;
+    private final float mHoldMs;
+    private float mEnvelopeCoefficient;
+    private float mAttackCoefficient;
+    private float mReleaseCoefficient;
+    private int mHoldSamples;
+    private int mChannelCount = 1;
+    private float mEnvelope;
+    private float mGain;
+    private int mHoldCounter;
+
+    /**
+     * @param thresholdDb 门限 单位dBFS 例如 -50
+     * @param attackMs    打开门的时间
+     * @param holdMs      电平低于门限后保持打开的时间
+     * @param releaseMs   关闭门的时间
+     */
+    public NoiseGateProcessor(float thresholdDb, float attackMs, float holdMs, float releaseMs) {
+        this.mThreshold = DspUtils.dbToGain(thresholdDb) * DspUtils.FULL_SCALE;
+        this.mAttackMs = attackMs;
+        this.mHoldMs = holdMs;
+        this.mReleaseMs = releaseMs;
+    }
+
+    public NoiseGateProcessor(float thresholdDb) {
+        this(thresholdDb, 1f, 100f, 150f);
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        mChannelCount = Math.max(1, channelCount);
+        mEnvelopeCoefficient = DspUtils.timeToCoefficient(5f, sampleRate);
+        mAttackCoefficient = DspUtils.timeToCoefficient(mAttackMs, sampleRate);
+        mReleaseCoefficient = DspUtils.timeToCoefficient(mReleaseMs, sampleRate);
+        mHoldSamples = (int) (mHoldMs * sampleRate / 1000);
+        mEnvelope = 0f;
+        mGain = 0f;
+        mHoldCounter = 0;
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        float envelope = mEnvelope;
+        float gain = mGain;
+        int holdCounter = mHoldCounter;
+        int end = offset + length - length % channels;
+        for (int i = offset; i < end; i += channels) {
+            float peak = 0f;
+            for (int c = 0; c < channels; c++) {
+                float v = Math.abs((float) buffer[i + c]);
+                if (v > peak) {
+                    peak = v;
+                }
+            }
+            if (peak > envelope) {
+                envelope = peak;
+            } else {
+                envelope = mEnvelopeCoefficient * envelope + (1 - mEnvelopeCoefficient) * peak;
+            }
+            float target;
+            if (envelope >= mThreshold) {
+                holdCounter = mHoldSamples;
+                target = 1f;
+            } else if (holdCounter > 0) {
+                holdCounter--;
+                target = 1f;
+            } else {
+                target = 0f;
+            }
+            float coefficient = target > gain ? mAttackCoefficient : mReleaseCoefficient;
+            gain = coefficient * gain + (1 - coefficient) * target;
+            for (int c = 0; c < channels; c++) {
+                buffer[i + c] = (short) (buffer[i + c] * gain);
+            }
+        }
+        mEnvelope = envelope;
+        mGain = gain;
+        mHoldCounter = holdCounter;
+    }
+}
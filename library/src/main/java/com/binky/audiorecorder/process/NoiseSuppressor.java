@@ -0,0 +1,213 @@
+package com.binky.audiorecorder.process;
+
+import com.binky.audiorecorder.utils.Fft;
+
+/**
+ * 实时降噪 基于STFT的谱减/维纳滤波
+ * <p>
+ * 使用sqrt-hann窗、50%重叠的短时傅里叶变换逐帧处理 在判定为噪声的频点上跟踪噪声功率谱
+ * 用判决引导(decision-directed)的先验信噪比计算维纳增益并做时间平滑 增益不低于设定的最大降噪量
+ * 输出相对输入有一个分析帧长度的延时 所有缓冲在prepare中创建
+ */
+
+public class NoiseSuppressor implements AudioProcessor {
+
+    /**
+     * 开始录音后用于初始化噪声谱的帧数
+     */
+    private static final int INIT_FRAMES = 10;
+    /**
+     * 判决引导的平滑系数
+     */
+    private static final float DD_ALPHA = 0.98f;
+    /**
+     * 非语音帧上噪声谱的更新系数
+     */
+    private static final float NOISE_ALPHA = 0.95f;
+    /**
+     * 频点的后验信噪比低于该值认为是噪声
+     */
+    private static final float SPEECH_THRESHOLD = 4f;
+    /**
+     * 语音频点上噪声谱每帧的上升比例
+     */
+    private static final float NOISE_RISE = 1.002f;
+
+    private final float mGainFloor;
+    private final int mFixedFrameSize;
+    private int mFrameSize;
+    private int mHopSize;
+    private int mBins;
+    private int mChannelCount = 1;
+    private Fft mFft;
+    private float[] mWindow;
+    private float[] mRe;
+    private float[] mIm;
+    private float[] mPower;
+    private float[] mGain;
+    private ChannelState[] mStates;
+
+    /**
+     * 每个声道独立的状态
+     */
+    private static class ChannelState {
+        float[] input;
+        float[] overlap;
+        float[] output;
+        float[] noise;
+        float[] prevCleanPower;
+        int hopPosition;
+        int frames;
+    }
+
+    /**
+     * @param maxReductionDb 最大降噪量 单位dB 例如 15
+     */
+    public NoiseSuppressor(float maxReductionDb) {
+        this(maxReductionDb, 0);
+    }
+
+    /**
+     * @param maxReductionDb 最大降噪量 单位dB
+     * @param frameSize      分析帧长度 必须是2的整数次幂 0表示根据采样率选择约10~20ms
+     */
+    public NoiseSuppressor(float maxReductionDb, int frameSize) {
+        this.mGainFloor = DspUtils.dbToGain(-Math.abs(maxReductionDb));
+        this.mFixedFrameSize = frameSize;
+    }
+
+    public NoiseSuppressor() {
+        this(15f);
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        mFrameSize = mFixedFrameSize > 0 ? mFixedFrameSize : Integer.highestOneBit(Math.max(64, sampleRate / 50));
+        mHopSize = mFrameSize / 2;
+        mBins = mFrameSize / 2 + 1;
+        mChannelCount = Math.max(1, channelCount);
+        if (mFft == null || mFft.size() != mFrameSize) {
+            mFft = new Fft(mFrameSize);
+        }
+        mWindow = new float[mFrameSize];
+        for (int i = 0; i < mFrameSize; i++) {
+            mWindow[i] = (float) Math.sqrt(0.5 - 0.5 * Math.cos(2 * Math.PI * i / mFrameSize));
+        }
+        mRe = new float[mFrameSize];
+        mIm = new float[mFrameSize];
+        mPower = new float[mBins];
+        mGain = new float[mBins];
+        mStates = new ChannelState[mChannelCount];
+        for (int c = 0; c < mChannelCount; c++) {
+            ChannelState state = new ChannelState();
+            state.input = new float[mFrameSize];
+            state.overlap = new float[mFrameSize];
+            state.output = new float[mHopSize];
+            state.noise = new float[mBins];
+            state.prevCleanPower = new float[mBins];
+            mStates[c] = state;
+        }
+    }
+
+    /**
+     * 处理延时 单位为每声道的采样数
+     */
+    public int getLatencySamples() {
+        return mFrameSize;
+    }
+
+    @Override
+    public void process(short[] buffer, int offset, int length) {
+        int channels = mChannelCount;
+        int hop = mHopSize;
+        int tail = mFrameSize - hop;
+        int end = offset + length;
+        int channel = 0;
+        for (int i = offset; i < end; i++) {
+            ChannelState state = mStates[channel];
+            int position = state.hopPosition;
+            float x = buffer[i];
+            buffer[i] = DspUtils.clip(state.output[position]);
+            state.input[tail + position] = x;
+            if (++position == hop) {
+                processFrame(state);
+                position = 0;
+            }
+            state.hopPosition = position;
+            if (++channel == channels) {
+                channel = 0;
+            }
+        }
+    }
+
+    private void processFrame(ChannelState state) {
+        int n = mFrameSize;
+        int hop = mHopSize;
+        float[] re = mRe;
+        float[] im = mIm;
+        float[] window = mWindow;
+        for (int i = 0; i < n; i++) {
+            re[i] = state.input[i] * window[i];
+            im[i] = 0f;
+        }
+        mFft.forward(re, im);
+
+        float[] power = mPower;
+        float[] noise = state.noise;
+        for (int k = 0; k < mBins; k++) {
+            power[k] = re[k] * re[k] + im[k] * im[k];
+        }
+        if (state.frames < INIT_FRAMES) {
+            // 录音开头认为是噪声 用平均值初始化噪声谱
+            float weight = 1f / (state.frames + 1);
+            for (int k = 0; k < mBins; k++) {
+                noise[k] += (power[k] - noise[k]) * weight;
+            }
+            state.frames++;
+        } else {
+            for (int k = 0; k < mBins; k++) {
+                if (power[k] < SPEECH_THRESHOLD * noise[k]) {
+                    noise[k] = NOISE_ALPHA * noise[k] + (1 - NOISE_ALPHA) * power[k];
+                } else {
+                    // 判定为语音的频点上噪声谱缓慢上升 避免噪声估计偏低后无法恢复
+                    noise[k] *= NOISE_RISE;
+                }
+            }
+        }
+
+        float[] gain = mGain;
+        float[] prevClean = state.prevCleanPower;
+        float floor = mGainFloor;
+        for (int k = 0; k < mBins; k++) {
+            float n0 = noise[k] + 1e-6f;
+            float posterior = power[k] / n0;
+            float prior = DD_ALPHA * prevClean[k] / n0 + (1 - DD_ALPHA) * Math.max(posterior - 1f, 0f);
+            float g = prior / (1f + prior);
+            if (g < floor) {
+                g = floor;
+            }
+            gain[k] = g;
+            prevClean[k] = g * g * power[k];
+        }
+        for (int k = 0; k < mBins; k++) {
+            re[k] *= gain[k];
+            im[k] *= gain[k];
+            if (k > 0 && k < n - k) {
+                re[n - k] *= gain[k];
+                im[n - k] *= gain[k];
+            }
+        }
+        mFft.inverse(re, im);
+
+        float[] overlap = state.overlap;
+        for (int i = 0; i < n; i++) {
+            overlap[i] += re[i] * window[i];
+        }
+        System.arraycopy(overlap, 0, state.output, 0, hop);
+        System.arraycopy(overlap, hop, overlap, 0, n - hop);
+        for (int i = n - hop; i < n; i++) {
+            overlap[i] = 0f;
+        }
+        System.arraycopy(state.input, hop, state.input, 0, n - hop);
+    }
+}
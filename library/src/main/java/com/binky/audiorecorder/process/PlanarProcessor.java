@@ -0,0 +1,36 @@
+package com.binky.audiorecorder.process;
+
+/**
+ * 按声道处理数据的处理器基类 子类通过{@link FrameView}访问每个声道 不需要自己计算交错排列的下标
+ * <p>
+ * 视图在prepare时按声道数创建 每帧复用
+ */
+
+public abstract class PlanarProcessor implements AudioProcessor {
+
+    private FrameView mView;
+
+    @Override
+    public void prepare(int sampleRate, int channelCount) {
+        int channels = Math.max(1, channelCount);
+        if (mView == null || mView.getChannelCount() != channels) {
+            mView = new FrameView(channels);
+        }
+        onPrepare(sampleRate, channels);
+    }
+
+    @Override
+    public final void process(short[] buffer, int offset, int length) {
+        process(mView.wrap(buffer, offset, length));
+    }
+
+    /**
+     * 每次录音开始前调用 用于创建缓冲并重置内部状态
+     */
+    protected abstract void onPrepare(int sampleRate, int channelCount);
+
+    /**
+     * 原地处理一帧 修改Plane中的采样点就是修改录音数据
+     */
+    protected abstract void process(FrameView view);
+}
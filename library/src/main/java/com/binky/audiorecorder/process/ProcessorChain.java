@@ -0,0 +1,127 @@
+package com.binky.audiorecorder.process;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 处理器链 按添加顺序依次执行 并统计每个处理器的耗时
+ * <p>
+ * 添加和移除处理器只会在下一次录音开始时生效
+ */
+
+public class ProcessorChain {
+
+    private final List<AudioProcessor> mProcessors = new ArrayList<>();
+    private AudioProcessor[] mActive = new AudioProcessor[0];
+    private long[] mTotalNanos = new long[0];
+    private long[] mMaxNanos = new long[0];
+    private volatile long mFrameCount;
+
+    public synchronized ProcessorChain add(AudioProcessor processor) {
+        if (processor != null && !mProcessors.contains(processor)) {
+            mProcessors.add(processor);
+        }
+        return this;
+    }
+
+    public synchronized ProcessorChain remove(AudioProcessor processor) {
+        mProcessors.remove(processor);
+        return this;
+    }
+
+    public synchronized ProcessorChain clear() {
+        mProcessors.clear();
+        return this;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mProcessors.isEmpty();
+    }
+
+    /**
+     * 录音开始前调用 准备所有处理器并清空耗时统计
+     */
+    public synchronized void prepare(int sampleRate, int channelCount) {
+        mActive = mProcessors.toArray(new AudioProcessor[mProcessors.size()]);
+        mTotalNanos = new long[mActive.length];
+        mMaxNanos = new long[mActive.length];
+        mFrameCount = 0;
+        for (AudioProcessor processor : mActive) {
+            processor.prepare(sampleRate, channelCount);
+        }
+    }
+
+    /**
+     * 依次执行所有处理器 在录音工作线程中调用
+     */
+    public void process(short[] buffer, int offset, int length) {
+        AudioProcessor[] active = mActive;
+        long[] totalNanos = mTotalNanos;
+        long[] maxNanos = mMaxNanos;
+        for (int i = 0; i < active.length; i++) {
+            long begin = System.nanoTime();
+            active[i].process(buffer, offset, length);
+            long cost = System.nanoTime() - begin;
+            totalNanos[i] += cost;
+            if (cost > maxNanos[i]) {
+                maxNanos[i] = cost;
+            }
+        }
+        mFrameCount++;
+    }
+
+    /**
+     * 本次录音实际执行的处理器数量
+     */
+    public int getActiveCount() {
+        return mActive.length;
+    }
+
+    public AudioProcessor getActive(int index) {
+        return mActive[index];
+    }
+
+    /**
+     * 处理过的帧数
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 第index个处理器的累计耗时 单位纳秒
+     */
+    public long getTotalNanos(int index) {
+        return mTotalNanos[index];
+    }
+
+    /**
+     * 第index个处理器单帧的最大耗时 单位纳秒
+     */
+    public long getMaxNanos(int index) {
+        return mMaxNanos[index];
+    }
+
+    /**
+     * 第index个处理器单帧的平均耗时 单位纳秒
+     */
+    public long getAverageNanos(int index) {
+        long frames = mFrameCount;
+        return frames == 0 ? 0 : mTotalNanos[index] / frames;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ProcessorChain{");
+        AudioProcessor[] active = mActive;
+        for (int i = 0; i < active.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(active[i].getClass().getSimpleName())
+                    .append(" avg=").append(getAverageNanos(i) / 1000).append("us")
+                    .append(" max=").append(getMaxNanos(i) / 1000).append("us");
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,170 @@
+package com.binky.audiorecorder.record;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.binky.audiorecorder.utils.Log;
+
+import androidx.annotation.RequiresApi;
+import androidx.annotation.RequiresPermission;
+
+/**
+ * 基于AudioRecord的录音设备
+ * <p>
+ * 位置掩码用AudioRecord的构造方法创建 {@link ChannelMask#fromIndexMask(int)}得到的索引掩码在API 23以上用AudioRecord.Builder创建
+ */
+
+public class AudioRecordSource implements CaptureSource {
+
+    private static final String TAG = "AudioRecordSource";
+    /**
+     * AudioRecord.getMinBufferSize 的探测结果缓存 key为 采样率/声道/格式
+     */
+    private static final Map<String, Integer> sMinBufferSizeCache = new HashMap<>();
+
+    private AudioRecord mAudioRecord;
+    private AudioTimestamp mTimestamp;
+
+    /**
+     * 带缓存的 AudioRecord.getMinBufferSize 同样的配置只探测一次
+     * 索引掩码和老版本不支持的多声道位置掩码 按单声道的结果乘以声道数估算
+     */
+    @Override
+    public int getMinBufferSize(int sampleRate, int channelConfig, int audioFormat) {
+        String key = sampleRate + "/" + channelConfig + "/" + audioFormat;
+        synchronized (sMinBufferSizeCache) {
+            Integer cached = sMinBufferSizeCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            int channelCount = ChannelMask.channelCount(channelConfig);
+            int size = ChannelMask.isIndexMask(channelConfig) ? AudioRecord.ERROR_BAD_VALUE
+                    : AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
+            if (size <= 0 && channelCount > 1) {
+                int mono = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO, audioFormat);
+                if (mono > 0) {
+                    size = mono * channelCount;
+                }
+            }
+            if (size > 0) {
+                sMinBufferSizeCache.put(key, size);
+            }
+            return size;
+        }
+    }
+
+    @RequiresPermission(android.Manifest.permission.RECORD_AUDIO)
+    @Override
+    public boolean open(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+        release();
+        if (ChannelMask.isIndexMask(channelConfig)) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                Log.e(TAG, "channel index mask requires API 23");
+                return false;
+            }
+            try {
+                mAudioRecord = buildWithIndexMask(audioSource, sampleRate, ChannelMask.getIndexMask(channelConfig),
+                        audioFormat, bufferSizeInBytes);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return false;
+            }
+        } else {
+            mAudioRecord = new AudioRecord(audioSource, sampleRate, channelConfig, audioFormat, bufferSizeInBytes);
+        }
+        if (mAudioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            mAudioRecord.release();
+            mAudioRecord = null;
+            return false;
+        }
+        if (mTimestamp == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mTimestamp = new AudioTimestamp();
+        }
+        return true;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.M)
+    @RequiresPermission(android.Manifest.permission.RECORD_AUDIO)
+    private static AudioRecord buildWithIndexMask(int audioSource, int sampleRate, int indexMask, int audioFormat,
+                                                  int bufferSizeInBytes) {
+        AudioFormat format = new AudioFormat.Builder()
+                .setSampleRate(sampleRate)
+                .setEncoding(audioFormat)
+                .setChannelIndexMask(indexMask)
+                .build();
+        return new AudioRecord.Builder()
+                .setAudioSource(audioSource)
+                .setAudioFormat(format)
+                .setBufferSizeInBytes(bufferSizeInBytes)
+                .build();
+    }
+
+    @Override
+    public boolean start() {
+        if (mAudioRecord == null) {
+            return false;
+        }
+        try {
+            mAudioRecord.startRecording();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return mAudioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        AudioRecord record = mAudioRecord;
+        return record == null ? -1 : record.read(buffer, offset, length);
+    }
+
+    @Override
+    public void stop() {
+        if (mAudioRecord == null) {
+            return;
+        }
+        try {
+            mAudioRecord.stop();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mAudioRecord == null) {
+            return;
+        }
+        try {
+            mAudioRecord.stop();
+            mAudioRecord.release();
+        } catch (Exception e) {
+            e.printStackTrace();
+            Log.e(TAG, "mAudioRecorder release error!");
+        }
+        mAudioRecord = null;
+    }
+
+    @Override
+    public boolean getTimestamp(long[] out) {
+        AudioRecord record = mAudioRecord;
+        if (mTimestamp == null || record == null
+                || record.getTimestamp(mTimestamp, AudioTimestamp.TIMEBASE_MONOTONIC) != AudioRecord.SUCCESS) {
+            return false;
+        }
+        out[0] = mTimestamp.framePosition;
+        out[1] = mTimestamp.nanoTime;
+        return true;
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
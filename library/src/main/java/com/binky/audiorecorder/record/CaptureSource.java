@@ -0,0 +1,60 @@
+package com.binky.audiorecorder.record;
+
+/**
+ * 录音数据的来源 默认是{@link AudioRecordSource}
+ * <p>
+ * {@link Recorder}只通过这个接口访问录音设备 测试时可以换成生成数据的实现 不需要真实设备
+ * 所有方法都在采集线程或者持有Recorder锁的线程中调用
+ */
+
+public interface CaptureSource {
+
+    /**
+     * 设备需要的最小缓冲区 单位字节
+     */
+    int getMinBufferSize(int sampleRate, int channelConfig, int audioFormat);
+
+    /**
+     * 创建录音设备
+     *
+     * @return 是否创建成功 没有录音权限或设备被占用时返回false
+     */
+    boolean open(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSizeInBytes);
+
+    /**
+     * 开始采集
+     *
+     * @return 是否已经处于采集状态
+     */
+    boolean start();
+
+    /**
+     * 阻塞读取交错排列的16位采样点
+     *
+     * @return 读到的采样点数 包括所有声道 出错时返回负数
+     */
+    int read(short[] buffer, int offset, int length);
+
+    /**
+     * 停止采集 设备保持打开 可以再次{@link #start()}
+     */
+    void stop();
+
+    /**
+     * 停止并释放设备
+     */
+    void release();
+
+    /**
+     * 读取设备时钟
+     *
+     * @param out out[0]为设备已经采集的单声道采样点数 out[1]为采集到该位置时的{@link #nanoTime()}
+     * @return 设备不支持时返回false 由读取返回的时间推算
+     */
+    boolean getTimestamp(long[] out);
+
+    /**
+     * 和{@link #getTimestamp(long[])}同一时基的当前时间 真实设备就是System.nanoTime
+     */
+    long nanoTime();
+}
@@ -0,0 +1,104 @@
+package com.binky.audiorecorder.record;
+
+import android.media.AudioFormat;
+
+/**
+ * 录音声道配置的解析
+ * <p>
+ * channelConfig可以是AudioFormat.CHANNEL_IN_*组成的位置掩码 也可以是{@link #fromIndexMask(int)}得到的索引掩码
+ * 索引掩码用于多麦克风阵列 每一位对应设备的一个输入通道 没有位置含义 需要API 23
+ * 和native层一样用最高两位区分两种表示
+ */
+
+public final class ChannelMask {
+
+    /**
+     * 索引掩码的标记位 对应native层的AUDIO_CHANNEL_REPRESENTATION_INDEX
+     */
+    public static final int INDEX_MASK_FLAG = 0x80000000;
+    private static final int MASK_BITS = 0x3FFFFFFF;
+
+    /**
+     * 老版本的CHANNEL_CONFIGURATION_* 常量
+     */
+    private static final int CONFIGURATION_DEFAULT = 1;
+    private static final int CONFIGURATION_MONO = 2;
+    private static final int CONFIGURATION_STEREO = 3;
+
+    /**
+     * WAVE_FORMAT_EXTENSIBLE的扬声器位置
+     */
+    private static final int SPEAKER_FRONT_LEFT = 0x1;
+    private static final int SPEAKER_FRONT_RIGHT = 0x2;
+    private static final int SPEAKER_FRONT_CENTER = 0x4;
+    private static final int SPEAKER_BACK_CENTER = 0x100;
+
+    private ChannelMask() {
+    }
+
+    /**
+     * 把索引掩码转换成channelConfig 例如0xF表示设备的前4个输入通道
+     */
+    public static int fromIndexMask(int indexMask) {
+        return INDEX_MASK_FLAG | (indexMask & MASK_BITS);
+    }
+
+    public static boolean isIndexMask(int channelConfig) {
+        return (channelConfig & INDEX_MASK_FLAG) != 0;
+    }
+
+    public static int getIndexMask(int channelConfig) {
+        return isIndexMask(channelConfig) ? channelConfig & MASK_BITS : 0;
+    }
+
+    /**
+     * 根据channelConfig计算声道数 和AudioFormat.channelCountFromInChannelMask一致
+     */
+    public static int channelCount(int channelConfig) {
+        if (isIndexMask(channelConfig)) {
+            return Integer.bitCount(channelConfig & MASK_BITS);
+        }
+        switch (channelConfig) {
+            case CONFIGURATION_DEFAULT:
+            case CONFIGURATION_MONO:
+                return 1;
+            case CONFIGURATION_STEREO:
+                return 2;
+            default:
+                return Integer.bitCount(channelConfig);
+        }
+    }
+
+    /**
+     * 转换成WAVE_FORMAT_EXTENSIBLE中的dwChannelMask
+     * <p>
+     * 左右前后四个位置对应到扬声器位置 其他输入(处理过的声道、传感器轴、通话上下行)和索引掩码没有对应的扬声器
+     * 只要有一个声道对应不上就返回0 表示声道和扬声器没有对应关系
+     */
+    public static int toWavChannelMask(int channelConfig) {
+        if (isIndexMask(channelConfig)) {
+            return 0;
+        }
+        int count = channelCount(channelConfig);
+        if (count == 1) {
+            return SPEAKER_FRONT_CENTER;
+        }
+        if (channelConfig == CONFIGURATION_STEREO) {
+            return SPEAKER_FRONT_LEFT | SPEAKER_FRONT_RIGHT;
+        }
+        int mask = 0;
+        if ((channelConfig & AudioFormat.CHANNEL_IN_LEFT) != 0) {
+            mask |= SPEAKER_FRONT_LEFT;
+        }
+        if ((channelConfig & AudioFormat.CHANNEL_IN_RIGHT) != 0) {
+            mask |= SPEAKER_FRONT_RIGHT;
+        }
+        if ((channelConfig & AudioFormat.CHANNEL_IN_FRONT) != 0) {
+            mask |= SPEAKER_FRONT_CENTER;
+        }
+        if ((channelConfig & AudioFormat.CHANNEL_IN_BACK) != 0) {
+            mask |= SPEAKER_BACK_CENTER;
+        }
+        return Integer.bitCount(mask) == count ? mask : 0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.binky.audiorecorder.record;
+
+/**
+ * 根据读取到的采样点数和录音设备的时钟给每一帧编号和打时间戳 并检测数据丢失
+ * <p>
+ * 设备已经采集但还没有被读走的采样点数(pending)正常情况下只在一个很小的范围内波动
+ * 读取不及时时pending会变大 但只要不超过AudioRecord的缓冲区就不会丢数据
+ * 超出缓冲区的部分就是溢出时丢失的采样点数
+ * 设备支持时用{@link CaptureSource#getTimestamp(long[])}得到设备时钟(AudioRecord在API 24以上) 否则用读取返回的时间推算
+ */
+
+class FrameClock {
+
+    private final FrameInfo mInfo = new FrameInfo();
+    private final long[] mTimestamp = new long[2];
+    private int mSampleRate;
+    private int mChannelCount;
+    private int mBufferFrames;
+    private long mSourceStartNanos;
+    private long mFramesRead;
+    private long mLostFrames;
+    private long mPendingBase;
+    private boolean mHasBase;
+    private long mSessionStart;
+    private long mSequence;
+    private long mSessionLostFrames;
+    private int mSessionGaps;
+    /**
+     * 暂停时本次录音已经到达的位置
+     */
+    private long mPausedPosition;
+    private long mPausedSequence;
+
+    /**
+     * 录音设备开始采集
+     *
+     * @param bufferFrames AudioRecord缓冲区能容纳的单声道采样点数
+     */
+    void onSourceStart(CaptureSource source, int sampleRate, int channelCount, int bufferFrames) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBufferFrames = bufferFrames;
+        mSourceStartNanos = source.nanoTime();
+        mFramesRead = 0;
+        mLostFrames = 0;
+        mHasBase = false;
+    }
+
+    /**
+     * 开始一次录音 下一次读取的数据是本次录音的第一帧
+     */
+    void onSessionStart() {
+        mSessionStart = mFramesRead + mLostFrames;
+        mSequence = 0;
+        mSessionLostFrames = 0;
+        mSessionGaps = 0;
+    }
+
+    /**
+     * 暂停录音 之后读取的数据不属于本次录音
+     */
+    void onSessionPause() {
+        mPausedPosition = mFramesRead + mLostFrames - mSessionStart;
+        mPausedSequence = mSequence;
+    }
+
+    /**
+     * 继续录音 下一次读取的数据接在暂停的位置之后 暂停期间的采样点不计入位置
+     * 暂停期间重新启动过设备时需要先调用{@link #onSourceStart(CaptureSource, int, int, int)}
+     */
+    void onSessionResume() {
+        mSessionStart = mFramesRead + mLostFrames - mPausedPosition;
+        mSequence = mPausedSequence;
+    }
+
+    /**
+     * 读取完成后调用
+     *
+     * @param source  录音设备
+     * @param samples 读到的采样点数 包括所有声道
+     * @return 这一帧的信息
+     */
+    FrameInfo onRead(CaptureSource source, int samples) {
+        long readEnd = source.nanoTime();
+        int frames = samples / mChannelCount;
+        long startFrame = mFramesRead + mLostFrames;
+        mFramesRead += frames;
+
+        boolean sourceClock = false;
+        long deviceNow;
+        if (source.getTimestamp(mTimestamp)) {
+            sourceClock = true;
+            deviceNow = mTimestamp[0] + (readEnd - mTimestamp[1]) * mSampleRate / 1000000000L;
+        } else {
+            deviceNow = (readEnd - mSourceStartNanos) * mSampleRate / 1000000000L;
+        }
+
+        long lost = 0;
+        long pending = deviceNow - (mFramesRead + mLostFrames);
+        // 缓冲区之外再留20ms给时钟的抖动
+        long threshold = mBufferFrames + mSampleRate / 50;
+        if (!mHasBase || pending < mPendingBase) {
+            mPendingBase = pending;
+            mHasBase = true;
+        } else if (pending - mPendingBase > threshold) {
+            // 溢出后缓冲区是满的 这次读走的frames个采样点也来自缓冲区
+            lost = pending - mPendingBase - (mBufferFrames - frames);
+            mLostFrames += lost;
+            startFrame += lost;
+        } else if (pending - mPendingBase < frames) {
+            // 两个时钟之间有微小的频率差 让基准慢慢跟上
+            mPendingBase += (pending - mPendingBase) >> 8;
+        }
+
+        FrameInfo info = mInfo;
+        info.sequence = mSequence++;
+        info.sampleIndex = startFrame - mSessionStart;
+        info.sampleCount = frames;
+        info.sourceClock = sourceClock;
+        if (sourceClock) {
+            info.timestampNanos = mTimestamp[1] + (startFrame - mTimestamp[0]) * 1000000000L / mSampleRate;
+        } else {
+            // 读取返回时还有(pending - lost - 基准)个采样点留在缓冲区 这一帧比它们更早
+            long backlog = Math.max(0, pending - lost - mPendingBase);
+            info.timestampNanos = readEnd - (frames + backlog) * 1000000000L / mSampleRate;
+        }
+        info.lostSamples = lost;
+        if (lost > 0) {
+            mSessionLostFrames += lost;
+            mSessionGaps++;
+        }
+        return info;
+    }
+
+    /**
+     * 本次录音检测到的丢失次数
+     */
+    int getSessionGaps() {
+        return mSessionGaps;
+    }
+
+    long getSessionLostFrames() {
+        return mSessionLostFrames;
+    }
+}
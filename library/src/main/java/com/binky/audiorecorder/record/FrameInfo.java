@@ -0,0 +1,75 @@
+package com.binky.audiorecorder.record;
+
+/**
+ * 每一帧录音数据的位置和时间信息 对象在一次录音中复用 只在回调期间有效
+ */
+
+public class FrameInfo {
+
+    long sequence;
+    long sampleIndex;
+    int sampleCount;
+    long timestampNanos;
+    boolean sourceClock;
+    long lostSamples;
+
+    /**
+     * 帧序号 每次录音从0开始连续递增
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 这一帧第一个采样点在本次录音中的位置 以单声道采样点计
+     * 丢失的数据也计入位置 所以发生丢帧后和已收到的采样点数不再相等
+     */
+    public long getSampleIndex() {
+        return sampleIndex;
+    }
+
+    /**
+     * 这一帧的单声道采样点数 读取不足时会小于一个完整的帧
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 这一帧第一个采样点的采集时间 System.nanoTime()时间基准
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * 时间戳是否来自录音设备的时钟(AudioRecord.getTimestamp) 否则是根据读取返回的时间推算的
+     */
+    public boolean isSourceClock() {
+        return sourceClock;
+    }
+
+    /**
+     * 这一帧之前检测到丢失的单声道采样点数 没有丢失时为0
+     */
+    public long getLostSamples() {
+        return lostSamples;
+    }
+
+    /**
+     * 这一帧之前是否发生了数据不连续
+     */
+    public boolean isDiscontinuity() {
+        return lostSamples > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameInfo{seq=" + sequence
+                + ", sampleIndex=" + sampleIndex
+                + ", samples=" + sampleCount
+                + ", timestamp=" + timestampNanos
+                + (sourceClock ? ", source" : ", system")
+                + (lostSamples > 0 ? ", lost=" + lostSamples : "") + "}";
+    }
+}
@@ -1,10 +1,10 @@
 package com.binky.audiorecorder.record;
 
 import android.media.AudioFormat;
-import android.media.AudioRecord;
 
 import com.binky.audiorecorder.AudioConst;
 import com.binky.audiorecorder.AudioRecorder;
+import com.binky.audiorecorder.trace.Trace;
 import com.binky.audiorecorder.utils.Log;
 
 import androidx.annotation.RequiresPermission;
@@ -17,57 +17,63 @@ public class Recorder {
     public static final int TIMER_INTERVAL = 100;
     private static final String TAG = "Recorder";
     private AudioRecorder.RecordConfig recordConfig;
-    private AudioRecord mAudioRecorder = null;
+    private CaptureSource mSource = new AudioRecordSource();
+    /**
+     * 录音设备已经创建
+     */
+    private volatile boolean mSourceOpened = false;
     private RecorderCallback mCallback;
     private int bufferSize;
-    private boolean isRecord = false;
+    private volatile boolean isRecord = false;
+    /**
+     * 录音暂停中 录音设备和文件都保持打开
+     */
+    private volatile boolean isPaused = false;
+    /**
+     * 暂停时是否停止录音设备 默认继续采集并丢弃数据 继续录音时没有启动延迟
+     */
+    private volatile boolean mStopSourceOnPause = false;
+    /**
+     * 预热模式 录音设备和采集线程在两次录音之间保持运行
+     */
+    private volatile boolean isWarm = false;
+    /**
+     * 当前AudioRecord是否已经startRecording
+     */
+    private volatile boolean mIsSourceStarted = false;
+    private boolean mIsSessionRunning = false;
+    /**
+     * 上一次录音收尾时调用了start 收尾完成后在采集线程中开始
+     */
+    private boolean mStartPending = false;
+    private String mInitializedKey;
+    private final Object mSessionLock = new Object();
     private Thread mThread = null;
     private short[] wave;
+    private final FrameClock mFrameClock = new FrameClock();
+    /**
+     * 预热模式下本次录音的第一帧已经在standby中投递
+     */
+    private boolean mSessionClockStarted;
     private Runnable RecordRun = new Runnable() {
 
         public void run() {
-            if ((mAudioRecorder!=null) && (mAudioRecorder.getState()==1)) {
-
-                try {
-                    mAudioRecorder.stop();
-                    mAudioRecorder.startRecording();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    recordFailed(AudioConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
-                    mAudioRecorder = null;
-                }
-            }
-            if ((mAudioRecorder!=null) &&
-                    (mAudioRecorder.getState()==1) && (mAudioRecorder.getRecordingState()==1)) {
-                Log.e(TAG, "no recorder permission or recorder is not available right now");
-                recordFailed(AudioConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
-                mAudioRecorder = null;
-            }
-            for (int i = 0; i < 2; i++) {
-                if (mAudioRecorder==null) {
-                    isRecord = false;
-                    break;
-                }
-                mAudioRecorder.read(wave, 0, wave.length);
-            }
-            while (isRecord) {
-                int nLen = 0;
-                try {
-                    nLen = mAudioRecorder.read(wave, 0, wave.length);
-                } catch (Exception e) {
-                    isRecord = false;
-                    recordFailed(AudioConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
+            while (true) {
+                boolean session;
+                synchronized (mSessionLock) {
+                    session = mIsSessionRunning;
+                    if (!session && !isWarm) {
+                        mThread = null;
+                        break;
+                    }
                 }
-                if (nLen==wave.length) {
-                    mCallback.onRecorded(wave);
+                if (session) {
+                    runSession();
                 } else {
-                    recordFailed(AudioConst.RecorderErrorCode.RECORDER_READ_ERROR);
-                    isRecord = false;
+                    standby();
                 }
             }
-            Log.i(TAG, "out of the reading while loop,i'm going to stop");
-            unInitializeRecord();
-            doRecordStop();
+            Log.i(TAG, "capture thread exit");
         }
     };
 
@@ -81,19 +87,177 @@ public class Recorder {
         this.recordConfig = config;
     }
 
+    /**
+     * 替换录音设备 只在没有录音也没有预热时生效
+     *
+     * @return 是否替换成功
+     */
+    public boolean setCaptureSource(CaptureSource source) {
+        synchronized (this) {
+            if (source == null || isRecord || isWarm || mSourceOpened) {
+                return false;
+            }
+            mSource = source;
+            return true;
+        }
+    }
+
+    public CaptureSource getCaptureSource() {
+        return mSource;
+    }
+
+    /**
+     * 预热录音设备 提前创建AudioRecord并启动采集线程 之后的{@link #start()}可以立即拿到数据
+     *
+     * @return 是否预热成功
+     */
+    @RequiresPermission(android.Manifest.permission.RECORD_AUDIO)
+    public boolean prepare() throws SecurityException {
+        synchronized (this) {
+            if (isWarm && configKey(recordConfig).equals(mInitializedKey)) {
+                return true;
+            }
+        }
+        if (isWarm) {
+            release();
+        }
+        synchronized (this) {
+            if (isRecord) {
+                Log.e(TAG, "prepare failed, recorder is recording");
+                return false;
+            }
+            if (!initializeRecord()) {
+                return false;
+            }
+            if (!mSource.start()) {
+                Log.e(TAG, "no recorder permission or recorder is not available right now");
+                unInitializeRecord();
+                return false;
+            }
+            mIsSourceStarted = true;
+            mFrameClock.onSourceStart(mSource, recordConfig.getSampleRate(), recordConfig.getChannelCount(), bufferSize / 2 / recordConfig.getChannelCount());
+            synchronized (mSessionLock) {
+                isWarm = true;
+                startCaptureThread();
+            }
+            Log.d(TAG, "recorder prepared");
+            return true;
+        }
+    }
+
+    /**
+     * 退出预热模式 释放录音设备 正在录音时会在本次录音结束后释放
+     */
+    public void release() {
+        Thread thread;
+        synchronized (mSessionLock) {
+            isWarm = false;
+            if (mIsSessionRunning) {
+                return;
+            }
+            thread = mThread;
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        unInitializeRecord();
+    }
+
+    public boolean isPrepared() {
+        return isWarm;
+    }
+
+    /**
+     * 设置暂停时是否停止录音设备
+     *
+     * @param stopSource true 暂停时调用AudioRecord.stop() 省电并且系统不再显示录音中 继续时重新startRecording
+     *                   false 暂停期间继续读取并丢弃数据 继续录音可以立即拿到数据
+     */
+    public void setStopSourceOnPause(boolean stopSource) {
+        this.mStopSourceOnPause = stopSource;
+    }
+
+    /**
+     * 暂停录音 采集线程在读完当前一帧后进入暂停
+     *
+     * @return 是否正在录音并且之前没有暂停
+     */
+    public boolean pause() {
+        synchronized (mSessionLock) {
+            if (!isRecord || isPaused) {
+                return false;
+            }
+            isPaused = true;
+            return true;
+        }
+    }
+
+    /**
+     * 继续录音
+     *
+     * @return 是否处于暂停状态
+     */
+    public boolean resume() {
+        synchronized (mSessionLock) {
+            if (!isPaused) {
+                return false;
+            }
+            isPaused = false;
+            mSessionLock.notifyAll();
+            return true;
+        }
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    /**
+     * 开始录音 上一次录音还在收尾时不阻塞调用线程 排队到收尾完成后在采集线程中开始 开始失败通过onRecordedFail通知
+     *
+     * @return 是否开始或者已经排队
+     */
     @RequiresPermission(android.Manifest.permission.RECORD_AUDIO)
     public boolean start() throws SecurityException {
+        synchronized (mSessionLock) {
+            if (mIsSessionRunning) {
+                if (isRecord) {
+                    Log.e(TAG, "start failed, recorder is recording");
+                    return false;
+                }
+                Log.d(TAG, "previous session is finishing, start queued");
+                mStartPending = true;
+                return true;
+            }
+        }
+        return startSession();
+    }
+
+    @RequiresPermission(android.Manifest.permission.RECORD_AUDIO)
+    private boolean startSession() throws SecurityException {
+        if (isWarm && !configKey(recordConfig).equals(mInitializedKey)) {
+            Log.d(TAG, "record config changed, prepare again");
+            if (!prepare()) {
+                return false;
+            }
+        }
+        isPaused = false;
         isRecord = true;
         synchronized (this) {
             if (doRecordReady()) {
                 Log.d(TAG, "doRecordReady");
-                if (initializeRecord()) {
+                if (isWarm || initializeRecord()) {
                     Log.d(TAG, "initializeRecord");
                     if (doRecordStart()) {
                         Log.d(TAG, "doRecordStart");
-
-                        mThread = new Thread(RecordRun);
-                        mThread.start();
+                        synchronized (mSessionLock) {
+                            mIsSessionRunning = true;
+                            startCaptureThread();
+                        }
                         return true;
                     }
                 }
@@ -105,28 +269,233 @@ public class Recorder {
 
 
     public void stop() {
-        synchronized (this) {
-            mThread = null;
+        synchronized (mSessionLock) {
             isRecord = false;
+            mStartPending = false;
+            // 唤醒暂停中等待的采集线程
+            mSessionLock.notifyAll();
         }
     }
 
     public void immediateStop() {
-        isRecord = false;
-        if (mThread!=null) {
-            try {
-                mThread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        stop();
+        awaitSessionEnd();
+    }
+
+    /**
+     * 等待当前录音结束 在采集线程中调用时直接返回
+     */
+    private void awaitSessionEnd() {
+        if (Thread.currentThread() == mThread) {
+            return;
+        }
+        synchronized (mSessionLock) {
+            while (mIsSessionRunning) {
+                try {
+                    mSessionLock.wait();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
             }
         }
-        mThread = null;
     }
 
     public boolean isStarted() {
         return isRecord;
     }
 
+    /**
+     * 需要持有mSessionLock 线程仍在运行时会在下一次循环中接手新的录音
+     */
+    private void startCaptureThread() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new Thread(RecordRun, "AudioRecorder-capture");
+        mThread.start();
+    }
+
+    /**
+     * 一次完整的录音 预热模式下设备已经在采集 直接投递下一帧数据
+     */
+    private void runSession() {
+        boolean coldStart = !mIsSourceStarted;
+        if (coldStart && mSourceOpened) {
+            mSource.stop();
+            if (mSource.start()) {
+                mIsSourceStarted = true;
+                mFrameClock.onSourceStart(mSource, recordConfig.getSampleRate(), recordConfig.getChannelCount(), bufferSize / 2 / recordConfig.getChannelCount());
+            } else {
+                Log.e(TAG, "no recorder permission or recorder is not available right now");
+                recordFailed(AudioConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
+                unInitializeRecord();
+            }
+        }
+        // 刚启动的设备丢掉前两帧
+        if (coldStart) {
+            for (int i = 0; i < 2; i++) {
+                if (!mSourceOpened) {
+                    isRecord = false;
+                    break;
+                }
+                int nLen = mSource.read(wave, 0, wave.length);
+                if (nLen > 0) {
+                    mFrameClock.onRead(mSource, nLen);
+                }
+            }
+        }
+        if (!mSessionClockStarted) {
+            mFrameClock.onSessionStart();
+        }
+        while (isRecord) {
+            if (isPaused) {
+                pauseSession();
+                continue;
+            }
+            int nLen = 0;
+            Trace.event(Trace.READ_BEGIN, wave.length);
+            try {
+                nLen = mSource.read(wave, 0, wave.length);
+            } catch (Exception e) {
+                isRecord = false;
+                recordFailed(AudioConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
+            }
+            // 读取不足一帧时按实际长度投递 位置和时间戳由FrameClock按采样点数计算 不会累积误差
+            if (nLen > 0) {
+                FrameInfo info = mFrameClock.onRead(mSource, nLen);
+                Trace.event(Trace.READ_END, nLen, info.getSampleIndex());
+                mCallback.onRecorded(wave, nLen, info);
+            } else if (isRecord) {
+                recordFailed(AudioConst.RecorderErrorCode.RECORDER_READ_ERROR);
+                isRecord = false;
+                isWarm = false;
+            }
+        }
+        isPaused = false;
+        Log.i(TAG, "out of the reading while loop,i'm going to stop");
+        mSessionClockStarted = false;
+        if (mFrameClock.getSessionGaps() > 0) {
+            Log.e(TAG, "detected " + mFrameClock.getSessionGaps() + " gaps, "
+                    + mFrameClock.getSessionLostFrames() + " samples lost");
+        }
+        if (!isWarm) {
+            unInitializeRecord();
+        }
+        doRecordStop();
+        boolean startPending;
+        synchronized (mSessionLock) {
+            startPending = mStartPending;
+            mStartPending = false;
+            // 排队的录音接着开始 保持运行状态 期间调用immediateStop会等到它结束
+            mIsSessionRunning = startPending;
+            mSessionLock.notifyAll();
+        }
+        // 采集线程会在下一次循环中接手排队的录音
+        if (startPending && !startSession()) {
+            synchronized (mSessionLock) {
+                mIsSessionRunning = false;
+                mSessionLock.notifyAll();
+            }
+            recordFailed(AudioConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
+        }
+    }
+
+    /**
+     * 暂停到继续或停止为止 录音设备、文件和内存会话都不关闭 暂停期间的数据不投递也不计入位置
+     */
+    private void pauseSession() {
+        long pauseNanos = System.nanoTime();
+        mFrameClock.onSessionPause();
+        Trace.event(Trace.STATE, Trace.STATE_PAUSE);
+        doRecordPause();
+        Log.d(TAG, "recorder paused, stop source " + mStopSourceOnPause);
+        if (mStopSourceOnPause) {
+            mSource.stop();
+            mIsSourceStarted = false;
+            synchronized (mSessionLock) {
+                while (isPaused && isRecord) {
+                    try {
+                        mSessionLock.wait();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                        isRecord = false;
+                    }
+                }
+            }
+            // 停止后预热模式还需要设备继续采集
+            if (isRecord || isWarm) {
+                if (!mSource.start()) {
+                    Log.e(TAG, "restart recording after pause failed");
+                    if (isRecord) {
+                        recordFailed(AudioConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
+                    }
+                    isRecord = false;
+                    isWarm = false;
+                } else {
+                    mIsSourceStarted = true;
+                    mFrameClock.onSourceStart(mSource, recordConfig.getSampleRate(), recordConfig.getChannelCount(), bufferSize / 2 / recordConfig.getChannelCount());
+                }
+            }
+        } else {
+            while (isPaused && isRecord) {
+                int nLen;
+                try {
+                    nLen = mSource.read(wave, 0, wave.length);
+                } catch (Exception e) {
+                    nLen = -1;
+                }
+                if (nLen <= 0) {
+                    recordFailed(AudioConst.RecorderErrorCode.RECORDER_READ_ERROR);
+                    isRecord = false;
+                    isWarm = false;
+                    break;
+                }
+                mFrameClock.onRead(mSource, nLen);
+            }
+        }
+        mFrameClock.onSessionResume();
+        if (isRecord) {
+            Trace.event(Trace.STATE, Trace.STATE_RESUME);
+            doRecordResume(System.nanoTime() - pauseNanos);
+            Log.d(TAG, "recorder resumed");
+        }
+    }
+
+    /**
+     * 预热模式下空闲时持续读取并丢弃数据 保证开始录音时拿到的是最新的一帧
+     */
+    private void standby() {
+        if (!mSourceOpened) {
+            isWarm = false;
+            return;
+        }
+        CaptureSource source = mSource;
+        int nLen;
+        try {
+            nLen = source.read(wave, 0, wave.length);
+        } catch (Exception e) {
+            nLen = -1;
+        }
+        if (nLen <= 0) {
+            Log.e(TAG, "standby read error, leave warm mode");
+            isWarm = false;
+            return;
+        }
+        boolean sessionStarted;
+        synchronized (mSessionLock) {
+            sessionStarted = mIsSessionRunning;
+        }
+        // 读取过程中已经开始录音 这一帧直接作为第一帧投递 保证一个帧周期内拿到数据
+        if (sessionStarted && isRecord) {
+            mFrameClock.onSessionStart();
+            mSessionClockStarted = true;
+            mCallback.onRecorded(wave, nLen, mFrameClock.onRead(source, nLen));
+        } else {
+            mFrameClock.onRead(source, nLen);
+        }
+    }
+
     @RequiresPermission(android.Manifest.permission.RECORD_AUDIO)
     private boolean initializeRecord() throws SecurityException{
         synchronized (this) {
@@ -151,11 +520,8 @@ public class Recorder {
                     bSamples = 8;
                 }
 
-                if ((channelConfig = recordConfig.getChannelConfig())==AudioFormat.CHANNEL_IN_MONO) {
-                    nChannels = 1;
-                } else {
-                    nChannels = 2;
-                }
+                channelConfig = recordConfig.getChannelConfig();
+                nChannels = (short) recordConfig.getChannelCount();
                 audioSource = recordConfig.getAudioSource();
                 sampleRate = recordConfig.getSampleRate();
                 audioFormat = recordConfig.getAudioFormat();
@@ -164,22 +530,22 @@ public class Recorder {
 
                 wave = new short[framePeriod * bSamples / 8 * nChannels / 2];
                 Log.d(TAG, "buffersize = " + bufferSize);
-                int nMinSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
+                int nMinSize = mSource.getMinBufferSize(sampleRate, channelConfig, audioFormat);
                 if (bufferSize < nMinSize) {
                     bufferSize = nMinSize;
 
                     Log.d(TAG, "Increasing buffer size to " + Integer.toString(bufferSize));
                 }
-                if (mAudioRecorder!=null) {
+                if (mSourceOpened) {
                     unInitializeRecord();
                 }
-                mAudioRecorder = new AudioRecord(audioSource, sampleRate, channelConfig, audioFormat, bufferSize);
-                if (mAudioRecorder.getState() != 1) {
-                    mAudioRecorder = null;
+                if (!mSource.open(audioSource, sampleRate, channelConfig, audioFormat, bufferSize)) {
                     recordFailed(AudioConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
                     Log.e(TAG, "AudioRecord initialization failed,because of no RECORD permission or unavailable AudioRecord ");
                     throw new Exception("AudioRecord initialization failed");
                 }
+                mSourceOpened = true;
+                mInitializedKey = configKey(recordConfig);
                 Log.i(TAG, "initialize  Record");
                 return true;
             } catch (Throwable e) {
@@ -196,17 +562,21 @@ public class Recorder {
     private void unInitializeRecord() {
         Log.i(TAG, "unInitializeRecord");
         synchronized (this) {
-            if (mAudioRecorder != null) {
-                try {
-                    mAudioRecorder.stop();
-                    mAudioRecorder.release();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Log.e(TAG, "mAudioRecorder release error!");
-                }
-                mAudioRecorder = null;
+            if (mSourceOpened) {
+                mSource.release();
+                mSourceOpened = false;
             }
+            mIsSourceStarted = false;
+            mInitializedKey = null;
+        }
+    }
+
+    private static String configKey(AudioRecorder.RecordConfig config) {
+        if (config == null) {
+            return "";
         }
+        return config.getAudioSource() + "/" + config.getSampleRate() + "/"
+                + config.getChannelConfig() + "/" + config.getAudioFormat();
     }
 
     private boolean doRecordStart() {
@@ -223,6 +593,18 @@ public class Recorder {
         return true;
     }
 
+    private void doRecordPause() {
+        if (mCallback != null) {
+            mCallback.onRecorderPause();
+        }
+    }
+
+    private void doRecordResume(long pausedNanos) {
+        if (mCallback != null) {
+            mCallback.onRecorderResume(pausedNanos);
+        }
+    }
+
     private void doRecordStop() {
         if (mCallback != null) {
             mCallback.onRecorderStop();
@@ -230,6 +612,7 @@ public class Recorder {
     }
 
     private void recordFailed(int errorCode) {
+        Trace.event(Trace.STATE, Trace.STATE_ERROR, errorCode);
         if (mCallback != null) {
             mCallback.onRecordedFail(errorCode);
         }
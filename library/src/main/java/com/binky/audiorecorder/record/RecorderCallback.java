@@ -16,12 +16,26 @@ public abstract interface RecorderCallback {
      */
     public abstract void onRecorderStop();
 
+    /**
+     * 录音暂停 在采集线程中回调
+     */
+    public abstract void onRecorderPause();
+
+    /**
+     * 录音继续 在采集线程中回调 之后的帧接在暂停前的位置之后
+     *
+     * @param pausedNanos 本次暂停的时长
+     */
+    public abstract void onRecorderResume(long pausedNanos);
+
     /**
      * 正在录音
      *
-     * @param wave 录制的数据data
+     * @param wave   录制的数据data 在多次回调中复用
+     * @param length 有效数据的长度 包括所有声道
+     * @param info   这一帧的序号、位置和采集时间
      */
-    public abstract void onRecorded(short[] wave);
+    public abstract void onRecorded(short[] wave, int length, FrameInfo info);
 
 
     /**
@@ -0,0 +1,162 @@
+package com.binky.audiorecorder.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * 由固定大小的块组成的字节缓冲 只追加不复制
+ * <p>
+ * 与ByteArrayOutputStream不同 增长时只分配新的块 不会把已有数据整体复制到翻倍的新数组中
+ * 只有一个线程写入 写入的同时可以从其他线程读取已经写入的部分
+ */
+
+public class ChunkedBuffer {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final int mChunkSize;
+    private final ArrayList<byte[]> mChunks = new ArrayList<>();
+    private volatile long mSize;
+
+    public ChunkedBuffer() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedBuffer(int chunkSize) {
+        this.mChunkSize = chunkSize;
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        long size = mSize;
+        while (length > 0) {
+            int chunkIndex = (int) (size / mChunkSize);
+            int chunkOffset = (int) (size % mChunkSize);
+            byte[] chunk = chunk(chunkIndex);
+            int count = Math.min(length, mChunkSize - chunkOffset);
+            System.arraycopy(data, offset, chunk, chunkOffset, count);
+            offset += count;
+            length -= count;
+            size += count;
+        }
+        mSize = size;
+    }
+
+    /**
+     * 以小端方式写入一个int
+     */
+    public void writeInt(int value) {
+        long size = mSize;
+        for (int i = 0; i < 4; i++) {
+            byte[] chunk = chunk((int) (size / mChunkSize));
+            chunk[(int) (size % mChunkSize)] = (byte) (value >> (8 * i));
+            size++;
+        }
+        mSize = size;
+    }
+
+    /**
+     * 读取position位置开始的数据
+     *
+     * @return 实际读取的字节数 没有数据时返回-1
+     */
+    public int read(long position, byte[] out, int offset, int length) {
+        long size = mSize;
+        if (position >= size) {
+            return -1;
+        }
+        length = (int) Math.min(length, size - position);
+        int total = 0;
+        while (total < length) {
+            byte[] chunk;
+            synchronized (mChunks) {
+                chunk = mChunks.get((int) (position / mChunkSize));
+            }
+            int chunkOffset = (int) (position % mChunkSize);
+            int count = Math.min(length - total, mChunkSize - chunkOffset);
+            System.arraycopy(chunk, chunkOffset, out, offset + total, count);
+            total += count;
+            position += count;
+        }
+        return total;
+    }
+
+    /**
+     * 读取position位置的小端int
+     */
+    public int readInt(long position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++, position++) {
+            byte[] chunk;
+            synchronized (mChunks) {
+                chunk = mChunks.get((int) (position / mChunkSize));
+            }
+            value |= (chunk[(int) (position % mChunkSize)] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    public long size() {
+        return mSize;
+    }
+
+    /**
+     * 已经分配的内存大小
+     */
+    public long capacity() {
+        synchronized (mChunks) {
+            return (long) mChunks.size() * mChunkSize;
+        }
+    }
+
+    /**
+     * 复制成一个完整的数组
+     */
+    public byte[] toByteArray() {
+        byte[] out = new byte[(int) mSize];
+        read(0, out, 0, out.length);
+        return out;
+    }
+
+    public InputStream openStream() {
+        return new InputStream() {
+            private long mPosition;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = ChunkedBuffer.this.read(mPosition, b, off, len);
+                if (count > 0) {
+                    mPosition += count;
+                }
+                return count;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(Integer.MAX_VALUE, mSize - mPosition);
+            }
+        };
+    }
+
+    public void clear() {
+        synchronized (mChunks) {
+            mChunks.clear();
+        }
+        mSize = 0;
+    }
+
+    private byte[] chunk(int index) {
+        synchronized (mChunks) {
+            while (mChunks.size() <= index) {
+                mChunks.add(new byte[mChunkSize]);
+            }
+            return mChunks.get(index);
+        }
+    }
+}
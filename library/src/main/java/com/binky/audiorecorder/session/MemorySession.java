@@ -0,0 +1,224 @@
+package com.binky.audiorecorder.session;
+
+import java.io.IOException;
+
+import com.binky.audiorecorder.codec.FlacEncoder;
+import com.binky.audiorecorder.codec.ImaAdpcm;
+
+/**
+ * 保存在内存中的整段录音 可以选择原始PCM或者逐帧压缩保存
+ * <p>
+ * 压缩时每一帧录音数据编码成一个块 追加到{@link ChunkedBuffer}中 块的格式为
+ * <pre>
+ *     int 编码后的字节数
+ *     int 每声道采样数
+ *     byte[] 编码数据
+ * </pre>
+ * 读取时通过{@link #newReader()}按块解码 不需要一次解码整段录音
+ */
+
+public class MemorySession {
+
+    /**
+     * 内存中保存的格式
+     */
+    public enum Codec {
+        /**
+         * 16位小端PCM
+         */
+        RAW,
+        /**
+         * IMA ADPCM 有损 约为PCM的1/4
+         */
+        IMA_ADPCM,
+        /**
+         * FLAC帧 无损
+         */
+        FLAC
+    }
+
+    private final Codec mCodec;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final ChunkedBuffer mBuffer = new ChunkedBuffer();
+    private byte[] mScratch = new byte[0];
+    private ImaAdpcm mAdpcm;
+    private FlacEncoder mFlacEncoder;
+    private long mFrameCount;
+    private volatile long mSampleCount;
+    private volatile long mEncodeNanos;
+
+    /**
+     * @throws IllegalArgumentException 格式不支持这么多声道 见{@link #isSupported(Codec, int)}
+     */
+    public MemorySession(Codec codec, int sampleRate, int channelCount) {
+        if (!isSupported(codec, channelCount)) {
+            throw new IllegalArgumentException(codec + " supports at most " + FlacEncoder.MAX_CHANNELS
+                    + " channels : " + channelCount);
+        }
+        this.mCodec = codec;
+        this.mSampleRate = sampleRate;
+        this.mChannelCount = Math.max(1, channelCount);
+    }
+
+    /**
+     * 格式是否支持这个声道数 FLAC最多8个声道 索引掩码可以有更多声道
+     */
+    public static boolean isSupported(Codec codec, int channelCount) {
+        return codec != Codec.FLAC || channelCount <= FlacEncoder.MAX_CHANNELS;
+    }
+
+    /**
+     * 追加一帧录音数据 在录音工作线程中调用
+     *
+     * @param data   交错排列的16位PCM
+     * @param offset 起始位置
+     * @param length 数据长度 单位为short
+     */
+    public void append(short[] data, int offset, int length) {
+        long begin = System.nanoTime();
+        int samplesPerChannel = length / mChannelCount;
+        switch (mCodec) {
+            case IMA_ADPCM:
+                appendAdpcm(data, offset, samplesPerChannel);
+                break;
+            case FLAC:
+                appendFlac(data, offset, samplesPerChannel);
+                break;
+            default:
+                appendRaw(data, offset, samplesPerChannel * mChannelCount);
+                break;
+        }
+        mFrameCount++;
+        mSampleCount += samplesPerChannel * mChannelCount;
+        mEncodeNanos += System.nanoTime() - begin;
+    }
+
+    private void appendRaw(short[] data, int offset, int length) {
+        ensureScratch(length * 2);
+        for (int i = 0; i < length; i++) {
+            short s = data[offset + i];
+            mScratch[2 * i] = (byte) s;
+            mScratch[2 * i + 1] = (byte) (s >> 8);
+        }
+        mBuffer.write(mScratch, 0, length * 2);
+    }
+
+    private void appendAdpcm(short[] data, int offset, int samplesPerChannel) {
+        if (mAdpcm == null) {
+            mAdpcm = new ImaAdpcm(mChannelCount);
+        }
+        ensureScratch(ImaAdpcm.encodedSize(mChannelCount, samplesPerChannel));
+        int size = mAdpcm.encode(data, offset, samplesPerChannel, mScratch, 0);
+        mBuffer.writeInt(size);
+        mBuffer.writeInt(samplesPerChannel);
+        mBuffer.write(mScratch, 0, size);
+    }
+
+    private void appendFlac(short[] data, int offset, int samplesPerChannel) {
+        if (mFlacEncoder == null || mFlacEncoder.getMaxBlockSize() < samplesPerChannel) {
+            mFlacEncoder = new FlacEncoder(mChannelCount, Math.max(16, samplesPerChannel));
+        }
+        int size = mFlacEncoder.encodeFrame(data, offset, samplesPerChannel, mFrameCount);
+        mBuffer.writeInt(size);
+        mBuffer.writeInt(samplesPerChannel);
+        mBuffer.write(mFlacEncoder.getBuffer(), 0, size);
+    }
+
+    private void ensureScratch(int size) {
+        if (mScratch.length < size) {
+            mScratch = new byte[size];
+        }
+    }
+
+    public Codec getCodec() {
+        return mCodec;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    /**
+     * 所有声道的采样总数
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * 录音时长 单位毫秒
+     */
+    public long getDurationMillis() {
+        return mSampleCount / mChannelCount * 1000 / mSampleRate;
+    }
+
+    /**
+     * 对应的原始PCM大小
+     */
+    public long getRawBytes() {
+        return mSampleCount * 2;
+    }
+
+    /**
+     * 内存中实际保存的字节数 包含块头
+     */
+    public long getStoredBytes() {
+        return mBuffer.size();
+    }
+
+    /**
+     * 保存大小与原始PCM大小的比值
+     */
+    public float getSizeRatio() {
+        long raw = getRawBytes();
+        return raw == 0 ? 1f : (float) getStoredBytes() / raw;
+    }
+
+    /**
+     * 每帧平均编码耗时 单位纳秒
+     */
+    public long getAverageEncodeNanos() {
+        return mFrameCount == 0 ? 0 : mEncodeNanos / mFrameCount;
+    }
+
+    ChunkedBuffer buffer() {
+        return mBuffer;
+    }
+
+    /**
+     * 创建一个按需解码的读取器 每个读取器独立维护读取位置
+     */
+    public SessionReader newReader() {
+        return new SessionReader(this);
+    }
+
+    /**
+     * 解码整段录音为16位小端PCM 会分配与原始数据一样大的数组 尽量使用{@link #newReader()}
+     */
+    public byte[] toPcmByteArray() throws IOException {
+        if (mCodec == Codec.RAW) {
+            return mBuffer.toByteArray();
+        }
+        byte[] out = new byte[(int) getRawBytes()];
+        SessionReader reader = newReader();
+        int offset = 0;
+        int read;
+        while (offset < out.length && (read = reader.read(out, offset, out.length - offset)) > 0) {
+            offset += read;
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "MemorySession{codec=" + mCodec
+                + ", duration=" + getDurationMillis() + "ms"
+                + ", sizeRatio=" + String.format("%.3f", getSizeRatio())
+                + ", encodePerFrame=" + getAverageEncodeNanos() / 1000 + "us}";
+    }
+}
@@ -0,0 +1,138 @@
+package com.binky.audiorecorder.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.binky.audiorecorder.codec.FlacDecoder;
+import com.binky.audiorecorder.codec.ImaAdpcm;
+
+/**
+ * 内存会话的流式读取器 每次只解码一个块 以16位小端PCM字节或者short采样的形式输出
+ */
+
+public class SessionReader extends InputStream {
+
+    private final MemorySession mSession;
+    private final ChunkedBuffer mBuffer;
+    private final int mChannelCount;
+    private FlacDecoder mFlacDecoder;
+    private long mPosition;
+    private byte[] mEncoded = new byte[0];
+    private short[] mDecoded = new short[0];
+    private int mDecodedLength;
+    private int mDecodedPosition;
+    /**
+     * short转换成字节时剩下的高字节 -1表示没有
+     */
+    private int mPendingByte = -1;
+
+    SessionReader(MemorySession session) {
+        this.mSession = session;
+        this.mBuffer = session.buffer();
+        this.mChannelCount = session.getChannelCount();
+    }
+
+    /**
+     * 读取采样
+     *
+     * @return 读取的short数量 结束时返回-1
+     */
+    public int readSamples(short[] out, int offset, int length) throws IOException {
+        if (mSession.getCodec() == MemorySession.Codec.RAW) {
+            return readRawSamples(out, offset, length);
+        }
+        int total = 0;
+        while (total < length) {
+            if (mDecodedPosition >= mDecodedLength && !decodeNextBlock()) {
+                break;
+            }
+            int count = Math.min(length - total, mDecodedLength - mDecodedPosition);
+            System.arraycopy(mDecoded, mDecodedPosition, out, offset + total, count);
+            mDecodedPosition += count;
+            total += count;
+        }
+        return total == 0 && length > 0 ? -1 : total;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (mSession.getCodec() == MemorySession.Codec.RAW) {
+            int count = mBuffer.read(mPosition, b, off, len);
+            if (count > 0) {
+                mPosition += count;
+            }
+            return count;
+        }
+        int total = 0;
+        if (mPendingByte >= 0 && len > 0) {
+            b[off] = (byte) mPendingByte;
+            mPendingByte = -1;
+            total = 1;
+        }
+        while (total < len) {
+            if (mDecodedPosition >= mDecodedLength && !decodeNextBlock()) {
+                break;
+            }
+            short s = mDecoded[mDecodedPosition++];
+            b[off + total++] = (byte) s;
+            if (total < len) {
+                b[off + total++] = (byte) (s >> 8);
+            } else {
+                mPendingByte = (s >> 8) & 0xFF;
+            }
+        }
+        return total == 0 && len > 0 ? -1 : total;
+    }
+
+    private int readRawSamples(short[] out, int offset, int length) {
+        if (mEncoded.length < length * 2) {
+            mEncoded = new byte[length * 2];
+        }
+        int count = mBuffer.read(mPosition, mEncoded, 0, length * 2) & ~1;
+        if (count <= 0) {
+            return -1;
+        }
+        mPosition += count;
+        for (int i = 0; i < count / 2; i++) {
+            out[offset + i] = (short) ((mEncoded[2 * i] & 0xFF) | (mEncoded[2 * i + 1] << 8));
+        }
+        return count / 2;
+    }
+
+    private boolean decodeNextBlock() throws IOException {
+        if (mPosition + 8 > mBuffer.size()) {
+            return false;
+        }
+        int size = mBuffer.readInt(mPosition);
+        int samplesPerChannel = mBuffer.readInt(mPosition + 4);
+        if (mEncoded.length < size) {
+            mEncoded = new byte[size];
+        }
+        if (mBuffer.read(mPosition + 8, mEncoded, 0, size) != size) {
+            throw new IOException("truncated session block");
+        }
+        mPosition += 8 + size;
+        int samples = samplesPerChannel * mChannelCount;
+        if (mDecoded.length < samples) {
+            mDecoded = new short[samples];
+        }
+        if (mSession.getCodec() == MemorySession.Codec.FLAC) {
+            if (mFlacDecoder == null) {
+                mFlacDecoder = new FlacDecoder();
+            }
+            mFlacDecoder.decodeFrame(mEncoded, 0, size);
+            mFlacDecoder.copyInterleaved(mDecoded, 0);
+        } else {
+            ImaAdpcm.decode(mEncoded, 0, samplesPerChannel, mChannelCount, mDecoded, 0);
+        }
+        mDecodedLength = samples;
+        mDecodedPosition = 0;
+        return true;
+    }
+}
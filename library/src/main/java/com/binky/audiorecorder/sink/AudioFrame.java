@@ -0,0 +1,39 @@
+package com.binky.audiorecorder.sink;
+
+/**
+ * 一帧录音数据 在分发队列中复用 不要在{@link AudioSink#write(AudioFrame)}返回后继续持有
+ */
+
+public class AudioFrame {
+
+    /**
+     * 交错排列的16位PCM 有效长度为{@link #length}
+     */
+    public short[] data;
+    public int length;
+    /**
+     * 帧序号 每次录音从0开始
+     */
+    public long sequence;
+    /**
+     * 采集到这一帧的时间 System.nanoTime()
+     */
+    public long timestampNanos;
+
+    public AudioFrame(int capacity) {
+        this.data = new short[capacity];
+    }
+
+    /**
+     * 复制一帧数据 容量不够时扩容
+     */
+    public void set(short[] source, int offset, int length, long sequence, long timestampNanos) {
+        if (data.length < length) {
+            data = new short[length];
+        }
+        System.arraycopy(source, offset, data, 0, length);
+        this.length = length;
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+    }
+}
@@ -0,0 +1,31 @@
+package com.binky.audiorecorder.sink;
+
+import java.io.IOException;
+
+/**
+ * 录音数据的输出目标 每个sink在自己的线程中依次被调用open、write、close
+ * <p>
+ * 通过{@link com.binky.audiorecorder.AudioRecorder#addSink(AudioSink)}添加
+ * 处理慢的sink只会让自己的队列积压或丢帧 不会影响录音和其他sink
+ */
+
+public interface AudioSink {
+
+    /**
+     * 每次录音开始时调用
+     *
+     * @param sampleRate   采样率
+     * @param channelCount 声道数
+     */
+    void open(int sampleRate, int channelCount) throws IOException;
+
+    /**
+     * 写入一帧 frame会被复用 方法返回后不要再持有
+     */
+    void write(AudioFrame frame) throws IOException;
+
+    /**
+     * 录音结束 队列中的数据都已经写入
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,212 @@
+package com.binky.audiorecorder.sink;
+
+import com.binky.audiorecorder.file.DtxReader;
+import com.binky.audiorecorder.file.DtxTimeline;
+import com.binky.audiorecorder.file.WavHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 跳过静音的WAV文件sink 适合大部分时间没有声音的长时间后台录音
+ * <p>
+ * 录音按固定长度的块判断 块的均方根电平低于阈值时不写入文件 只在{@link DtxTimeline}中记录长度
+ * 声音结束后继续保留一段时间(hangover) 声音开始前多保留一块 避免切掉字头字尾
+ * 文件收尾时时间线作为"dtx " chunk追加在数据区之后 用{@link DtxReader}按原始时间线读取
+ * <p>
+ * 录音中断时时间线没有写入 文件仍然是只包含有声部分的普通WAV
+ */
+
+public class DtxFileSink implements AudioSink {
+
+    private final String mPath;
+    private float mThresholdDb = -50f;
+    private float mBlockMs = 20f;
+    private float mHangoverMs = 300f;
+    private RandomAccessFile mFile;
+    private volatile DtxTimeline mTimeline;
+    private byte[] mBytes = new byte[0];
+    private long mDataSize;
+    private int mChannelCount;
+    private int mBlockFrames;
+    private int mHangoverBlocks;
+    private double mThresholdEnergy;
+    /**
+     * 正在收集的块和上一个判定为静音的块 声音开始时上一块也会写入
+     */
+    private short[] mBlock;
+    private short[] mPending;
+    private int mFill;
+    private int mPendingFrames;
+    private int mHangoverLeft;
+
+    /**
+     * @param path 文件路径 已存在的文件会被覆盖
+     */
+    public DtxFileSink(String path) {
+        this.mPath = path;
+    }
+
+    /**
+     * @param thresholdDb 块的均方根电平低于该值时认为是静音 单位dBFS 默认-50 下一次录音开始时生效
+     */
+    public DtxFileSink setThresholdDb(float thresholdDb) {
+        this.mThresholdDb = thresholdDb;
+        return this;
+    }
+
+    /**
+     * @param blockMs 判断静音的块长度 单位毫秒 默认20
+     */
+    public DtxFileSink setBlockMs(float blockMs) {
+        this.mBlockMs = blockMs;
+        return this;
+    }
+
+    /**
+     * @param hangoverMs 声音结束后继续保存的时长 单位毫秒 默认300
+     */
+    public DtxFileSink setHangoverMs(float hangoverMs) {
+        this.mHangoverMs = Math.max(0f, hangoverMs);
+        return this;
+    }
+
+    @Override
+    public void open(int sampleRate, int channelCount) throws IOException {
+        File file = new File(mPath);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        WavHeader.write(mFile, sampleRate, channelCount, 16);
+        mDataSize = 0;
+        mTimeline = new DtxTimeline();
+        mChannelCount = channelCount;
+        mBlockFrames = Math.max(1, Math.round(sampleRate * mBlockMs / 1000f));
+        mHangoverBlocks = (int) Math.ceil(mHangoverMs / mBlockMs);
+        double rms = Math.pow(10, mThresholdDb / 20.0) * 32768;
+        mThresholdEnergy = rms * rms;
+        mBlock = new short[mBlockFrames * channelCount];
+        mPending = new short[mBlockFrames * channelCount];
+        mFill = 0;
+        mPendingFrames = 0;
+        mHangoverLeft = 0;
+    }
+
+    @Override
+    public void write(AudioFrame frame) throws IOException {
+        short[] data = frame.data;
+        int offset = 0;
+        while (offset < frame.length) {
+            int count = Math.min(frame.length - offset, mBlock.length - mFill);
+            System.arraycopy(data, offset, mBlock, mFill, count);
+            mFill += count;
+            offset += count;
+            if (mFill == mBlock.length) {
+                onBlock(mFill);
+                mFill = 0;
+            }
+        }
+    }
+
+    private void onBlock(int length) throws IOException {
+        int frames = length / mChannelCount;
+        if (frames == 0) {
+            return;
+        }
+        double energy = 0;
+        for (int i = 0; i < length; i++) {
+            energy += mBlock[i] * mBlock[i];
+        }
+        if (energy >= mThresholdEnergy * length) {
+            mHangoverLeft = mHangoverBlocks;
+            if (mPendingFrames > 0) {
+                writeData(mPending, mPendingFrames);
+                mPendingFrames = 0;
+            }
+            writeData(mBlock, frames);
+        } else if (mHangoverLeft > 0) {
+            mHangoverLeft--;
+            writeData(mBlock, frames);
+        } else {
+            if (mPendingFrames > 0) {
+                mTimeline.append(true, mPendingFrames);
+            }
+            short[] swap = mPending;
+            mPending = mBlock;
+            mBlock = swap;
+            mPendingFrames = frames;
+        }
+    }
+
+    private void writeData(short[] samples, int frames) throws IOException {
+        int length = frames * mChannelCount;
+        int size = length * 2;
+        if (mBytes.length < size) {
+            mBytes = new byte[size];
+        }
+        for (int i = 0, j = 0; i < length; i++, j += 2) {
+            mBytes[j] = (byte) samples[i];
+            mBytes[j + 1] = (byte) (samples[i] >> 8);
+        }
+        mFile.write(mBytes, 0, size);
+        mDataSize += size;
+        mTimeline.append(false, frames);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mFile == null) {
+            return;
+        }
+        try {
+            onBlock(mFill - mFill % mChannelCount);
+            mFill = 0;
+            if (mPendingFrames > 0) {
+                mTimeline.append(true, mPendingFrames);
+                mPendingFrames = 0;
+            }
+            mTimeline.writeTo(mFile);
+            WavHeader.finish(mFile, mDataSize);
+        } finally {
+            mFile.close();
+            mFile = null;
+        }
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * 最近一次录音的时间线 录音结束后读取
+     */
+    public DtxTimeline getTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * 实际写入的音频数据字节数
+     */
+    public long getDataSize() {
+        return mDataSize;
+    }
+
+    /**
+     * 不跳过静音时需要写入的音频数据字节数
+     */
+    public long getTimelineDataSize() {
+        DtxTimeline timeline = mTimeline;
+        return timeline == null ? 0 : timeline.getTimelineFrames() * mChannelCount * 2;
+    }
+
+    /**
+     * 跳过静音节省的字节数
+     */
+    public long getSavedBytes() {
+        return getTimelineDataSize() - mDataSize;
+    }
+}
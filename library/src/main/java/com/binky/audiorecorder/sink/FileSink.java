@@ -0,0 +1,78 @@
+package com.binky.audiorecorder.sink;
+
+import com.binky.audiorecorder.file.WavHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 把录音写入文件的sink 可以是WAV文件或者无文件头的PCM文件
+ */
+
+public class FileSink implements AudioSink {
+
+    private final String mPath;
+    private final boolean mIsWav;
+    private RandomAccessFile mFile;
+    private byte[] mBytes = new byte[0];
+    private long mDataSize;
+
+    /**
+     * @param path  文件路径 已存在的文件会被覆盖
+     * @param isWav true写入WAV文件头 false为PCM裸数据
+     */
+    public FileSink(String path, boolean isWav) {
+        this.mPath = path;
+        this.mIsWav = isWav;
+    }
+
+    @Override
+    public void open(int sampleRate, int channelCount) throws IOException {
+        File file = new File(mPath);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mDataSize = 0;
+        if (mIsWav) {
+            WavHeader.write(mFile, sampleRate, channelCount, 16);
+        }
+    }
+
+    @Override
+    public void write(AudioFrame frame) throws IOException {
+        int size = frame.length * 2;
+        if (mBytes.length < size) {
+            mBytes = new byte[size];
+        }
+        short[] data = frame.data;
+        for (int i = 0, j = 0; i < frame.length; i++, j += 2) {
+            mBytes[j] = (byte) data[i];
+            mBytes[j + 1] = (byte) (data[i] >> 8);
+        }
+        mFile.write(mBytes, 0, size);
+        mDataSize += size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mFile == null) {
+            return;
+        }
+        try {
+            if (mIsWav) {
+                WavHeader.finish(mFile, mDataSize);
+            }
+        } finally {
+            mFile.close();
+            mFile = null;
+        }
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+}
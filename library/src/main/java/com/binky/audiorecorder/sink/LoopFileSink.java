@@ -0,0 +1,306 @@
+package com.binky.audiorecorder.sink;
+
+import com.binky.audiorecorder.file.WavHeader;
+import com.binky.audiorecorder.utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 循环录音的sink 只保留最近一段时间的录音 适合一直在后台录音、出现问题时才保存的场景
+ * <p>
+ * 录音写入一个固定大小的内存映射文件 写满后从头覆盖 文件头记录写入位置 进程被杀后可以用
+ * {@link #snapshot(File, long, File)}从文件中取出最后的录音
+ * <p>
+ * {@link #snapshot(long, File)}可以在任意线程调用 用FileChannel.transferTo把环形文件中的数据直接拷贝到WAV文件
+ * 不会暂停录音 环形文件比保留时长多留{@link #DEFAULT_GUARD_MS}的余量 拷贝期间新写入的数据不会覆盖正在拷贝的部分
+ * <p>
+ * 文件布局 小端:
+ * <pre>
+ *     0  "LOOP"
+ *     4  版本
+ *     8  采样率
+ *     12 声道数
+ *     16 数据区的字节数
+ *     24 累计写入的字节数 对数据区大小取余就是下一次写入的位置
+ *     32 最后一次写入的时间 System.currentTimeMillis()
+ *     64 数据区 16位PCM交错排列
+ * </pre>
+ * 内存映射的大小不能超过2GB 48KHz立体声大约3小时
+ */
+
+public class LoopFileSink implements AudioSink {
+
+    private static final String TAG = "LoopFileSink";
+    /**
+     * 默认的余量 拷贝期间允许继续录音的时长
+     */
+    public static final long DEFAULT_GUARD_MS = 5000;
+
+    private static final int MAGIC = 0x504F4F4C; // "LOOP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFSET_SAMPLE_RATE = 8;
+    private static final int OFFSET_CHANNEL_COUNT = 12;
+    private static final int OFFSET_CAPACITY = 16;
+    private static final int OFFSET_HEAD = 24;
+    private static final int OFFSET_TIME = 32;
+
+    private final String mPath;
+    private final long mDurationMs;
+    private long mGuardMs = DEFAULT_GUARD_MS;
+    private RandomAccessFile mFile;
+    private MappedByteBuffer mBuffer;
+    private ShortBuffer mSamples;
+    private int mCapacity;
+    private long mRetainBytes;
+    private int mSampleRate;
+    private int mChannelCount;
+    /**
+     * 累计写入的字节数 写入线程更新 snapshot读取
+     */
+    private volatile long mHead;
+    private volatile boolean mOpened;
+
+    /**
+     * @param path       环形文件的路径 已存在的文件会被清空
+     * @param durationMs 保留最近多长时间的录音 单位毫秒
+     */
+    public LoopFileSink(String path, long durationMs) {
+        this.mPath = path;
+        this.mDurationMs = durationMs;
+    }
+
+    /**
+     * 设置余量 下一次录音开始时生效 snapshot的拷贝时间超过余量时新数据会覆盖还没有拷贝的部分 snapshot会失败
+     */
+    public LoopFileSink setGuardMs(long guardMs) {
+        this.mGuardMs = Math.max(0, guardMs);
+        return this;
+    }
+
+    @Override
+    public void open(int sampleRate, int channelCount) throws IOException {
+        int blockAlign = channelCount * 2;
+        long bytesPerSecond = (long) sampleRate * blockAlign;
+        long capacity = (mDurationMs + mGuardMs) * bytesPerSecond / 1000;
+        capacity -= capacity % blockAlign;
+        long retain = mDurationMs * bytesPerSecond / 1000;
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("invalid loop size " + capacity + " bytes for " + mDurationMs + "ms");
+        }
+        File file = new File(mPath);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mFile.setLength(HEADER_SIZE + capacity);
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+        } catch (IOException e) {
+            mFile.close();
+            mFile = null;
+            throw e;
+        }
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        mBuffer.position(HEADER_SIZE);
+        mSamples = mBuffer.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        mBuffer.position(0);
+        mCapacity = (int) capacity;
+        mRetainBytes = retain - retain % blockAlign;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mHead = 0;
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mBuffer.putInt(OFFSET_SAMPLE_RATE, sampleRate);
+        mBuffer.putInt(OFFSET_CHANNEL_COUNT, channelCount);
+        mBuffer.putLong(OFFSET_CAPACITY, capacity);
+        mBuffer.putLong(OFFSET_HEAD, 0);
+        mBuffer.putLong(OFFSET_TIME, System.currentTimeMillis());
+        mOpened = true;
+    }
+
+    @Override
+    public void write(AudioFrame frame) {
+        MappedByteBuffer buffer = mBuffer;
+        ShortBuffer samples = mSamples;
+        short[] data = frame.data;
+        int length = frame.length;
+        long head = mHead;
+        int capacity = mCapacity / 2;
+        int offset = 0;
+        while (offset < length) {
+            int position = (int) ((head / 2 + offset) % capacity);
+            int count = Math.min(length - offset, capacity - position);
+            samples.position(position);
+            samples.put(data, offset, count);
+            offset += count;
+        }
+        head += length * 2L;
+        // 先写数据再更新写入位置 读到的位置之前的数据都是完整的
+        buffer.putLong(OFFSET_HEAD, head);
+        buffer.putLong(OFFSET_TIME, System.currentTimeMillis());
+        mHead = head;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOpened = false;
+        if (mFile == null) {
+            return;
+        }
+        try {
+            mBuffer.force();
+        } finally {
+            mBuffer = null;
+            mSamples = null;
+            mFile.close();
+            mFile = null;
+        }
+    }
+
+    /**
+     * 把最近一段录音保存为WAV文件 录音过程中和录音结束后都可以调用 不会暂停录音
+     *
+     * @param durationMs 保存最近多长时间 超过已录制的时长时保存全部 录音过程中最多保存构造时指定的时长
+     * @param output     WAV文件 已存在的文件会被覆盖
+     * @return 保存的音频数据字节数
+     */
+    public long snapshot(long durationMs, File output) throws IOException {
+        if (!mOpened) {
+            return snapshot(new File(mPath), durationMs, output);
+        }
+        RandomAccessFile ring = new RandomAccessFile(mPath, "r");
+        try {
+            return copy(ring.getChannel(), mHead, mCapacity, mRetainBytes, mSampleRate, mChannelCount, durationMs, output,
+                    new HeadSource() {
+                        @Override
+                        public long head() {
+                            return mHead;
+                        }
+                    });
+        } finally {
+            ring.close();
+        }
+    }
+
+    /**
+     * 从环形文件中取出最近一段录音 用于进程重启后保存上一次的录音 文件正在被其他进程写入时结果不保证完整
+     *
+     * @param ring       环形文件
+     * @param durationMs 保存最近多长时间
+     * @param output     WAV文件
+     * @return 保存的音频数据字节数
+     */
+    public static long snapshot(File ring, long durationMs, File output) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(ring, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readHeader(channel, header);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("not a loop file " + ring);
+            }
+            long capacity = header.getLong(OFFSET_CAPACITY);
+            if (capacity <= 0 || HEADER_SIZE + capacity > channel.size()) {
+                throw new IOException("truncated loop file " + ring);
+            }
+            return copy(channel, header.getLong(OFFSET_HEAD), (int) capacity, capacity, header.getInt(OFFSET_SAMPLE_RATE),
+                    header.getInt(OFFSET_CHANNEL_COUNT), durationMs, output, new HeadSource() {
+                        @Override
+                        public long head() throws IOException {
+                            readHeader(channel, header);
+                            return header.getLong(OFFSET_HEAD);
+                        }
+                    });
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * 拷贝完成后重新读取写入位置 用来检查拷贝期间是否被覆盖
+     */
+    private interface HeadSource {
+        long head() throws IOException;
+    }
+
+    private static void readHeader(FileChannel channel, ByteBuffer header) throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("truncated loop file");
+            }
+        }
+    }
+
+    /**
+     * @param maxSize 最多拷贝的字节数 录音过程中要留出余量
+     */
+    private static long copy(FileChannel ring, long head, int capacity, long maxSize, int sampleRate, int channelCount,
+                             long durationMs, File output, HeadSource source) throws IOException {
+        int blockAlign = channelCount * 2;
+        long size = durationMs * sampleRate / 1000 * blockAlign;
+        size = Math.min(size, Math.min(head, maxSize));
+        size -= size % blockAlign;
+        long start = head - size;
+
+        File parent = output.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        RandomAccessFile out = new RandomAccessFile(output, "rw");
+        try {
+            out.setLength(0);
+            WavHeader.write(out, sampleRate, channelCount, 16);
+            long dataOffset = out.getFilePointer();
+            FileChannel target = out.getChannel();
+            // 环形区可能分成尾部和头部两段
+            int position = (int) (start % capacity);
+            long first = Math.min(size, capacity - position);
+            transfer(ring, HEADER_SIZE + position, first, target, dataOffset);
+            transfer(ring, HEADER_SIZE, size - first, target, dataOffset + first);
+            WavHeader.finish(out, size);
+        } finally {
+            out.close();
+        }
+        long overwritten = source.head() - capacity - start;
+        if (overwritten > 0) {
+            Log.e(TAG, "snapshot overrun by " + overwritten + " bytes");
+            throw new IOException("loop data overwritten while copying, increase guard time");
+        }
+        return size;
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target, long targetPosition)
+            throws IOException {
+        target.position(targetPosition);
+        while (count > 0) {
+            long n = source.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new IOException("transfer stopped with " + count + " bytes left");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * 已经写入的总字节数 超过数据区大小后旧数据被覆盖
+     */
+    public long getWrittenBytes() {
+        return mHead;
+    }
+}
@@ -0,0 +1,42 @@
+package com.binky.audiorecorder.sink;
+
+import com.binky.audiorecorder.session.MemorySession;
+
+/**
+ * 把录音保存在内存中的sink 每次录音开始时新建一个{@link MemorySession}
+ */
+
+public class MemorySink implements AudioSink {
+
+    private final MemorySession.Codec mCodec;
+    private volatile MemorySession mSession;
+
+    public MemorySink() {
+        this(MemorySession.Codec.RAW);
+    }
+
+    public MemorySink(MemorySession.Codec codec) {
+        this.mCodec = codec == null ? MemorySession.Codec.RAW : codec;
+    }
+
+    @Override
+    public void open(int sampleRate, int channelCount) {
+        mSession = new MemorySession(mCodec, sampleRate, channelCount);
+    }
+
+    @Override
+    public void write(AudioFrame frame) {
+        mSession.append(frame.data, 0, frame.length);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * 最近一次录音的内存会话 应在录音结束后读取
+     */
+    public MemorySession getSession() {
+        return mSession;
+    }
+}
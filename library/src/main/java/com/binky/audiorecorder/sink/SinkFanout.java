@@ -0,0 +1,128 @@
+package com.binky.audiorecorder.sink;
+
+import com.binky.audiorecorder.utils.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把每一帧录音数据分发给多个sink 每个sink有自己的有界队列和写入线程
+ * <p>
+ * 添加和移除sink只会在下一次录音开始时生效 每次录音为每个sink创建新的写入线程和队列
+ */
+
+public class SinkFanout {
+
+    private static final String TAG = "SinkFanout";
+
+    /**
+     * 默认队列长度 100ms一帧时为2秒
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 20;
+
+    /**
+     * 每个sink最近一次使用的写入线程
+     */
+    private final List<SinkWorker> mWorkers = new ArrayList<>();
+    private SinkWorker[] mActive = new SinkWorker[0];
+
+    public synchronized void add(AudioSink sink, int queueCapacity) {
+        for (SinkWorker worker : mWorkers) {
+            if (worker.sink() == sink) {
+                return;
+            }
+        }
+        mWorkers.add(new SinkWorker(sink, queueCapacity));
+    }
+
+    public synchronized void remove(AudioSink sink) {
+        for (int i = 0; i < mWorkers.size(); i++) {
+            if (mWorkers.get(i).sink() == sink) {
+                mWorkers.remove(i);
+                return;
+            }
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return mWorkers.isEmpty();
+    }
+
+    /**
+     * 录音开始 为每个sink启动新的写入线程
+     * 上一次录音关闭超时、写入线程还没有结束的sink本次录音不使用 避免两个线程同时操作同一个sink
+     */
+    public synchronized void open(int sampleRate, int channelCount) {
+        List<SinkWorker> active = new ArrayList<>(mWorkers.size());
+        for (int i = 0; i < mWorkers.size(); i++) {
+            SinkWorker previous = mWorkers.get(i);
+            if (previous.isRunning()) {
+                Log.e(TAG, previous.stats().getName() + " is still closing, skipped for this record");
+                continue;
+            }
+            SinkWorker worker = previous.isStarted() ? new SinkWorker(previous.sink(), previous.capacity()) : previous;
+            mWorkers.set(i, worker);
+            worker.start(sampleRate, channelCount);
+            active.add(worker);
+        }
+        mActive = active.toArray(new SinkWorker[active.size()]);
+    }
+
+    /**
+     * 分发一帧 在录音工作线程中调用 不会阻塞
+     */
+    public void dispatch(short[] data, int offset, int length, long sequence, long timestampNanos) {
+        SinkWorker[] active = mActive;
+        for (SinkWorker worker : active) {
+            worker.offer(data, offset, length, sequence, timestampNanos);
+        }
+    }
+
+    /**
+     * 录音结束 等待所有sink写完并关闭
+     *
+     * @param timeoutMillis 等待的最长时间 小于等于0表示不超时
+     * @return 是否全部在超时前完成
+     */
+    public boolean close(long timeoutMillis) {
+        SinkWorker[] active = mActive;
+        for (SinkWorker worker : active) {
+            worker.close();
+        }
+        long deadline = timeoutMillis <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMillis;
+        boolean finished = true;
+        for (SinkWorker worker : active) {
+            finished &= worker.awaitFinished(Math.max(0, deadline - System.currentTimeMillis()));
+        }
+        return finished;
+    }
+
+    /**
+     * 本次录音每个sink的统计
+     */
+    public List<SinkStats> getStats() {
+        SinkWorker[] active = mActive;
+        List<SinkStats> stats = new ArrayList<>(active.length);
+        for (SinkWorker worker : active) {
+            stats.add(worker.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 本次录音每个sink统计的副本 下一次录音开始后不会改变
+     */
+    public List<SinkStats> snapshotStats() {
+        SinkWorker[] active = mActive;
+        List<SinkStats> stats = new ArrayList<>(active.length);
+        for (SinkWorker worker : active) {
+            stats.add(new SinkStats(worker.stats()));
+        }
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return "SinkFanout" + getStats();
+    }
+}
@@ -0,0 +1,113 @@
+package com.binky.audiorecorder.sink;
+
+/**
+ * 单个sink的统计 lag为帧采集到写入完成的时间
+ */
+
+public class SinkStats {
+
+    private final String mName;
+    volatile long framesWritten;
+    volatile long bytesWritten;
+    volatile long framesDropped;
+    volatile long errors;
+    volatile long totalLagNanos;
+    volatile long maxLagNanos;
+    volatile long openNanos;
+    volatile long lastWriteNanos;
+    volatile int queueDepth;
+    volatile int maxQueueDepth;
+
+    SinkStats(String name) {
+        this.mName = name;
+    }
+
+    SinkStats(SinkStats source) {
+        this.mName = source.mName;
+        framesWritten = source.framesWritten;
+        bytesWritten = source.bytesWritten;
+        framesDropped = source.framesDropped;
+        errors = source.errors;
+        totalLagNanos = source.totalLagNanos;
+        maxLagNanos = source.maxLagNanos;
+        openNanos = source.openNanos;
+        lastWriteNanos = source.lastWriteNanos;
+        queueDepth = source.queueDepth;
+        maxQueueDepth = source.maxQueueDepth;
+    }
+
+    void reset(long nowNanos) {
+        framesWritten = 0;
+        bytesWritten = 0;
+        framesDropped = 0;
+        errors = 0;
+        totalLagNanos = 0;
+        maxLagNanos = 0;
+        openNanos = nowNanos;
+        lastWriteNanos = nowNanos;
+        queueDepth = 0;
+        maxQueueDepth = 0;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * 因为队列满被丢弃的帧数
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * 当前队列中等待写入的帧数
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getAverageLagNanos() {
+        long frames = framesWritten;
+        return frames == 0 ? 0 : totalLagNanos / frames;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /**
+     * 从开始到最后一次写入的平均吞吐 单位字节每秒
+     */
+    public double getThroughputBytesPerSecond() {
+        long elapsed = lastWriteNanos - openNanos;
+        return elapsed <= 0 ? 0 : bytesWritten * 1e9 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return mName + "{written=" + framesWritten
+                + ", dropped=" + framesDropped
+                + ", errors=" + errors
+                + ", queue=" + queueDepth + "/" + maxQueueDepth
+                + ", lagAvg=" + getAverageLagNanos() / 1000 + "us"
+                + ", lagMax=" + maxLagNanos / 1000 + "us"
+                + ", throughput=" + (long) getThroughputBytesPerSecond() + "B/s}";
+    }
+}
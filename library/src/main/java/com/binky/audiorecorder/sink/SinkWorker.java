@@ -0,0 +1,198 @@
+package com.binky.audiorecorder.sink;
+
+import com.binky.audiorecorder.trace.Trace;
+import com.binky.audiorecorder.utils.Log;
+
+/**
+ * 一个sink的有界队列和写入线程 队列满时丢弃新到的帧
+ * <p>
+ * 每个对象只用于一次录音 关闭超时后写入线程可能还在运行 下一次录音要创建新的对象
+ */
+
+class SinkWorker implements Runnable {
+
+    private static final String TAG = "SinkWorker";
+
+    private final AudioSink mSink;
+    private final SinkStats mStats;
+    private final AudioFrame[] mSlots;
+    /**
+     * 跟踪事件中区分不同sink的编号
+     */
+    private final int mTraceId;
+    private int mHead;
+    private int mCount;
+    private boolean mClosing;
+    private boolean mFailed;
+    private boolean mFinished;
+    private int mSampleRate;
+    private int mChannelCount;
+    private Thread mThread;
+
+    SinkWorker(AudioSink sink, int capacity) {
+        this.mSink = sink;
+        String name = sink.getClass().getSimpleName();
+        this.mStats = new SinkStats(name.length() == 0 ? sink.getClass().getName() : name);
+        this.mTraceId = System.identityHashCode(sink);
+        this.mSlots = new AudioFrame[Math.max(1, capacity)];
+        for (int i = 0; i < mSlots.length; i++) {
+            mSlots[i] = new AudioFrame(0);
+        }
+    }
+
+    AudioSink sink() {
+        return mSink;
+    }
+
+    SinkStats stats() {
+        return mStats;
+    }
+
+    int capacity() {
+        return mSlots.length;
+    }
+
+    synchronized boolean isStarted() {
+        return mThread != null;
+    }
+
+    /**
+     * 写入线程已经启动并且还没有关闭sink
+     */
+    synchronized boolean isRunning() {
+        return mThread != null && !mFinished;
+    }
+
+    synchronized void start(int sampleRate, int channelCount) {
+        if (mThread != null) {
+            throw new IllegalStateException("SinkWorker can only be started once");
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mStats.reset(System.nanoTime());
+        mThread = new Thread(this, "AudioSink-" + mStats.getName());
+        mThread.start();
+    }
+
+    /**
+     * 在录音线程中调用 只做一次数组复制
+     */
+    void offer(short[] data, int offset, int length, long sequence, long timestampNanos) {
+        synchronized (this) {
+            if (mClosing || mFailed) {
+                return;
+            }
+            if (mCount == mSlots.length) {
+                mStats.framesDropped++;
+                Trace.event(Trace.SINK_DROP, mTraceId, sequence);
+                return;
+            }
+            mSlots[(mHead + mCount) % mSlots.length].set(data, offset, length, sequence, timestampNanos);
+            mCount++;
+            mStats.queueDepth = mCount;
+            Trace.event(Trace.SINK_OFFER, mTraceId, mCount);
+            if (mCount > mStats.maxQueueDepth) {
+                mStats.maxQueueDepth = mCount;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * 不再接收新数据 写完队列中的数据后关闭sink
+     */
+    synchronized void close() {
+        mClosing = true;
+        notifyAll();
+    }
+
+    /**
+     * 等待队列写完并关闭
+     *
+     * @return 是否在超时之前完成
+     */
+    synchronized boolean awaitFinished(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        if (deadline < 0) {
+            // 不超时
+            deadline = Long.MAX_VALUE;
+        }
+        while (!mFinished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            mSink.open(mSampleRate, mChannelCount);
+        } catch (Exception e) {
+            Log.e(TAG, mStats.getName() + " open failed " + e);
+            fail();
+        }
+        while (true) {
+            AudioFrame frame;
+            synchronized (this) {
+                while (mCount == 0 && !mClosing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        mClosing = true;
+                    }
+                }
+                if (mCount == 0) {
+                    break;
+                }
+                frame = mSlots[mHead];
+            }
+            if (!mFailed) {
+                try {
+                    Trace.event(Trace.SINK_WRITE_BEGIN, mTraceId, frame.sequence);
+                    mSink.write(frame);
+                    long now = System.nanoTime();
+                    long lag = now - frame.timestampNanos;
+                    Trace.event(Trace.SINK_WRITE_END, mTraceId, lag);
+                    mStats.framesWritten++;
+                    mStats.bytesWritten += frame.length * 2;
+                    mStats.totalLagNanos += lag;
+                    if (lag > mStats.maxLagNanos) {
+                        mStats.maxLagNanos = lag;
+                    }
+                    mStats.lastWriteNanos = now;
+                } catch (Exception e) {
+                    Log.e(TAG, mStats.getName() + " write failed " + e);
+                    fail();
+                }
+            }
+            synchronized (this) {
+                mHead = (mHead + 1) % mSlots.length;
+                mCount--;
+                mStats.queueDepth = mCount;
+            }
+        }
+        try {
+            mSink.close();
+        } catch (Exception e) {
+            Log.e(TAG, mStats.getName() + " close failed " + e);
+            mStats.errors++;
+        }
+        synchronized (this) {
+            mFinished = true;
+            notifyAll();
+        }
+    }
+
+    private synchronized void fail() {
+        mFailed = true;
+        mStats.errors++;
+    }
+}
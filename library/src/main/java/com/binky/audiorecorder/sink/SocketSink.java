@@ -0,0 +1,446 @@
+package com.binky.audiorecorder.sink;
+
+import com.binky.audiorecorder.utils.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 通过TCP实时发送录音数据的sink 使用非阻塞的SocketChannel
+ * <p>
+ * 每一帧打包成一个数据包 所有字段均为小端:
+ * <pre>
+ * int   magic          {@link #MAGIC}
+ * short version        {@link #VERSION}
+ * short headerSize     {@link #HEADER_SIZE}
+ * long  sequence       帧序号
+ * long  timestampNanos 采集时间 System.nanoTime()
+ * int   sampleRate
+ * short channelCount
+ * short bitsPerSample  固定16
+ * int   payloadSize    负载字节数
+ * byte[payloadSize]    16位PCM
+ * </pre>
+ * 发送队列满时按{@link Policy}处理 连接断开后按退避时间自动重连 重连后从下一个完整的包开始发送
+ * <p>
+ * 域名解析、连接和发送都在sink自己的写入线程中进行 每帧写入后等待socket可写把队列发完
+ * 超过flushTimeout还没发完的数据在下一帧或者录音结束时继续发送
+ */
+
+public class SocketSink implements AudioSink {
+
+    private static final String TAG = "SocketSink";
+
+    public static final int MAGIC = 0x55414B42; // "BKAU"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 36;
+
+    /**
+     * 发送队列满时的处理方式
+     */
+    public enum Policy {
+        /**
+         * 丢弃新到的帧 保证已排队的数据连续
+         */
+        DROP_NEWEST,
+        /**
+         * 丢弃最早的帧 保证接收端拿到的数据尽量新
+         */
+        DROP_OLDEST,
+        /**
+         * 等待发送 超过blockTimeout仍然发不出去时丢弃新到的帧
+         */
+        BLOCK
+    }
+
+    /**
+     * 未解析的地址 每次建立连接时在写入线程中解析
+     */
+    private final InetSocketAddress mAddress;
+    private Policy mPolicy = Policy.DROP_OLDEST;
+    private int mQueueCapacity = 50;
+    private long mBlockTimeoutMillis = 100;
+    private long mFlushTimeoutMillis = 50;
+    private long mMinReconnectMillis = 100;
+    private long mMaxReconnectMillis = 5000;
+    private long mDrainTimeoutMillis = 1000;
+
+    private int mSampleRate;
+    private int mChannelCount;
+    private Selector mSelector;
+    private SocketChannel mChannel;
+    private boolean mConnected;
+    private long mReconnectDelayMillis;
+    private long mNextConnectNanos;
+
+    private ByteBuffer[] mPackets;
+    private long[] mTimestamps;
+    private int mHead;
+    private int mCount;
+
+    private volatile long mFramesSent;
+    private volatile long mBytesSent;
+    private volatile long mFramesDropped;
+    private volatile long mReconnects;
+    private volatile long mTotalLatencyNanos;
+    private volatile long mMaxLatencyNanos;
+
+    public SocketSink(String host, int port) {
+        this.mAddress = InetSocketAddress.createUnresolved(host, port);
+    }
+
+    /**
+     * 设置发送队列满时的处理方式 默认{@link Policy#DROP_OLDEST}
+     */
+    public SocketSink setPolicy(Policy policy) {
+        this.mPolicy = policy;
+        return this;
+    }
+
+    /**
+     * 设置发送队列能缓存的包数 默认50
+     */
+    public SocketSink setQueueCapacity(int capacity) {
+        this.mQueueCapacity = Math.max(1, capacity);
+        return this;
+    }
+
+    /**
+     * 设置{@link Policy#BLOCK}时最长的等待时间 默认100ms
+     */
+    public SocketSink setBlockTimeout(long millis) {
+        this.mBlockTimeoutMillis = millis;
+        return this;
+    }
+
+    /**
+     * 设置每帧写入后等待发送完成的最长时间 默认50ms 一般不超过一帧的时长
+     */
+    public SocketSink setFlushTimeout(long millis) {
+        this.mFlushTimeoutMillis = millis;
+        return this;
+    }
+
+    /**
+     * 设置重连的退避时间 每次失败后加倍 直到最大值 默认100ms到5s
+     */
+    public SocketSink setReconnectInterval(long minMillis, long maxMillis) {
+        this.mMinReconnectMillis = minMillis;
+        this.mMaxReconnectMillis = Math.max(minMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * 设置录音结束时发送剩余数据的最长时间 默认1s
+     */
+    public SocketSink setDrainTimeout(long millis) {
+        this.mDrainTimeoutMillis = millis;
+        return this;
+    }
+
+    @Override
+    public void open(int sampleRate, int channelCount) throws IOException {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        if (mPackets == null || mPackets.length != mQueueCapacity) {
+            mPackets = new ByteBuffer[mQueueCapacity];
+            mTimestamps = new long[mQueueCapacity];
+        }
+        mHead = 0;
+        mCount = 0;
+        mFramesSent = 0;
+        mBytesSent = 0;
+        mFramesDropped = 0;
+        mReconnects = 0;
+        mTotalLatencyNanos = 0;
+        mMaxLatencyNanos = 0;
+        mReconnectDelayMillis = mMinReconnectMillis;
+        mNextConnectNanos = 0;
+        mSelector = Selector.open();
+        connect();
+    }
+
+    @Override
+    public void write(AudioFrame frame) throws IOException {
+        if (!mConnected) {
+            connect();
+        }
+        flush();
+        if (mCount == mPackets.length) {
+            switch (mPolicy) {
+                case DROP_OLDEST:
+                    // 正在发送的包不能丢 否则接收端会错位
+                    if (mConnected && mPackets[mHead].position() > 0) {
+                        if (mCount == 1) {
+                            mFramesDropped++;
+                            return;
+                        }
+                        dropAt((mHead + 1) % mPackets.length);
+                    } else {
+                        dropAt(mHead);
+                    }
+                    break;
+                case BLOCK:
+                    long deadline = System.nanoTime() + mBlockTimeoutMillis * 1000000L;
+                    while (mCount == mPackets.length && mConnected) {
+                        long remaining = (deadline - System.nanoTime()) / 1000000L;
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        awaitWritable(remaining);
+                        flush();
+                    }
+                    if (mCount == mPackets.length) {
+                        mFramesDropped++;
+                        return;
+                    }
+                    break;
+                default:
+                    mFramesDropped++;
+                    return;
+            }
+        }
+        enqueue(frame);
+        flush();
+        // 不能把半个包留到下一帧 录音暂停或者停止采集时接收端会一直等不到这个包
+        long deadline = System.nanoTime() + mFlushTimeoutMillis * 1000000L;
+        while (mCount > 0 && mConnected) {
+            long remaining = (deadline - System.nanoTime()) / 1000000L;
+            if (remaining <= 0) {
+                break;
+            }
+            awaitWritable(remaining);
+            flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        long deadline = System.nanoTime() + mDrainTimeoutMillis * 1000000L;
+        while (mCount > 0) {
+            long remaining = (deadline - System.nanoTime()) / 1000000L;
+            if (remaining <= 0) {
+                break;
+            }
+            if (mConnected) {
+                awaitWritable(remaining);
+            } else {
+                awaitConnect(remaining);
+            }
+            flush();
+        }
+        mFramesDropped += mCount;
+        mCount = 0;
+        disconnect();
+        if (mSelector != null) {
+            mSelector.close();
+            mSelector = null;
+        }
+        Log.d(TAG, toString());
+    }
+
+    private void enqueue(AudioFrame frame) {
+        int index = (mHead + mCount) % mPackets.length;
+        int payloadSize = frame.length * 2;
+        ByteBuffer packet = mPackets[index];
+        if (packet == null || packet.capacity() < HEADER_SIZE + payloadSize) {
+            packet = ByteBuffer.allocateDirect(HEADER_SIZE + payloadSize).order(ByteOrder.LITTLE_ENDIAN);
+            mPackets[index] = packet;
+        }
+        packet.clear();
+        packet.putInt(MAGIC);
+        packet.putShort(VERSION);
+        packet.putShort((short) HEADER_SIZE);
+        packet.putLong(frame.sequence);
+        packet.putLong(frame.timestampNanos);
+        packet.putInt(mSampleRate);
+        packet.putShort((short) mChannelCount);
+        packet.putShort((short) 16);
+        packet.putInt(payloadSize);
+        short[] data = frame.data;
+        for (int i = 0; i < frame.length; i++) {
+            packet.putShort(data[i]);
+        }
+        packet.flip();
+        mTimestamps[index] = frame.timestampNanos;
+        mCount++;
+    }
+
+    private void dropAt(int index) {
+        // 把index之前的包向后挪一位 覆盖被丢弃的包 复用它的缓冲区
+        ByteBuffer dropped = mPackets[index];
+        while (index != mHead) {
+            int prev = (index - 1 + mPackets.length) % mPackets.length;
+            mPackets[index] = mPackets[prev];
+            mTimestamps[index] = mTimestamps[prev];
+            index = prev;
+        }
+        mPackets[mHead] = dropped;
+        mHead = (mHead + 1) % mPackets.length;
+        mCount--;
+        mFramesDropped++;
+    }
+
+    /**
+     * 在不阻塞的情况下尽可能多地发送
+     */
+    private void flush() {
+        if (!mConnected) {
+            return;
+        }
+        try {
+            while (mCount > 0) {
+                ByteBuffer packet = mPackets[mHead];
+                mBytesSent += mChannel.write(packet);
+                if (packet.hasRemaining()) {
+                    return;
+                }
+                long latency = System.nanoTime() - mTimestamps[mHead];
+                mTotalLatencyNanos += latency;
+                if (latency > mMaxLatencyNanos) {
+                    mMaxLatencyNanos = latency;
+                }
+                mFramesSent++;
+                mHead = (mHead + 1) % mPackets.length;
+                mCount--;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "send failed " + e);
+            disconnect();
+            scheduleReconnect();
+        }
+    }
+
+    private void connect() {
+        try {
+            if (mChannel == null) {
+                if (System.nanoTime() < mNextConnectNanos) {
+                    return;
+                }
+                // 每次连接重新解析 网络切换后域名可能对应新的地址
+                InetSocketAddress address = new InetSocketAddress(mAddress.getHostName(), mAddress.getPort());
+                if (address.isUnresolved()) {
+                    throw new IOException("unresolved host");
+                }
+                mChannel = SocketChannel.open();
+                mChannel.configureBlocking(false);
+                mChannel.socket().setTcpNoDelay(true);
+                mChannel.register(mSelector, SelectionKey.OP_CONNECT);
+                if (mChannel.connect(address)) {
+                    onConnected();
+                }
+            } else if (mChannel.isConnectionPending() && mChannel.finishConnect()) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "connect " + mAddress + " failed " + e);
+            disconnect();
+            scheduleReconnect();
+        }
+    }
+
+    private void onConnected() throws IOException {
+        mConnected = true;
+        mReconnectDelayMillis = mMinReconnectMillis;
+        mChannel.keyFor(mSelector).interestOps(SelectionKey.OP_WRITE);
+        // 新连接从完整的包开始
+        if (mCount > 0) {
+            mPackets[mHead].rewind();
+        }
+        Log.d(TAG, "connected " + mAddress);
+    }
+
+    private void disconnect() {
+        if (mChannel != null) {
+            if (mConnected) {
+                mReconnects++;
+            }
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mChannel = null;
+        }
+        mConnected = false;
+    }
+
+    private void scheduleReconnect() {
+        mNextConnectNanos = System.nanoTime() + mReconnectDelayMillis * 1000000L;
+        mReconnectDelayMillis = Math.min(mReconnectDelayMillis * 2, mMaxReconnectMillis);
+    }
+
+    private void awaitWritable(long timeoutMillis) throws IOException {
+        mSelector.select(Math.max(1, timeoutMillis));
+        mSelector.selectedKeys().clear();
+    }
+
+    private void awaitConnect(long timeoutMillis) throws IOException {
+        if (mChannel == null) {
+            long wait = Math.min(timeoutMillis, (mNextConnectNanos - System.nanoTime()) / 1000000L);
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        } else {
+            awaitWritable(timeoutMillis);
+        }
+        connect();
+    }
+
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    public long getFramesSent() {
+        return mFramesSent;
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * 因为发送队列满或者结束时没有发完而丢弃的帧数
+     */
+    public long getFramesDropped() {
+        return mFramesDropped;
+    }
+
+    /**
+     * 连接断开的次数
+     */
+    public long getReconnects() {
+        return mReconnects;
+    }
+
+    /**
+     * 从采集到整包写入socket的平均耗时
+     */
+    public long getAverageLatencyNanos() {
+        long sent = mFramesSent;
+        return sent == 0 ? 0 : mTotalLatencyNanos / sent;
+    }
+
+    public long getMaxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SocketSink{" + mAddress
+                + ", sent=" + mFramesSent
+                + ", dropped=" + mFramesDropped
+                + ", reconnects=" + mReconnects
+                + ", latencyAvg=" + getAverageLatencyNanos() / 1000 + "us"
+                + ", latencyMax=" + mMaxLatencyNanos / 1000 + "us}";
+    }
+}
@@ -0,0 +1,300 @@
+package com.binky.audiorecorder.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 采集流程的二进制事件跟踪 用于离线分析时间线
+ * <p>
+ * 事件只包含类型、线程、纳秒时间戳和两个long参数 写入预先分配好的环形缓冲区 不构造字符串也不分配内存
+ * 缓冲区满后覆盖最旧的事件 按分类开关 关闭的分类只有一次volatile读的开销
+ * 通过{@link #dump(File, long)}把最近一段时间的事件写成紧凑的文件 用{@link TraceDecoder}解码
+ * <p>
+ * 每个事件占5个long 依次为 序号+1、时间戳、线程和类型、参数a、参数b
+ * 写入时先把序号清零 写完字段后再写序号 读取时序号前后一致才认为事件完整
+ */
+
+public final class Trace {
+
+    /**
+     * 事件分类 可以按位组合
+     */
+    public static final int CATEGORY_CAPTURE = 1;
+    public static final int CATEGORY_PROCESS = 1 << 1;
+    public static final int CATEGORY_SINK = 1 << 2;
+    public static final int CATEGORY_CALLBACK = 1 << 3;
+    public static final int CATEGORY_FILE = 1 << 4;
+    public static final int CATEGORY_STATE = 1 << 5;
+    public static final int CATEGORY_ALL = 0xFF;
+
+    /**
+     * 事件类型 高8位是分类 BEGIN和END成对出现时END等于BEGIN+1
+     */
+    // a=数组长度
+    public static final int READ_BEGIN = CATEGORY_CAPTURE << 8 | 1;
+    // a=读到的采样点数 b=这一帧在本次录音中的位置
+    public static final int READ_END = CATEGORY_CAPTURE << 8 | 2;
+    // a=位置 b=丢失的采样点数
+    public static final int GAP = CATEGORY_CAPTURE << 8 | 3;
+    // a=采样点数
+    public static final int PROCESS_BEGIN = CATEGORY_PROCESS << 8 | 1;
+    public static final int PROCESS_END = CATEGORY_PROCESS << 8 | 2;
+    // a=sink编号 b=入队后的队列长度
+    public static final int SINK_OFFER = CATEGORY_SINK << 8 | 1;
+    // a=sink编号 b=帧序号
+    public static final int SINK_DROP = CATEGORY_SINK << 8 | 2;
+    // a=sink编号 b=帧序号
+    public static final int SINK_WRITE_BEGIN = CATEGORY_SINK << 8 | 3;
+    // a=sink编号 b=从采集到写完的延迟 纳秒
+    public static final int SINK_WRITE_END = CATEGORY_SINK << 8 | 4;
+    // a=采样点数
+    public static final int CALLBACK_POST = CATEGORY_CALLBACK << 8 | 1;
+    // a=累计被合并的帧数
+    public static final int CALLBACK_CONFLATED = CATEGORY_CALLBACK << 8 | 2;
+    // a=采样点数 没有数据时为0
+    public static final int CALLBACK_RUN_BEGIN = CATEGORY_CALLBACK << 8 | 3;
+    public static final int CALLBACK_RUN_END = CATEGORY_CALLBACK << 8 | 4;
+    // a=字节数
+    public static final int FILE_WRITE_BEGIN = CATEGORY_FILE << 8 | 1;
+    // a=累计写入的字节数
+    public static final int FILE_WRITE_END = CATEGORY_FILE << 8 | 2;
+    // a=STATE_*
+    public static final int STATE = CATEGORY_STATE << 8 | 1;
+
+    /**
+     * {@link #STATE}事件的参数
+     */
+    public static final int STATE_START = 1;
+    public static final int STATE_STOP = 2;
+    public static final int STATE_PAUSE = 3;
+    public static final int STATE_RESUME = 4;
+    public static final int STATE_ERROR = 5;
+    public static final int STATE_STORAGE_LIMIT = 6;
+    /**
+     * 第一帧数据到达 b=从调用start开始的耗时 单位纳秒
+     */
+    public static final int STATE_FIRST_FRAME = 7;
+
+    /**
+     * 默认缓冲区能容纳的事件数 约2.5MB
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    static final int MAGIC = 0x52544B42; // "BKTR"
+    static final int VERSION = 1;
+    private static final int FIELDS = 5;
+
+    private static volatile int sMask;
+    private static volatile AtomicLongArray sSlots;
+    private static int sCapacity;
+    private static final AtomicLong sNext = new AtomicLong();
+
+    private Trace() {
+    }
+
+    /**
+     * 开启指定分类的跟踪 第一次开启时按{@link #DEFAULT_CAPACITY}分配缓冲区
+     *
+     * @param categories CATEGORY_*的组合 0表示全部关闭
+     */
+    public static synchronized void setEnabledCategories(int categories) {
+        if (categories != 0 && sSlots == null) {
+            allocate(DEFAULT_CAPACITY);
+        }
+        sMask = categories;
+    }
+
+    public static int getEnabledCategories() {
+        return sMask;
+    }
+
+    /**
+     * 设置缓冲区能容纳的事件数 向上取整到2的幂 会清空已有的事件
+     */
+    public static synchronized void setCapacity(int events) {
+        int capacity = Integer.highestOneBit(Math.max(16, events));
+        if (capacity < events) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private static void allocate(int capacity) {
+        sCapacity = capacity;
+        sSlots = new AtomicLongArray(capacity * FIELDS);
+        sNext.set(0);
+    }
+
+    public static boolean isEnabled(int category) {
+        return (sMask & category) != 0;
+    }
+
+    /**
+     * 清空已经记录的事件
+     */
+    public static synchronized void clear() {
+        if (sSlots != null) {
+            allocate(sCapacity);
+        }
+    }
+
+    /**
+     * 已经记录的事件总数 包括被覆盖的
+     */
+    public static long getEventCount() {
+        return sNext.get();
+    }
+
+    public static void event(int type) {
+        event(type, 0, 0);
+    }
+
+    public static void event(int type, long a) {
+        event(type, a, 0);
+    }
+
+    /**
+     * 记录一个事件 分类关闭时直接返回 可以在任意线程中调用
+     */
+    public static void event(int type, long a, long b) {
+        if ((sMask & (type >>> 8)) == 0) {
+            return;
+        }
+        AtomicLongArray slots = sSlots;
+        if (slots == null) {
+            return;
+        }
+        long time = System.nanoTime();
+        long sequence = sNext.getAndIncrement();
+        int base = (int) (sequence & (slots.length() / FIELDS - 1)) * FIELDS;
+        // lazySet保证前面的写入先于它可见 序号清零后才会写字段 字段写完后才会写序号
+        slots.lazySet(base, 0);
+        slots.lazySet(base + 1, time);
+        slots.lazySet(base + 2, Thread.currentThread().getId() << 32 | type);
+        slots.lazySet(base + 3, a);
+        slots.lazySet(base + 4, b);
+        slots.lazySet(base, sequence + 1);
+    }
+
+    /**
+     * 把最近一段时间的事件写入文件 不影响正在记录的事件
+     *
+     * @param file       输出文件
+     * @param lastMillis 最近多少毫秒 小于等于0表示缓冲区中的全部事件
+     * @return 写入的事件数
+     */
+    public static int dump(File file, long lastMillis) throws IOException {
+        AtomicLongArray slots = sSlots;
+        long now = System.nanoTime();
+        long wallNow = System.currentTimeMillis();
+        int capacity = slots == null ? 0 : slots.length() / FIELDS;
+        long end = sNext.get();
+        long begin = Math.max(0, end - capacity);
+        long since = lastMillis > 0 ? now - lastMillis * 1000000L : Long.MIN_VALUE;
+
+        long[] events = new long[(int) (end - begin) * 4];
+        int count = 0;
+        for (long sequence = begin; sequence < end; sequence++) {
+            int base = (int) (sequence & (capacity - 1)) * FIELDS;
+            long before = slots.get(base);
+            long time = slots.get(base + 1);
+            long header = slots.get(base + 2);
+            long a = slots.get(base + 3);
+            long b = slots.get(base + 4);
+            // 正在写入或者已经被新事件覆盖
+            if (before != sequence + 1 || slots.get(base) != before || time < since) {
+                continue;
+            }
+            events[count * 4] = time;
+            events[count * 4 + 1] = header;
+            events[count * 4 + 2] = a;
+            events[count * 4 + 3] = b;
+            count++;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            long baseTime = count > 0 ? events[0] : now;
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(count);
+            out.writeLong(baseTime);
+            // 对应的墙上时间 用来和其他日志对齐
+            out.writeLong(wallNow - (now - baseTime) / 1000000L);
+            long previous = baseTime;
+            for (int i = 0; i < count; i++) {
+                long time = events[i * 4];
+                long header = events[i * 4 + 1];
+                // 多线程写入时序号和时间戳可能有微小的乱序 差值用zigzag编码
+                writeVarLong(out, zigzag(time - previous));
+                writeVarLong(out, header & 0xFFFFFFFFL);
+                writeVarLong(out, header >>> 32);
+                writeVarLong(out, zigzag(events[i * 4 + 2]));
+                writeVarLong(out, zigzag(events[i * 4 + 3]));
+                previous = time;
+            }
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * 事件类型的名字 用于解码后的显示
+     */
+    public static String typeName(int type) {
+        switch (type) {
+            case READ_BEGIN:
+                return "READ_BEGIN";
+            case READ_END:
+                return "READ_END";
+            case GAP:
+                return "GAP";
+            case PROCESS_BEGIN:
+                return "PROCESS_BEGIN";
+            case PROCESS_END:
+                return "PROCESS_END";
+            case SINK_OFFER:
+                return "SINK_OFFER";
+            case SINK_DROP:
+                return "SINK_DROP";
+            case SINK_WRITE_BEGIN:
+                return "SINK_WRITE_BEGIN";
+            case SINK_WRITE_END:
+                return "SINK_WRITE_END";
+            case CALLBACK_POST:
+                return "CALLBACK_POST";
+            case CALLBACK_CONFLATED:
+                return "CALLBACK_CONFLATED";
+            case CALLBACK_RUN_BEGIN:
+                return "CALLBACK_RUN_BEGIN";
+            case CALLBACK_RUN_END:
+                return "CALLBACK_RUN_END";
+            case FILE_WRITE_BEGIN:
+                return "FILE_WRITE_BEGIN";
+            case FILE_WRITE_END:
+                return "FILE_WRITE_END";
+            case STATE:
+                return "STATE";
+            default:
+                return "0x" + Integer.toHexString(type);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.binky.audiorecorder.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 解码{@link Trace#dump(File, long)}写出的文件 不依赖Android环境
+ * <p>
+ * 在电脑上查看trace文件可以用测试代码中的命令行工具com.binky.audiorecorder.bench.TraceDump
+ */
+
+public class TraceDecoder {
+
+    private final List<TraceEvent> mEvents;
+    private final long mBaseNanos;
+    private final long mBaseWallMillis;
+
+    private TraceDecoder(List<TraceEvent> events, long baseNanos, long baseWallMillis) {
+        this.mEvents = events;
+        this.mBaseNanos = baseNanos;
+        this.mBaseWallMillis = baseWallMillis;
+    }
+
+    public static TraceDecoder read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != Trace.MAGIC) {
+                throw new IOException("not a trace file");
+            }
+            int version = in.readShort();
+            if (version != Trace.VERSION) {
+                throw new IOException("unsupported trace version " + version);
+            }
+            int count = in.readInt();
+            long baseNanos = in.readLong();
+            long baseWallMillis = in.readLong();
+            List<TraceEvent> events = new ArrayList<>(count);
+            long time = baseNanos;
+            for (int i = 0; i < count; i++) {
+                time += unzigzag(readVarLong(in));
+                int type = (int) readVarLong(in);
+                long thread = readVarLong(in);
+                long a = unzigzag(readVarLong(in));
+                long b = unzigzag(readVarLong(in));
+                events.add(new TraceEvent(time, type, thread, a, b));
+            }
+            return new TraceDecoder(events, baseNanos, baseWallMillis);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public List<TraceEvent> getEvents() {
+        return mEvents;
+    }
+
+    /**
+     * 第一个事件的System.nanoTime
+     */
+    public long getBaseNanos() {
+        return mBaseNanos;
+    }
+
+    /**
+     * 第一个事件对应的墙上时间
+     */
+    public long getBaseWallMillis() {
+        return mBaseWallMillis;
+    }
+
+    /**
+     * 每种BEGIN/END配对的耗时 按线程配对 key是BEGIN的类型
+     */
+    public Map<Integer, long[]> durations() {
+        Map<Long, Long> open = new HashMap<>();
+        Map<Integer, List<Long>> collected = new TreeMap<>();
+        for (TraceEvent event : mEvents) {
+            String name = Trace.typeName(event.type);
+            if (name.endsWith("_BEGIN")) {
+                open.put(event.threadId << 32 | event.type, event.timeNanos);
+            } else if (name.endsWith("_END")) {
+                Long begin = open.remove(event.threadId << 32 | (event.type - 1));
+                if (begin != null) {
+                    List<Long> list = collected.get(event.type - 1);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        collected.put(event.type - 1, list);
+                    }
+                    list.add(event.timeNanos - begin);
+                }
+            }
+        }
+        Map<Integer, long[]> result = new TreeMap<>();
+        for (Map.Entry<Integer, List<Long>> entry : collected.entrySet()) {
+            List<Long> list = entry.getValue();
+            long[] values = new long[list.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = list.get(i);
+            }
+            Arrays.sort(values);
+            result.put(entry.getKey(), values);
+        }
+        return result;
+    }
+
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%d events over %.1f ms%n", mEvents.size(),
+                mEvents.isEmpty() ? 0 : (mEvents.get(mEvents.size() - 1).timeNanos - mBaseNanos) / 1e6));
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (TraceEvent event : mEvents) {
+            Integer count = counts.get(event.type);
+            counts.put(event.type, count == null ? 1 : count + 1);
+        }
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            builder.append(String.format("  %-20s %d%n", Trace.typeName(entry.getKey()), entry.getValue()));
+        }
+        for (Map.Entry<Integer, long[]> entry : durations().entrySet()) {
+            long[] values = entry.getValue();
+            String name = Trace.typeName(entry.getKey());
+            builder.append(String.format("  %-20s n=%d p50=%.1fus p99=%.1fus max=%.1fus%n",
+                    name.substring(0, name.length() - "_BEGIN".length()), values.length,
+                    values[values.length / 2] / 1e3, values[(int) (values.length * 0.99)] / 1e3,
+                    values[values.length - 1] / 1e3));
+        }
+        return builder.toString();
+    }
+}
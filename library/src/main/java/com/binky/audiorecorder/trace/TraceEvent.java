@@ -0,0 +1,57 @@
+package com.binky.audiorecorder.trace;
+
+/**
+ * 解码后的一个跟踪事件
+ */
+
+public class TraceEvent {
+
+    final long timeNanos;
+    final int type;
+    final long threadId;
+    final long a;
+    final long b;
+
+    TraceEvent(long timeNanos, int type, long threadId, long a, long b) {
+        this.timeNanos = timeNanos;
+        this.type = type;
+        this.threadId = threadId;
+        this.a = a;
+        this.b = b;
+    }
+
+    /**
+     * System.nanoTime时间戳
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * 事件类型 见{@link Trace}中的常量
+     */
+    public int getType() {
+        return type;
+    }
+
+    public int getCategory() {
+        return type >>> 8;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public long getA() {
+        return a;
+    }
+
+    public long getB() {
+        return b;
+    }
+
+    @Override
+    public String toString() {
+        return Trace.typeName(type) + "{thread=" + threadId + ", a=" + a + ", b=" + b + "}";
+    }
+}
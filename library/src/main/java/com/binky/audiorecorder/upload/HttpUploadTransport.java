@@ -0,0 +1,111 @@
+package com.binky.audiorecorder.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 基于HttpURLConnection的分块上传
+ * <p>
+ * 每个分块以PUT {baseUrl}/{taskId}/{fileName} 上传 通过Content-Range标明位置 taskId和fileName按路径段转义
+ * 全部完成后以POST {baseUrl}/{taskId}/{fileName}?complete=1 通知服务端 2xx视为成功
+ */
+
+public class HttpUploadTransport implements UploadTransport {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final String mBaseUrl;
+    private int mConnectTimeoutMillis = 10000;
+    private int mReadTimeoutMillis = 30000;
+
+    public HttpUploadTransport(String baseUrl) {
+        this.mBaseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    public HttpUploadTransport setTimeout(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.mConnectTimeoutMillis = connectTimeoutMillis;
+        this.mReadTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    @Override
+    public void upload(UploadTask task, long offset, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        HttpURLConnection connection = open(url(task, ""), "PUT");
+        connection.setRequestProperty("Content-Range",
+                "bytes " + offset + "-" + (offset + length - 1) + "/" + task.getSize());
+        connection.setFixedLengthStreamingMode(length);
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(data.array(), data.arrayOffset() + data.position(), length);
+        } finally {
+            out.close();
+        }
+        check(connection);
+    }
+
+    @Override
+    public void finish(UploadTask task) throws IOException {
+        HttpURLConnection connection = open(url(task, "?complete=1"), "POST");
+        connection.setFixedLengthStreamingMode(0);
+        connection.getOutputStream().close();
+        check(connection);
+    }
+
+    private String url(UploadTask task, String query) {
+        return mBaseUrl + "/" + encodePathSegment(task.getId()) + "/" + encodePathSegment(task.getName()) + query;
+    }
+
+    /**
+     * 按RFC 3986转义一个路径段 只保留不需要转义的字符 文件名中的空格、'/'、'?'、'#'、'%'和非ASCII字符都会被转义
+     * URLEncoder是表单编码 会把空格转成'+' 不能用于路径
+     */
+    static String encodePathSegment(String segment) {
+        if (".".equals(segment) || "..".equals(segment)) {
+            // 否则会被当作相对路径
+            return segment.replace(".", "%2E");
+        }
+        byte[] bytes = segment.getBytes(Charset.forName("UTF-8"));
+        StringBuilder builder = new StringBuilder(bytes.length);
+        for (byte b : bytes) {
+            int c = b & 0xFF;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~') {
+                builder.append((char) c);
+            } else {
+                builder.append('%').append(HEX[c >> 4]).append(HEX[c & 0x0F]);
+            }
+        }
+        return builder.toString();
+    }
+
+    private HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        return connection;
+    }
+
+    private void check(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        // 读完响应体 让连接可以复用
+        InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            byte[] skip = new byte[256];
+            while (in.read(skip) >= 0) {
+            }
+            in.close();
+        }
+        if (code / 100 != 2) {
+            throw new IOException("HTTP " + code + " " + connection.getURL());
+        }
+    }
+}
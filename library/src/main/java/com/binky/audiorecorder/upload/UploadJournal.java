@@ -0,0 +1,128 @@
+package com.binky.audiorecorder.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+
+/**
+ * 上传进度日志 每个任务一个文件 进程被杀后可以从中恢复
+ * <p>
+ * 文件格式: int magic, long fileSize, long lastModified, int chunkSize, UTF path,
+ * 之后每上传完成一个分块追加一个int分块序号 末尾不完整的记录在加载时忽略
+ */
+
+class UploadJournal {
+
+    private static final int MAGIC = 0x424B5550; // "BKUP"
+
+    private final File mFile;
+    private RandomAccessFile mOutput;
+
+    UploadJournal(File file) {
+        this.mFile = file;
+    }
+
+    File getFile() {
+        return mFile;
+    }
+
+    /**
+     * 新建日志并写入任务信息
+     */
+    synchronized void create(UploadTask task) throws IOException {
+        mOutput = new RandomAccessFile(mFile, "rw");
+        mOutput.setLength(0);
+        mOutput.writeInt(MAGIC);
+        mOutput.writeLong(task.getSize());
+        mOutput.writeLong(task.getLastModified());
+        mOutput.writeInt(task.getChunkSize());
+        mOutput.writeUTF(task.getPath());
+        mOutput.getChannel().force(false);
+    }
+
+    /**
+     * 读取日志 文件损坏或者录音文件已经变化时返回null
+     *
+     * @param done 已完成的分块会被设置到这里
+     */
+    static UploadTask load(File file, BitSet done) {
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            long size = input.readLong();
+            long lastModified = input.readLong();
+            int chunkSize = input.readInt();
+            String path = input.readUTF();
+            File source = new File(path);
+            if (!source.isFile() || source.length() != size || source.lastModified() != lastModified) {
+                return null;
+            }
+            UploadTask task = new UploadTask(path, size, lastModified, chunkSize);
+            long length = input.length();
+            while (input.getFilePointer() + 4 <= length) {
+                int index = input.readInt();
+                if (index >= 0 && index < task.getChunkCount()) {
+                    done.set(index);
+                }
+            }
+            return task;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 以追加方式打开已有的日志
+     */
+    synchronized void reopen() throws IOException {
+        mOutput = new RandomAccessFile(mFile, "rw");
+        // 截掉不完整的记录
+        long length = mOutput.length();
+        mOutput.seek(length - (length - headerLength()) % 4);
+    }
+
+    private long headerLength() throws IOException {
+        mOutput.seek(4 + 8 + 8 + 4);
+        mOutput.readUTF();
+        return mOutput.getFilePointer();
+    }
+
+    /**
+     * 记录一个分块上传完成
+     */
+    synchronized void markDone(int chunkIndex) throws IOException {
+        if (mOutput == null) {
+            return;
+        }
+        mOutput.writeInt(chunkIndex);
+        mOutput.getChannel().force(false);
+    }
+
+    synchronized void close() {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mOutput = null;
+        }
+    }
+
+    synchronized void delete() {
+        close();
+        mFile.delete();
+    }
+}
@@ -0,0 +1,30 @@
+package com.binky.audiorecorder.upload;
+
+/**
+ * 上传进度的回调 在上传线程中执行
+ */
+
+public class UploadListener {
+
+    /**
+     * 一个分块上传完成
+     *
+     * @param task          上传任务
+     * @param uploadedBytes 已上传的字节数
+     * @param totalBytes    文件总字节数
+     */
+    public void onProgress(UploadTask task, long uploadedBytes, long totalBytes) {
+    }
+
+    /**
+     * 整个文件上传完成
+     */
+    public void onComplete(UploadTask task) {
+    }
+
+    /**
+     * 有分块超过重试次数仍然失败 进度已经保存 可以通过{@link UploadManager#resume()}继续
+     */
+    public void onFailed(UploadTask task, Exception error) {
+    }
+}
@@ -0,0 +1,322 @@
+package com.binky.audiorecorder.upload;
+
+import com.binky.audiorecorder.utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 录音文件的分块后台上传 支持断点续传
+ * <p>
+ * 文件按固定大小分块 每块用FileChannel按位置读取 由固定数量的线程并发上传
+ * 每完成一块都会写入进度日志 进程被杀后调用{@link #resume()}从未完成的分块继续
+ */
+
+public class UploadManager {
+
+    private static final String TAG = "UploadManager";
+    private static final String JOURNAL_SUFFIX = ".upl";
+
+    /**
+     * 默认分块大小 256KB
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private final File mJournalDir;
+    private final UploadTransport mTransport;
+    private final int mChunkSize;
+    private final ThreadPoolExecutor mExecutor;
+    private final ThreadLocal<ByteBuffer> mBuffers;
+    private final UploadStats mStats = new UploadStats();
+    private final Map<String, UploadTask> mTasks = new HashMap<>();
+    private int mMaxRetries = 3;
+    private long mRetryDelayMillis = 500;
+    private UploadListener mListener;
+
+    /**
+     * @param journalDir  保存进度日志的目录 应当是应用私有目录
+     * @param transport   传输层
+     * @param chunkSize   分块大小
+     * @param concurrency 同时上传的分块数
+     */
+    public UploadManager(File journalDir, UploadTransport transport, final int chunkSize, int concurrency) {
+        this.mJournalDir = journalDir;
+        this.mTransport = transport;
+        this.mChunkSize = chunkSize;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.mExecutor = new ThreadPoolExecutor(concurrency, concurrency, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AudioUpload-" + threadCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.mExecutor.allowCoreThreadTimeOut(true);
+        this.mBuffers = new ThreadLocal<ByteBuffer>() {
+            @Override
+            protected ByteBuffer initialValue() {
+                return ByteBuffer.allocate(chunkSize);
+            }
+        };
+    }
+
+    public UploadManager(File journalDir, UploadTransport transport) {
+        this(journalDir, transport, DEFAULT_CHUNK_SIZE, 2);
+    }
+
+    /**
+     * 设置每个分块失败后的重试次数和首次重试的等待时间 之后每次等待时间加倍 默认3次 500ms
+     */
+    public UploadManager setRetryPolicy(int maxRetries, long retryDelayMillis) {
+        this.mMaxRetries = maxRetries;
+        this.mRetryDelayMillis = retryDelayMillis;
+        return this;
+    }
+
+    public UploadManager setListener(UploadListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    public UploadStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * 添加一个上传任务 同一个文件已经在上传时直接返回已有的任务
+     *
+     * @param path 文件路径
+     * @return 上传任务 文件不存在时返回null
+     */
+    public UploadTask enqueue(String path) {
+        File file = new File(path);
+        if (!file.isFile()) {
+            Log.e(TAG, "upload file not found " + path);
+            return null;
+        }
+        UploadTask task = new UploadTask(file.getAbsolutePath(), file.length(), file.lastModified(), mChunkSize);
+        synchronized (mTasks) {
+            UploadTask running = mTasks.get(task.getId());
+            if (running != null) {
+                return running;
+            }
+            mTasks.put(task.getId(), task);
+        }
+        BitSet done = new BitSet();
+        File journalFile = new File(mJournalDir, task.getId() + JOURNAL_SUFFIX);
+        UploadTask saved = journalFile.exists() ? UploadJournal.load(journalFile, done) : null;
+        task.journal = new UploadJournal(journalFile);
+        try {
+            if (saved != null && saved.getChunkSize() == mChunkSize) {
+                task.journal.reopen();
+            } else {
+                done.clear();
+                mJournalDir.mkdirs();
+                task.journal.create(task);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "open upload journal failed " + e);
+            done.clear();
+        }
+        schedule(task, done);
+        return task;
+    }
+
+    /**
+     * 恢复日志目录中所有未完成的任务 一般在应用启动时调用
+     *
+     * @return 恢复的任务
+     */
+    public List<UploadTask> resume() {
+        List<UploadTask> tasks = new ArrayList<>();
+        File[] files = mJournalDir.listFiles();
+        if (files == null) {
+            return tasks;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(JOURNAL_SUFFIX)) {
+                continue;
+            }
+            UploadTask saved = UploadJournal.load(file, new BitSet());
+            if (saved == null) {
+                // 文件已经被删除或修改 进度没有意义了
+                file.delete();
+                continue;
+            }
+            UploadTask task = enqueue(saved.getPath());
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * 停止接收新任务 已经开始的分块会继续完成 未完成的任务可以在下次{@link #resume()}
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * 在{@link #shutdown()}之后等待正在上传的分块完成
+     *
+     * @return 是否在超时前全部完成
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+
+    private void schedule(final UploadTask task, BitSet done) {
+        int pending = task.getChunkCount() - done.cardinality();
+        task.remainingChunks.set(pending);
+        for (int i = done.nextSetBit(0); i >= 0; i = done.nextSetBit(i + 1)) {
+            task.uploadedBytes.addAndGet(task.getChunkLength(i));
+            mStats.chunksResumed.incrementAndGet();
+        }
+        if (pending == 0) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    finish(task);
+                }
+            });
+            return;
+        }
+        for (int i = done.nextClearBit(0); i < task.getChunkCount(); i = done.nextClearBit(i + 1)) {
+            final int index = i;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    uploadChunk(task, index);
+                }
+            });
+        }
+    }
+
+    private void uploadChunk(UploadTask task, int index) {
+        if (task.failed) {
+            return;
+        }
+        long offset = (long) index * task.getChunkSize();
+        int length = task.getChunkLength(index);
+        ByteBuffer buffer = mBuffers.get();
+        Exception error = null;
+        for (int attempt = 0; attempt <= mMaxRetries && !task.failed; attempt++) {
+            if (attempt > 0) {
+                mStats.retries.incrementAndGet();
+                try {
+                    Thread.sleep(mRetryDelayMillis << (attempt - 1));
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            long begin = System.nanoTime();
+            mStats.transferStarted();
+            try {
+                readChunk(task, offset, length, buffer);
+                mTransport.upload(task, offset, buffer);
+                mStats.transferNanos.addAndGet(System.nanoTime() - begin);
+                error = null;
+                break;
+            } catch (IOException e) {
+                error = e;
+                Log.e(TAG, task.getName() + " chunk " + index + " attempt " + attempt + " failed " + e);
+            } finally {
+                mStats.transferFinished();
+            }
+        }
+        if (error != null) {
+            mStats.chunksFailed.incrementAndGet();
+            fail(task, error);
+            return;
+        }
+        if (task.failed) {
+            return;
+        }
+        try {
+            task.journal.markDone(index);
+        } catch (IOException e) {
+            // 进度没有记下来只会导致恢复时重传这一块
+            e.printStackTrace();
+        }
+        mStats.chunksUploaded.incrementAndGet();
+        mStats.bytesUploaded.addAndGet(length);
+        long uploaded = task.uploadedBytes.addAndGet(length);
+        if (mListener != null) {
+            mListener.onProgress(task, uploaded, task.getSize());
+        }
+        if (task.remainingChunks.decrementAndGet() == 0) {
+            finish(task);
+        }
+    }
+
+    /**
+     * 用FileChannel按位置读取 多个线程共用同一个channel互不影响
+     */
+    private void readChunk(UploadTask task, long offset, int length, ByteBuffer buffer) throws IOException {
+        FileChannel channel = task.openChannel();
+        buffer.clear();
+        buffer.limit(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("file truncated at " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private void finish(UploadTask task) {
+        try {
+            mTransport.finish(task);
+        } catch (IOException e) {
+            fail(task, e);
+            return;
+        }
+        task.completed = true;
+        task.closeChannel();
+        task.journal.delete();
+        synchronized (mTasks) {
+            mTasks.remove(task.getId());
+        }
+        mStats.filesCompleted.incrementAndGet();
+        Log.d(TAG, task + " " + mStats);
+        if (mListener != null) {
+            mListener.onComplete(task);
+        }
+    }
+
+    private void fail(UploadTask task, Exception error) {
+        synchronized (task) {
+            if (task.failed) {
+                return;
+            }
+            task.failed = true;
+        }
+        task.closeChannel();
+        task.journal.close();
+        synchronized (mTasks) {
+            mTasks.remove(task.getId());
+        }
+        if (mListener != null) {
+            mListener.onFailed(task, error);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.binky.audiorecorder.upload;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上传的统计 从{@link UploadManager}创建开始累计
+ */
+
+public class UploadStats {
+
+    final AtomicLong bytesUploaded = new AtomicLong();
+    final AtomicLong chunksUploaded = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong chunksFailed = new AtomicLong();
+    final AtomicLong chunksResumed = new AtomicLong();
+    final AtomicLong filesCompleted = new AtomicLong();
+    final AtomicLong transferNanos = new AtomicLong();
+    /**
+     * 正在上传的分块数 和至少有一个分块在上传的累计时间 用于计算吞吐
+     */
+    private int mActiveTransfers;
+    private long mActiveSinceNanos;
+    private long mActiveNanos;
+
+    public long getBytesUploaded() {
+        return bytesUploaded.get();
+    }
+
+    public long getChunksUploaded() {
+        return chunksUploaded.get();
+    }
+
+    /**
+     * 失败后重试的次数
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * 超过重试次数仍然失败的分块数
+     */
+    public long getChunksFailed() {
+        return chunksFailed.get();
+    }
+
+    /**
+     * 恢复任务时因为已经上传过而跳过的分块数
+     */
+    public long getChunksResumed() {
+        return chunksResumed.get();
+    }
+
+    public long getFilesCompleted() {
+        return filesCompleted.get();
+    }
+
+    /**
+     * 所有分块上传耗时之和 并发时大于实际经过的时间
+     */
+    public long getTransferNanos() {
+        return transferNanos.get();
+    }
+
+    /**
+     * 至少有一个分块在上传的时间 不包括没有任务时的空闲时间 并发的分块只计算一次
+     */
+    public synchronized long getActiveNanos() {
+        long active = mActiveNanos;
+        if (mActiveTransfers > 0) {
+            active += System.nanoTime() - mActiveSinceNanos;
+        }
+        return active;
+    }
+
+    /**
+     * 上传期间的平均吞吐 单位字节每秒 空闲时间不计入
+     */
+    public double getThroughputBytesPerSecond() {
+        long active = getActiveNanos();
+        return active <= 0 ? 0 : bytesUploaded.get() * 1e9 / active;
+    }
+
+    synchronized void transferStarted() {
+        if (mActiveTransfers++ == 0) {
+            mActiveSinceNanos = System.nanoTime();
+        }
+    }
+
+    synchronized void transferFinished() {
+        if (--mActiveTransfers == 0) {
+            mActiveNanos += System.nanoTime() - mActiveSinceNanos;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "UploadStats{bytes=" + bytesUploaded
+                + ", chunks=" + chunksUploaded
+                + ", resumed=" + chunksResumed
+                + ", retries=" + retries
+                + ", failed=" + chunksFailed
+                + ", files=" + filesCompleted
+                + ", throughput=" + (long) getThroughputBytesPerSecond() + "B/s}";
+    }
+}
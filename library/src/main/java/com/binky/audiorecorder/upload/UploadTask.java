@@ -0,0 +1,109 @@
+package com.binky.audiorecorder.upload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个文件的上传任务
+ */
+
+public class UploadTask {
+
+    private final String mPath;
+    private final long mSize;
+    private final long mLastModified;
+    private final int mChunkSize;
+    private final int mChunkCount;
+    final AtomicLong uploadedBytes = new AtomicLong();
+    final AtomicInteger remainingChunks = new AtomicInteger();
+    volatile boolean failed;
+    volatile boolean completed;
+    UploadJournal journal;
+    private FileInputStream mInput;
+
+    UploadTask(String path, long size, long lastModified, int chunkSize) {
+        this.mPath = path;
+        this.mSize = size;
+        this.mLastModified = lastModified;
+        this.mChunkSize = chunkSize;
+        this.mChunkCount = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+    }
+
+    synchronized FileChannel openChannel() throws IOException {
+        if (mInput == null) {
+            mInput = new FileInputStream(mPath);
+        }
+        return mInput.getChannel();
+    }
+
+    synchronized void closeChannel() {
+        if (mInput != null) {
+            try {
+                mInput.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mInput = null;
+        }
+    }
+
+    /**
+     * 任务的唯一标识 由文件路径、大小和修改时间决定
+     */
+    public String getId() {
+        return Integer.toHexString(mPath.hashCode()) + "-" + Long.toHexString(mSize) + "-" + Long.toHexString(mLastModified);
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public String getName() {
+        return new File(mPath).getName();
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public int getChunkCount() {
+        return mChunkCount;
+    }
+
+    /**
+     * 第index个分块的长度 最后一块可能不满
+     */
+    public int getChunkLength(int index) {
+        return (int) Math.min(mChunkSize, mSize - (long) index * mChunkSize);
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadTask{" + mPath + ", " + uploadedBytes + "/" + mSize
+                + (completed ? ", completed" : failed ? ", failed" : "") + "}";
+    }
+}
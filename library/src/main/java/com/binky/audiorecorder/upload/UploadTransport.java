@@ -0,0 +1,32 @@
+package com.binky.audiorecorder.upload;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 分块上传的传输层 可以替换成HTTP、对象存储SDK或者测试用的实现
+ * <p>
+ * 同一个任务的不同分块会在多个线程中并发调用{@link #upload(UploadTask, long, ByteBuffer)}
+ * 同一个分块失败后可能会重复上传 实现应当保证按offset覆盖写是幂等的
+ */
+
+public interface UploadTransport {
+
+    /**
+     * 上传一个分块
+     *
+     * @param task   上传任务
+     * @param offset 分块在文件中的位置
+     * @param data   分块数据 从position到limit
+     * @throws IOException 失败时抛出 会按重试策略重试
+     */
+    void upload(UploadTask task, long offset, ByteBuffer data) throws IOException;
+
+    /**
+     * 所有分块都上传完成
+     *
+     * @param task 上传任务
+     * @throws IOException 失败时抛出 任务会在下次恢复时重新调用
+     */
+    void finish(UploadTask task) throws IOException;
+}
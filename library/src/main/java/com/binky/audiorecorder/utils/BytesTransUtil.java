@@ -172,9 +172,13 @@ public class BytesTransUtil {
     }
 
     public byte[] Shorts2Bytes(short[] s) {
+        return Shorts2Bytes(s, s.length);
+    }
+
+    public byte[] Shorts2Bytes(short[] s, int length) {
         byte bLength = 2;
-        byte[] buf = new byte[s.length * bLength];
-        for (int iLoop = 0; iLoop < s.length; iLoop++) {
+        byte[] buf = new byte[length * bLength];
+        for (int iLoop = 0; iLoop < length; iLoop++) {
             byte[] temp = getBytes(s[iLoop]);
             for (int jLoop = 0; jLoop < bLength; jLoop++) {
                 buf[(iLoop * bLength + jLoop)] = temp[jLoop];
@@ -183,6 +187,27 @@ public class BytesTransUtil {
         return buf;
     }
 
+    /**
+     * 和{@link #Shorts2Bytes(short[], int)}的字节序相同 写入调用方的缓冲 不分配内存
+     *
+     * @param out 长度至少为length * 2
+     * @return 写入的字节数
+     */
+    public int Shorts2Bytes(short[] s, int length, byte[] out) {
+        boolean bigEnding = testCPU();
+        for (int iLoop = 0, j = 0; iLoop < length; iLoop++, j += 2) {
+            short value = s[iLoop];
+            if (bigEnding) {
+                out[j] = (byte) (value >> 8);
+                out[j + 1] = (byte) value;
+            } else {
+                out[j] = (byte) value;
+                out[j + 1] = (byte) (value >> 8);
+            }
+        }
+        return length * 2;
+    }
+
     public int[] Bytes2Ints(byte[] buf) {
         byte bLength = 4;
         int[] s = new int[buf.length / bLength];
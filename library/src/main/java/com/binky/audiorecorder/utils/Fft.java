@@ -0,0 +1,89 @@
+package com.binky.audiorecorder.utils;
+
+/**
+ * 基2的原地复数FFT 旋转因子和位反转表在构造时预先计算 变换过程不分配内存
+ */
+public class Fft {
+
+    private final int n;
+    private final int[] bitReverse;
+    private final float[] cosTable;
+    private final float[] sinTable;
+
+    /**
+     * @param n 变换长度 必须是2的整数次幂
+     */
+    public Fft(int n) {
+        if (n < 2 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("fft size must be power of 2 : " + n);
+        }
+        this.n = n;
+        bitReverse = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for (int i = 0; i < n; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        cosTable = new float[n / 2];
+        sinTable = new float[n / 2];
+        for (int i = 0; i < n / 2; i++) {
+            cosTable[i] = (float) Math.cos(2 * Math.PI * i / n);
+            sinTable[i] = (float) Math.sin(2 * Math.PI * i / n);
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /**
+     * 正变换
+     */
+    public void forward(float[] re, float[] im) {
+        transform(re, im, false);
+    }
+
+    /**
+     * 逆变换 结果已经除以n
+     */
+    public void inverse(float[] re, float[] im) {
+        transform(re, im, true);
+        float scale = 1f / n;
+        for (int i = 0; i < n; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(float[] re, float[] im, boolean inverse) {
+        for (int i = 0; i < n; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        float sign = inverse ? 1f : -1f;
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for (int start = 0; start < n; start += size) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cosTable[k * step];
+                    float wi = sign * sinTable[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.binky.audiorecorder.utils;
+
+/**
+ * 实数序列的FFT 把n个实数打包成n/2个复数做一次{@link Fft} 再拆分出前n/2+1个频点 比直接做n点复数FFT快一倍
+ * 变换过程不分配内存 同一个实例不能在多个线程中同时使用
+ */
+public class RealFft {
+
+    private final int n;
+    private final Fft fft;
+    private final float[] workRe;
+    private final float[] workIm;
+    private final float[] cosTable;
+    private final float[] sinTable;
+
+    /**
+     * @param n 变换长度 必须是2的整数次幂 并且不小于4
+     */
+    public RealFft(int n) {
+        if (n < 4 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("fft size must be power of 2 and >= 4 : " + n);
+        }
+        this.n = n;
+        int half = n / 2;
+        fft = new Fft(half);
+        workRe = new float[half];
+        workIm = new float[half];
+        cosTable = new float[half + 1];
+        sinTable = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            cosTable[k] = (float) Math.cos(2 * Math.PI * k / n);
+            sinTable[k] = (float) Math.sin(2 * Math.PI * k / n);
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /**
+     * 正变换
+     *
+     * @param input 长度至少为n的实数序列 打包后不再读取 可以和re是同一个数组
+     * @param re    输出实部 长度至少n/2+1
+     * @param im    输出虚部 长度至少n/2+1
+     */
+    public void forward(float[] input, float[] re, float[] im) {
+        int half = n / 2;
+        float[] zr = workRe;
+        float[] zi = workIm;
+        for (int i = 0, j = 0; i < half; i++, j += 2) {
+            zr[i] = input[j];
+            zi[i] = input[j + 1];
+        }
+        fft.forward(zr, zi);
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            // 偶数点和奇数点序列的频谱
+            float er = 0.5f * (zr[a] + zr[b]);
+            float ei = 0.5f * (zi[a] - zi[b]);
+            float or = 0.5f * (zi[a] + zi[b]);
+            float oi = -0.5f * (zr[a] - zr[b]);
+            float wr = cosTable[k];
+            float wi = -sinTable[k];
+            float xr = er + wr * or - wi * oi;
+            float xi = ei + wr * oi + wi * or;
+            re[k] = xr;
+            im[k] = xi;
+        }
+    }
+
+    /**
+     * 功率谱 |X[k]|^2
+     *
+     * @param input 长度至少为n的实数序列
+     * @param power 输出 长度至少n/2+1
+     */
+    public void powerSpectrum(float[] input, float[] power) {
+        int half = n / 2;
+        float[] zr = workRe;
+        float[] zi = workIm;
+        for (int i = 0, j = 0; i < half; i++, j += 2) {
+            zr[i] = input[j];
+            zi[i] = input[j + 1];
+        }
+        fft.forward(zr, zi);
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            float er = 0.5f * (zr[a] + zr[b]);
+            float ei = 0.5f * (zi[a] - zi[b]);
+            float or = 0.5f * (zi[a] + zi[b]);
+            float oi = -0.5f * (zr[a] - zr[b]);
+            float wr = cosTable[k];
+            float wi = -sinTable[k];
+            float xr = er + wr * or - wi * oi;
+            float xi = ei + wr * oi + wi * or;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.binky.audiorecorder;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.binky.audiorecorder.bench.SoakHarness;
+import com.binky.audiorecorder.process.AudioProcessor;
+import com.binky.audiorecorder.record.CaptureSource;
+import com.binky.audiorecorder.record.ChannelMask;
+import com.binky.audiorecorder.session.MemorySession;
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.AudioSink;
+import com.binky.audiorecorder.sink.SinkStats;
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 用生成数据的录音设备检查AudioRecorder的开始和停止状态
+ */
+
+public class AudioRecorderTest {
+
+    private final AudioRecorder mRecorder = AudioRecorder.getInstance();
+
+    @After
+    public void tearDown() {
+        mRecorder.stop();
+        mRecorder.setStatusListener(null, CallbackExecutors.direct());
+    }
+
+    @Test
+    public void failedStartCanBeRetried() throws Exception {
+        Log.DEBUG = false;
+        mRecorder.setRecordConfig(new AudioRecorder.RecordConfig()).setMaxRecordTime(300)
+                .setCaptureSource(new UnavailableSource());
+        assertFalse(mRecorder.start());
+
+        mRecorder.setCaptureSource(new SoakHarness.GeneratedSource(1));
+        for (int i = 0; i < 2; i++) {
+            // 第二次是设备已经关闭后的冷启动
+            CountDownLatch stopped = listen();
+            assertTrue(mRecorder.start());
+            assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void startDuringFinishIsQueued() throws Exception {
+        Log.DEBUG = false;
+        SlowCloseSink sink = new SlowCloseSink(500);
+        mRecorder.setRecordConfig(new AudioRecorder.RecordConfig()).setMaxRecordTime(60000)
+                .setCaptureSource(new SoakHarness.GeneratedSource(1)).addSink(sink);
+        try {
+            final CountDownLatch started = new CountDownLatch(2);
+            mRecorder.setStatusListener(new StatusListener() {
+                @Override
+                public void onStartRecording() {
+                    started.countDown();
+                }
+            }, CallbackExecutors.direct());
+            assertTrue(mRecorder.start());
+            Thread.sleep(300);
+            RecordMetrics first = mRecorder.getRecordMetrics();
+            StopFuture stop = mRecorder.stopAsync();
+            long begin = System.nanoTime();
+            // sink收尾要500ms 开始录音不能等它
+            assertTrue(mRecorder.start());
+            assertTrue(System.nanoTime() - begin < 200000000L);
+            assertTrue(stop.get(5, TimeUnit.SECONDS));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // 收尾期间开始的录音不能覆盖上一次录音的指标
+            RecordMetrics second = mRecorder.getRecordMetrics();
+            assertNotSame(first, second);
+            assertTrue(first.getStopLatencyNanos() >= 500000000L);
+            assertEquals(-1, second.getStopLatencyNanos());
+        } finally {
+            mRecorder.removeSink(sink);
+        }
+    }
+
+    @Test
+    public void everyStopAsyncCallerIsNotified() throws Exception {
+        Log.DEBUG = false;
+        SlowCloseSink sink = new SlowCloseSink(300);
+        mRecorder.setRecordConfig(new AudioRecorder.RecordConfig()).setMaxRecordTime(60000)
+                .setCaptureSource(new SoakHarness.GeneratedSource(1)).addSink(sink);
+        try {
+            CountDownLatch stopped = listen();
+            assertTrue(mRecorder.start());
+            Thread.sleep(200);
+            final AtomicInteger finished = new AtomicInteger();
+            StopFuture.Callback callback = new StopFuture.Callback() {
+                @Override
+                public void onStopComplete(boolean success, long stopLatencyNanos) {
+                    if (success) {
+                        finished.incrementAndGet();
+                    }
+                }
+            };
+            StopFuture first = mRecorder.stopAsync(5000, callback);
+            StopFuture second = mRecorder.stopAsync(5000, callback);
+            assertNotSame(first, second);
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertTrue(second.get(5, TimeUnit.SECONDS));
+            assertEquals(2, finished.get());
+            assertTrue(stopped.await(5, TimeUnit.SECONDS));
+            // 已经停止后再调用立即完成
+            assertTrue(mRecorder.stopAsync(5000, callback).get(1, TimeUnit.SECONDS));
+            assertEquals(3, finished.get());
+        } finally {
+            mRecorder.removeSink(sink);
+        }
+    }
+
+    @Test
+    public void drainTimeoutLimitsSinkClose() throws Exception {
+        Log.DEBUG = false;
+        // 比默认的排空时间更久
+        SlowCloseSink sink = new SlowCloseSink(AudioRecorder.DEFAULT_DRAIN_TIMEOUT + 1000);
+        mRecorder.setRecordConfig(new AudioRecorder.RecordConfig()).setMaxRecordTime(60000)
+                .setCaptureSource(new SoakHarness.GeneratedSource(1)).addSink(sink);
+        try {
+            CountDownLatch stopped = listen();
+            assertTrue(mRecorder.start());
+            Thread.sleep(200);
+            long begin = System.nanoTime();
+            StopFuture stop = mRecorder.stopAsync(200, null);
+            assertFalse(stop.get(5, TimeUnit.SECONDS));
+            // 采集线程只等调用者给的时间 不等到默认超时
+            assertTrue(stopped.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - begin < AudioRecorder.DEFAULT_DRAIN_TIMEOUT * 1000000L / 2);
+        } finally {
+            mRecorder.removeSink(sink);
+        }
+    }
+
+    @Test
+    public void metricsKeepTheirOwnSession() throws Exception {
+        Log.DEBUG = false;
+        AudioSink sink = new SlowCloseSink(0);
+        mRecorder.setRecordConfig(new AudioRecorder.RecordConfig().addProcessor(new AudioProcessor() {
+            @Override
+            public void prepare(int sampleRate, int channelCount) {
+            }
+
+            @Override
+            public void process(short[] buffer, int offset, int length) {
+            }
+        })).setMaxRecordTime(60000).setCaptureSource(new SoakHarness.GeneratedSource(1)).addSink(sink);
+        try {
+            assertTrue(mRecorder.start());
+            Thread.sleep(300);
+            assertTrue(mRecorder.stopAsync().get(5, TimeUnit.SECONDS));
+            RecordMetrics first = mRecorder.getRecordMetrics();
+            long processed = first.getProcessedFrames();
+            assertTrue(processed > 0);
+            assertEquals(1, first.getProcessorCount());
+            assertEquals(1, first.getSinkStats().size());
+            SinkStats sinkStats = first.getSinkStats().get(0);
+            long written = sinkStats.getFramesWritten();
+            assertTrue(written > 0);
+
+            // 下一次录音重置了处理器链和sink的统计 上一次的指标不变
+            assertTrue(mRecorder.start());
+            Thread.sleep(100);
+            assertTrue(mRecorder.stopAsync().get(5, TimeUnit.SECONDS));
+            assertNotSame(first, mRecorder.getRecordMetrics());
+            assertEquals(processed, first.getProcessedFrames());
+            assertEquals(written, first.getSinkStats().get(0).getFramesWritten());
+        } finally {
+            mRecorder.removeSink(sink);
+            mRecorder.setRecordConfig(new AudioRecorder.RecordConfig());
+        }
+    }
+
+    @Test
+    public void flacSessionWithTooManyChannelsFallsBackToRaw() throws Exception {
+        Log.DEBUG = false;
+        assertTrue(MemorySession.isSupported(MemorySession.Codec.FLAC, 8));
+        assertFalse(MemorySession.isSupported(MemorySession.Codec.FLAC, 10));
+        try {
+            new MemorySession(MemorySession.Codec.FLAC, 16000, 10);
+            fail("flac session with 10 channels");
+        } catch (IllegalArgumentException expected) {
+            // 创建时就失败 不是在采集线程中编码第一帧时
+        }
+
+        final AtomicInteger errors = new AtomicInteger();
+        final MemorySession[] session = new MemorySession[1];
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final CountDownLatch recorded = new CountDownLatch(1);
+        // 索引掩码选10个输入通道
+        mRecorder.setRecordConfig(new AudioRecorder.RecordConfig().setChannelConfig(ChannelMask.fromIndexMask(0x3FF)))
+                .setMaxRecordTime(60000).setSessionCodec(MemorySession.Codec.FLAC)
+                .setCaptureSource(new SoakHarness.GeneratedSource(1));
+        mRecorder.setStatusListener(new StatusListener() {
+            @Override
+            public void onRecordError(int code, String errorMsg) {
+                errors.incrementAndGet();
+            }
+
+            @Override
+            public void onRecordDataOnWorkerThread(short[] data, int length) {
+                recorded.countDown();
+            }
+
+            @Override
+            public void onRecordedSession(MemorySession recorded) {
+                session[0] = recorded;
+            }
+
+            @Override
+            public void onStopRecording() {
+                stopped.countDown();
+            }
+        }, CallbackExecutors.direct());
+        try {
+            assertTrue(mRecorder.start());
+            // 10个声道时一次读取的数据更多 第一帧可能在200ms之后才到
+            assertTrue(recorded.await(5, TimeUnit.SECONDS));
+            assertTrue(mRecorder.stopAsync().get(5, TimeUnit.SECONDS));
+            assertTrue(stopped.await(5, TimeUnit.SECONDS));
+            assertEquals(0, errors.get());
+            assertNotNull(session[0]);
+            assertEquals(MemorySession.Codec.RAW, session[0].getCodec());
+            assertEquals(10, session[0].getChannelCount());
+            assertTrue(session[0].getSampleCount() > 0);
+            assertEquals(0, session[0].getSampleCount() % 10);
+        } finally {
+            mRecorder.setSessionCodec(MemorySession.Codec.RAW);
+            mRecorder.setRecordConfig(new AudioRecorder.RecordConfig());
+        }
+    }
+
+    private CountDownLatch listen() {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        mRecorder.setStatusListener(new StatusListener() {
+            @Override
+            public void onStopRecording() {
+                stopped.countDown();
+            }
+        }, CallbackExecutors.direct());
+        return stopped;
+    }
+
+    /**
+     * 关闭很慢的sink 例如需要把缓存写到网络
+     */
+    private static class SlowCloseSink implements AudioSink {
+
+        private final long mCloseMillis;
+
+        SlowCloseSink(long closeMillis) {
+            this.mCloseMillis = closeMillis;
+        }
+
+        @Override
+        public void open(int sampleRate, int channelCount) {
+        }
+
+        @Override
+        public void write(AudioFrame frame) {
+        }
+
+        @Override
+        public void close() {
+            try {
+                Thread.sleep(mCloseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 打不开的录音设备 例如被其他应用占用
+     */
+    private static class UnavailableSource implements CaptureSource {
+
+        @Override
+        public int getMinBufferSize(int sampleRate, int channelConfig, int audioFormat) {
+            return 3200;
+        }
+
+        @Override
+        public boolean open(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+            return false;
+        }
+
+        @Override
+        public boolean start() {
+            return false;
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int length) {
+            return -1;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public boolean getTimestamp(long[] out) {
+            return false;
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    }
+}
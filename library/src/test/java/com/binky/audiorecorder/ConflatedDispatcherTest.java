@@ -0,0 +1,160 @@
+package com.binky.audiorecorder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 执行器来不及运行时只投递最新的一帧和最新的音量 被合并的帧数计入统计 投递期间到达的数据在下一次投递
+ */
+
+public class ConflatedDispatcherTest {
+
+    private final ManualExecutor mExecutor = new ManualExecutor();
+    private final ConflatedDispatcher mDispatcher = new ConflatedDispatcher();
+    private final List<short[]> mFrames = new ArrayList<>();
+    private final List<Integer> mVolumes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mDispatcher.setListener(new StatusListener() {
+            @Override
+            public void onRecordData(short[] data, int length) {
+                mFrames.add(Arrays.copyOf(data, length));
+            }
+
+            @Override
+            public void onVoiceVolume(int volume) {
+                mVolumes.add(volume);
+            }
+        });
+    }
+
+    @Test
+    public void framesAreConflated() {
+        for (int i = 0; i < 10; i++) {
+            mDispatcher.postData(frame(i, 160), 160, mExecutor);
+            mDispatcher.postVolume(i, mExecutor);
+        }
+        // 只提交了一次
+        assertEquals(1, mExecutor.size());
+        assertEquals(9, mDispatcher.getConflatedFrames());
+
+        mExecutor.runAll();
+        assertEquals(1, mFrames.size());
+        assertArrayEquals(frame(9, 160), mFrames.get(0));
+        assertEquals(Arrays.asList(9), mVolumes);
+
+        // 执行器跟得上时每一帧都投递
+        for (int i = 10; i < 15; i++) {
+            mDispatcher.postData(frame(i, 80), 80, mExecutor);
+            mExecutor.runAll();
+        }
+        assertEquals(6, mFrames.size());
+        assertArrayEquals(frame(14, 80), mFrames.get(5));
+        assertEquals(9, mDispatcher.getConflatedFrames());
+    }
+
+    @Test
+    public void frameDuringDeliveryIsDeliveredNext() {
+        mDispatcher.setListener(new StatusListener() {
+            @Override
+            public void onRecordData(short[] data, int length) {
+                short[] before = Arrays.copyOf(data, length);
+                if (mFrames.isEmpty()) {
+                    // 回调执行期间工作线程写入新的一帧 不能覆盖正在投递的缓冲区
+                    mDispatcher.postData(frame(2, 320), 320, mExecutor);
+                    mDispatcher.postData(frame(3, 320), 320, mExecutor);
+                }
+                assertArrayEquals(before, Arrays.copyOf(data, length));
+                mFrames.add(before);
+            }
+        });
+        mDispatcher.postData(frame(1, 160), 160, mExecutor);
+        assertEquals(1, mExecutor.runOne());
+        // 投递结束后重新提交
+        assertEquals(1, mExecutor.size());
+        mExecutor.runAll();
+        assertEquals(2, mFrames.size());
+        assertArrayEquals(frame(1, 160), mFrames.get(0));
+        assertArrayEquals(frame(3, 320), mFrames.get(1));
+        assertEquals(1, mDispatcher.getConflatedFrames());
+    }
+
+    @Test
+    public void resetDropsPendingFrame() {
+        mDispatcher.postData(frame(1, 160), 160, mExecutor);
+        mDispatcher.postData(frame(2, 160), 160, mExecutor);
+        mDispatcher.postVolume(50, mExecutor);
+        mDispatcher.reset();
+        assertEquals(0, mDispatcher.getConflatedFrames());
+        mExecutor.runAll();
+        assertTrue(mFrames.isEmpty());
+        assertTrue(mVolumes.isEmpty());
+
+        // 没有监听时数据直接丢弃 之后设置监听也不会收到
+        mDispatcher.setListener(null);
+        mDispatcher.postData(frame(3, 160), 160, mExecutor);
+        mExecutor.runAll();
+        mDispatcher.setListener(new StatusListener() {
+            @Override
+            public void onRecordData(short[] data, int length) {
+                mFrames.add(Arrays.copyOf(data, length));
+            }
+        });
+        mExecutor.runAll();
+        assertTrue(mFrames.isEmpty());
+    }
+
+    private static short[] frame(int index, int length) {
+        short[] data = new short[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (short) (index * 1000 + i);
+        }
+        return data;
+    }
+
+    /**
+     * 只在测试调用时才运行提交的任务
+     */
+    private static class ManualExecutor implements Executor {
+
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        int size() {
+            return mTasks.size();
+        }
+
+        /**
+         * @return 运行的任务数
+         */
+        int runOne() {
+            Runnable task = mTasks.poll();
+            if (task == null) {
+                return 0;
+            }
+            task.run();
+            return 1;
+        }
+
+        void runAll() {
+            while (runOne() > 0) {
+                // 任务运行时可能提交新的任务
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.binky.audiorecorder.batch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.AudioSink;
+import com.binky.audiorecorder.sink.FileSink;
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 并发处理多个WAV文件 每个文件的结果和逐个处理一致 坏文件只影响自己
+ */
+
+public class BatchEngineTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private File mDir;
+
+    @Before
+    public void setUp() {
+        Log.DEBUG = false;
+        mDir = new File(System.getProperty("java.io.tmpdir"), "batch-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void concurrentRunMatchesInput() throws Exception {
+        Map<String, Long> expected = new HashMap<>();
+        for (int f = 0; f < 6; f++) {
+            String name = String.format("rec-%03d.wav", f);
+            expected.put(name, generate(new File(mDir, name), f, (f + 1) * SAMPLE_RATE / 4));
+        }
+        FileOutputStream broken = new FileOutputStream(new File(mDir, "broken.wav"));
+        broken.write("not a wav file".getBytes("US-ASCII"));
+        broken.close();
+
+        List<File> files = BatchEngine.listWavFiles(mDir);
+        assertEquals(7, files.size());
+        ChecksumPipeline pipeline = new ChecksumPipeline();
+        final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchReport report = new BatchEngine(3, 64L * 1024 * 1024).setFrameMillis(30)
+                .run(files, pipeline, new BatchListener() {
+                    @Override
+                    public void onProgress(int completed, int total) {
+                        progress.add(completed);
+                    }
+                });
+
+        assertEquals(7, report.getResults().size());
+        assertEquals(1, report.getFailedCount());
+        assertEquals(7, progress.size());
+        assertEquals(Integer.valueOf(7), progress.get(progress.size() - 1));
+        for (int i = 0; i < files.size(); i++) {
+            FileResult result = report.getResults().get(i);
+            assertEquals(files.get(i), result.getFile());
+            String name = files.get(i).getName();
+            if ("broken.wav".equals(name)) {
+                assertFalse(result.isSuccess());
+                assertNotNull(result.getError());
+                continue;
+            }
+            assertTrue(result.isSuccess());
+            int index = Integer.parseInt(name.substring(4, 7));
+            assertEquals((index + 1) * SAMPLE_RATE / 4, result.getFrameCount());
+            assertEquals(SAMPLE_RATE, result.getSampleRate());
+            assertEquals(expected.get(name), pipeline.get(name));
+        }
+    }
+
+    /**
+     * 写一个单声道WAV文件
+     *
+     * @return 所有采样的校验和
+     */
+    private static long generate(File file, int seed, int samples) throws IOException {
+        Random random = new Random(seed);
+        FileSink sink = new FileSink(file.getPath(), true);
+        sink.open(SAMPLE_RATE, 1);
+        AudioFrame frame = new AudioFrame(SAMPLE_RATE / 10);
+        long sum = 17;
+        for (int written = 0; written < samples; ) {
+            int length = Math.min(frame.data.length, samples - written);
+            for (int i = 0; i < length; i++) {
+                frame.data[i] = (short) (random.nextGaussian() * 3000);
+                sum = sum * 31 + frame.data[i];
+            }
+            frame.length = length;
+            sink.write(frame);
+            written += length;
+        }
+        sink.close();
+        return sum;
+    }
+
+    /**
+     * 不做处理 每个文件的输出算一个校验和
+     */
+    private static class ChecksumPipeline extends BatchPipeline {
+
+        private final Map<String, Long> mSums = new HashMap<>();
+
+        @Override
+        public List<AudioSink> createSinks(final File input) {
+            AudioSink sink = new AudioSink() {
+                private long mSum;
+
+                @Override
+                public void open(int sampleRate, int channelCount) {
+                    mSum = 17;
+                }
+
+                @Override
+                public void write(AudioFrame frame) {
+                    long sum = mSum;
+                    for (int i = 0; i < frame.length; i++) {
+                        sum = sum * 31 + frame.data[i];
+                    }
+                    mSum = sum;
+                }
+
+                @Override
+                public void close() {
+                    synchronized (mSums) {
+                        mSums.put(input.getName(), mSum);
+                    }
+                }
+            };
+            return Collections.singletonList(sink);
+        }
+
+        Long get(String name) {
+            synchronized (mSums) {
+                return mSums.get(name);
+            }
+        }
+    }
+}
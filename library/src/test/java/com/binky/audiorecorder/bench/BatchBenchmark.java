@@ -0,0 +1,137 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.binky.audiorecorder.batch.BatchEngine;
+import com.binky.audiorecorder.batch.BatchPipeline;
+import com.binky.audiorecorder.batch.BatchReport;
+import com.binky.audiorecorder.batch.FileResult;
+import com.binky.audiorecorder.process.AudioProcessor;
+import com.binky.audiorecorder.process.HighPassProcessor;
+import com.binky.audiorecorder.process.NoiseSuppressor;
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.AudioSink;
+import com.binky.audiorecorder.sink.FileSink;
+
+/**
+ * {@link BatchEngine}在不同线程数下的吞吐测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.BatchBenchmark [文件数] [每个文件秒数] [最大线程数]
+ * <p>
+ * 生成一批16KHz单声道WAV文件 每个文件经过高通和降噪后写入一个计算校验和的sink
+ * 依次用1到最大线程数(默认CPU核数)个线程处理 输出加速比 并检查不同线程数下每个文件的结果完全一致
+ */
+
+public class BatchBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    public static void main(String[] args) throws Exception {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        File dir = new File(System.getProperty("java.io.tmpdir"), "batch-bench-" + System.nanoTime());
+        generate(dir, fileCount, seconds);
+        List<File> files = BatchEngine.listWavFiles(dir);
+
+        int cores = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        // 预热JIT
+        new BatchEngine(cores, Long.MAX_VALUE).run(files, new ChecksumPipeline(), null);
+
+        long[] reference = null;
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(threads * 2, cores)) {
+            ChecksumPipeline pipeline = new ChecksumPipeline();
+            BatchReport report = new BatchEngine(threads, Long.MAX_VALUE).run(files, pipeline, null);
+            long[] checksums = pipeline.checksums(files);
+            if (reference == null) {
+                reference = checksums;
+                baseline = report.getRealtimeFactor();
+            }
+            System.out.println(String.format("threads=%d %s speedup=%.2f identical=%b", threads, report,
+                    report.getRealtimeFactor() / baseline, Arrays.equals(reference, checksums)));
+        }
+        FileResult sample = new BatchEngine(1, Long.MAX_VALUE).process(files.get(0), new ChecksumPipeline());
+        System.out.println("per file: " + sample);
+        // 内存预算限制并发数
+        BatchEngine limited = new BatchEngine(cores, 3L * 1024 * 1024);
+        System.out.println("budget 3MB -> parallelism " + limited.getParallelism());
+    }
+
+    private static void generate(File dir, int fileCount, int seconds) throws IOException {
+        dir.mkdirs();
+        Random random = new Random(3);
+        AudioFrame frame = new AudioFrame(SAMPLE_RATE / 10);
+        for (int f = 0; f < fileCount; f++) {
+            FileSink sink = new FileSink(new File(dir, String.format("rec-%03d.wav", f)).getPath(), true);
+            sink.open(SAMPLE_RATE, 1);
+            long n = 0;
+            for (int block = 0; block < seconds * 10; block++) {
+                for (int i = 0; i < frame.data.length; i++, n++) {
+                    double voice = (n / (SAMPLE_RATE / 2)) % 2 == 0 ? 4000 * Math.sin(2 * Math.PI * (200 + f) * n / SAMPLE_RATE) : 0;
+                    frame.data[i] = (short) (voice + random.nextGaussian() * 500);
+                }
+                frame.length = frame.data.length;
+                sink.write(frame);
+            }
+            sink.close();
+        }
+    }
+
+    /**
+     * 每个文件的处理结果算一个校验和 用来检查并发处理不影响结果
+     */
+    private static class ChecksumPipeline extends BatchPipeline {
+        private final List<String> mNames = new ArrayList<>();
+        private final List<Long> mSums = new ArrayList<>();
+
+        @Override
+        public List<AudioProcessor> createProcessors(File input) {
+            return Arrays.<AudioProcessor>asList(new HighPassProcessor(), new NoiseSuppressor(15f));
+        }
+
+        @Override
+        public List<AudioSink> createSinks(final File input) {
+            AudioSink sink = new AudioSink() {
+                private long mSum;
+
+                @Override
+                public void open(int sampleRate, int channelCount) {
+                    mSum = 17;
+                }
+
+                @Override
+                public void write(AudioFrame frame) {
+                    long sum = mSum;
+                    for (int i = 0; i < frame.length; i++) {
+                        sum = sum * 31 + frame.data[i];
+                    }
+                    mSum = sum;
+                }
+
+                @Override
+                public void close() {
+                    synchronized (mNames) {
+                        mNames.add(input.getName());
+                        mSums.add(mSum);
+                    }
+                }
+            };
+            return Arrays.asList(sink);
+        }
+
+        long[] checksums(List<File> files) {
+            long[] sums = new long[files.size()];
+            synchronized (mNames) {
+                for (int i = 0; i < files.size(); i++) {
+                    sums[i] = mSums.get(mNames.indexOf(files.get(i).getName()));
+                }
+            }
+            return sums;
+        }
+    }
+}
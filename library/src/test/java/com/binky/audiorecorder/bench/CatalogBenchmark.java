@@ -0,0 +1,254 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.binky.audiorecorder.file.RecordingCatalog;
+import com.binky.audiorecorder.file.RecordingEntry;
+import com.binky.audiorecorder.file.WavHeader;
+import com.binky.audiorecorder.file.WavMarker;
+import com.binky.audiorecorder.file.WavMetadata;
+import com.binky.audiorecorder.file.WavReader;
+import com.binky.audiorecorder.utils.Log;
+
+/**
+ * 录音目录的启动加载和查询耗时测试 和每次启动打开所有录音文件比较 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.CatalogBenchmark [录音数]
+ * <p>
+ * 生成若干8KHz单声道的短WAV 每个带几个标记 同时写入{@link RecordingCatalog} 并更新和删除一部分制造失效记录
+ * 然后比较: 逐个打开文件解析文件头和标记、再加上扫描数据计算电平 和用新的目录实例冷加载日志
+ * 最后统计按日期、时长、响度查询的耗时 检查目录内容和文件一致 以及末尾写了一半的记录能被忽略
+ * 文件都在页缓存中 比较的是解析本身 真机冷启动时逐个打开文件的代价更高
+ */
+
+public class CatalogBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        Log.DEBUG = false;
+        File dir = File.createTempFile("catalog-bench", "");
+        dir.delete();
+        dir.mkdirs();
+        try {
+            run(dir, count);
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private static void run(File dir, int count) throws Exception {
+        Random random = new Random(5);
+        File log = new File(dir, "recordings.catalog");
+        RecordingCatalog catalog = new RecordingCatalog(log);
+        List<File> files = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long putNanos = 0;
+        for (int i = 0; i < count; i++) {
+            File file = new File(dir, "rec-" + i + ".wav");
+            RecordingEntry entry = writeRecording(file, now - (count - i) * 3600000L, random);
+            long begin = System.nanoTime();
+            catalog.put(entry);
+            putNanos += System.nanoTime() - begin;
+            files.add(file);
+        }
+        // 重新统计一部分录音 删除再添加一部分 日志中留下失效记录
+        for (int i = 0; i < count / 4; i++) {
+            File file = files.get(random.nextInt(count));
+            catalog.put(scan(file, catalog.get(file.getPath()).getCreatedMillis()));
+        }
+        for (int i = 0; i < count / 8; i++) {
+            File file = files.get(random.nextInt(count));
+            RecordingEntry entry = catalog.get(file.getPath());
+            catalog.remove(file.getPath());
+            catalog.put(entry);
+        }
+        catalog.close();
+        System.out.println(String.format("%d recordings, catalog %d bytes, %d dead records, put+fsync %.1f us each",
+                count, log.length(), catalog.getDeadRecords(), putNanos / 1e3 / count));
+
+        // 原来的做法 启动时逐个打开文件
+        long begin;
+        long firstHeaderNanos = 0;
+        long headerNanos = Long.MAX_VALUE;
+        long scanNanos = Long.MAX_VALUE;
+        List<RecordingEntry> scanned = null;
+        long checksum = 0;
+        for (int pass = 0; pass < 5; pass++) {
+            begin = System.nanoTime();
+            for (File file : files) {
+                WavReader reader = new WavReader(file);
+                checksum += WavMetadata.read(file).getMarkerCount() + reader.getDurationMillis();
+                reader.close();
+            }
+            long nanos = System.nanoTime() - begin;
+            if (pass == 0) {
+                firstHeaderNanos = nanos;
+            }
+            headerNanos = Math.min(headerNanos, nanos);
+            begin = System.nanoTime();
+            List<RecordingEntry> entries = new ArrayList<>();
+            for (File file : files) {
+                entries.add(scan(file, 0));
+            }
+            scanNanos = Math.min(scanNanos, System.nanoTime() - begin);
+            scanned = entries;
+        }
+
+        // 新实例冷加载 第一次包含类加载和解释执行
+        long firstLoad = 0;
+        long bestLoad = Long.MAX_VALUE;
+        long bestFirstQuery = Long.MAX_VALUE;
+        for (int pass = 0; pass < 20; pass++) {
+            RecordingCatalog fresh = new RecordingCatalog(log);
+            begin = System.nanoTime();
+            fresh.findByLoudness(-30f, 0f);
+            long firstQuery = System.nanoTime() - begin;
+            if (pass == 0) {
+                firstLoad = fresh.getLoadNanos();
+            }
+            bestLoad = Math.min(bestLoad, fresh.getLoadNanos());
+            bestFirstQuery = Math.min(bestFirstQuery, firstQuery);
+            fresh.close();
+        }
+        System.out.println(String.format("launch: open every file %.2f ms first, %.2f ms warm (header+markers), "
+                        + "%.2f ms warm with level scan; catalog load %.2f ms first, %.3f ms warm, "
+                        + "load+first query %.3f ms", firstHeaderNanos / 1e6, headerNanos / 1e6, scanNanos / 1e6,
+                firstLoad / 1e6, bestLoad / 1e6, bestFirstQuery / 1e6));
+
+        RecordingCatalog loaded = new RecordingCatalog(log);
+        int mismatches = 0;
+        for (RecordingEntry expected : scanned) {
+            RecordingEntry actual = loaded.get(expected.getPath());
+            if (actual == null || actual.getFrameCount() != expected.getFrameCount()
+                    || actual.getMarkers().size() != expected.getMarkers().size()
+                    || Math.abs(actual.getRmsDb() - expected.getRmsDb()) > 0.01f
+                    || Math.abs(actual.getPeakDb() - expected.getPeakDb()) > 0.01f) {
+                mismatches++;
+            }
+        }
+
+        int rounds = 2000;
+        long dateNanos = 0;
+        long durationNanos = 0;
+        long loudnessNanos = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            begin = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                long from = now - random.nextInt(count) * 3600000L;
+                checksum += loaded.findByDate(from, from + 24 * 3600000L).size();
+            }
+            dateNanos = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                long min = random.nextInt(8000);
+                checksum += loaded.findByDuration(min, min + 1000).size();
+            }
+            durationNanos = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                float min = -40f + random.nextInt(30);
+                checksum += loaded.findByLoudness(min, min + 3f).size();
+            }
+            loudnessNanos = System.nanoTime() - begin;
+        }
+        System.out.println(String.format("queries: date %.2f us, duration %.2f us, loudness %.2f us, "
+                        + "mismatches %d (check %d)", dateNanos / 1e3 / rounds, durationNanos / 1e3 / rounds,
+                loudnessNanos / 1e3 / rounds, mismatches, checksum & 1));
+
+        // 模拟写到一半被杀 末尾只有半条记录
+        long length = log.length();
+        RandomAccessFile torn = new RandomAccessFile(log, "rw");
+        torn.seek(length);
+        torn.writeInt(200);
+        torn.write(new byte[37]);
+        torn.close();
+        RecordingCatalog recovered = new RecordingCatalog(log);
+        int before = recovered.size();
+        RecordingEntry extra = scan(files.get(0), now);
+        recovered.remove(extra.getPath());
+        recovered.put(extra);
+        recovered.close();
+        int after = new RecordingCatalog(log).size();
+        System.out.println(String.format("torn tail: %d entries after reload, %d after append and reload, log %d -> %d bytes",
+                before, after, length + 41, log.length()));
+        loaded.close();
+    }
+
+    /**
+     * 写一个1~10秒的录音 包括0~5个标记 返回录音时统计的目录记录
+     */
+    private static RecordingEntry writeRecording(File file, long createdMillis, Random random) throws Exception {
+        int frames = SAMPLE_RATE + random.nextInt(9 * SAMPLE_RATE);
+        double amplitude = 300 + random.nextInt(12000);
+        double frequency = 100 + random.nextInt(1000);
+        byte[] bytes = new byte[frames * 2];
+        int peak = 0;
+        double sumSquares = 0;
+        for (int i = 0; i < frames; i++) {
+            int sample = (int) (amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE)
+                    + random.nextGaussian() * 30);
+            sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            bytes[i * 2] = (byte) sample;
+            bytes[i * 2 + 1] = (byte) (sample >> 8);
+            peak = Math.max(peak, Math.abs(sample));
+            sumSquares += sample * sample;
+        }
+        WavMetadata metadata = new WavMetadata();
+        int markers = random.nextInt(6);
+        for (int i = 0; i < markers; i++) {
+            metadata.addMarker(random.nextInt(frames), i % 2 == 0 ? "note " + i : null);
+        }
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        output.setLength(0);
+        WavHeader.write(output, SAMPLE_RATE, 1, 16);
+        output.write(bytes);
+        metadata.writeTo(output);
+        WavHeader.finish(output, bytes.length);
+        long size = output.length();
+        output.close();
+        return new RecordingEntry(file.getPath(), createdMillis, true, frames, SAMPLE_RATE, 1, 16, size,
+                toDb(peak), toDb(Math.sqrt(sumSquares / frames)), metadata.getMarkers());
+    }
+
+    /**
+     * 打开文件读取格式和标记 扫描全部数据计算电平 也就是没有目录时显示列表需要做的
+     */
+    private static RecordingEntry scan(File file, long createdMillis) throws Exception {
+        WavReader reader = new WavReader(file);
+        List<WavMarker> markers = WavMetadata.read(file).getMarkers();
+        short[] buffer = new short[4096];
+        int peak = 0;
+        double sumSquares = 0;
+        long samples = 0;
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+            for (int i = 0; i < read; i++) {
+                int sample = buffer[i];
+                peak = Math.max(peak, Math.abs(sample));
+                sumSquares += sample * sample;
+            }
+            samples += read;
+        }
+        RecordingEntry entry = new RecordingEntry(file.getPath(), createdMillis, true, reader.getFrameCount(),
+                reader.getSampleRate(), reader.getChannelCount(), reader.getBitsPerSample(), file.length(),
+                toDb(peak), toDb(Math.sqrt(sumSquares / Math.max(1, samples))), markers);
+        reader.close();
+        return entry;
+    }
+
+    private static float toDb(double amplitude) {
+        return amplitude > 0 ? (float) (20 * Math.log10(amplitude / 32768.0)) : Float.NEGATIVE_INFINITY;
+    }
+}
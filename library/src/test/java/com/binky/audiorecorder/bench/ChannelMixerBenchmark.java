@@ -0,0 +1,109 @@
+package com.binky.audiorecorder.bench;
+
+import java.util.Random;
+
+import com.binky.audiorecorder.process.ChannelMixer;
+import com.binky.audiorecorder.process.FrameView;
+
+/**
+ * 多声道拆分和混合的性能测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.ChannelMixerBenchmark [秒数] [声道数]
+ * <p>
+ * 48KHz 10ms一帧 对指定的声道数(默认依次测试1、2、4、6、8)比较逐点通过{@link FrameView}访问和{@link ChannelMixer}的批量拆分、平均混合
+ * 输出每帧(所有声道)的耗时 并检查两种方式的结果一致
+ * 同一个JVM中依次测试多种声道数时JIT的分支统计会互相影响 要看稳定的数字时每次只测一种
+ */
+
+public class ChannelMixerBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int FRAMES = SAMPLE_RATE / 100;
+    private static final int[] CHANNELS = {1, 2, 4, 6, 8};
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int[] channelCounts = args.length > 1 ? new int[]{Integer.parseInt(args[1])} : CHANNELS;
+        for (int channels : channelCounts) {
+            run(channels, seconds);
+        }
+    }
+
+    private static void run(int channels, int seconds) {
+        Random random = new Random(channels);
+        short[] input = new short[FRAMES * channels];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (short) random.nextInt(65536);
+        }
+        float[][] planes = new float[channels][FRAMES];
+        float[][] expected = new float[channels][FRAMES];
+        float[] mono = new float[FRAMES];
+        float[] expectedMono = new float[FRAMES];
+        FrameView view = new FrameView(channels);
+        int rounds = seconds * 100;
+
+        long naiveSplit = 0;
+        long kernelSplit = 0;
+        long naiveMix = 0;
+        long kernelMix = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // 第一遍预热JIT 每种方式单独连续运行 不互相影响缓存
+            long t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                splitByView(view.wrap(input, 0, input.length), expected);
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                ChannelMixer.deinterleave(input, 0, FRAMES, channels, planes, 0);
+            }
+            long t2 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                downmixByView(view.wrap(input, 0, input.length), expectedMono);
+            }
+            long t3 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                ChannelMixer.downmix(input, 0, FRAMES, channels, mono, 0);
+            }
+            long t4 = System.nanoTime();
+            naiveSplit = t1 - t0;
+            kernelSplit = t2 - t1;
+            naiveMix = t3 - t2;
+            kernelMix = t4 - t3;
+        }
+
+        float maxError = 0f;
+        for (int c = 0; c < channels; c++) {
+            for (int i = 0; i < FRAMES; i++) {
+                maxError = Math.max(maxError, Math.abs(planes[c][i] - expected[c][i]));
+            }
+        }
+        for (int i = 0; i < FRAMES; i++) {
+            maxError = Math.max(maxError, Math.abs(mono[i] - expectedMono[i]) / 32768f);
+        }
+        System.out.println(String.format("%d ch: deinterleave %.2f us/frame (view %.2f), downmix %.2f us/frame (view %.2f), "
+                        + "%.0f Msamples/s, max error %.2g", channels,
+                kernelSplit / 1e3 / rounds, naiveSplit / 1e3 / rounds, kernelMix / 1e3 / rounds, naiveMix / 1e3 / rounds,
+                (double) rounds * input.length / kernelSplit * 1e3, maxError));
+    }
+
+    private static void splitByView(FrameView view, float[][] out) {
+        for (int c = 0; c < view.getChannelCount(); c++) {
+            FrameView.Plane plane = view.plane(c);
+            float[] target = out[c];
+            for (int i = 0; i < plane.size(); i++) {
+                target[i] = plane.get(i);
+            }
+        }
+    }
+
+    private static void downmixByView(FrameView view, float[] out) {
+        int channels = view.getChannelCount();
+        for (int i = 0; i < view.getFrameCount(); i++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += view.get(c, i);
+            }
+            out[i] = sum / (float) channels;
+        }
+    }
+}
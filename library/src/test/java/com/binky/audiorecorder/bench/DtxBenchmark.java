@@ -0,0 +1,151 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.File;
+import java.util.Random;
+
+import com.binky.audiorecorder.file.DtxReader;
+import com.binky.audiorecorder.file.DtxTimeline;
+import com.binky.audiorecorder.file.WavHeader;
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.DtxFileSink;
+
+/**
+ * 跳过静音存储的压缩率、还原正确性和索引查找速度测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.DtxBenchmark [分钟数] [有声比例%]
+ * <p>
+ * 生成16KHz单声道的长时间录音 -70dBFS左右的底噪中随机插入0.5~4秒的合成语音
+ * 用{@link DtxFileSink}写入后和完整WAV的大小比较 再用{@link DtxReader}按原始时间线读回
+ * 检查有声部分逐点一致、总长度不变、被丢掉的部分都低于阈值 最后统计时间线加载、按时间查找和随机定位读取的耗时
+ */
+
+public class DtxBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final float THRESHOLD_DB = -50f;
+
+    public static void main(String[] args) throws Exception {
+        int minutes = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int speechPercent = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        File file = File.createTempFile("dtx-bench", ".wav");
+        try {
+            run(file, minutes, speechPercent);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void run(File file, int minutes, int speechPercent) throws Exception {
+        short[] pcm = generate(minutes, speechPercent, new Random(11));
+        DtxFileSink sink = new DtxFileSink(file.getPath()).setThresholdDb(THRESHOLD_DB);
+        sink.open(SAMPLE_RATE, 1);
+        AudioFrame frame = new AudioFrame(SAMPLE_RATE / 50);
+        long begin = System.nanoTime();
+        for (int offset = 0; offset < pcm.length; offset += frame.data.length) {
+            frame.set(pcm, offset, Math.min(frame.data.length, pcm.length - offset), 0, 0);
+            sink.write(frame);
+        }
+        sink.close();
+        long writeNanos = System.nanoTime() - begin;
+        long fullSize = WavHeader.HEADER_SIZE + pcm.length * 2L;
+        DtxTimeline written = sink.getTimeline();
+        System.out.println(String.format("%d min, %d%% speech: full wav %.1f MB, dtx file %.1f MB (%.1f%%, saved %.1f%%), "
+                        + "stored %.1f%% of %d frames, saved %.1f MB of data, %d runs, index %d bytes, write %.1f ns/sample",
+                minutes, speechPercent, fullSize / 1e6, file.length() / 1e6, file.length() * 100.0 / fullSize,
+                100 - file.length() * 100.0 / fullSize, written.getStoredRatio() * 100, written.getTimelineFrames(),
+                sink.getSavedBytes() / 1e6, written.getRunCount(), 8 + written.getRunCount() * 4,
+                writeNanos / (double) pcm.length));
+
+        // 按原始时间线完整读回
+        DtxReader reader = new DtxReader(file);
+        DtxTimeline timeline = reader.getTimeline();
+        long loadNanos = reader.getLoadNanos();
+        short[] buffer = new short[SAMPLE_RATE / 10];
+        long position = 0;
+        long mismatches = 0;
+        int droppedPeak = 0;
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+            for (int i = 0; i < read; i++, position++) {
+                short original = pcm[(int) position];
+                if (buffer[i] == 0 && original != 0) {
+                    droppedPeak = Math.max(droppedPeak, Math.abs(original));
+                } else if (buffer[i] != original) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println(String.format("readback: %d of %d samples, mismatches %d, loudest dropped sample %.1f dBFS, "
+                        + "timeline load %.3f ms", position, pcm.length, mismatches,
+                20 * Math.log10(Math.max(1, droppedPeak) / 32768.0), loadNanos / 1e6));
+
+        // 随机时间点查找
+        Random random = new Random(3);
+        long[] targets = new long[1 << 16];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = (long) (random.nextDouble() * timeline.getTimelineFrames());
+        }
+        long checksum = 0;
+        long lookupNanos = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            begin = System.nanoTime();
+            for (int round = 0; round < 16; round++) {
+                for (long target : targets) {
+                    checksum += timeline.toStoredFrame(target);
+                }
+            }
+            lookupNanos = System.nanoTime() - begin;
+        }
+        int seeks = 2000;
+        long seekLookupNanos = 0;
+        begin = System.nanoTime();
+        for (int i = 0; i < seeks; i++) {
+            reader.seek(targets[i]);
+            seekLookupNanos += reader.getLookupNanos();
+            reader.read(buffer, 0, buffer.length);
+        }
+        long seekNanos = System.nanoTime() - begin;
+        int speech = 0;
+        begin = System.nanoTime();
+        for (long at = reader.seekToSpeech(0); at >= 0; at = reader.seekToSpeech(at)) {
+            int run = timeline.findRun(at);
+            at = timeline.getRunStart(run) + timeline.getRunLength(run);
+            speech++;
+        }
+        long skipNanos = System.nanoTime() - begin;
+        reader.close();
+        System.out.println(String.format("lookup %.1f ns, seek+read 100ms %.1f us (index %.1f ns), "
+                        + "walk %d speech regions %.3f ms (check %d)",
+                lookupNanos / (16.0 * targets.length), seekNanos / 1e3 / seeks, seekLookupNanos / (double) seeks,
+                speech, skipNanos / 1e6, checksum & 1));
+    }
+
+    /**
+     * 底噪加随机的语音段 语音是带颤音的谐波 有起伏的包络
+     */
+    private static short[] generate(int minutes, int speechPercent, Random random) {
+        short[] pcm = new short[minutes * 60 * SAMPLE_RATE];
+        double noise = 10;
+        int n = 0;
+        while (n < pcm.length) {
+            double speechSeconds = 0.5 + random.nextDouble() * 3.5;
+            double gapSeconds = speechSeconds * (100 - speechPercent) / Math.max(1, speechPercent) * (0.5 + random.nextDouble());
+            int gap = (int) (gapSeconds * SAMPLE_RATE);
+            for (int i = 0; i < gap && n < pcm.length; i++, n++) {
+                pcm[n] = (short) (random.nextGaussian() * noise);
+            }
+            int length = (int) (speechSeconds * SAMPLE_RATE);
+            double f0 = 100 + random.nextInt(150);
+            for (int i = 0; i < length && n < pcm.length; i++, n++) {
+                double t = i / (double) SAMPLE_RATE;
+                double envelope = Math.sin(Math.PI * i / length) * (0.6 + 0.4 * Math.sin(2 * Math.PI * 4 * t));
+                double value = 0;
+                for (int h = 1; h <= 10; h++) {
+                    value += 2500.0 / h * Math.sin(2 * Math.PI * f0 * h * t + h);
+                }
+                pcm[n] = (short) (value * envelope + random.nextGaussian() * noise);
+            }
+        }
+        return pcm;
+    }
+}
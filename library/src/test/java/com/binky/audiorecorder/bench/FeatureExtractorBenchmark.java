@@ -0,0 +1,198 @@
+package com.binky.audiorecorder.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.binky.audiorecorder.feature.FeatureExtractor;
+import com.binky.audiorecorder.feature.FeatureListener;
+import com.binky.audiorecorder.feature.MelFilterBank;
+
+/**
+ * 特征提取在JVM上的性能测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.FeatureExtractorBenchmark [秒数]
+ * <p>
+ * 按录音的方式每次送入100ms数据 统计每个hop的平均耗时和每次送入的最长耗时
+ * 再用双精度的直接DFT重新计算一部分帧 检查按随机长度分段送入时流式结果的误差
+ */
+
+public class FeatureExtractorBenchmark {
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        run(16000, 1, new Params(40, 20, 0, 0, 0f), seconds, "log-mel 40");
+        run(16000, 1, new Params(40, 20, 0, 13, 0.97f), seconds, "mfcc 13");
+        run(48000, 2, new Params(64, 20, 8000, 0, 0f), seconds, "log-mel 64");
+    }
+
+    /**
+     * 测试用的参数 同时用来构造{@link FeatureExtractor.Config}和双精度的参考实现
+     */
+    private static class Params {
+        final int bands;
+        final float minHz;
+        final float maxHz;
+        final int mfcc;
+        final float preemphasis;
+
+        Params(int bands, float minHz, float maxHz, int mfcc, float preemphasis) {
+            this.bands = bands;
+            this.minHz = minHz;
+            this.maxHz = maxHz;
+            this.mfcc = mfcc;
+            this.preemphasis = preemphasis;
+        }
+
+        FeatureExtractor.Config toConfig() {
+            return new FeatureExtractor.Config().setMelBank(bands, minHz, maxHz).setMfccCount(mfcc)
+                    .setPreemphasis(preemphasis);
+        }
+    }
+
+    private static void run(int sampleRate, int channels, Params params, int seconds, String name) {
+        FeatureExtractor.Config config = params.toConfig();
+        short[] signal = generate(sampleRate, channels, 10);
+        final FeatureExtractor extractor = new FeatureExtractor(config);
+        final int[] delivered = new int[1];
+        extractor.setListener(new FeatureListener() {
+            @Override
+            public void onFeature(float[][] ring, int position, long frameIndex) {
+                delivered[0]++;
+            }
+        });
+        int block = sampleRate / 10 * channels;
+        // 预热JIT
+        extractor.prepare(sampleRate, channels);
+        for (int round = 0; round < 3; round++) {
+            for (int offset = 0; offset + block <= signal.length; offset += block) {
+                extractor.process(signal, offset, block);
+            }
+        }
+
+        extractor.prepare(sampleRate, channels);
+        delivered[0] = 0;
+        short[] work = new short[block];
+        long[] blockNanos = new long[seconds * 10];
+        long total = 0;
+        for (int b = 0; b < blockNanos.length; b++) {
+            System.arraycopy(signal, b * block % (signal.length - block + 1), work, 0, block);
+            long begin = System.nanoTime();
+            extractor.process(work, 0, block);
+            blockNanos[b] = System.nanoTime() - begin;
+            total += blockNanos[b];
+        }
+        Arrays.sort(blockNanos);
+        System.out.println(String.format("%s %dHz x %d, window %d hop %d fft %d: %d hops, %.1f us/hop, block(100ms) p50 %.1f us max %.1f us, %.0fx realtime",
+                name, sampleRate, channels, extractor.getWindowSize(), extractor.getHopSize(), extractor.getFftSize(),
+                delivered[0], total / 1e3 / Math.max(1, delivered[0]), blockNanos[blockNanos.length / 2] / 1e3,
+                blockNanos[blockNanos.length - 1] / 1e3, seconds * 1e9 / total));
+        System.out.println(String.format("  max abs error vs reference: %.2e", verify(sampleRate, channels, params, signal)));
+    }
+
+    /**
+     * 每次送入随机长度 和一次性用双精度重新计算的结果比较
+     */
+    private static double verify(int sampleRate, int channels, Params params, short[] signal) {
+        final FeatureExtractor extractor = new FeatureExtractor(params.toConfig());
+        extractor.prepare(sampleRate, channels);
+        final int frames = 50;
+        final float[][] streamed = new float[frames][extractor.getFeatureSize()];
+        extractor.setListener(new FeatureListener() {
+            @Override
+            public void onFeature(float[][] ring, int position, long frameIndex) {
+                if (frameIndex < frames) {
+                    System.arraycopy(ring[position], 0, streamed[(int) frameIndex], 0, ring[position].length);
+                }
+            }
+        });
+        Random random = new Random(1);
+        int needed = ((frames - 1) * extractor.getHopSize() + extractor.getWindowSize()) * channels;
+        for (int offset = 0; offset < needed; ) {
+            int length = Math.min(needed - offset, (1 + random.nextInt(700)) * channels);
+            extractor.process(signal, offset, length);
+            offset += length;
+        }
+
+        int window = extractor.getWindowSize();
+        int hop = extractor.getHopSize();
+        int fftSize = extractor.getFftSize();
+        double[] mono = new double[signal.length / channels];
+        for (int i = 0; i < mono.length; i++) {
+            double sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += signal[i * channels + c];
+            }
+            mono[i] = sum / channels;
+        }
+        double error = 0;
+        for (int f = 0; f < frames; f++) {
+            double[] reference = reference(mono, f * hop, window, fftSize, sampleRate, params);
+            for (int j = 0; j < reference.length; j++) {
+                error = Math.max(error, Math.abs(reference[j] - streamed[f][j]));
+            }
+        }
+        return error;
+    }
+
+    private static double[] reference(double[] mono, int start, int window, int fftSize, int sampleRate, Params rc) {
+        double[] frame = new double[fftSize];
+        for (int i = 0; i < window; i++) {
+            int n = start + i;
+            double x = mono[n] - (n > 0 ? rc.preemphasis * mono[n - 1] : 0);
+            frame[i] = x / 32768 * (0.5 - 0.5 * Math.cos(2 * Math.PI * i / window));
+        }
+        int bins = fftSize / 2 + 1;
+        double[] power = new double[bins];
+        for (int k = 0; k < bins; k++) {
+            double re = 0, im = 0;
+            for (int i = 0; i < window; i++) {
+                re += frame[i] * Math.cos(2 * Math.PI * k * i / fftSize);
+                im -= frame[i] * Math.sin(2 * Math.PI * k * i / fftSize);
+            }
+            power[k] = re * re + im * im;
+        }
+        float maxHz = rc.maxHz > 0 ? Math.min(rc.maxHz, sampleRate / 2f) : sampleRate / 2f;
+        MelFilterBank bank = new MelFilterBank(rc.bands, fftSize, sampleRate, rc.minHz, maxHz);
+        float[] powerFloat = new float[bins];
+        for (int k = 0; k < bins; k++) {
+            powerFloat[k] = (float) power[k];
+        }
+        float[] mel = new float[rc.bands];
+        bank.apply(powerFloat, mel);
+        double[] logMel = new double[rc.bands];
+        for (int b = 0; b < rc.bands; b++) {
+            logMel[b] = Math.log(mel[b] + FeatureExtractor.LOG_FLOOR);
+        }
+        if (rc.mfcc == 0) {
+            return logMel;
+        }
+        double[] mfcc = new double[rc.mfcc];
+        for (int j = 0; j < rc.mfcc; j++) {
+            double scale = Math.sqrt((j == 0 ? 1.0 : 2.0) / rc.bands);
+            for (int b = 0; b < rc.bands; b++) {
+                mfcc[j] += scale * Math.cos(Math.PI * j * (b + 0.5) / rc.bands) * logMel[b];
+            }
+        }
+        return mfcc;
+    }
+
+    /**
+     * 生成带谐波和噪声的测试信号 声道之间相位不同
+     */
+    private static short[] generate(int sampleRate, int channels, int seconds) {
+        Random random = new Random(42);
+        short[] data = new short[sampleRate * seconds * channels];
+        for (int n = 0, j = 0; n < sampleRate * seconds; n++) {
+            double t = n / (double) sampleRate;
+            double f0 = 150 + 50 * Math.sin(2 * Math.PI * 0.5 * t);
+            for (int c = 0; c < channels; c++, j++) {
+                double voice = 0;
+                for (int h = 1; h <= 10; h++) {
+                    voice += 2500.0 / h * Math.sin(2 * Math.PI * f0 * h * t + c);
+                }
+                data[j] = (short) (voice + random.nextGaussian() * 300);
+            }
+        }
+        return data;
+    }
+}
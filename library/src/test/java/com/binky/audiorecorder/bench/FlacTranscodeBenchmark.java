@@ -0,0 +1,150 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.binky.audiorecorder.codec.FlacDecoder;
+import com.binky.audiorecorder.codec.FlacTranscoder;
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.FileSink;
+
+/**
+ * {@link FlacTranscoder}在不同线程数下的速度测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.FlacTranscodeBenchmark [秒数] [最大线程数]
+ * <p>
+ * 生成一段48KHz立体声WAV 依次用1到最大线程数转码 检查每次输出都和单线程逐字节一致
+ * 再解码单线程的结果 检查采样点、STREAMINFO中的MD5和每个seek点
+ */
+
+public class FlacTranscodeBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        File dir = new File(System.getProperty("java.io.tmpdir"), "flac-bench-" + System.nanoTime());
+        dir.mkdirs();
+        File wav = new File(dir, "input.wav");
+        short[] pcm = generate(wav, seconds);
+
+        // 预热JIT
+        new FlacTranscoder(maxThreads).transcode(wav, new File(dir, "warmup.flac"));
+
+        byte[] reference = null;
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? maxThreads + 1 : Math.min(threads * 2, maxThreads)) {
+            File flac = new File(dir, "out-" + threads + ".flac");
+            FlacTranscoder.Result result = new FlacTranscoder(threads).transcode(wav, flac);
+            byte[] bytes = readAll(flac);
+            if (reference == null) {
+                reference = bytes;
+                baseline = result.getRealtimeFactor();
+            }
+            System.out.println(String.format("threads=%d %s speedup=%.2f identical=%b", threads, result,
+                    result.getRealtimeFactor() / baseline, Arrays.equals(reference, bytes)));
+        }
+        System.out.println(verify(reference, pcm));
+    }
+
+    private static short[] generate(File wav, int seconds) throws IOException {
+        Random random = new Random(5);
+        short[] pcm = new short[seconds * SAMPLE_RATE * 2];
+        for (int i = 0, n = 0; i < pcm.length; i += 2, n++) {
+            double t = n / (double) SAMPLE_RATE;
+            double music = 6000 * Math.sin(2 * Math.PI * 220 * t) + 3000 * Math.sin(2 * Math.PI * 331 * t + Math.sin(t));
+            pcm[i] = (short) (music + random.nextGaussian() * 200);
+            pcm[i + 1] = (short) (music * 0.8 + random.nextGaussian() * 200);
+        }
+        FileSink sink = new FileSink(wav.getPath(), true);
+        sink.open(SAMPLE_RATE, 2);
+        AudioFrame frame = new AudioFrame(SAMPLE_RATE / 10 * 2);
+        for (int offset = 0; offset < pcm.length; offset += frame.data.length) {
+            frame.set(pcm, offset, Math.min(frame.data.length, pcm.length - offset), 0, 0);
+            sink.write(frame);
+        }
+        sink.close();
+        return pcm;
+    }
+
+    /**
+     * 解码整个FLAC文件 和原始PCM比较 并检查MD5和seek点
+     */
+    private static String verify(byte[] flac, short[] pcm) throws Exception {
+        if (flac[0] != 'f' || flac[1] != 'L' || flac[2] != 'a' || flac[3] != 'C') {
+            return "verify: bad marker";
+        }
+        int position = 4;
+        byte[] md5 = null;
+        long[][] seekPoints = new long[0][];
+        boolean last = false;
+        while (!last) {
+            last = (flac[position] & 0x80) != 0;
+            int type = flac[position] & 0x7F;
+            int length = (flac[position + 1] & 0xFF) << 16 | (flac[position + 2] & 0xFF) << 8 | (flac[position + 3] & 0xFF);
+            position += 4;
+            if (type == 0) {
+                md5 = Arrays.copyOfRange(flac, position + 18, position + 34);
+            } else if (type == 3) {
+                seekPoints = new long[length / 18][];
+                for (int i = 0; i < seekPoints.length; i++) {
+                    int p = position + i * 18;
+                    seekPoints[i] = new long[]{readLong(flac, p), readLong(flac, p + 8)};
+                }
+            }
+            position += length;
+        }
+        int firstFrame = position;
+        FlacDecoder decoder = new FlacDecoder();
+        short[] decoded = new short[pcm.length];
+        int samples = 0;
+        while (position < flac.length) {
+            int size = decoder.decodeFrame(flac, position, flac.length - position);
+            samples += decoder.copyInterleaved(decoded, samples);
+            position += size;
+        }
+        int seekOk = 0;
+        for (long[] point : seekPoints) {
+            if (point[0] == -1L) {
+                continue;
+            }
+            decoder.decodeFrame(flac, firstFrame + (int) point[1], flac.length - firstFrame - (int) point[1]);
+            if (decoder.getFrameNumber() * FlacTranscoder.DEFAULT_BLOCK_SIZE == point[0]) {
+                seekOk++;
+            }
+        }
+        byte[] bytes = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            bytes[2 * i] = (byte) pcm[i];
+            bytes[2 * i + 1] = (byte) (pcm[i] >> 8);
+        }
+        byte[] expectedMd5 = MessageDigest.getInstance("MD5").digest(bytes);
+        return String.format("verify: samples %b, md5 %b, seek points %d/%d",
+                samples == pcm.length && Arrays.equals(pcm, decoded), Arrays.equals(expectedMd5, md5),
+                seekOk, seekPoints.length);
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) input.length()];
+            input.readFully(data);
+            return data;
+        } finally {
+            input.close();
+        }
+    }
+}
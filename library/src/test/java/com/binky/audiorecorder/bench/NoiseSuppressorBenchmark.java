@@ -0,0 +1,121 @@
+package com.binky.audiorecorder.bench;
+
+import java.util.Random;
+
+import com.binky.audiorecorder.process.NoiseSuppressor;
+
+/**
+ * 降噪处理器在JVM上的性能测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.NoiseSuppressorBenchmark [秒数]
+ * <p>
+ * 处理48KHz单声道的合成语音加噪声 输出实时倍率和占用单核的比例 以及纯噪声段的衰减量
+ */
+
+public class NoiseSuppressorBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int FRAME = SAMPLE_RATE / 10;
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        Result result = run(seconds);
+        System.out.println(result);
+    }
+
+    public static Result run(int seconds) {
+        short[][] frames = generate(10);
+        NoiseSuppressor suppressor = new NoiseSuppressor(15f);
+        suppressor.prepare(SAMPLE_RATE, 1);
+        short[] work = new short[FRAME];
+        // 预热JIT
+        for (int round = 0; round < 3; round++) {
+            for (short[] frame : frames) {
+                System.arraycopy(frame, 0, work, 0, FRAME);
+                suppressor.process(work, 0, FRAME);
+            }
+        }
+
+        suppressor.prepare(SAMPLE_RATE, 1);
+        int totalFrames = seconds * 10;
+        double noiseIn = 0;
+        double noiseOut = 0;
+        long elapsed = 0;
+        for (int f = 0; f < totalFrames; f++) {
+            short[] frame = frames[f % frames.length];
+            System.arraycopy(frame, 0, work, 0, FRAME);
+            long begin = System.nanoTime();
+            suppressor.process(work, 0, FRAME);
+            elapsed += System.nanoTime() - begin;
+            // 合成信号中每秒的后半段只有噪声 跳过处理延时带来的过渡帧
+            int inSecond = f % 10;
+            if (f >= 10 && inSecond >= 6) {
+                noiseIn += energy(frame);
+                noiseOut += energy(work);
+            }
+        }
+        Result result = new Result();
+        result.audioSeconds = seconds;
+        result.processNanos = elapsed;
+        result.noiseReductionDb = 10 * Math.log10(noiseIn / Math.max(noiseOut, 1e-9));
+        return result;
+    }
+
+    /**
+     * 生成若干秒的测试信号 每秒前半段是带谐波的语音样信号 后半段只有噪声
+     */
+    private static short[][] generate(int seconds) {
+        Random random = new Random(42);
+        short[][] frames = new short[seconds * 10][FRAME];
+        long n = 0;
+        for (short[] frame : frames) {
+            for (int i = 0; i < FRAME; i++, n++) {
+                double t = n / (double) SAMPLE_RATE;
+                double noise = random.nextGaussian() * 600;
+                double voice = 0;
+                if ((n % SAMPLE_RATE) < SAMPLE_RATE / 2) {
+                    double f0 = 180 + 30 * Math.sin(2 * Math.PI * 3 * t);
+                    for (int h = 1; h <= 8; h++) {
+                        voice += 3000.0 / h * Math.sin(2 * Math.PI * f0 * h * t);
+                    }
+                }
+                frame[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, voice + noise));
+            }
+        }
+        return frames;
+    }
+
+    private static double energy(short[] data) {
+        double sum = 0;
+        for (short s : data) {
+            sum += (double) s * s;
+        }
+        return sum;
+    }
+
+    public static class Result {
+        public int audioSeconds;
+        public long processNanos;
+        public double noiseReductionDb;
+
+        /**
+         * 实时倍率 处理1秒音频需要的时间的倒数
+         */
+        public double realtimeFactor() {
+            return audioSeconds * 1e9 / processNanos;
+        }
+
+        /**
+         * 实时处理时占用单核的比例
+         */
+        public double coreFraction() {
+            return processNanos / (audioSeconds * 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("NoiseSuppressor 48kHz mono: %d s audio in %.1f ms, %.0fx realtime, %.2f%% of one core, noise reduction %.1f dB",
+                    audioSeconds, processNanos / 1e6, realtimeFactor(), coreFraction() * 100, noiseReductionDb);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.binky.audiorecorder.bench;
+
+import java.util.Random;
+
+import com.binky.audiorecorder.feature.PitchDetector;
+import com.binky.audiorecorder.feature.PitchListener;
+
+/**
+ * 基频检测在JVM上的性能和准确率测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.PitchDetectorBenchmark [秒数]
+ * <p>
+ * 48KHz单声道 10ms帧移 对几个不同的频率下限分别用直接计算和FFT计算差函数
+ * 输出每个hop的耗时、实时处理占单核的比例 以及带谐波和噪声的合成人声上的大误差比例(偏离超过50音分)
+ */
+
+public class PitchDetectorBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int FRAME = SAMPLE_RATE / 10;
+    private static final float[] TONES = {65.4f, 82.4f, 110f, 146.8f, 220f, 329.6f, 440f, 659.3f, 880f};
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        float[] minHz = {40f, 60f, 100f, 200f};
+        for (float min : minHz) {
+            for (PitchDetector.Method method : new PitchDetector.Method[]{PitchDetector.Method.DIRECT, PitchDetector.Method.FFT}) {
+                run(min, method, seconds);
+            }
+            PitchDetector auto = new PitchDetector(new PitchDetector.Config().setRange(min, 1000f));
+            auto.prepare(SAMPLE_RATE, 1);
+            System.out.println(String.format("  AUTO chooses %s", auto.isUsingFft() ? "FFT" : "DIRECT"));
+        }
+    }
+
+    private static void run(float minHz, PitchDetector.Method method, int seconds) {
+        final PitchDetector detector = new PitchDetector(new PitchDetector.Config().setRange(minHz, 1000f).setMethod(method));
+        final float[] expected = new float[1];
+        final long[] counts = new long[3];
+        detector.setListener(new PitchListener() {
+            @Override
+            public void onPitch(float frequency, float confidence, long sampleIndex) {
+                counts[0]++;
+                if (expected[0] <= 0) {
+                    return;
+                }
+                counts[1]++;
+                double cents = Math.abs(1200 * Math.log(frequency / expected[0]) / Math.log(2));
+                if (frequency <= 0 || cents > 50) {
+                    counts[2]++;
+                }
+            }
+        });
+        short[] work = new short[FRAME];
+        // 预热JIT
+        detector.prepare(SAMPLE_RATE, 1);
+        Random random = new Random(7);
+        for (int i = 0; i < 30; i++) {
+            fill(work, 220f, i * FRAME, random);
+            detector.process(work, 0, FRAME);
+        }
+
+        long elapsed = 0;
+        int frames = seconds * 10;
+        int framesPerTone = Math.max(1, frames / TONES.length);
+        for (int f = 0; f < frames; f++) {
+            float tone = TONES[(f / framesPerTone) % TONES.length];
+            if (f % framesPerTone == 0) {
+                // 换音时重新开始 分析窗里不会混着两个音
+                detector.prepare(SAMPLE_RATE, 1);
+            }
+            expected[0] = tone >= minHz ? tone : 0f;
+            fill(work, tone, (long) f * FRAME, random);
+            long begin = System.nanoTime();
+            detector.process(work, 0, FRAME);
+            elapsed += System.nanoTime() - begin;
+        }
+        System.out.println(String.format("min %3.0f Hz %-6s: window %d, %.1f us/hop, %.2f%% of one core, %.0fx realtime, gross errors %d/%d",
+                minHz, method, detector.getBufferSize(), elapsed / 1e3 / Math.max(1, counts[0]),
+                elapsed / (seconds * 1e9) * 100, seconds * 1e9 / elapsed, counts[2], counts[1]));
+    }
+
+    /**
+     * 带衰减谐波和轻微颤音的合成人声 加-40dB左右的噪声
+     */
+    private static void fill(short[] frame, float f0, long start, Random random) {
+        for (int i = 0; i < frame.length; i++) {
+            double t = (start + i) / (double) SAMPLE_RATE;
+            double phase = 2 * Math.PI * f0 * (t + 0.002 * Math.sin(2 * Math.PI * 5 * t) / (2 * Math.PI * 5));
+            double value = 0;
+            for (int h = 1; h <= 12 && f0 * h < SAMPLE_RATE / 2; h++) {
+                value += 6000.0 / h * Math.sin(h * phase);
+            }
+            frame[i] = (short) (value + random.nextGaussian() * 150);
+        }
+    }
+}
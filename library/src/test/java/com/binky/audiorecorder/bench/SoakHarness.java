@@ -0,0 +1,435 @@
+package com.binky.audiorecorder.bench;
+
+import android.media.AudioFormat;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.binky.audiorecorder.AudioRecorder;
+import com.binky.audiorecorder.CallbackExecutors;
+import com.binky.audiorecorder.StatusListener;
+import com.binky.audiorecorder.record.CaptureSource;
+import com.binky.audiorecorder.record.ChannelMask;
+import com.binky.audiorecorder.record.FrameInfo;
+import com.binky.audiorecorder.sink.FileSink;
+import com.binky.audiorecorder.sink.SinkFanout;
+import com.binky.audiorecorder.sink.SinkStats;
+import com.binky.audiorecorder.utils.Log;
+
+/**
+ * 长时间录音的加速测试 不依赖Android设备
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.SoakHarness [模拟小时数] [加速倍数] [采样率] [声道数] [-memory]
+ * <p>
+ * -memory 同时在内存中保存整段录音 用来验证泄漏检查 内存会按录音时长线性增长
+ * <p>
+ * 用{@link GeneratedSource}代替AudioRecord 按加速后的时钟生成确定的数据 完整地走一遍AudioRecorder、处理链和FileSink
+ * 运行中定期采样堆内存、分配速率、GC次数和耗时、文件大小 结束后检查:
+ * <ul>
+ * <li>堆内存按模拟时长的增长斜率 超过{@link #MAX_HEAP_GROWTH_PER_HOUR}认为有泄漏</li>
+ * <li>每一帧的sampleIndex连续 数据和生成的一致 没有丢帧</li>
+ * <li>帧时间戳和按采样点数推算的时间之差 超过{@link #MAX_DRIFT_NANOS}认为时钟漂移</li>
+ * <li>文件大小正好等于录音时长 sink没有丢帧</li>
+ * </ul>
+ * 任何一项不通过时以非0状态退出 {@link SoakHarnessTest}用较短的时长跑同样的检查 GC和分配统计通过反射读取JVM的管理接口 Android上没有这些类
+ */
+
+public class SoakHarness {
+
+    /**
+     * 允许的堆增长 每模拟小时
+     */
+    public static final long MAX_HEAP_GROWTH_PER_HOUR = 2L << 20;
+    public static final long MAX_DRIFT_NANOS = 1000000L;
+    private static final int SAMPLES = 40;
+
+    public static void main(String[] args) throws Exception {
+        double hours = args.length > 0 ? Double.parseDouble(args[0]) : 4;
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 500;
+        int sampleRate = args.length > 2 ? Integer.parseInt(args[2]) : 16000;
+        int channels = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        boolean keepSession = args.length > 4 && "-memory".equals(args[4]);
+        List<String> failures = run(hours, speed, sampleRate, channels, keepSession);
+        if (failures.isEmpty()) {
+            System.out.println("PASS");
+        } else {
+            System.out.println("FAIL: " + failures);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 跑一次加速录音并检查结果
+     *
+     * @return 不通过的检查项 全部通过时为空
+     */
+    public static List<String> run(double hours, double speed, int sampleRate, int channels, boolean keepSession)
+            throws Exception {
+        Log.DEBUG = false;
+        long durationMillis = (long) (hours * 3600000);
+        long expectedFrames = durationMillis / 1000 * sampleRate + durationMillis % 1000 * sampleRate / 1000;
+        File file = File.createTempFile("soak", ".wav");
+        final GeneratedSource source = new GeneratedSource(speed);
+        final Checker checker = new Checker(source, channels);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        FileSink sink = new FileSink(file.getPath(), true);
+
+        AudioRecorder recorder = AudioRecorder.getInstance();
+        recorder.setRecordConfig(new AudioRecorder.RecordConfig(1, sampleRate,
+                channels == 1 ? AudioFormat.CHANNEL_IN_MONO : AudioFormat.CHANNEL_IN_STEREO, AudioFormat.ENCODING_PCM_16BIT))
+                .setMaxRecordTime(durationMillis)
+                .setKeepSessionInMemory(keepSession)
+                .setCaptureSource(source)
+                // 队列长度按帧计算 和设备缓冲区一样按真实时间100ms放大 否则高倍速下一次GC停顿就会丢帧
+                .addSink(sink, (int) Math.max(SinkFanout.DEFAULT_QUEUE_CAPACITY, speed))
+                .setStatusListener(new StatusListener() {
+                    @Override
+                    public void onRecordDataOnWorkerThread(short[] data, int length, FrameInfo info) {
+                        checker.onFrame(data, length, info);
+                    }
+
+                    @Override
+                    public void onRecordError(int code, String errorMsg) {
+                        checker.errors++;
+                        System.out.println("record error " + code + " " + errorMsg);
+                        stopped.countDown();
+                    }
+
+                    @Override
+                    public void onStopRecording() {
+                        stopped.countDown();
+                    }
+                }, CallbackExecutors.direct());
+
+        System.out.println(String.format("soak %.2f h at %.0fx, %d Hz x %d, %.1f s expected", hours, speed, sampleRate,
+                channels, durationMillis / speed / 1000));
+        List<long[]> samples = new ArrayList<>();
+        long realBegin = System.nanoTime();
+        long interval = Math.max(250000000L, (long) (durationMillis * 1000000L / speed / SAMPLES));
+        List<String> failures = new ArrayList<>();
+        if (!recorder.start()) {
+            recorder.removeSink(sink);
+            file.delete();
+            failures.add("start");
+            return failures;
+        }
+        while (!stopped.await(interval, TimeUnit.NANOSECONDS)) {
+            long[] sample = sample(source, checker, file);
+            samples.add(sample);
+            System.out.println(String.format("  t=%6.2f h  heap %6.1f MB  alloc %8.1f MB  gc %4d/%6d ms  file %7.1f MB",
+                    sample[0] / 3.6e12, sample[1] / 1048576.0, sample[2] / 1048576.0, sample[3], sample[4],
+                    sample[5] / 1048576.0));
+        }
+        long realNanos = System.nanoTime() - realBegin;
+        for (SinkStats stats : recorder.getRecordMetrics().getSinkStats()) {
+            checker.sinkDropped += stats.getFramesDropped() + stats.getErrors();
+        }
+        long[] last = sample(source, checker, file);
+        samples.add(last);
+
+        double slope = heapSlope(samples);
+        long fileFrames = (file.length() - 44) / 2 / channels;
+        double simulatedSeconds = last[0] / 1e9;
+        System.out.println(String.format("frames %d of %d, file frames %d, source lost %d, gaps %d, misplaced %d, mismatches %d, sink dropped %d",
+                checker.frames, expectedFrames, fileFrames, source.getLostFrames(), checker.gaps, checker.misplacedFrames,
+                checker.mismatches, checker.sinkDropped));
+        System.out.println(String.format("drift max %.3f ms, max stall %.2f ms real, realtime factor %.0fx",
+                checker.maxDriftNanos / 1e6, checker.maxStallNanos / 1e6, simulatedSeconds * 1e9 / realNanos));
+        System.out.println(String.format("heap growth %.2f MB/h, allocation %.1f KB per simulated second, gc %d in %d ms",
+                slope / 1048576.0, last[2] / 1024.0 / Math.max(1, simulatedSeconds), last[3], last[4]));
+
+        if (slope > MAX_HEAP_GROWTH_PER_HOUR) {
+            failures.add("heap grows " + (long) slope + " bytes per hour");
+        }
+        if (checker.maxDriftNanos > MAX_DRIFT_NANOS) {
+            failures.add("timestamp drift " + checker.maxDriftNanos + " ns");
+        }
+        if (checker.gaps > 0 || checker.misplacedFrames > 0 || checker.mismatches > 0 || source.getLostFrames() > 0) {
+            failures.add("dropped samples");
+        }
+        if (checker.frames != expectedFrames || fileFrames != expectedFrames) {
+            failures.add("frame count");
+        }
+        if (checker.sinkDropped > 0 || checker.errors > 0) {
+            failures.add("sink drops or errors");
+        }
+        // AudioRecorder是单例 不要把sink留给之后的录音
+        recorder.removeSink(sink);
+        file.delete();
+        return failures;
+    }
+
+    /**
+     * @return 模拟时间 堆内存 已分配字节 GC次数 GC耗时 文件大小
+     */
+    private static long[] sample(GeneratedSource source, Checker checker, File file) {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long[] gc = gcStats();
+        return new long[]{source.elapsedNanos(), runtime.totalMemory() - runtime.freeMemory(),
+                allocatedBytes(), gc[0], gc[1], file.length()};
+    }
+
+    /**
+     * 后3/4的采样做最小二乘 得到每模拟小时的堆增长 前面的采样包含类加载和缓冲区的预热
+     */
+    private static double heapSlope(List<long[]> samples) {
+        int from = samples.size() / 4;
+        int n = samples.size() - from;
+        if (n < 3) {
+            return 0;
+        }
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (int i = from; i < samples.size(); i++) {
+            double x = samples.get(i)[0] / 3.6e12;
+            double y = samples.get(i)[1];
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        double denominator = n * sxx - sx * sx;
+        return denominator == 0 ? 0 : (n * sxy - sx * sy) / denominator;
+    }
+
+    private static Object managementBean(String getter) throws Exception {
+        return Class.forName("java.lang.management.ManagementFactory").getMethod(getter).invoke(null);
+    }
+
+    /**
+     * 所有存活线程累计分配的字节数 JVM不支持时返回0
+     */
+    private static long allocatedBytes() {
+        try {
+            Object bean = managementBean("getThreadMXBean");
+            Class<?> extended = Class.forName("com.sun.management.ThreadMXBean");
+            if (!extended.isInstance(bean)) {
+                return 0;
+            }
+            long[] ids = (long[]) Class.forName("java.lang.management.ThreadMXBean")
+                    .getMethod("getAllThreadIds").invoke(bean);
+            long[] bytes = (long[]) extended.getMethod("getThreadAllocatedBytes", long[].class).invoke(bean, ids);
+            long total = 0;
+            for (long value : bytes) {
+                total += Math.max(0, value);
+            }
+            return total;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return GC总次数和总耗时 单位毫秒
+     */
+    private static long[] gcStats() {
+        long[] result = new long[2];
+        try {
+            Class<?> type = Class.forName("java.lang.management.GarbageCollectorMXBean");
+            Method count = type.getMethod("getCollectionCount");
+            Method time = type.getMethod("getCollectionTime");
+            for (Object bean : (List<?>) managementBean("getGarbageCollectorMXBeans")) {
+                result[0] += Math.max(0, (Long) count.invoke(bean));
+                result[1] += Math.max(0, (Long) time.invoke(bean));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * 在录音工作线程中检查每一帧 回调紧跟在读取之后 所以设备上一次读取的位置就是这一帧的真实位置
+     */
+    private static class Checker {
+
+        private final GeneratedSource mSource;
+        private final int mChannels;
+        private long mOffset = -1;
+        private long mLastReal;
+        long frames;
+        long gaps;
+        long mismatches;
+        long misplacedFrames;
+        long maxDriftNanos;
+        long maxStallNanos;
+        long sinkDropped;
+        int errors;
+
+        Checker(GeneratedSource source, int channels) {
+            this.mSource = source;
+            this.mChannels = channels;
+        }
+
+        void onFrame(short[] data, int length, FrameInfo info) {
+            long now = System.nanoTime();
+            if (mLastReal != 0) {
+                maxStallNanos = Math.max(maxStallNanos, now - mLastReal);
+            }
+            mLastReal = now;
+            if (info.getSampleIndex() != frames || info.isDiscontinuity()) {
+                gaps++;
+            }
+            // 第一帧确定录音位置和设备位置的对应关系 丢帧后如果估计的丢失数不准 位置就会错开
+            long deviceFrame = mSource.getLastReadFrame();
+            if (mOffset < 0) {
+                mOffset = deviceFrame - info.getSampleIndex();
+            }
+            long misplaced = deviceFrame - info.getSampleIndex() - mOffset;
+            if (misplaced != 0) {
+                misplacedFrames += Math.abs(misplaced);
+                mOffset += misplaced;
+            }
+            long drift = Math.abs(mSource.timeOf(deviceFrame) - info.getTimestampNanos());
+            maxDriftNanos = Math.max(maxDriftNanos, drift);
+            int count = length / mChannels;
+            for (int i = 0, j = 0; i < count; i++) {
+                for (int c = 0; c < mChannels; c++, j++) {
+                    if (data[j] != GeneratedSource.value(deviceFrame + i, c)) {
+                        mismatches++;
+                    }
+                }
+            }
+            frames = info.getSampleIndex() + count;
+        }
+    }
+
+    /**
+     * 按加速的时钟生成数据的录音设备 模拟时间 = 开始后的真实时间 x 加速倍数
+     * <p>
+     * 数据只由设备位置决定 读取不及时超过缓冲区时和真实设备一样丢掉最早的数据
+     * 缓冲区按真实时间100ms计算 否则高倍速下GC的一次停顿就会溢出
+     */
+    public static class GeneratedSource implements CaptureSource {
+
+        private final double mSpeed;
+        private int mSampleRate;
+        private int mChannels;
+        private long mCapacityFrames;
+        private long mStartReal;
+        private long mConsumed;
+        private long mLastReadFrame;
+        private long mLostFrames;
+        private volatile boolean mStarted;
+
+        public GeneratedSource(double speed) {
+            this.mSpeed = speed;
+        }
+
+        /**
+         * 设备位置为frame的采样点
+         */
+        public static short value(long frame, int channel) {
+            return (short) (frame * 31 + (frame >>> 15) + channel * 7919);
+        }
+
+        @Override
+        public int getMinBufferSize(int sampleRate, int channelConfig, int audioFormat) {
+            return (int) Math.min(Integer.MAX_VALUE / 4, sampleRate * mSpeed / 10) * 2 * channelCount(channelConfig);
+        }
+
+        private static int channelCount(int channelConfig) {
+            return ChannelMask.channelCount(channelConfig);
+        }
+
+        @Override
+        public boolean open(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+            mSampleRate = sampleRate;
+            mChannels = channelCount(channelConfig);
+            mCapacityFrames = bufferSizeInBytes / 2 / mChannels;
+            return true;
+        }
+
+        @Override
+        public boolean start() {
+            if (!mStarted) {
+                mStartReal = System.nanoTime();
+                mConsumed = 0;
+                mStarted = true;
+            }
+            return true;
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int length) {
+            if (!mStarted) {
+                return -1;
+            }
+            int frames = length / mChannels;
+            long produced = frameAt(nanoTime());
+            if (produced - mConsumed > mCapacityFrames) {
+                mLostFrames += produced - mConsumed - mCapacityFrames;
+                mConsumed = produced - mCapacityFrames;
+            }
+            while (produced - mConsumed < frames) {
+                LockSupport.parkNanos((long) ((frames - produced + mConsumed) * 1e9 / mSampleRate / mSpeed) + 1);
+                produced = frameAt(nanoTime());
+            }
+            mLastReadFrame = mConsumed;
+            for (int i = 0, j = offset; i < frames; i++) {
+                for (int c = 0; c < mChannels; c++) {
+                    buffer[j++] = value(mConsumed + i, c);
+                }
+            }
+            mConsumed += frames;
+            return frames * mChannels;
+        }
+
+        @Override
+        public void stop() {
+            mStarted = false;
+        }
+
+        @Override
+        public void release() {
+            mStarted = false;
+        }
+
+        @Override
+        public boolean getTimestamp(long[] out) {
+            // 和真实设备一样返回一对精确对应的位置和时间
+            out[0] = frameAt(nanoTime());
+            out[1] = timeOf(out[0]);
+            return mStarted;
+        }
+
+        @Override
+        public long nanoTime() {
+            return (long) ((System.nanoTime() - mStartReal) * mSpeed);
+        }
+
+        public long elapsedNanos() {
+            return nanoTime();
+        }
+
+        /**
+         * 模拟时间为nanos时设备已经采集的采样点数
+         */
+        public long frameAt(long nanos) {
+            return nanos / 1000000000L * mSampleRate + nanos % 1000000000L * mSampleRate / 1000000000L;
+        }
+
+        /**
+         * 采集到设备位置frame时的模拟时间
+         */
+        public long timeOf(long frame) {
+            return frame / mSampleRate * 1000000000L + frame % mSampleRate * 1000000000L / mSampleRate;
+        }
+
+        /**
+         * 上一次读取的第一个采样点的设备位置
+         */
+        public long getLastReadFrame() {
+            return mLastReadFrame;
+        }
+
+        public long getLostFrames() {
+            return mLostFrames;
+        }
+    }
+}
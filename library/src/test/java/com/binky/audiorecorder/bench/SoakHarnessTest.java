@@ -0,0 +1,24 @@
+package com.binky.audiorecorder.bench;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 较短时长的加速录音 检查不丢帧、时间戳不漂移、文件大小正确 长时间的堆增长检查用{@link SoakHarness#main(String[])}
+ */
+
+public class SoakHarnessTest {
+
+    @Test
+    public void monoSessionKeepsEveryFrame() throws Exception {
+        assertEquals(Collections.<String>emptyList(), SoakHarness.run(0.05, 300, 16000, 1, false));
+    }
+
+    @Test
+    public void stereoSessionKeepsEveryFrame() throws Exception {
+        assertEquals(Collections.<String>emptyList(), SoakHarness.run(0.02, 100, 16000, 2, false));
+    }
+}
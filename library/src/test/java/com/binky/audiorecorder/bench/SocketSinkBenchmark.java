@@ -0,0 +1,172 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import com.binky.audiorecorder.sink.SinkFanout;
+import com.binky.audiorecorder.sink.SocketSink;
+
+/**
+ * {@link SocketSink}对本机回环服务端的端到端测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.SocketSinkBenchmark [秒数]
+ * <p>
+ * 按实时速度发送16KHz单声道10ms一帧的数据 服务端在中途主动断开一次 检查重连、包格式和序号
+ * 输出从采集到服务端收到完整包的平均和最大延迟
+ */
+
+public class SocketSinkBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = SAMPLE_RATE / 100;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Result result = run(seconds);
+        System.out.println(result);
+    }
+
+    public static Result run(int seconds) throws Exception {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final Result result = new Result();
+        final int totalFrames = seconds * 100;
+        Thread receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    receive(server, totalFrames / 2, result);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "SocketSinkBenchmark-server");
+        receiver.start();
+
+        SocketSink sink = new SocketSink("127.0.0.1", server.getLocalPort())
+                .setReconnectInterval(20, 200);
+        SinkFanout fanout = new SinkFanout();
+        fanout.add(sink, SinkFanout.DEFAULT_QUEUE_CAPACITY);
+        fanout.open(SAMPLE_RATE, 1);
+        short[] frame = new short[FRAME];
+        long begin = System.nanoTime();
+        for (int f = 0; f < totalFrames; f++) {
+            for (int i = 0; i < FRAME; i++) {
+                frame[i] = (short) (f * FRAME + i);
+            }
+            long due = begin + f * 10000000L;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+            }
+            fanout.dispatch(frame, 0, FRAME, f, System.nanoTime());
+        }
+        fanout.close(5000);
+        server.close();
+        receiver.join(5000);
+        result.framesSent = totalFrames;
+        result.sink = sink.toString();
+        return result;
+    }
+
+    /**
+     * 接收并校验数据包 收到dropAfter个包后断开一次连接
+     */
+    private static void receive(ServerSocket server, int dropAfter, Result result) throws IOException {
+        long expected = 0;
+        boolean dropped = false;
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            result.connections++;
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] header = new byte[SocketSink.HEADER_SIZE];
+            byte[] payload = new byte[0];
+            try {
+                while (true) {
+                    in.readFully(header);
+                    if (readInt(header, 0) != SocketSink.MAGIC) {
+                        result.errors++;
+                        break;
+                    }
+                    long sequence = readLong(header, 8);
+                    long timestamp = readLong(header, 16);
+                    int payloadSize = readInt(header, 32);
+                    if (payload.length < payloadSize) {
+                        payload = new byte[payloadSize];
+                    }
+                    in.readFully(payload, 0, payloadSize);
+                    long now = System.nanoTime();
+                    // 负载的第一个样本等于 序号*帧长 的低16位
+                    short first = (short) ((payload[0] & 0xff) | (payload[1] << 8));
+                    if (first != (short) (sequence * FRAME)) {
+                        result.errors++;
+                    }
+                    if (sequence != expected) {
+                        result.gaps++;
+                    }
+                    expected = sequence + 1;
+                    result.framesReceived++;
+                    long latency = now - timestamp;
+                    result.totalLatencyNanos += latency;
+                    result.maxLatencyNanos = Math.max(result.maxLatencyNanos, latency);
+                    if (!dropped && result.framesReceived == dropAfter) {
+                        dropped = true;
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // 客户端结束
+            } finally {
+                closeQuietly(in);
+                socket.close();
+            }
+        }
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+
+    private static long readLong(byte[] b, int off) {
+        return (readInt(b, off) & 0xffffffffL) | ((long) readInt(b, off + 4)) << 32;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static class Result {
+        public long framesSent;
+        public long framesReceived;
+        public int connections;
+        public int gaps;
+        public int errors;
+        public long totalLatencyNanos;
+        public long maxLatencyNanos;
+        public String sink;
+
+        public long averageLatencyNanos() {
+            return framesReceived == 0 ? 0 : totalLatencyNanos / framesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SocketSink loopback: sent %d, received %d, connections %d, gaps %d, errors %d, capture-to-socket latency avg %.2f ms max %.2f ms%n%s",
+                    framesSent, framesReceived, connections, gaps, errors,
+                    averageLatencyNanos() / 1e6, maxLatencyNanos / 1e6, sink);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.binky.audiorecorder.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.binky.audiorecorder.feature.ToneDetector;
+import com.binky.audiorecorder.feature.ToneListener;
+
+/**
+ * DTMF和单频检测在JVM上的准确率和性能测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.ToneDetectorBenchmark [按键数]
+ * <p>
+ * 生成随机按键序列 每个按键40~120ms 带随机twist 按键之间插入静音、类语音信号或2100Hz信标 全程叠加噪声
+ * 按100ms一帧送入 统计漏检、误检、开始和结束位置的误差(采样点) 以及每个采样点的处理耗时
+ */
+
+public class ToneDetectorBenchmark {
+
+    private static final float[] ROWS = {697f, 770f, 852f, 941f};
+    private static final float[] COLUMNS = {1209f, 1336f, 1477f, 1633f};
+    private static final String[][] KEYS = {
+            {"1", "2", "3", "A"},
+            {"4", "5", "6", "B"},
+            {"7", "8", "9", "C"},
+            {"*", "0", "#", "D"}};
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        run(8000, keys);
+        run(48000, keys);
+    }
+
+    /**
+     * 生成的一段信号
+     */
+    private static class Segment {
+        final String tone;
+        final long start;
+        final long end;
+
+        Segment(String tone, long start, long end) {
+            this.tone = tone;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static void run(int sampleRate, int keys) {
+        Random random = new Random(3);
+        List<Segment> expected = new ArrayList<>();
+        short[] signal = generate(sampleRate, keys, random, expected);
+
+        final List<Segment> detected = new ArrayList<>();
+        ToneDetector detector = new ToneDetector().addTone("beacon", 2100f);
+        detector.setListener(new ToneListener() {
+            @Override
+            public void onToneStart(String tone, long startSample) {
+            }
+
+            @Override
+            public void onToneEnd(String tone, long startSample, long endSample) {
+                detected.add(new Segment(tone, startSample, endSample));
+            }
+        });
+        int frame = sampleRate / 10;
+        // 预热JIT
+        detector.prepare(sampleRate, 1);
+        for (int offset = 0; offset + frame <= signal.length; offset += frame) {
+            detector.process(signal, offset, frame);
+        }
+        detected.clear();
+        detector.prepare(sampleRate, 1);
+        long begin = System.nanoTime();
+        for (int offset = 0; offset < signal.length; offset += frame) {
+            detector.process(signal, offset, Math.min(frame, signal.length - offset));
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        int matched = 0;
+        int wrong = 0;
+        long startError = 0;
+        long endError = 0;
+        long maxError = 0;
+        boolean[] used = new boolean[detected.size()];
+        for (Segment segment : expected) {
+            int hit = -1;
+            for (int i = 0; i < detected.size(); i++) {
+                Segment d = detected.get(i);
+                if (!used[i] && d.start < segment.end && d.end > segment.start) {
+                    hit = i;
+                    break;
+                }
+            }
+            if (hit < 0) {
+                continue;
+            }
+            used[hit] = true;
+            Segment d = detected.get(hit);
+            if (!d.tone.equals(segment.tone)) {
+                wrong++;
+                continue;
+            }
+            matched++;
+            startError += Math.abs(d.start - segment.start);
+            endError += Math.abs(d.end - segment.end);
+            maxError = Math.max(maxError, Math.max(Math.abs(d.start - segment.start), Math.abs(d.end - segment.end)));
+        }
+        int falseAlarms = 0;
+        for (boolean u : used) {
+            if (!u) {
+                falseAlarms++;
+            }
+        }
+        System.out.println(String.format("%d Hz: %d tones, detected %d, missed %d, wrong key %d, false alarms %d",
+                sampleRate, expected.size(), matched, expected.size() - matched - wrong, wrong, falseAlarms));
+        System.out.println(String.format("  edge error mean start %.1f / end %.1f samples, max %d samples (%.2f ms)",
+                startError / (double) Math.max(1, matched), endError / (double) Math.max(1, matched), maxError,
+                maxError * 1000.0 / sampleRate));
+        System.out.println(String.format("  %.1f ns/sample, %.0fx realtime", elapsed / (double) signal.length,
+                signal.length * 1e9 / sampleRate / elapsed));
+    }
+
+    private static short[] generate(int sampleRate, int keys, Random random, List<Segment> expected) {
+        List<Short> samples = new ArrayList<>();
+        long n = 0;
+        double noise = 80;
+        for (int k = 0; k < keys; k++) {
+            // 间隔 随机是静音、类语音信号或信标
+            int gap = sampleRate * (40 + random.nextInt(80)) / 1000;
+            int kind = random.nextInt(4);
+            if (kind == 3) {
+                int length = sampleRate * (60 + random.nextInt(100)) / 1000;
+                for (int i = 0; i < length; i++, n++) {
+                    samples.add(clip(4000 * Math.sin(2 * Math.PI * 2100 * n / sampleRate) + random.nextGaussian() * noise));
+                }
+                expected.add(new Segment("beacon", n - length, n));
+                gap = sampleRate * 50 / 1000;
+            }
+            double f0 = 120 + random.nextInt(150);
+            for (int i = 0; i < gap; i++, n++) {
+                double value = random.nextGaussian() * noise;
+                if (kind == 2) {
+                    for (int h = 1; h <= 15; h++) {
+                        value += 3000.0 / h * Math.sin(2 * Math.PI * f0 * h * n / sampleRate);
+                    }
+                }
+                samples.add(clip(value));
+            }
+            int row = random.nextInt(4);
+            int column = random.nextInt(4);
+            int length = sampleRate * (40 + random.nextInt(80)) / 1000;
+            double twistDb = random.nextDouble() * 6 - 3;
+            double rowAmplitude = 6000 * Math.pow(10, twistDb / 40);
+            double columnAmplitude = 6000 * Math.pow(10, -twistDb / 40);
+            double phase = random.nextDouble() * 2 * Math.PI;
+            for (int i = 0; i < length; i++, n++) {
+                double t = i / (double) sampleRate;
+                samples.add(clip(rowAmplitude * Math.sin(2 * Math.PI * ROWS[row] * t + phase)
+                        + columnAmplitude * Math.sin(2 * Math.PI * COLUMNS[column] * t)
+                        + random.nextGaussian() * noise));
+            }
+            expected.add(new Segment(KEYS[row][column], n - length, n));
+        }
+        for (int i = 0; i < sampleRate / 5; i++) {
+            samples.add(clip(random.nextGaussian() * noise));
+        }
+        short[] signal = new short[samples.size()];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = samples.get(i);
+        }
+        return signal;
+    }
+
+    private static short clip(double value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+}
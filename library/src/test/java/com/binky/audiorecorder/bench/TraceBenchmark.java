@@ -0,0 +1,99 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.binky.audiorecorder.trace.Trace;
+import com.binky.audiorecorder.trace.TraceDecoder;
+import com.binky.audiorecorder.trace.TraceEvent;
+
+/**
+ * {@link Trace}的开销测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.TraceBenchmark [每个线程的事件数] [线程数]
+ * <p>
+ * 分别测量分类关闭和开启时每个事件的耗时 然后导出缓冲区 解码后检查每个线程的事件都完整并且按顺序
+ */
+
+public class TraceBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int events = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        Trace.setEnabledCategories(0);
+        run(events, 1);
+        System.out.println(String.format("disabled: %.2f ns/event", run(events, 1)));
+
+        Trace.setCapacity(Trace.DEFAULT_CAPACITY);
+        Trace.setEnabledCategories(Trace.CATEGORY_ALL);
+        run(events, 1);
+        System.out.println(String.format("enabled, 1 thread: %.2f ns/event", run(events, 1)));
+        System.out.println(String.format("enabled, %d threads: %.2f ns/event", threads, run(events, threads)));
+
+        // 只开启一个分类 其他分类的事件不记录
+        Trace.clear();
+        Trace.setEnabledCategories(Trace.CATEGORY_SINK);
+        Trace.event(Trace.READ_BEGIN, 1);
+        Trace.event(Trace.SINK_OFFER, 2, 3);
+        System.out.println("category gating: recorded " + Trace.getEventCount() + " of 2");
+
+        Trace.clear();
+        Trace.setEnabledCategories(Trace.CATEGORY_ALL);
+        run(Trace.DEFAULT_CAPACITY / threads / 2, threads);
+        File file = File.createTempFile("trace", ".bin");
+        long begin = System.nanoTime();
+        int dumped = Trace.dump(file, 0);
+        long dumpNanos = System.nanoTime() - begin;
+        TraceDecoder decoder = TraceDecoder.read(file);
+        System.out.println(String.format("dump %d events to %d bytes (%.1f bytes/event) in %.1f ms, decoded %d, ordered %b",
+                dumped, file.length(), file.length() / (double) Math.max(1, dumped), dumpNanos / 1e6,
+                decoder.getEvents().size(), checkOrdered(decoder.getEvents())));
+        System.out.print(decoder.summary());
+        file.delete();
+    }
+
+    /**
+     * 每个线程交替记录BEGIN和END 参数a是线程内的序号
+     *
+     * @return 每个事件的平均耗时
+     */
+    private static double run(final int events, int threads) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < events; i += 2) {
+                        Trace.event(Trace.PROCESS_BEGIN, i, 0);
+                        Trace.event(Trace.PROCESS_END, i + 1, 0);
+                    }
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (System.nanoTime() - begin) / (double) events / threads;
+    }
+
+    /**
+     * 同一线程的事件序号连续递增
+     */
+    private static boolean checkOrdered(List<TraceEvent> events) {
+        Map<Long, Long> last = new HashMap<>();
+        for (TraceEvent event : events) {
+            Long previous = last.put(event.getThreadId(), event.getA());
+            if (previous != null && event.getA() != previous + 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
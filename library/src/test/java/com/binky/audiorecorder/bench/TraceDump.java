@@ -0,0 +1,35 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.binky.audiorecorder.trace.Trace;
+import com.binky.audiorecorder.trace.TraceDecoder;
+import com.binky.audiorecorder.trace.TraceEvent;
+
+/**
+ * 在电脑上查看{@link Trace#dump(File, long)}写出的文件 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.TraceDump trace文件 [-summary]
+ * <p>
+ * 默认按时间顺序输出每个事件 -summary只输出每种BEGIN/END配对的次数和耗时分布
+ */
+
+public class TraceDump {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: TraceDump <trace file> [-summary]");
+            return;
+        }
+        TraceDecoder decoder = TraceDecoder.read(new File(args[0]));
+        if (args.length < 2 || !"-summary".equals(args[1])) {
+            for (TraceEvent event : decoder.getEvents()) {
+                System.out.println(String.format("%12.3fms  thread %-4d %-20s a=%d b=%d",
+                        (event.getTimeNanos() - decoder.getBaseNanos()) / 1e6, event.getThreadId(),
+                        Trace.typeName(event.getType()), event.getA(), event.getB()));
+            }
+        }
+        System.out.print(decoder.summary());
+    }
+}
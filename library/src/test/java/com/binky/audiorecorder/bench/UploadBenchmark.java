@@ -0,0 +1,276 @@
+package com.binky.audiorecorder.bench;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.binky.audiorecorder.upload.HttpUploadTransport;
+import com.binky.audiorecorder.upload.UploadListener;
+import com.binky.audiorecorder.upload.UploadManager;
+import com.binky.audiorecorder.upload.UploadTask;
+import com.binky.audiorecorder.upload.UploadTransport;
+
+/**
+ * {@link UploadManager}对本机HTTP服务端的断点续传测试 不依赖Android环境
+ * <p>
+ * 用法: java -cp classes:test-classes com.binky.audiorecorder.bench.UploadBenchmark [文件MB数] [并发数]
+ * <p>
+ * 服务端随机让一部分请求返回500来触发重试 第一轮上传到一半时模拟进程被杀
+ * 第二轮用新的UploadManager从进度日志恢复 最后比较服务端收到的文件和原文件是否一致
+ */
+
+public class UploadBenchmark {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        System.out.println(run(megabytes, concurrency));
+    }
+
+    public static String run(int megabytes, int concurrency) throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "upload-bench-" + System.nanoTime());
+        File journalDir = new File(dir, "journal");
+        File source = new File(dir, "record.wav");
+        dir.mkdirs();
+        byte[] data = new byte[megabytes * 1024 * 1024];
+        new Random(7).nextBytes(data);
+        RandomAccessFile out = new RandomAccessFile(source, "rw");
+        out.write(data);
+        out.close();
+
+        StandInServer server = new StandInServer(new File(dir, "server"), 0.1);
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.port() + "/upload";
+        int totalChunks = (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        // 第一轮 上传一半分块后传输层永久失败 相当于进程被杀
+        final HttpUploadTransport http = new HttpUploadTransport(baseUrl);
+        final AtomicInteger budget = new AtomicInteger(totalChunks / 2);
+        UploadTransport dying = new UploadTransport() {
+            @Override
+            public void upload(UploadTask task, long offset, ByteBuffer chunk) throws IOException {
+                if (budget.decrementAndGet() < 0) {
+                    throw new IOException("process killed");
+                }
+                http.upload(task, offset, chunk);
+            }
+
+            @Override
+            public void finish(UploadTask task) throws IOException {
+                throw new IOException("process killed");
+            }
+        };
+        final CountDownLatch firstDone = new CountDownLatch(1);
+        UploadManager first = new UploadManager(journalDir, dying, CHUNK_SIZE, concurrency)
+                .setRetryPolicy(5, 10)
+                .setListener(new UploadListener() {
+                    @Override
+                    public void onFailed(UploadTask task, Exception error) {
+                        firstDone.countDown();
+                    }
+                });
+        first.enqueue(source.getPath());
+        firstDone.await(60, TimeUnit.SECONDS);
+        first.shutdown();
+        first.awaitTermination(60, TimeUnit.SECONDS);
+        long firstBytes = first.getStats().getBytesUploaded();
+
+        // 第二轮 新进程从日志恢复
+        final CountDownLatch secondDone = new CountDownLatch(1);
+        UploadManager second = new UploadManager(journalDir, http, CHUNK_SIZE, concurrency)
+                .setRetryPolicy(5, 10)
+                .setListener(new UploadListener() {
+                    @Override
+                    public void onComplete(UploadTask task) {
+                        secondDone.countDown();
+                    }
+
+                    @Override
+                    public void onFailed(UploadTask task, Exception error) {
+                        secondDone.countDown();
+                    }
+                });
+        long begin = System.nanoTime();
+        List<UploadTask> resumed = second.resume();
+        secondDone.await(120, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - begin;
+        second.shutdown();
+        server.stop();
+
+        byte[] received = server.completed == null ? new byte[0] : readAll(server.completed);
+        boolean identical = Arrays.equals(data, received);
+        return String.format("Upload %d MB, %d chunks of %d KB, %d threads%n"
+                        + "first run: %d bytes before kill%n"
+                        + "resume: %d task(s), %s%n"
+                        + "resume elapsed %.1f ms, %.1f MB/s, server 500s %d, identical=%b",
+                megabytes, totalChunks, CHUNK_SIZE / 1024, concurrency, firstBytes,
+                resumed.size(), second.getStats(), elapsed / 1e6,
+                second.getStats().getBytesUploaded() / (elapsed / 1e9) / 1024 / 1024,
+                server.failures.get(), identical);
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * 只支持这个测试需要的最小HTTP/1.1服务端 按Content-Range写入文件 以一定概率返回500
+     */
+    private static class StandInServer implements Runnable {
+        private final File mDir;
+        private final double mFailureRate;
+        private final Random mRandom = new Random(11);
+        private ServerSocket mServer;
+        final AtomicInteger failures = new AtomicInteger();
+        volatile File completed;
+
+        StandInServer(File dir, double failureRate) {
+            this.mDir = dir;
+            this.mFailureRate = failureRate;
+        }
+
+        void start() throws IOException {
+            mDir.mkdirs();
+            mServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(this, "UploadBenchmark-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int port() {
+            return mServer.getLocalPort();
+        }
+
+        void stop() throws IOException {
+            mServer.close();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = mServer.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } catch (IOException e) {
+                            // 客户端断开
+                        }
+                    }
+                });
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+
+        private void serve(Socket socket) throws IOException {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            try {
+                while (true) {
+                    String requestLine = readLine(in);
+                    if (requestLine == null || requestLine.length() == 0) {
+                        return;
+                    }
+                    String[] parts = requestLine.split(" ");
+                    long length = 0;
+                    long start = 0;
+                    String line;
+                    while ((line = readLine(in)) != null && line.length() > 0) {
+                        int colon = line.indexOf(':');
+                        String name = line.substring(0, colon).trim().toLowerCase();
+                        String value = line.substring(colon + 1).trim();
+                        if (name.equals("content-length")) {
+                            length = Long.parseLong(value);
+                        } else if (name.equals("content-range")) {
+                            start = Long.parseLong(value.substring(6, value.indexOf('-')));
+                        }
+                    }
+                    byte[] body = new byte[(int) length];
+                    int read = 0;
+                    while (read < body.length) {
+                        int n = in.read(body, read, body.length - read);
+                        if (n < 0) {
+                            return;
+                        }
+                        read += n;
+                    }
+                    String path = parts[1];
+                    boolean complete = path.endsWith("?complete=1");
+                    String id = path.split("/")[2];
+                    File file = new File(mDir, id);
+                    boolean fail;
+                    synchronized (mRandom) {
+                        fail = !complete && mRandom.nextDouble() < mFailureRate;
+                    }
+                    if (fail) {
+                        failures.incrementAndGet();
+                    } else if (complete) {
+                        completed = file;
+                    } else {
+                        synchronized (this) {
+                            RandomAccessFile target = new RandomAccessFile(file, "rw");
+                            target.seek(start);
+                            target.write(body);
+                            target.close();
+                        }
+                    }
+                    String status = fail ? "500 Internal Server Error" : "200 OK";
+                    out.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\n\r\n").getBytes("US-ASCII"));
+                    out.flush();
+                }
+            } finally {
+                socket.close();
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    return new String(line.toByteArray(), "US-ASCII").trim();
+                }
+                line.write(c);
+            }
+            return line.size() == 0 ? null : new String(line.toByteArray(), "US-ASCII").trim();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.binky.audiorecorder.codec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.FileSink;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WAV转FLAC后解码 采样点逐个相同 多线程编码和单线程逐字节一致
+ */
+
+public class FlacTranscoderTest {
+
+    private static final int SAMPLE_RATE = 48000;
+
+    private File mDir;
+
+    @Before
+    public void setUp() {
+        mDir = new File(System.getProperty("java.io.tmpdir"), "flac-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void roundTripIsLossless() throws Exception {
+        // 最后一帧不满一个块 seek点间隔1秒
+        int frames = SAMPLE_RATE * 3 + 1234;
+        File wav = new File(mDir, "input.wav");
+        short[] pcm = generate(wav, frames);
+
+        File single = new File(mDir, "single.flac");
+        FlacTranscoder.Result result = new FlacTranscoder(1).setSeekInterval(1).transcode(wav, single);
+        assertEquals(frames, result.totalSamples);
+        File parallel = new File(mDir, "parallel.flac");
+        new FlacTranscoder(3).setSeekInterval(1).transcode(wav, parallel);
+        byte[] flac = readAll(single);
+        assertArrayEquals(flac, readAll(parallel));
+        assertTrue(flac.length < pcm.length * 2);
+
+        assertEquals('f', flac[0]);
+        assertEquals('L', flac[1]);
+        assertEquals('a', flac[2]);
+        assertEquals('C', flac[3]);
+        int position = 4;
+        byte[] md5 = null;
+        long[][] seekPoints = new long[0][];
+        boolean last = false;
+        while (!last) {
+            last = (flac[position] & 0x80) != 0;
+            int type = flac[position] & 0x7F;
+            int length = (flac[position + 1] & 0xFF) << 16 | (flac[position + 2] & 0xFF) << 8 | (flac[position + 3] & 0xFF);
+            position += 4;
+            if (type == 0) {
+                md5 = Arrays.copyOfRange(flac, position + 18, position + 34);
+            } else if (type == 3) {
+                seekPoints = new long[length / 18][];
+                for (int i = 0; i < seekPoints.length; i++) {
+                    seekPoints[i] = new long[]{readLong(flac, position + i * 18), readLong(flac, position + i * 18 + 8)};
+                }
+            }
+            position += length;
+        }
+
+        int firstFrame = position;
+        FlacDecoder decoder = new FlacDecoder();
+        short[] decoded = new short[pcm.length];
+        int samples = 0;
+        while (position < flac.length) {
+            position += decoder.decodeFrame(flac, position, flac.length - position);
+            samples += decoder.copyInterleaved(decoded, samples);
+        }
+        assertEquals(pcm.length, samples);
+        assertArrayEquals(pcm, decoded);
+
+        byte[] bytes = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            bytes[2 * i] = (byte) pcm[i];
+            bytes[2 * i + 1] = (byte) (pcm[i] >> 8);
+        }
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(bytes), md5);
+
+        // 最后一个间隔内没有帧的起点 按规范写占位点
+        assertEquals(4, seekPoints.length);
+        assertEquals(-1L, seekPoints[3][0]);
+        for (int i = 0; i < 3; i++) {
+            long[] point = seekPoints[i];
+            assertTrue(point[0] >= i * SAMPLE_RATE && point[0] < i * SAMPLE_RATE + FlacTranscoder.DEFAULT_BLOCK_SIZE);
+            decoder.decodeFrame(flac, firstFrame + (int) point[1], flac.length - firstFrame - (int) point[1]);
+            assertEquals(point[0], decoder.getFrameNumber() * FlacTranscoder.DEFAULT_BLOCK_SIZE);
+        }
+    }
+
+    private static short[] generate(File wav, int frames) throws IOException {
+        Random random = new Random(38);
+        short[] pcm = new short[frames * 2];
+        for (int i = 0, n = 0; i < pcm.length; i += 2, n++) {
+            double t = n / (double) SAMPLE_RATE;
+            double music = 6000 * Math.sin(2 * Math.PI * 220 * t) + 3000 * Math.sin(2 * Math.PI * 331 * t + Math.sin(t));
+            pcm[i] = (short) (music + random.nextGaussian() * 200);
+            // 右声道有一段满幅削波 检查边界值
+            pcm[i + 1] = n > SAMPLE_RATE && n < SAMPLE_RATE + 500 ? (n % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE)
+                    : (short) (music * 0.8 + random.nextGaussian() * 200);
+        }
+        FileSink sink = new FileSink(wav.getPath(), true);
+        sink.open(SAMPLE_RATE, 2);
+        AudioFrame frame = new AudioFrame(SAMPLE_RATE / 10 * 2);
+        for (int offset = 0; offset < pcm.length; offset += frame.data.length) {
+            frame.set(pcm, offset, Math.min(frame.data.length, pcm.length - offset), 0, 0);
+            sink.write(frame);
+        }
+        sink.close();
+        return pcm;
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) input.length()];
+            input.readFully(data);
+            return data;
+        } finally {
+            input.close();
+        }
+    }
+}
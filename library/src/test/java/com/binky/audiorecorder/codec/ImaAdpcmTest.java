@@ -0,0 +1,89 @@
+package com.binky.audiorecorder.codec;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ADPCM编码后再解码 误差在4比特量化能达到的范围内
+ */
+
+public class ImaAdpcmTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 2;
+    /**
+     * 每块20ms 与录音时每帧的长度一致
+     */
+    private static final int BLOCK = 320;
+
+    @Test
+    public void roundTripErrorIsBounded() {
+        int blocks = 100;
+        short[] pcm = new short[blocks * BLOCK * CHANNELS];
+        Random random = new Random(31);
+        for (int i = 0; i < blocks * BLOCK; i++) {
+            // 幅度缓慢变化的两个音 加上少量噪声 类似语音
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 3 * i / SAMPLE_RATE);
+            double left = 12000 * envelope * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE);
+            double right = 6000 * envelope * Math.sin(2 * Math.PI * 1250 * i / SAMPLE_RATE);
+            pcm[i * CHANNELS] = (short) Math.round(left + random.nextGaussian() * 100);
+            pcm[i * CHANNELS + 1] = (short) Math.round(right + random.nextGaussian() * 100);
+        }
+
+        ImaAdpcm encoder = new ImaAdpcm(CHANNELS);
+        int blockBytes = ImaAdpcm.encodedSize(CHANNELS, BLOCK);
+        byte[] encoded = new byte[blocks * blockBytes];
+        short[] decoded = new short[pcm.length];
+        for (int b = 0; b < blocks; b++) {
+            int written = encoder.encode(pcm, b * BLOCK * CHANNELS, BLOCK, encoded, b * blockBytes);
+            assertEquals(blockBytes, written);
+            int read = ImaAdpcm.decode(encoded, b * blockBytes, BLOCK, CHANNELS, decoded, b * BLOCK * CHANNELS);
+            assertEquals(blockBytes, read);
+            // 每块的第一个采样原样保存
+            assertEquals(pcm[b * BLOCK * CHANNELS], decoded[b * BLOCK * CHANNELS]);
+            assertEquals(pcm[b * BLOCK * CHANNELS + 1], decoded[b * BLOCK * CHANNELS + 1]);
+        }
+        // 压缩比约为4:1
+        assertTrue(encoded.length * 3.8 < pcm.length * 2);
+
+        for (int c = 0; c < CHANNELS; c++) {
+            double signal = 0;
+            double error = 0;
+            int maxError = 0;
+            for (int i = c; i < pcm.length; i += CHANNELS) {
+                int e = decoded[i] - pcm[i];
+                signal += (double) pcm[i] * pcm[i];
+                error += (double) e * e;
+                maxError = Math.max(maxError, Math.abs(e));
+            }
+            double snr = 10 * Math.log10(signal / error);
+            assertTrue("channel " + c + " snr " + snr, snr > 20);
+            // 单个采样的误差不超过相邻采样的最大变化量 右声道约3000
+            assertTrue("channel " + c + " max error " + maxError, maxError < 4000);
+        }
+    }
+
+    @Test
+    public void oddBlockLengthAndFullScale() {
+        int samples = 161;
+        short[] pcm = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            pcm[i] = (i / 20 & 1) == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        ImaAdpcm encoder = new ImaAdpcm(1);
+        byte[] encoded = new byte[ImaAdpcm.encodedSize(1, samples)];
+        assertEquals(encoded.length, encoder.encode(pcm, 0, samples, encoded, 0));
+        short[] decoded = new short[samples];
+        assertEquals(encoded.length, ImaAdpcm.decode(encoded, 0, samples, 1, decoded, 0));
+        // 方波的跳变需要几个采样追上 平台部分要收敛回原值附近
+        for (int i = 0; i < samples; i++) {
+            if (i % 20 >= 15) {
+                assertTrue("sample " + i + " " + decoded[i], Math.abs(decoded[i] - pcm[i]) < 4000);
+            }
+        }
+    }
+}
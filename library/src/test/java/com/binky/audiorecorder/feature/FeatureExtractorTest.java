@@ -0,0 +1,152 @@
+package com.binky.audiorecorder.feature;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 特征帧数、能量最大的梅尔频带、分段处理的一致性以及MFCC和log-mel的关系
+ */
+
+public class FeatureExtractorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void toneLandsInItsMelBand() {
+        short[] tone = tone(SAMPLE_RATE, 1000, 8000);
+        List<float[]> features = extract(new FeatureExtractor.Config(), tone, 1, tone.length);
+        // 25ms窗 10ms帧移
+        assertEquals((SAMPLE_RATE - 400) / 160 + 1, features.size());
+
+        double minMel = MelFilterBank.hzToMel(20);
+        double maxMel = MelFilterBank.hzToMel(SAMPLE_RATE / 2);
+        double step = (maxMel - minMel) / (40 + 1);
+        for (float[] frame : features) {
+            int best = 0;
+            for (int b = 1; b < frame.length; b++) {
+                if (frame[b] > frame[best]) {
+                    best = b;
+                }
+            }
+            double centerMel = minMel + (best + 1) * step;
+            assertEquals(MelFilterBank.hzToMel(1000), centerMel, step);
+        }
+    }
+
+    @Test
+    public void silenceGivesLogFloor() {
+        List<float[]> features = extract(new FeatureExtractor.Config(), new short[SAMPLE_RATE / 10], 1, 160);
+        assertEquals(8, features.size());
+        float floor = (float) Math.log(FeatureExtractor.LOG_FLOOR);
+        for (float[] frame : features) {
+            for (float value : frame) {
+                assertEquals(floor, value, 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void chunkingDoesNotChangeFeatures() {
+        short[] noise = noise(SAMPLE_RATE);
+        FeatureExtractor.Config config = new FeatureExtractor.Config().setPreemphasis(0.97f).setMfccCount(13);
+        List<float[]> whole = extract(config, noise, 1, noise.length);
+        // 和录音帧长度无关 跨越帧边界时接着上一次的数据计算
+        List<float[]> chunked = extract(config, noise, 1, 137);
+        assertEquals(whole.size(), chunked.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertArrayEquals(whole.get(i), chunked.get(i), 1e-4f);
+        }
+
+        // 两个声道相同的立体声和单声道一样
+        short[] stereo = new short[noise.length * 2];
+        for (int i = 0; i < noise.length; i++) {
+            stereo[2 * i] = noise[i];
+            stereo[2 * i + 1] = noise[i];
+        }
+        List<float[]> fromStereo = extract(config, stereo, 2, 320);
+        assertEquals(whole.size(), fromStereo.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertArrayEquals(whole.get(i), fromStereo.get(i), 1e-4f);
+        }
+    }
+
+    @Test
+    public void firstMfccIsScaledLogMelSum() {
+        short[] noise = noise(SAMPLE_RATE / 4);
+        List<float[]> mel = extract(new FeatureExtractor.Config(), noise, 1, 320);
+        List<float[]> mfcc = extract(new FeatureExtractor.Config().setMfccCount(13), noise, 1, 320);
+        assertEquals(mel.size(), mfcc.size());
+        for (int i = 0; i < mel.size(); i++) {
+            assertEquals(13, mfcc.get(i).length);
+            double sum = 0;
+            for (float value : mel.get(i)) {
+                sum += value;
+            }
+            // 正交归一化DCT-II的c0
+            assertEquals(sum / Math.sqrt(40), mfcc.get(i)[0], 1e-2);
+        }
+    }
+
+    @Test
+    public void copyRecentReturnsNewestLast() {
+        FeatureExtractor extractor = new FeatureExtractor(new FeatureExtractor.Config().setRingSize(4));
+        final List<float[]> all = new ArrayList<>();
+        extractor.setListener(new FeatureListener() {
+            @Override
+            public void onFeature(float[][] ring, int position, long frameIndex) {
+                assertEquals(all.size(), frameIndex);
+                all.add(ring[position].clone());
+            }
+        });
+        extractor.prepare(SAMPLE_RATE, 1);
+        short[] noise = noise(SAMPLE_RATE / 10);
+        extractor.process(noise, 0, noise.length);
+        assertEquals(all.size(), extractor.getFrameCount());
+        float[][] recent = new float[6][extractor.getFeatureSize()];
+        assertEquals(4, extractor.copyRecent(recent));
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(all.get(all.size() - 4 + i), recent[i], 0f);
+        }
+        assertTrue(all.size() > 4);
+    }
+
+    private static List<float[]> extract(FeatureExtractor.Config config, short[] data, int channels, int chunk) {
+        final List<float[]> features = new ArrayList<>();
+        FeatureExtractor extractor = new FeatureExtractor(config).setListener(new FeatureListener() {
+            @Override
+            public void onFeature(float[][] ring, int position, long frameIndex) {
+                features.add(ring[position].clone());
+            }
+        });
+        extractor.prepare(SAMPLE_RATE, channels);
+        chunk -= chunk % channels;
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            extractor.process(data, offset, Math.min(chunk, data.length - offset));
+        }
+        return features;
+    }
+
+    private static short[] tone(int length, double hz, double amplitude) {
+        short[] data = new short[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / SAMPLE_RATE));
+        }
+        return data;
+    }
+
+    private static short[] noise(int length) {
+        Random random = new Random(44);
+        short[] data = new short[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (short) (random.nextGaussian() * 3000);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,119 @@
+package com.binky.audiorecorder.feature;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 带谐波的周期信号检测出基频 直接计算和FFT计算结果一致 静音和噪声不报基频
+ */
+
+public class PitchDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void detectsFundamentalOfHarmonicTone() {
+        for (float hz : new float[]{82.4f, 137.5f, 220f, 440f, 870f}) {
+            for (PitchDetector.Method method : new PitchDetector.Method[]{PitchDetector.Method.DIRECT, PitchDetector.Method.FFT}) {
+                List<float[]> pitches = detect(new PitchDetector.Config().setMethod(method), harmonic(SAMPLE_RATE / 2, hz), 320);
+                assertTrue(pitches.size() > 20);
+                for (float[] pitch : pitches) {
+                    assertEquals(method + " " + hz, hz, pitch[0], hz * 0.01f);
+                    assertTrue(method + " " + hz + " confidence " + pitch[1], pitch[1] > 0.85f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void directAndFftAgree() {
+        short[] voice = harmonic(SAMPLE_RATE / 2, 173f);
+        Random random = new Random(45);
+        for (int i = 0; i < voice.length; i++) {
+            voice[i] = (short) (voice[i] + random.nextGaussian() * 300);
+        }
+        List<float[]> direct = detect(new PitchDetector.Config().setMethod(PitchDetector.Method.DIRECT), voice, 160);
+        List<float[]> fft = detect(new PitchDetector.Config().setMethod(PitchDetector.Method.FFT), voice, 160);
+        assertEquals(direct.size(), fft.size());
+        for (int i = 0; i < direct.size(); i++) {
+            assertEquals(direct.get(i)[0], fft.get(i)[0], 0.05f);
+            assertEquals(direct.get(i)[1], fft.get(i)[1], 1e-3f);
+            assertEquals(direct.get(i)[2], fft.get(i)[2], 0f);
+        }
+    }
+
+    @Test
+    public void silenceAndNoiseHaveNoPitch() {
+        List<float[]> silence = detect(new PitchDetector.Config(), new short[SAMPLE_RATE / 4], 320);
+        assertTrue(silence.size() > 0);
+        for (float[] pitch : silence) {
+            assertEquals(0f, pitch[0], 0f);
+        }
+
+        Random random = new Random(46);
+        short[] noise = new short[SAMPLE_RATE / 2];
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (short) (random.nextGaussian() * 4000);
+        }
+        List<float[]> pitches = detect(new PitchDetector.Config(), noise, 320);
+        for (float[] pitch : pitches) {
+            assertTrue("confidence " + pitch[1], pitch[1] < 0.85f);
+        }
+    }
+
+    @Test
+    public void reportsAnalysisPositionPerHop() {
+        PitchDetector detector = new PitchDetector();
+        final List<Long> positions = new ArrayList<>();
+        detector.setListener(new PitchListener() {
+            @Override
+            public void onPitch(float frequency, float confidence, long sampleIndex) {
+                positions.add(sampleIndex);
+            }
+        });
+        detector.prepare(SAMPLE_RATE, 2);
+        short[] stereo = new short[SAMPLE_RATE];
+        detector.process(stereo, 0, stereo.length);
+        int frames = stereo.length / 2;
+        assertEquals((frames - detector.getBufferSize()) / detector.getHopSize() + 1, positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals((long) i * detector.getHopSize(), (long) positions.get(i));
+        }
+    }
+
+    private static List<float[]> detect(PitchDetector.Config config, short[] data, int chunk) {
+        final List<float[]> pitches = new ArrayList<>();
+        PitchDetector detector = new PitchDetector(config).setListener(new PitchListener() {
+            @Override
+            public void onPitch(float frequency, float confidence, long sampleIndex) {
+                pitches.add(new float[]{frequency, confidence, sampleIndex});
+            }
+        });
+        detector.prepare(SAMPLE_RATE, 1);
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            detector.process(data, offset, Math.min(chunk, data.length - offset));
+        }
+        return pitches;
+    }
+
+    /**
+     * 基频加上逐渐减弱的谐波 类似浊音
+     */
+    private static short[] harmonic(int length, double hz) {
+        short[] data = new short[length];
+        for (int i = 0; i < length; i++) {
+            double value = 0;
+            for (int k = 1; k <= 5 && k * hz < SAMPLE_RATE / 2; k++) {
+                value += Math.sin(2 * Math.PI * k * hz * i / SAMPLE_RATE + k) / k;
+            }
+            data[i] = (short) Math.round(5000 * value);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,120 @@
+package com.binky.audiorecorder.feature;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DTMF按键序列和自定义单频信号的检测 开始和结束的位置精确到几毫秒 语音类的信号不误报
+ */
+
+public class ToneDetectorTest {
+
+    private static final float[] ROWS = {697f, 770f, 852f, 941f};
+    private static final float[] COLUMNS = {1209f, 1336f, 1477f, 1633f};
+    private static final String KEYS = "123A456B789C*0#D";
+
+    @Test
+    public void decodesDtmfSequence() {
+        for (int sampleRate : new int[]{8000, 16000}) {
+            String digits = "159#0*D";
+            int on = sampleRate * 50 / 1000;
+            int off = sampleRate * 50 / 1000;
+            Random random = new Random(46);
+            short[] data = new short[off + digits.length() * (on + off)];
+            long[] starts = new long[digits.length()];
+            for (int d = 0; d < digits.length(); d++) {
+                int key = KEYS.indexOf(digits.charAt(d));
+                int start = off + d * (on + off);
+                starts[d] = start;
+                for (int i = 0; i < on; i++) {
+                    double t = (double) i / sampleRate;
+                    data[start + i] = (short) (4000 * Math.sin(2 * Math.PI * ROWS[key / 4] * t)
+                            + 5000 * Math.sin(2 * Math.PI * COLUMNS[key % 4] * t));
+                }
+            }
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (short) (data[i] + random.nextGaussian() * 100);
+            }
+
+            List<Object[]> events = detect(new ToneDetector(), sampleRate, data);
+            assertEquals(sampleRate + "Hz " + events.size() + " events", digits.length(), events.size());
+            int tolerance = sampleRate * 3 / 1000;
+            for (int d = 0; d < digits.length(); d++) {
+                Object[] event = events.get(d);
+                assertEquals(String.valueOf(digits.charAt(d)), event[0]);
+                assertEquals(starts[d], (long) (Long) event[1], tolerance);
+                assertEquals(starts[d] + on, (long) (Long) event[2], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void detectsCustomTone() {
+        int sampleRate = 16000;
+        short[] data = new short[sampleRate];
+        int start = 3000;
+        int end = 3000 + sampleRate / 5;
+        for (int i = start; i < end; i++) {
+            data[i] = (short) (3000 * Math.sin(2 * Math.PI * 1000 * i / sampleRate));
+        }
+        ToneDetector detector = new ToneDetector().addTone("beep", 1000f);
+        List<Object[]> events = detect(detector, sampleRate, data);
+        assertEquals(1, events.size());
+        assertEquals("beep", events.get(0)[0]);
+        assertEquals(start, (long) (Long) events.get(0)[1], 48);
+        assertEquals(end, (long) (Long) events.get(0)[2], 48);
+    }
+
+    @Test
+    public void voiceIsNotATone() {
+        int sampleRate = 8000;
+        Random random = new Random(47);
+        short[] data = new short[sampleRate * 2];
+        // 基频缓慢变化的多谐波信号加噪声 能量分散在很多频率上
+        double phase = 0;
+        for (int i = 0; i < data.length; i++) {
+            double f0 = 140 + 40 * Math.sin(2 * Math.PI * 3 * i / sampleRate);
+            phase += 2 * Math.PI * f0 / sampleRate;
+            double value = 0;
+            for (int k = 1; k * f0 < sampleRate / 2; k++) {
+                value += Math.sin(k * phase) / k;
+            }
+            data[i] = (short) (4000 * value + random.nextGaussian() * 300);
+        }
+        List<Object[]> events = detect(new ToneDetector(), sampleRate, data);
+        assertTrue(events.size() + " false detections", events.isEmpty());
+    }
+
+    /**
+     * 按20ms一帧处理 返回每个结束事件的名字、开始和结束位置
+     */
+    private static List<Object[]> detect(ToneDetector detector, int sampleRate, short[] data) {
+        final List<Object[]> events = new ArrayList<>();
+        final List<String> active = new ArrayList<>();
+        detector.setListener(new ToneListener() {
+            @Override
+            public void onToneStart(String tone, long startSample) {
+                active.add(tone);
+            }
+
+            @Override
+            public void onToneEnd(String tone, long startSample, long endSample) {
+                assertTrue(active.remove(tone));
+                events.add(new Object[]{tone, startSample, endSample});
+            }
+        });
+        detector.prepare(sampleRate, 1);
+        int chunk = sampleRate / 50;
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            detector.process(data, offset, Math.min(chunk, data.length - offset));
+        }
+        assertTrue(active.isEmpty());
+        return events;
+    }
+}
@@ -0,0 +1,233 @@
+package com.binky.audiorecorder.file;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.binky.audiorecorder.sink.AudioFrame;
+import com.binky.audiorecorder.sink.DtxFileSink;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DtxFileSink写入的文件由DtxReader读回 还原出和输入一样长、一样内容的时间线
+ */
+
+public class DtxReaderTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 2;
+    // 20ms一块 停顿300ms 即15块
+    private static final int BLOCK = 320;
+    private static final int HANGOVER = 15 * BLOCK;
+
+    private File mDir;
+
+    @Before
+    public void setUp() {
+        mDir = new File(System.getProperty("java.io.tmpdir"), "dtx-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void readerRestoresOriginalTimeline() throws Exception {
+        // 静音 有声 静音 有声 静音 最后不满一块
+        int[] lengths = {8000, 6400, 24000, 4800, 11700};
+        int frames = 0;
+        for (int length : lengths) {
+            frames += length;
+        }
+        short[] pcm = generate(lengths, frames);
+        File file = new File(mDir, "dtx.wav");
+        DtxFileSink sink = write(file, pcm);
+
+        // 有声段前面保留一块 后面跟着停顿
+        int firstStart = 8000 - BLOCK;
+        int firstEnd = 8000 + 6400 + HANGOVER;
+        int secondStart = 8000 + 6400 + 24000 - BLOCK;
+        int secondEnd = 8000 + 6400 + 24000 + 4800 + HANGOVER;
+        long stored = (firstEnd - firstStart) + (secondEnd - secondStart);
+        DtxTimeline timeline = sink.getTimeline();
+        assertEquals(frames, timeline.getTimelineFrames());
+        assertEquals(stored, timeline.getStoredFrames());
+        assertEquals(stored * CHANNELS * 2, sink.getDataSize());
+        assertTrue(sink.getDataSize() * 2 < (long) frames * CHANNELS * 2);
+        assertEquals(frames - stored, timeline.getSkippedFrames());
+        assertEquals((double) stored / frames, timeline.getStoredRatio(), 1e-9);
+        assertEquals((long) frames * CHANNELS * 2, sink.getTimelineDataSize());
+        assertEquals((frames - stored) * CHANNELS * 2, sink.getSavedBytes());
+
+        DtxReader reader = new DtxReader(file);
+        try {
+            assertEquals(SAMPLE_RATE, reader.getSampleRate());
+            assertEquals(CHANNELS, reader.getChannelCount());
+            assertEquals(frames, reader.getFrameCount());
+            assertTimelineEquals(timeline, reader.getTimeline());
+            assertTrue(reader.getLoadNanos() > 0);
+            assertTrue(reader.getLookupNanos() >= 0);
+
+            // 输入的静音是全0 读回的内容应和输入完全一样 块大小故意不和段对齐
+            short[] out = readAll(reader, pcm.length, 999);
+            assertArrayEquals(pcm, out);
+
+            assertEquals(firstStart, reader.seekToSpeech(0));
+            assertEquals(secondStart, reader.seekToSpeech(firstEnd));
+            // 已经在有声段中时不移动
+            assertEquals(secondStart + 100, reader.seekToSpeech(secondStart + 100));
+            assertEquals(-1, reader.seekToSpeech(secondEnd));
+
+            // 从静音段中间跳到有声段中间
+            Random random = new Random(7);
+            short[] buffer = new short[4000 * CHANNELS];
+            for (int i = 0; i < 20; i++) {
+                int position = random.nextInt(frames);
+                reader.seek(position);
+                assertEquals(position, reader.getPosition());
+                int count = Math.min(buffer.length, (frames - position) * CHANNELS);
+                assertEquals(count, reader.read(buffer, 0, buffer.length));
+                assertArrayEquals(Arrays.copyOfRange(pcm, position * CHANNELS, position * CHANNELS + count),
+                        Arrays.copyOf(buffer, count));
+            }
+            reader.seek(frames);
+            assertEquals(-1, reader.read(buffer, 0, buffer.length));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void silenceBelowThresholdReadsAsZeros() throws Exception {
+        int[] lengths = {16000, 8000, 16000};
+        int frames = 40000;
+        short[] pcm = generate(lengths, frames);
+        // 静音段加上低于门限的底噪 读回时底噪变成0 有声段不变
+        Random random = new Random(3);
+        for (int i = 0; i < 16000 * CHANNELS; i++) {
+            pcm[i] = (short) (random.nextInt(11) - 5);
+            pcm[pcm.length - 1 - i] = (short) (random.nextInt(11) - 5);
+        }
+        File file = new File(mDir, "noise.wav");
+        write(file, pcm);
+
+        DtxReader reader = new DtxReader(file);
+        try {
+            short[] out = readAll(reader, pcm.length, 1280);
+            DtxTimeline timeline = reader.getTimeline();
+            for (int i = 0; i < frames; i++) {
+                int run = timeline.findRun(i);
+                for (int c = 0; c < CHANNELS; c++) {
+                    int index = i * CHANNELS + c;
+                    assertEquals(timeline.isSilent(run) ? 0 : pcm[index], out[index]);
+                }
+            }
+            for (int i = 16000; i < 24000; i++) {
+                assertTrue(!timeline.isSilent(timeline.findRun(i)));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void plainWavIsOneSpeechRun() throws Exception {
+        int[] lengths = {0, 3000};
+        short[] pcm = generate(lengths, 3000);
+        File file = new File(mDir, "plain.wav");
+        // 门限设得很低 没有静音块 文件里只有一个有声段
+        DtxFileSink sink = new DtxFileSink(file.getPath()).setThresholdDb(-200f);
+        write(sink, pcm);
+        assertEquals(1, sink.getTimeline().getRunCount());
+        assertEquals(1.0, sink.getTimeline().getStoredRatio(), 0);
+        assertEquals(0, sink.getSavedBytes());
+
+        DtxReader reader = new DtxReader(file);
+        try {
+            assertEquals(3000, reader.getFrameCount());
+            assertEquals(0, reader.seekToSpeech(0));
+            assertArrayEquals(pcm, readAll(reader, pcm.length, 512));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static DtxFileSink write(File file, short[] pcm) throws Exception {
+        DtxFileSink sink = new DtxFileSink(file.getPath());
+        write(sink, pcm);
+        return sink;
+    }
+
+    private static void write(DtxFileSink sink, short[] pcm) throws Exception {
+        sink.open(SAMPLE_RATE, CHANNELS);
+        // 10ms一帧 和20ms的块不对齐时也要能拼起来
+        AudioFrame frame = new AudioFrame(160 * CHANNELS);
+        long sequence = 0;
+        for (int offset = 0; offset < pcm.length; offset += frame.data.length) {
+            int count = Math.min(frame.data.length, pcm.length - offset);
+            frame.set(pcm, offset, count, sequence++, 0);
+            sink.write(frame);
+        }
+        sink.close();
+    }
+
+    private static short[] readAll(DtxReader reader, int samples, int chunk) throws Exception {
+        short[] out = new short[samples];
+        short[] buffer = new short[chunk];
+        int total = 0;
+        int read;
+        reader.seek(0);
+        while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+            System.arraycopy(buffer, 0, out, total, read);
+            total += read;
+        }
+        assertEquals(samples, total);
+        return out;
+    }
+
+    /**
+     * 偶数下标的段是全0的静音 奇数下标的段是加了噪声的正弦波 两个声道频率不同
+     */
+    private static short[] generate(int[] lengths, int frames) {
+        short[] pcm = new short[frames * CHANNELS];
+        Random random = new Random(42);
+        int position = 0;
+        for (int s = 0; s < lengths.length; s++) {
+            for (int i = 0; i < lengths[s]; i++, position++) {
+                if (s % 2 == 0) {
+                    continue;
+                }
+                double t = (double) position / SAMPLE_RATE;
+                pcm[position * CHANNELS] = (short) (8000 * Math.sin(2 * Math.PI * 440 * t) + random.nextGaussian() * 300);
+                pcm[position * CHANNELS + 1] = (short) (6000 * Math.sin(2 * Math.PI * 660 * t) + random.nextGaussian() * 300);
+            }
+        }
+        return pcm;
+    }
+
+    private static void assertTimelineEquals(DtxTimeline expected, DtxTimeline actual) {
+        assertEquals(expected.getRunCount(), actual.getRunCount());
+        for (int i = 0; i < expected.getRunCount(); i++) {
+            assertEquals(expected.isSilent(i), actual.isSilent(i));
+            assertEquals(expected.getRunStart(i), actual.getRunStart(i));
+            assertEquals(expected.getRunLength(i), actual.getRunLength(i));
+            assertEquals(expected.getStoredStart(i), actual.getStoredStart(i));
+        }
+        assertEquals(expected.getStoredFrames(), actual.getStoredFrames());
+    }
+}
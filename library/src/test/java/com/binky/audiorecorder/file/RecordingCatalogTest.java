@@ -0,0 +1,216 @@
+package com.binky.audiorecorder.file;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 日志末尾写了一半时之前的记录还在 之后可以继续追加 不认识的文件不会被截断
+ */
+
+public class RecordingCatalogTest {
+
+    private File mDir;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        Log.DEBUG = false;
+        mDir = new File(System.getProperty("java.io.tmpdir"), "catalog-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+        mFile = new File(mDir, "catalog.bin");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(mFile);
+        for (int i = 0; i < 10; i++) {
+            catalog.put(entry(i));
+        }
+        catalog.put(entry(3, 99000));
+        assertTrue(catalog.remove(path(5)));
+        assertFalse(catalog.remove(path(5)));
+        catalog.close();
+
+        RecordingCatalog reopened = new RecordingCatalog(mFile);
+        assertEquals(9, reopened.size());
+        assertNull(reopened.get(path(5)));
+        assertEquals(99000, reopened.get(path(3)).getFrameCount());
+        assertEquals(Arrays.asList(path(0), path(1), path(2), path(3), path(4), path(6), path(7), path(8), path(9)),
+                paths(reopened.getEntries()));
+        assertEquals(Arrays.asList(path(2), path(3), path(4)), paths(reopened.findByDate(2000, 4000)));
+        reopened.close();
+    }
+
+    @Test
+    public void tornTailIsDropped() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(mFile);
+        for (int i = 0; i < 5; i++) {
+            catalog.put(entry(i));
+        }
+        catalog.close();
+        long complete = mFile.length();
+        catalog = new RecordingCatalog(mFile);
+        catalog.put(entry(5));
+        catalog.close();
+        // 最后一条记录只写了一半
+        truncate(mFile, complete + (mFile.length() - complete) / 2);
+
+        RecordingCatalog torn = new RecordingCatalog(mFile);
+        assertEquals(5, torn.size());
+        assertNull(torn.get(path(5)));
+        // 追加前截掉写了一半的记录 新记录接在完整的部分后面
+        torn.put(entry(6));
+        torn.close();
+
+        RecordingCatalog reopened = new RecordingCatalog(mFile);
+        assertEquals(Arrays.asList(path(0), path(1), path(2), path(3), path(4), path(6)),
+                paths(reopened.getEntries()));
+        reopened.close();
+    }
+
+    @Test
+    public void corruptRecordStopsLoading() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(mFile);
+        for (int i = 0; i < 4; i++) {
+            catalog.put(entry(i));
+        }
+        catalog.close();
+        // 改坏最后一条记录的校验 只保留之前的记录
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        RecordingCatalog reopened = new RecordingCatalog(mFile);
+        assertEquals(Arrays.asList(path(0), path(1), path(2)), paths(reopened.getEntries()));
+        reopened.close();
+    }
+
+    @Test
+    public void unknownFileIsKept() throws Exception {
+        byte[] foreign = "not a catalog written by this version".getBytes("UTF-8");
+        write(mFile, foreign);
+
+        RecordingCatalog catalog = new RecordingCatalog(mFile);
+        assertEquals(0, catalog.size());
+        // 只读取不会动原来的文件
+        assertArrayEquals(foreign, read(mFile));
+        catalog.put(entry(1));
+        catalog.close();
+
+        File backup = new File(mFile.getPath() + ".bak");
+        assertArrayEquals(foreign, read(backup));
+        RecordingCatalog reopened = new RecordingCatalog(mFile);
+        assertEquals(Collections.singletonList(path(1)), paths(reopened.getEntries()));
+        reopened.close();
+
+        // 已经有备份时不覆盖
+        write(mFile, foreign);
+        RecordingCatalog again = new RecordingCatalog(mFile);
+        again.compact();
+        again.close();
+        assertArrayEquals(foreign, read(backup));
+        assertArrayEquals(foreign, read(new File(mFile.getPath() + ".bak1")));
+        assertEquals(0, new RecordingCatalog(mFile).size());
+    }
+
+    @Test
+    public void deadRecordsAreCompacted() throws Exception {
+        RecordingCatalog catalog = new RecordingCatalog(mFile);
+        catalog.put(entry(0));
+        for (int i = 0; i < 100; i++) {
+            catalog.put(entry(1, i));
+        }
+        assertTrue(catalog.getDeadRecords() < 50);
+        catalog.close();
+
+        RecordingCatalog reopened = new RecordingCatalog(mFile);
+        assertEquals(2, reopened.size());
+        assertEquals(99, reopened.get(path(1)).getFrameCount());
+        assertNotNull(reopened.get(path(0)));
+        reopened.close();
+    }
+
+    private static RecordingEntry entry(int index) {
+        return entry(index, 16000L * (index + 1));
+    }
+
+    private static RecordingEntry entry(int index, long frameCount) {
+        return new RecordingEntry(path(index), index * 1000L, true, frameCount, 16000, 1, 16,
+                frameCount * 2 + 44, -3f, -20f - index, null);
+    }
+
+    private static String path(int index) {
+        return "/sdcard/record/" + index + ".wav";
+    }
+
+    private static List<String> paths(List<RecordingEntry> entries) {
+        String[] paths = new String[entries.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = entries.get(i).getPath();
+        }
+        return Arrays.asList(paths);
+    }
+
+    private static void truncate(File file, long length) throws Exception {
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(length);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws Exception {
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(0);
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] read(File file) throws Exception {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return bytes;
+        } finally {
+            input.close();
+        }
+    }
+}
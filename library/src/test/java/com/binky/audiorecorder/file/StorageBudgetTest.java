@@ -0,0 +1,146 @@
+package com.binky.audiorecorder.file;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 超出预算时按最后使用时间删除最旧的录音 正在写入的文件不删除 同时给磁盘留出保留空间
+ */
+
+public class StorageBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private File mDir;
+
+    @Before
+    public void setUp() {
+        Log.DEBUG = false;
+        mDir = new File(System.getProperty("java.io.tmpdir"), "budget-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    @Test
+    public void oldestRecordingsAreEvictedFirst() throws Exception {
+        File a = create("a.wav", 1000, 1);
+        File b = create("b.pcm", 1000, 2);
+        File c = create("sub/c.WAV", 1000, 3);
+        File d = create("d.wav", 1000, 4);
+        // 不是录音的文件不计入也不删除
+        File notes = create("notes.txt", 5000, 0);
+        StorageBudget budget = new StorageBudget(mDir, 3500).setReserveBytes(0);
+        assertEquals(4000, budget.getUsedBytes());
+
+        assertEquals(Arrays.asList(a, b), budget.ensureWritable(1000, null));
+        assertFalse(a.exists());
+        assertFalse(b.exists());
+        assertTrue(c.exists());
+        assertTrue(notes.exists());
+        assertEquals(2000, budget.getUsedBytes());
+        // 已经够用时不再删除
+        assertEquals(Collections.<File>emptyList(), budget.ensureWritable(1500, null));
+        assertTrue(d.exists());
+    }
+
+    @Test
+    public void touchedRecordingIsKeptLonger() throws Exception {
+        File a = create("a.wav", 1000, 1);
+        File b = create("b.wav", 1000, 2);
+        File c = create("c.wav", 1000, 3);
+        StorageBudget.touch(a);
+        StorageBudget budget = new StorageBudget(mDir, 2500).setReserveBytes(0);
+        assertEquals(Arrays.asList(b, c), budget.ensureWritable(1000, null));
+        assertTrue(a.exists());
+    }
+
+    @Test
+    public void keptFileIsNeverDeleted() throws Exception {
+        File current = create("current.wav", 1000, 1);
+        File b = create("b.wav", 1000, 2);
+        File c = create("c.wav", 1000, 3);
+        File d = create("d.wav", 1000, 4);
+        StorageBudget budget = new StorageBudget(mDir, 3500).setReserveBytes(0);
+        // 正在写入的文件最旧 它已经写入的大小不计入
+        assertEquals(Collections.singletonList(b), budget.ensureWritable(1000, current));
+        assertTrue(current.exists());
+
+        // 预算不够时删除其他所有录音 但是不删除正在写入的文件
+        assertEquals(Arrays.asList(c, d), budget.ensureWritable(10000, current));
+        assertTrue(current.exists());
+        assertEquals(1000, budget.getUsedBytes());
+    }
+
+    @Test
+    public void writableBytesFollowBudget() throws Exception {
+        create("a.wav", 1000, 1);
+        File current = create("current.wav", 1000, 2);
+        StorageBudget budget = new StorageBudget(mDir, 3500).setReserveBytes(0);
+        assertEquals(1500, budget.getWritableBytes(null));
+        // 正在写入的文件可以写到预算减去其他录音的大小
+        assertEquals(2500, budget.getWritableBytes(current));
+        create("b.wav", 3000, 3);
+        assertEquals(0, budget.getWritableBytes(null));
+        // getWritableBytes不删除文件
+        assertEquals(5000, budget.getUsedBytes());
+    }
+
+    @Test
+    public void reserveLimitsWritableSpace() throws Exception {
+        File a = create("a.wav", MB, 1);
+        File b = create("b.wav", MB, 2);
+        File c = create("c.wav", MB, 3);
+        // 不限制目录大小 磁盘上只剩1MB可以用
+        StorageBudget budget = new StorageBudget(mDir, 0).setReserveBytes(mDir.getUsableSpace() - MB);
+        assertEquals(MB, budget.getWritableBytes(null), MB / 4);
+        // 需要2.5MB 删除两个最旧的录音后够用
+        assertEquals(Arrays.asList(a, b), budget.ensureWritable(MB * 5 / 2, null));
+        assertTrue(c.exists());
+    }
+
+    /**
+     * @param age 越小越旧 用作修改时间的先后
+     */
+    private File create(String name, long size, int age) throws Exception {
+        File file = new File(mDir, name);
+        File parent = file.getParentFile();
+        if (!parent.exists()) {
+            assertTrue(parent.mkdirs());
+        }
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(size);
+            output.write(new byte[(int) Math.min(size, 4096)]);
+        } finally {
+            output.close();
+        }
+        assertTrue(file.setLastModified(1000000000000L + age * 60000L));
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,106 @@
+package com.binky.audiorecorder.file;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 单声道、立体声写44字节的文件头 多声道写68字节的WAVE_FORMAT_EXTENSIBLE 收尾时都能找到data的大小字段
+ */
+
+public class WavHeaderTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(System.getProperty("java.io.tmpdir"), "wav-header-test-" + System.nanoTime() + ".wav");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void stereoUsesPlainHeader() throws Exception {
+        assertFalse(WavHeader.isExtensible(2, 16));
+        assertEquals(WavHeader.HEADER_SIZE, WavHeader.headerSize(2, 16));
+        ByteBuffer header = write(48000, 2, 0, 1000, 0);
+        assertEquals(16, header.getInt(16));
+        assertEquals(1, header.getShort(20));
+        assertEquals(2, header.getShort(22));
+        assertEquals(48000, header.getInt(24));
+        assertEquals(48000 * 4, header.getInt(28));
+        assertEquals(4, header.getShort(32));
+        assertEquals(16, header.getShort(34));
+        assertEquals(0x61746164, header.getInt(36));
+        assertEquals(1000, header.getInt(40));
+        assertEquals(WavHeader.HEADER_SIZE + 1000 - 8, header.getInt(4));
+    }
+
+    @Test
+    public void multichannelUsesExtensibleHeader() throws Exception {
+        assertTrue(WavHeader.isExtensible(4, 16));
+        assertTrue(WavHeader.isExtensible(1, 24));
+        assertEquals(WavHeader.EXTENSIBLE_HEADER_SIZE, WavHeader.headerSize(4, 16));
+        // data之后还有48字节的其他chunk 收尾时RIFF大小要包括它们
+        ByteBuffer header = write(16000, 4, 0x107, 800, 48);
+        assertEquals(0x46464952, header.getInt(0));
+        assertEquals(WavHeader.EXTENSIBLE_HEADER_SIZE + 800 + 48 - 8, header.getInt(4));
+        assertEquals(40, header.getInt(16));
+        assertEquals((short) 0xFFFE, header.getShort(20));
+        assertEquals(4, header.getShort(22));
+        assertEquals(16000 * 8, header.getInt(28));
+        assertEquals(8, header.getShort(32));
+        assertEquals(16, header.getShort(34));
+        assertEquals(22, header.getShort(36));
+        assertEquals(16, header.getShort(38));
+        assertEquals(0x107, header.getInt(40));
+        // KSDATAFORMAT_SUBTYPE_PCM 00000001-0000-0010-8000-00aa00389b71
+        assertEquals(1, header.getInt(44));
+        assertEquals(0x00100000, header.getInt(48));
+        assertEquals(0x719B3800AA000080L, header.getLong(52));
+        assertEquals(0x61746164, header.getInt(60));
+        assertEquals(800, header.getInt(64));
+
+        WavReader reader = new WavReader(mFile);
+        try {
+            assertEquals(4, reader.getChannelCount());
+            assertEquals(WavHeader.EXTENSIBLE_HEADER_SIZE, reader.getDataOffset());
+            assertEquals(100, reader.getFrameCount());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 写文件头、dataSize字节的数据和trailing字节的其他内容 收尾后返回文件头
+     */
+    private ByteBuffer write(int sampleRate, int channels, int channelMask, int dataSize, int trailing) throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(0);
+            WavHeader.write(file, sampleRate, channels, 16, channelMask);
+            assertEquals(WavHeader.headerSize(channels, 16), file.getFilePointer());
+            file.write(new byte[dataSize]);
+            file.write(new byte[trailing]);
+            WavHeader.finish(file, dataSize);
+            byte[] bytes = new byte[WavHeader.headerSize(channels, 16)];
+            file.seek(0);
+            file.readFully(bytes);
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            file.close();
+        }
+    }
+}
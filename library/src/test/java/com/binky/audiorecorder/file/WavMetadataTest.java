@@ -0,0 +1,198 @@
+package com.binky.audiorecorder.file;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 标记、区间和INFO写入WAV后读回相同 内容不完整的chunk抛出IOException
+ */
+
+public class WavMetadataTest {
+
+    private File mDir;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mDir = new File(System.getProperty("java.io.tmpdir"), "wav-metadata-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+        mFile = new File(mDir, "marked.wav");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void markersAndInfoRoundTrip() throws Exception {
+        WavMetadata metadata = new WavMetadata();
+        // 不按时间顺序添加 读回时按位置排序
+        WavMarker late = metadata.addMarker(30000, "late");
+        WavMarker region = metadata.addRegion(8000, 4001, "语音");
+        WavMarker plain = metadata.addMarker(100, null);
+        WavMarker silent = metadata.addRegion(20000, 1600, null);
+        metadata.setInfo(WavMetadata.INFO_TITLE, "会议记录").setInfo(WavMetadata.INFO_SOFTWARE, "recorder");
+        // 奇数长度的标签和INFO需要补齐
+        metadata.setInfo(WavMetadata.INFO_COMMENT, "abc");
+        write(mFile, 16000, 2, 32000 * 4, metadata, true);
+
+        WavMetadata read = WavMetadata.read(mFile);
+        assertEquals(16000, read.getSampleRate());
+        List<WavMarker> markers = read.getMarkers();
+        assertEquals(4, markers.size());
+        assertMarker(plain, markers.get(0));
+        assertMarker(region, markers.get(1));
+        assertMarker(silent, markers.get(2));
+        assertMarker(late, markers.get(3));
+        assertEquals(metadata.getInfoMap(), read.getInfoMap());
+
+        assertEquals(2, read.getMarkers(8000, 30000).size());
+        assertEquals(silent.getId(), read.getMarkerBefore(29999).getId());
+        assertNull(read.getMarkerBefore(99));
+        // 读回的标记之后继续添加 编号不重复
+        assertEquals(5, read.addMarker(0, null).getId());
+    }
+
+    @Test
+    public void emptyRecordingKeepsMarkers() throws Exception {
+        WavMetadata metadata = new WavMetadata();
+        metadata.addMarker(0, "start");
+        metadata.setInfo(WavMetadata.INFO_TITLE, "empty");
+        write(mFile, 8000, 1, 0, metadata, true);
+
+        WavMetadata read = WavMetadata.read(mFile);
+        assertEquals(1, read.getMarkerCount());
+        assertEquals("start", read.getMarkers().get(0).getLabel());
+        assertEquals("empty", read.getInfo(WavMetadata.INFO_TITLE));
+    }
+
+    @Test
+    public void unfinishedFileHasNoMarkers() throws Exception {
+        // 录音中途被杀 大小字段还是0 数据区之后的内容不当作chunk
+        write(mFile, 16000, 1, 3200, null, false);
+        WavMetadata read = WavMetadata.read(mFile);
+        assertEquals(16000, read.getSampleRate());
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void malformedChunksThrowIOException() throws Exception {
+        assertMalformed(riff(chunk("fmt ", new byte[6])));
+        assertMalformed(riff(fmt(), chunk("cue ", new byte[2])));
+        assertMalformed(riff(fmt(), chunk("LIST", new byte[0])));
+        assertMalformed(concat(new byte[]{'R', 'I', 'F', 'X', 0, 0, 0, 0, 'W', 'A', 'V', 'E'}, fmt()));
+        assertMalformed(new byte[5]);
+    }
+
+    @Test
+    public void bogusCountsAreIgnored() throws Exception {
+        // 负数的cue个数 个数大于实际内容 长度越界的子chunk
+        ByteBuffer cue = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(-3);
+        ByteBuffer bigCue = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN).putInt(1000);
+        ByteBuffer list = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        list.put(new byte[]{'a', 'd', 't', 'l', 'l', 'a', 'b', 'l'}).putInt(1 << 30).putInt(1);
+        writeBytes(mFile, riff(fmt(), chunk("cue ", cue.array())));
+        assertTrue(WavMetadata.read(mFile).isEmpty());
+        writeBytes(mFile, riff(fmt(), chunk("cue ", bigCue.array()), chunk("LIST", list.array())));
+        WavMetadata read = WavMetadata.read(mFile);
+        assertEquals(1, read.getMarkerCount());
+        assertNull(read.getMarkers().get(0).getLabel());
+    }
+
+    private static void assertMarker(WavMarker expected, WavMarker actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getPosition(), actual.getPosition());
+        assertEquals(expected.getLength(), actual.getLength());
+        assertEquals(expected.getLabel(), actual.getLabel());
+    }
+
+    private void assertMalformed(byte[] bytes) throws Exception {
+        writeBytes(mFile, bytes);
+        try {
+            WavMetadata.read(mFile);
+            fail("read should fail");
+        } catch (IOException expected) {
+            // 不能是越界之类的运行时异常
+        }
+    }
+
+    private static void write(File file, int sampleRate, int channelCount, int dataSize, WavMetadata metadata,
+                              boolean finish) throws Exception {
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(0);
+            WavHeader.write(output, sampleRate, channelCount, 16);
+            byte[] data = new byte[dataSize];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 31);
+            }
+            output.write(data);
+            if (metadata != null) {
+                metadata.writeTo(output);
+            }
+            if (finish) {
+                WavHeader.finish(output, dataSize);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] fmt() {
+        ByteBuffer body = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        body.putShort((short) 1).putShort((short) 1).putInt(8000).putInt(16000).putShort((short) 2).putShort((short) 16);
+        return chunk("fmt ", body.array());
+    }
+
+    private static byte[] chunk(String id, byte[] body) {
+        ByteBuffer chunk = ByteBuffer.allocate(8 + body.length + (body.length & 1)).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.put(id.getBytes()).putInt(body.length).put(body);
+        return chunk.array();
+    }
+
+    private static byte[] riff(byte[]... chunks) {
+        byte[] content = concat(chunks);
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt(4 + content.length).put("WAVE".getBytes());
+        return concat(header.array(), content);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeBytes(File file, byte[] bytes) throws Exception {
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(0);
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 安静的语音被放大到目标电平 突然的大声在前视时间内压下来 不会削波
+ */
+
+public class AutomaticGainControlTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final float CEILING = 0.97f * DspUtils.FULL_SCALE;
+
+    @Test
+    public void reachesTargetLevel() {
+        AutomaticGainControl agc = new AutomaticGainControl(-20f);
+        agc.prepare(SAMPLE_RATE, 1);
+        // -30dBFS的正弦 需要放大10dB
+        short[] data = sine(SAMPLE_RATE * 4, rmsToAmplitude(-30f), 440);
+        process(agc, data);
+        assertEquals(10f, agc.getCurrentGainDb(), 1f);
+        assertEquals(-20f, rmsDb(data, SAMPLE_RATE * 3, data.length), 1f);
+    }
+
+    @Test
+    public void suddenPeakDoesNotClip() {
+        AutomaticGainControl agc = new AutomaticGainControl(-20f).setGainRange(-24f, 24f);
+        agc.prepare(SAMPLE_RATE, 2);
+        int quiet = SAMPLE_RATE * 2;
+        int loud = SAMPLE_RATE / 10;
+        short[] data = new short[(quiet + loud + SAMPLE_RATE) * 2];
+        short[] quietTone = sine(quiet, rmsToAmplitude(-50f), 300);
+        for (int i = 0; i < quiet; i++) {
+            data[2 * i] = quietTone[i];
+            data[2 * i + 1] = quietTone[i];
+        }
+        // 安静后的满幅冲击 只在右声道 增益此时在最大值附近
+        for (int i = quiet; i < quiet + loud; i++) {
+            data[2 * i + 1] = (short) ((i & 1) == 0 ? 32767 : -32767);
+        }
+        process(agc, data);
+        int max = 0;
+        for (short s : data) {
+            max = Math.max(max, Math.abs(s));
+        }
+        assertTrue("output peak " + max, max <= CEILING + 1);
+        // 冲击确实经过了前视延时输出 而不是被压成静音
+        assertTrue("output peak " + max, max > CEILING * 0.9f);
+    }
+
+    private static void process(AutomaticGainControl agc, short[] data) {
+        for (int offset = 0; offset < data.length; offset += 640) {
+            agc.process(data, offset, Math.min(640, data.length - offset));
+        }
+    }
+
+    private static short[] sine(int length, float amplitude, double hz) {
+        short[] data = new short[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / SAMPLE_RATE));
+        }
+        return data;
+    }
+
+    private static float rmsToAmplitude(float rmsDb) {
+        return (float) (DspUtils.FULL_SCALE * Math.sqrt(2) * Math.pow(10, rmsDb / 20));
+    }
+
+    private static float rmsDb(short[] data, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double v = data[i] / (double) DspUtils.FULL_SCALE;
+            sum += v * v;
+        }
+        return (float) (10 * Math.log10(sum / (to - from)));
+    }
+}
@@ -0,0 +1,69 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 拆分再合并得到原来的数据 混合成单声道取平均或者按权重相加
+ */
+
+public class ChannelMixerTest {
+
+    @Test
+    public void deinterleaveInterleaveRoundTrip() {
+        Random random = new Random(11);
+        int frames = 97;
+        for (int channels : new int[]{1, 2, 3, 6}) {
+            short[] in = new short[5 + frames * channels];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = (short) random.nextInt();
+            }
+            float[][] planes = new float[channels][3 + frames];
+            ChannelMixer.deinterleave(in, 5, frames, channels, planes, 3);
+            for (int c = 0; c < channels; c++) {
+                for (int i = 0; i < frames; i++) {
+                    assertEquals(in[5 + i * channels + c], planes[c][3 + i], 0f);
+                }
+            }
+            short[] out = new short[in.length];
+            System.arraycopy(in, 0, out, 0, 5);
+            ChannelMixer.interleave(planes, 3, frames, channels, out, 5);
+            assertArrayEquals("channels " + channels, in, out);
+        }
+    }
+
+    @Test
+    public void interleaveClips() {
+        float[][] planes = {{40000f, -40000f}, {1.9f, -1.9f}};
+        short[] out = new short[4];
+        ChannelMixer.interleave(planes, 0, 2, 2, out, 0);
+        assertArrayEquals(new short[]{32767, 1, -32768, -1}, out);
+    }
+
+    @Test
+    public void downmixAverages() {
+        float[] out = new float[3];
+        ChannelMixer.downmix(new short[]{7, -3, 11}, 0, 3, 1, out, 0);
+        assertArrayEquals(new float[]{7, -3, 11}, out, 0f);
+        ChannelMixer.downmix(new short[]{0, 100, -200, 0, 32767, 32767}, 0, 3, 2, out, 0);
+        assertArrayEquals(new float[]{50, -100, 32767}, out, 0f);
+        // 4个声道 从第1个采样点开始
+        ChannelMixer.downmix(new short[]{9, 1, 2, 3, 6, -32768, -32768, -32768, -32768}, 1, 2, 4, out, 1);
+        assertEquals(3f, out[1], 0f);
+        assertEquals(-32768f, out[2], 0f);
+    }
+
+    @Test
+    public void mixUsesWeights() {
+        short[] in = {100, 200, 300, -100, -200, -300};
+        float[] out = {5, 5, 5};
+        ChannelMixer.mix(in, 0, 2, 3, new float[]{1f, 0f, -0.5f}, out, 1);
+        assertEquals(5f, out[0], 0f);
+        assertEquals(-50f, out[1], 1e-4f);
+        assertEquals(50f, out[2], 1e-4f);
+    }
+}
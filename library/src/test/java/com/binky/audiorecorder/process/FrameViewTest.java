@@ -0,0 +1,48 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 按声道读写直接作用在原数组上 不完整的最后一帧被忽略
+ */
+
+public class FrameViewTest {
+
+    @Test
+    public void planesAddressInterleavedSamples() {
+        short[] data = new short[2 + 3 * 4 + 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (short) i;
+        }
+        FrameView view = new FrameView(3).wrap(data, 2, 3 * 4 + 2);
+        assertEquals(4, view.getFrameCount());
+        assertEquals(3, view.getChannelCount());
+        assertSame(data, view.getArray());
+        FrameView.Plane plane = view.plane(1);
+        assertEquals(4, plane.size());
+        assertEquals(3, plane.getStart());
+        assertEquals(3, plane.getStride());
+        for (int frame = 0; frame < 4; frame++) {
+            for (int c = 0; c < 3; c++) {
+                assertEquals(2 + frame * 3 + c, view.get(c, frame));
+                assertEquals(view.get(c, frame), view.plane(c).get(frame));
+            }
+        }
+
+        plane.set(2, (short) -7);
+        assertEquals(-7, data[2 + 2 * 3 + 1]);
+        view.set(2, 3, (short) 99);
+        assertEquals(99, data[2 + 3 * 3 + 2]);
+        // 不完整的最后一帧不动
+        assertEquals(14, data[14]);
+        assertEquals(15, data[15]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroChannelsIsRejected() {
+        new FrameView(0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 增益按dB换算 超出16位范围的部分削波 只处理指定的区间
+ */
+
+public class GainProcessorTest {
+
+    @Test
+    public void gainScalesSamples() {
+        GainProcessor gain = new GainProcessor(6.0206f);
+        gain.prepare(16000, 1);
+        assertEquals(6.0206f, gain.getGainDb(), 0.001f);
+        short[] data = {1000, -1000, 123, 0};
+        gain.process(data, 0, data.length);
+        assertEquals(2000, data[0], 1);
+        assertEquals(-2000, data[1], 1);
+        assertEquals(246, data[2], 1);
+        assertEquals(0, data[3]);
+
+        gain.setGainDb(-6.0206f);
+        gain.process(data, 0, data.length);
+        assertEquals(1000, data[0], 1);
+        assertEquals(-1000, data[1], 1);
+    }
+
+    @Test
+    public void overflowIsClipped() {
+        GainProcessor gain = new GainProcessor(12f);
+        gain.prepare(16000, 1);
+        short[] data = {20000, -20000, 30000, -32768};
+        gain.process(data, 0, data.length);
+        assertArrayEquals(new short[]{32767, -32768, 32767, -32768}, data);
+    }
+
+    @Test
+    public void onlyTheGivenRangeIsProcessed() {
+        GainProcessor gain = new GainProcessor(20f);
+        gain.prepare(16000, 1);
+        short[] data = {100, 100, 100, 100};
+        gain.process(data, 1, 2);
+        assertEquals(100, data[0]);
+        assertEquals(1000, data[1], 1);
+        assertEquals(1000, data[2], 1);
+        assertEquals(100, data[3]);
+
+        // 0dB时数据不变
+        GainProcessor unity = new GainProcessor(0f);
+        short[] copy = data.clone();
+        unity.process(data, 0, data.length);
+        assertArrayEquals(copy, data);
+    }
+}
@@ -0,0 +1,82 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 幅频响应和一阶高通的理论值一致 去直流 多声道各自保存状态
+ */
+
+public class HighPassProcessorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void responseMatchesFirstOrderFilter() {
+        float cutoff = 300f;
+        double r = Math.exp(-2 * Math.PI * cutoff / SAMPLE_RATE);
+        for (double hz : new double[]{50, 300, 1000, 4000}) {
+            HighPassProcessor filter = new HighPassProcessor(cutoff);
+            filter.prepare(SAMPLE_RATE, 1);
+            short[] data = sine(SAMPLE_RATE, 10000, hz, 1, 0);
+            double input = rms(data, SAMPLE_RATE / 2, SAMPLE_RATE, 1, 0);
+            process(filter, data);
+            // 跳过前半秒的瞬态
+            double measured = 20 * Math.log10(rms(data, SAMPLE_RATE / 2, SAMPLE_RATE, 1, 0) / input);
+            assertEquals("at " + hz + "Hz", expectedDb(r, hz), measured, 0.2);
+        }
+        // 截止频率以下明显衰减 以上基本不变
+        assertTrue(expectedDb(r, 50) < -12);
+        assertTrue(expectedDb(r, 4000) > -0.5);
+    }
+
+    @Test
+    public void dcIsRemovedPerChannel() {
+        HighPassProcessor filter = new HighPassProcessor();
+        filter.prepare(SAMPLE_RATE, 2);
+        // 左声道是直流 右声道是1kHz正弦
+        short[] data = sine(SAMPLE_RATE, 8000, 1000, 2, 1);
+        for (int i = 0; i < data.length; i += 2) {
+            data[i] = 5000;
+        }
+        process(filter, data);
+        int tail = SAMPLE_RATE - SAMPLE_RATE / 10;
+        for (int i = tail; i < SAMPLE_RATE; i++) {
+            assertTrue("dc left at " + i + ": " + data[2 * i], Math.abs(data[2 * i]) < 50);
+        }
+        assertEquals(8000 / Math.sqrt(2), rms(data, tail, SAMPLE_RATE, 2, 1), 80);
+    }
+
+    private static double expectedDb(double r, double hz) {
+        double w = 2 * Math.PI * hz / SAMPLE_RATE;
+        // |1 - e^-jw| / |1 - r e^-jw|
+        double numerator = 2 - 2 * Math.cos(w);
+        double denominator = 1 - 2 * r * Math.cos(w) + r * r;
+        return 10 * Math.log10(numerator / denominator);
+    }
+
+    private static void process(HighPassProcessor filter, short[] data) {
+        for (int offset = 0; offset < data.length; offset += 640) {
+            filter.process(data, offset, Math.min(640, data.length - offset));
+        }
+    }
+
+    private static short[] sine(int frames, double amplitude, double hz, int channels, int channel) {
+        short[] data = new short[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            data[i * channels + channel] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / SAMPLE_RATE));
+        }
+        return data;
+    }
+
+    private static double rms(short[] data, int from, int to, int channels, int channel) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double v = data[i * channels + channel];
+            sum += v * v;
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+}
@@ -0,0 +1,60 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 输出不超过上限 低于上限的信号不变 压低之后按释放时间恢复
+ */
+
+public class LimiterProcessorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void peaksStayBelowCeiling() {
+        LimiterProcessor limiter = new LimiterProcessor(-6f, 50f);
+        limiter.prepare(SAMPLE_RATE, 2);
+        float ceiling = DspUtils.dbToGain(-6f) * DspUtils.FULL_SCALE;
+        int quiet = SAMPLE_RATE / 2;
+        int loud = SAMPLE_RATE / 5;
+        int frames = quiet + loud + SAMPLE_RATE;
+        short[] input = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            boolean isLoud = i >= quiet && i < quiet + loud;
+            double amplitude = isLoud ? 32767 : 8000;
+            input[2 * i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+            // 右声道只在大声时有声音 左右共用增益
+            input[2 * i + 1] = isLoud ? input[2 * i] : 0;
+        }
+        short[] data = input.clone();
+        for (int offset = 0; offset < data.length; offset += 640) {
+            limiter.process(data, offset, Math.min(640, data.length - offset));
+        }
+
+        for (int i = 0; i < data.length; i++) {
+            assertTrue("at " + i + ": " + data[i], Math.abs(data[i]) <= ceiling + 1);
+        }
+        for (int i = 0; i < quiet * 2; i++) {
+            assertEquals(input[i], data[i]);
+        }
+        // 释放时间50ms 0.5秒后已经恢复
+        for (int i = (quiet + loud + SAMPLE_RATE / 2) * 2; i < data.length; i++) {
+            assertTrue("at " + i, Math.abs(data[i] - input[i]) <= 1);
+        }
+        assertEquals(20 * Math.log10(32767 / ceiling), limiter.getMaxReductionDb(), 0.1);
+    }
+
+    @Test
+    public void prepareResetsReduction() {
+        LimiterProcessor limiter = new LimiterProcessor(-1f);
+        limiter.prepare(SAMPLE_RATE, 1);
+        short[] data = {32767, -32768};
+        limiter.process(data, 0, data.length);
+        assertTrue(limiter.getMaxReductionDb() > 0.9f);
+        limiter.prepare(SAMPLE_RATE, 1);
+        assertEquals(0f, limiter.getMaxReductionDb(), 0f);
+    }
+}
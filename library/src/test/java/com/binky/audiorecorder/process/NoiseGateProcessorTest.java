@@ -0,0 +1,77 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 低于门限的底噪被静音 声音通过 声音结束后在保持时间内门仍然打开 之后关闭
+ */
+
+public class NoiseGateProcessorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int SEGMENT = SAMPLE_RATE / 2;
+
+    @Test
+    public void gateOpensHoldsAndCloses() {
+        // 门限-40dBFS 约328 保持100ms 释放20ms
+        NoiseGateProcessor gate = new NoiseGateProcessor(-40f, 1f, 100f, 20f);
+        gate.prepare(SAMPLE_RATE, 2);
+        Random random = new Random(5);
+        // 底噪 声音 底噪 两个声道相同
+        short[] input = new short[SEGMENT * 3 * 2];
+        for (int i = 0; i < SEGMENT * 3; i++) {
+            short v = i >= SEGMENT && i < SEGMENT * 2
+                    ? (short) Math.round(8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE))
+                    : (short) (random.nextInt(101) - 50);
+            input[2 * i] = v;
+            input[2 * i + 1] = v;
+        }
+        short[] data = input.clone();
+        for (int offset = 0; offset < data.length; offset += 320) {
+            gate.process(data, offset, Math.min(320, data.length - offset));
+        }
+
+        // 门一开始是关的
+        for (int i = 0; i < SEGMENT * 2; i++) {
+            assertEquals(0, data[i]);
+        }
+        // 打开后声音不变
+        int opened = SEGMENT + SAMPLE_RATE / 100;
+        for (int i = opened * 2; i < SEGMENT * 4; i++) {
+            assertTrue("at " + i, Math.abs(data[i] - input[i]) <= 1);
+        }
+        // 声音结束后的保持时间内底噪也通过
+        int held = SEGMENT * 2 + SAMPLE_RATE * 90 / 1000;
+        for (int i = SEGMENT * 4; i < held * 2; i++) {
+            assertTrue("at " + i, Math.abs(data[i] - input[i]) <= 1);
+        }
+        // 保持和释放之后关闭
+        int closed = SEGMENT * 2 + SAMPLE_RATE * 300 / 1000;
+        for (int i = closed * 2; i < data.length; i++) {
+            assertEquals("at " + i, 0, data[i]);
+        }
+    }
+
+    @Test
+    public void shortDropDoesNotChatter() {
+        NoiseGateProcessor gate = new NoiseGateProcessor(-40f, 1f, 100f, 20f);
+        gate.prepare(SAMPLE_RATE, 1);
+        // 声音中间50ms的停顿短于保持时间 门不会关
+        short[] data = new short[SAMPLE_RATE];
+        int gapBegin = SAMPLE_RATE / 2;
+        int gapEnd = gapBegin + SAMPLE_RATE / 20;
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i >= gapBegin && i < gapEnd ? 20 : (short) Math.round(8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        short[] input = data.clone();
+        gate.process(data, 0, data.length);
+        for (int i = SAMPLE_RATE / 100; i < data.length; i++) {
+            assertTrue("at " + i, Math.abs(data[i] - input[i]) <= 1);
+        }
+    }
+}
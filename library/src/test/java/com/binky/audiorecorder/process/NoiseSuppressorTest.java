@@ -0,0 +1,94 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 噪声中的正弦信号 降噪后正弦幅度不变 噪声底降低
+ */
+
+public class NoiseSuppressorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    /**
+     * 正好落在256点分析帧的第16个频点上
+     */
+    private static final double TONE_HZ = 1000;
+    private static final double TONE_AMPLITUDE = 8000;
+    private static final int NOISE_AMPLITUDE = 1000;
+
+    @Test
+    public void keepsToneAndLowersNoiseFloor() {
+        NoiseSuppressor suppressor = new NoiseSuppressor(15f);
+        suppressor.prepare(SAMPLE_RATE, 1);
+        int latency = suppressor.getLatencySamples();
+
+        // 前1秒只有噪声 用于初始化噪声谱 后2秒是噪声加正弦
+        int noiseOnly = SAMPLE_RATE;
+        int total = SAMPLE_RATE * 3;
+        Random random = new Random(29);
+        short[] noise = new short[total];
+        short[] input = new short[total];
+        for (int i = 0; i < total; i++) {
+            noise[i] = (short) (random.nextInt(2 * NOISE_AMPLITUDE + 1) - NOISE_AMPLITUDE);
+            double tone = i < noiseOnly ? 0 : TONE_AMPLITUDE * Math.sin(2 * Math.PI * TONE_HZ * i / SAMPLE_RATE);
+            input[i] = (short) Math.round(tone + noise[i]);
+        }
+        short[] output = input.clone();
+        // 按录音时每帧20ms的方式处理
+        for (int offset = 0; offset < total; offset += 320) {
+            suppressor.process(output, offset, Math.min(320, total - offset));
+        }
+
+        // 噪声谱初始化完成后的纯噪声段
+        double noiseIn = power(noise, SAMPLE_RATE / 2, noiseOnly);
+        double noiseOut = power(output, SAMPLE_RATE / 2 + latency, noiseOnly);
+        assertTrue("noise floor " + DspUtils.gainToDb((float) Math.sqrt(noiseOut / noiseIn)) + "dB",
+                noiseOut < noiseIn * 0.25);
+
+        // 正弦段跳过开头的增益过渡 输出按处理延时对齐
+        int from = noiseOnly + SAMPLE_RATE / 2;
+        double[] fit = fitTone(output, from + latency, total);
+        assertEquals(TONE_AMPLITUDE, fit[0], TONE_AMPLITUDE * 0.06);
+        double[] residual = new double[total];
+        for (int i = from + latency; i < total; i++) {
+            residual[i] = output[i] - fit[1] * Math.sin(2 * Math.PI * TONE_HZ * i / SAMPLE_RATE)
+                    - fit[2] * Math.cos(2 * Math.PI * TONE_HZ * i / SAMPLE_RATE);
+        }
+        double residualPower = 0;
+        for (int i = from + latency; i < total; i++) {
+            residualPower += residual[i] * residual[i];
+        }
+        residualPower /= total - from - latency;
+        assertTrue("residual noise " + residualPower + " input noise " + power(noise, from, total),
+                residualPower < power(noise, from, total) * 0.5);
+    }
+
+    private static double power(short[] data, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) data[i] * data[i];
+        }
+        return sum / (to - from);
+    }
+
+    /**
+     * 最小二乘拟合正弦分量 返回幅度、正弦系数、余弦系数
+     */
+    private static double[] fitTone(short[] data, int from, int to) {
+        double s = 0;
+        double c = 0;
+        for (int i = from; i < to; i++) {
+            double phase = 2 * Math.PI * TONE_HZ * i / SAMPLE_RATE;
+            s += data[i] * Math.sin(phase);
+            c += data[i] * Math.cos(phase);
+        }
+        s = 2 * s / (to - from);
+        c = 2 * c / (to - from);
+        return new double[]{Math.hypot(s, c), s, c};
+    }
+}
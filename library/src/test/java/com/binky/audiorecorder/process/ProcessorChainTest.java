@@ -0,0 +1,98 @@
+package com.binky.audiorecorder.process;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 处理器按添加顺序执行 增删在下一次prepare时生效 每个处理器的耗时分开统计
+ */
+
+public class ProcessorChainTest {
+
+    @Test
+    public void processorsRunInOrder() {
+        List<String> calls = new ArrayList<>();
+        RecordingProcessor first = new RecordingProcessor("first", calls, 0);
+        RecordingProcessor second = new RecordingProcessor("second", calls, 0);
+        ProcessorChain chain = new ProcessorChain().add(first).add(second).add(first);
+        chain.prepare(16000, 2);
+        assertEquals(2, chain.getActiveCount());
+        assertSame(first, chain.getActive(0));
+        assertEquals(Arrays.asList("first prepare 16000/2", "second prepare 16000/2"), calls);
+
+        calls.clear();
+        short[] data = new short[8];
+        chain.process(data, 0, data.length);
+        assertEquals(Arrays.asList("first", "second"), calls);
+
+        // 录音中的修改下一次录音才生效
+        calls.clear();
+        chain.remove(first);
+        chain.process(data, 0, data.length);
+        assertEquals(Arrays.asList("first", "second"), calls);
+        chain.prepare(16000, 1);
+        calls.clear();
+        chain.process(data, 0, data.length);
+        assertEquals(Arrays.asList("second"), calls);
+    }
+
+    @Test
+    public void timingIsPerProcessor() {
+        List<String> calls = new ArrayList<>();
+        RecordingProcessor fast = new RecordingProcessor("fast", calls, 0);
+        RecordingProcessor slow = new RecordingProcessor("slow", calls, 200000);
+        ProcessorChain chain = new ProcessorChain().add(fast).add(slow);
+        chain.prepare(16000, 1);
+        short[] data = new short[160];
+        for (int i = 0; i < 20; i++) {
+            chain.process(data, 0, data.length);
+        }
+        assertEquals(20, chain.getFrameCount());
+        assertTrue(chain.getTotalNanos(1) >= 20 * 200000L);
+        assertTrue(chain.getTotalNanos(1) > chain.getTotalNanos(0));
+        assertEquals(chain.getTotalNanos(1) / 20, chain.getAverageNanos(1));
+        assertTrue(chain.getMaxNanos(1) >= chain.getAverageNanos(1));
+        assertTrue(chain.getMaxNanos(1) >= 200000L);
+
+        // 下一次录音重新统计
+        chain.prepare(16000, 1);
+        assertEquals(0, chain.getFrameCount());
+        assertEquals(0, chain.getTotalNanos(1));
+        assertEquals(0, chain.getMaxNanos(1));
+        assertEquals(0, chain.getAverageNanos(1));
+    }
+
+    private static class RecordingProcessor implements AudioProcessor {
+
+        private final String mName;
+        private final List<String> mCalls;
+        private final long mBusyNanos;
+
+        RecordingProcessor(String name, List<String> calls, long busyNanos) {
+            this.mName = name;
+            this.mCalls = calls;
+            this.mBusyNanos = busyNanos;
+        }
+
+        @Override
+        public void prepare(int sampleRate, int channelCount) {
+            mCalls.add(mName + " prepare " + sampleRate + "/" + channelCount);
+        }
+
+        @Override
+        public void process(short[] buffer, int offset, int length) {
+            mCalls.add(mName);
+            long end = System.nanoTime() + mBusyNanos;
+            while (System.nanoTime() < end) {
+                // 模拟耗时的处理
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.binky.audiorecorder.record;
+
+import android.media.AudioFormat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 位置掩码和索引掩码的声道数 以及转换成WAV声道掩码
+ */
+
+public class ChannelMaskTest {
+
+    private static final int FRONT_LEFT = 0x1;
+    private static final int FRONT_RIGHT = 0x2;
+    private static final int FRONT_CENTER = 0x4;
+    private static final int BACK_CENTER = 0x100;
+
+    @Test
+    public void positionMaskChannelCount() {
+        assertEquals(1, ChannelMask.channelCount(AudioFormat.CHANNEL_IN_MONO));
+        assertEquals(2, ChannelMask.channelCount(AudioFormat.CHANNEL_IN_STEREO));
+        // 老版本的CHANNEL_CONFIGURATION_DEFAULT/MONO/STEREO
+        assertEquals(1, ChannelMask.channelCount(1));
+        assertEquals(1, ChannelMask.channelCount(2));
+        assertEquals(2, ChannelMask.channelCount(3));
+        assertEquals(4, ChannelMask.channelCount(AudioFormat.CHANNEL_IN_LEFT | AudioFormat.CHANNEL_IN_RIGHT
+                | AudioFormat.CHANNEL_IN_FRONT | AudioFormat.CHANNEL_IN_BACK));
+        assertFalse(ChannelMask.isIndexMask(AudioFormat.CHANNEL_IN_STEREO));
+        assertEquals(0, ChannelMask.getIndexMask(AudioFormat.CHANNEL_IN_STEREO));
+    }
+
+    @Test
+    public void indexMaskChannelCount() {
+        int config = ChannelMask.fromIndexMask(0xF);
+        assertTrue(ChannelMask.isIndexMask(config));
+        assertEquals(0xF, ChannelMask.getIndexMask(config));
+        assertEquals(4, ChannelMask.channelCount(config));
+        // 不连续的输入通道
+        assertEquals(3, ChannelMask.channelCount(ChannelMask.fromIndexMask(0x501)));
+        // 最多30个通道 高两位是表示方式
+        int all = ChannelMask.fromIndexMask(-1);
+        assertEquals(30, ChannelMask.channelCount(all));
+        assertEquals(0x3FFFFFFF, ChannelMask.getIndexMask(all));
+    }
+
+    @Test
+    public void wavChannelMask() {
+        assertEquals(FRONT_CENTER, ChannelMask.toWavChannelMask(AudioFormat.CHANNEL_IN_MONO));
+        assertEquals(FRONT_LEFT | FRONT_RIGHT, ChannelMask.toWavChannelMask(AudioFormat.CHANNEL_IN_STEREO));
+        assertEquals(FRONT_LEFT | FRONT_RIGHT, ChannelMask.toWavChannelMask(3));
+        assertEquals(FRONT_LEFT | FRONT_RIGHT | FRONT_CENTER | BACK_CENTER,
+                ChannelMask.toWavChannelMask(AudioFormat.CHANNEL_IN_LEFT | AudioFormat.CHANNEL_IN_RIGHT
+                        | AudioFormat.CHANNEL_IN_FRONT | AudioFormat.CHANNEL_IN_BACK));
+        // 有一个声道没有对应的扬声器时整个掩码为0
+        assertEquals(0, ChannelMask.toWavChannelMask(AudioFormat.CHANNEL_IN_STEREO | 0x400));
+        // 索引掩码没有位置含义
+        assertEquals(0, ChannelMask.toWavChannelMask(ChannelMask.fromIndexMask(0x3)));
+    }
+}
@@ -0,0 +1,239 @@
+package com.binky.audiorecorder.record;
+
+import android.media.AudioFormat;
+
+import org.junit.Test;
+
+import com.binky.audiorecorder.bench.SoakHarness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 溢出时估计的丢失数和设备实际丢掉的一致 位置在暂停继续后连续 两种时间戳都对应帧的第一个采样点
+ */
+
+public class FrameClockTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 2;
+    private static final int FRAME = SAMPLE_RATE / 100;
+    // 100ms的缓冲区
+    private static final int BUFFER = SAMPLE_RATE / 10;
+
+    @Test
+    public void sourceClockGap() {
+        checkGap(true);
+    }
+
+    @Test
+    public void systemClockGap() {
+        checkGap(false);
+    }
+
+    private static void checkGap(boolean sourceClock) {
+        ManualSource source = new ManualSource(sourceClock);
+        FrameClock clock = new FrameClock();
+        source.start();
+        clock.onSourceStart(source, SAMPLE_RATE, CHANNELS, BUFFER);
+        clock.onSessionStart();
+        for (int i = 0; i < 50; i++) {
+            FrameInfo info = read(clock, source);
+            assertEquals(i, info.getSequence());
+            assertEquals(i * FRAME, info.getSampleIndex());
+            assertEquals(0, info.getLostSamples());
+            assertEquals(sourceClock, info.isSourceClock());
+            assertEquals(source.timeOf(source.getLastReadFrame()), info.getTimestampNanos());
+        }
+
+        // 停顿300ms 缓冲区只留下最新的100ms
+        source.stall(300000000L);
+        FrameInfo info = read(clock, source);
+        assertEquals(SAMPLE_RATE / 5, source.getLostFrames());
+        assertEquals(source.getLostFrames(), info.getLostSamples());
+        assertEquals(source.getLastReadFrame(), info.getSampleIndex());
+        assertEquals(source.timeOf(source.getLastReadFrame()), info.getTimestampNanos());
+
+        // 读完积压的数据后继续按设备位置编号 不再报告丢失
+        long expected = info.getSampleIndex() + FRAME;
+        for (int i = 0; i < 50; i++) {
+            info = read(clock, source);
+            assertEquals(51 + i, info.getSequence());
+            assertEquals(expected, info.getSampleIndex());
+            assertEquals(0, info.getLostSamples());
+            assertEquals(source.timeOf(source.getLastReadFrame()), info.getTimestampNanos());
+            expected += FRAME;
+        }
+        assertEquals(1, clock.getSessionGaps());
+        assertEquals(SAMPLE_RATE / 5, clock.getSessionLostFrames());
+    }
+
+    @Test
+    public void pauseResumeKeepsPosition() {
+        ManualSource source = new ManualSource(false);
+        FrameClock clock = new FrameClock();
+        source.start();
+        clock.onSourceStart(source, SAMPLE_RATE, CHANNELS, BUFFER);
+        // 预热期间读到的数据不计入录音
+        for (int i = 0; i < 7; i++) {
+            read(clock, source);
+        }
+        clock.onSessionStart();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i * FRAME, read(clock, source).getSampleIndex());
+        }
+
+        // 暂停期间继续读取
+        clock.onSessionPause();
+        for (int i = 0; i < 30; i++) {
+            read(clock, source);
+        }
+        clock.onSessionResume();
+        FrameInfo info = read(clock, source);
+        assertEquals(10, info.getSequence());
+        assertEquals(10 * FRAME, info.getSampleIndex());
+        assertEquals(source.timeOf(source.getLastReadFrame()), info.getTimestampNanos());
+
+        // 暂停期间重新启动设备 设备位置从0开始
+        clock.onSessionPause();
+        source.stop();
+        source.stall(2000000000L);
+        source.start();
+        clock.onSourceStart(source, SAMPLE_RATE, CHANNELS, BUFFER);
+        clock.onSessionResume();
+        for (int i = 0; i < 5; i++) {
+            info = read(clock, source);
+            assertEquals(11 + i, info.getSequence());
+            assertEquals((11 + i) * FRAME, info.getSampleIndex());
+            assertEquals(source.timeOf(source.getLastReadFrame()), info.getTimestampNanos());
+        }
+        assertEquals(0, clock.getSessionGaps());
+    }
+
+    @Test
+    public void generatedSourceStall() throws Exception {
+        SoakHarness.GeneratedSource source = new SoakHarness.GeneratedSource(1);
+        int bufferSize = source.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+        assertTrue(source.open(0, SAMPLE_RATE, AudioFormat.CHANNEL_IN_STEREO, AudioFormat.ENCODING_PCM_16BIT, bufferSize));
+        source.start();
+        FrameClock clock = new FrameClock();
+        clock.onSourceStart(source, SAMPLE_RATE, CHANNELS, bufferSize / 2 / CHANNELS);
+        clock.onSessionStart();
+        short[] buffer = new short[FRAME * CHANNELS];
+        long next = 0;
+        long offset = -1;
+        for (int i = 0; i < 60; i++) {
+            if (i == 20) {
+                // 读取线程被卡住400ms
+                Thread.sleep(400);
+            }
+            FrameInfo info = clock.onRead(source, source.read(buffer, 0, buffer.length));
+            if (offset < 0) {
+                offset = source.getLastReadFrame();
+            }
+            assertEquals(next + info.getLostSamples(), info.getSampleIndex());
+            // 估计的丢失数不准时位置会和设备位置错开 允许20ms的时钟抖动
+            assertEquals(source.getLastReadFrame() - offset, info.getSampleIndex(), SAMPLE_RATE / 50);
+            next = info.getSampleIndex() + info.getSampleCount();
+        }
+        source.release();
+        assertTrue(source.getLostFrames() > 0);
+        assertEquals(1, clock.getSessionGaps());
+        assertEquals(source.getLostFrames(), clock.getSessionLostFrames(), SAMPLE_RATE / 50);
+    }
+
+    private static FrameInfo read(FrameClock clock, ManualSource source) {
+        short[] buffer = new short[FRAME * CHANNELS];
+        return clock.onRead(source, source.read(buffer, 0, buffer.length));
+    }
+
+    /**
+     * 手动推进时间的录音设备 读取时数据不够就把时间推进到刚好够 超出缓冲区时丢掉最早的数据
+     */
+    private static class ManualSource implements CaptureSource {
+
+        private final boolean mSourceClock;
+        private long mNow = 5000000000L;
+        private long mOrigin;
+        private long mConsumed;
+        private long mLastReadFrame;
+        private long mLostFrames;
+
+        ManualSource(boolean sourceClock) {
+            this.mSourceClock = sourceClock;
+        }
+
+        @Override
+        public int getMinBufferSize(int sampleRate, int channelConfig, int audioFormat) {
+            return BUFFER * CHANNELS * 2;
+        }
+
+        @Override
+        public boolean open(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+            return true;
+        }
+
+        @Override
+        public boolean start() {
+            mOrigin = mNow;
+            mConsumed = 0;
+            return true;
+        }
+
+        @Override
+        public int read(short[] buffer, int offset, int length) {
+            int frames = length / CHANNELS;
+            long produced = frameAt(mNow);
+            if (produced - mConsumed > BUFFER) {
+                mLostFrames += produced - mConsumed - BUFFER;
+                mConsumed = produced - BUFFER;
+            }
+            if (produced - mConsumed < frames) {
+                mNow = timeOf(mConsumed + frames);
+            }
+            mLastReadFrame = mConsumed;
+            mConsumed += frames;
+            return length;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public boolean getTimestamp(long[] out) {
+            out[0] = frameAt(mNow);
+            out[1] = timeOf(out[0]);
+            return mSourceClock;
+        }
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+
+        void stall(long nanos) {
+            mNow += nanos;
+        }
+
+        long frameAt(long nanos) {
+            return (nanos - mOrigin) * SAMPLE_RATE / 1000000000L;
+        }
+
+        long timeOf(long frame) {
+            return mOrigin + frame * 1000000000L / SAMPLE_RATE;
+        }
+
+        long getLastReadFrame() {
+            return mLastReadFrame;
+        }
+
+        long getLostFrames() {
+            return mLostFrames;
+        }
+    }
+}
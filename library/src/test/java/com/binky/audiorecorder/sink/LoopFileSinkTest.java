@@ -0,0 +1,257 @@
+package com.binky.audiorecorder.sink;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import com.binky.audiorecorder.file.WavReader;
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 写满后从头覆盖 snapshot保存的是最新的连续录音 录音中拷贝被覆盖时失败 进程重启后可以从文件恢复
+ * <p>
+ * 第n帧左声道的值是(short) n 右声道是(short) ~n 用来检查保存的数据是否连续
+ */
+
+public class LoopFileSinkTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 2;
+    private static final int FRAME = SAMPLE_RATE / 100;
+
+    private File mDir;
+    private File mRing;
+
+    @Before
+    public void setUp() {
+        Log.DEBUG = false;
+        mDir = new File(System.getProperty("java.io.tmpdir"), "loop-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+        mRing = new File(mDir, "ring.loop");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void wrapAroundKeepsNewestFrames() throws Exception {
+        // 保留1秒 余量0.5秒 数据区1.5秒 写入4.01秒会在中间绕回
+        LoopFileSink sink = new LoopFileSink(mRing.getPath(), 1000).setGuardMs(500);
+        sink.open(SAMPLE_RATE, CHANNELS);
+        long frames = 0;
+        AudioFrame frame = new AudioFrame(FRAME * CHANNELS);
+        while (frames < SAMPLE_RATE * 4 + FRAME) {
+            frames = write(sink, frame, frames, FRAME);
+        }
+        assertEquals(frames * CHANNELS * 2, sink.getWrittenBytes());
+
+        File output = new File(mDir, "last.wav");
+        assertEquals(SAMPLE_RATE * 8 / 10 * CHANNELS * 2, sink.snapshot(800, output));
+        assertContiguous(output, frames - SAMPLE_RATE * 8 / 10, frames);
+        // 录音中最多保存构造时指定的时长 不包括余量
+        assertEquals(SAMPLE_RATE * CHANNELS * 2, sink.snapshot(10000, output));
+        assertContiguous(output, frames - SAMPLE_RATE, frames);
+        sink.close();
+    }
+
+    @Test
+    public void shortRecordingIsSavedWhole() throws Exception {
+        LoopFileSink sink = new LoopFileSink(mRing.getPath(), 1000);
+        sink.open(SAMPLE_RATE, CHANNELS);
+        long frames = write(sink, new AudioFrame(FRAME * CHANNELS), 0, FRAME);
+        File output = new File(mDir, "short.wav");
+        assertEquals(FRAME * CHANNELS * 2, sink.snapshot(5000, output));
+        assertContiguous(output, 0, frames);
+        sink.close();
+    }
+
+    @Test
+    public void liveSnapshotIsContiguous() throws Exception {
+        final LoopFileSink sink = new LoopFileSink(mRing.getPath(), 500);
+        sink.open(SAMPLE_RATE, CHANNELS);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        // 100倍速写入 5秒的余量约50ms
+        Thread writer = startWriter(sink, running, 100000);
+        try {
+            while (sink.getWrittenBytes() < SAMPLE_RATE * 300L / 1000 * CHANNELS * 2) {
+                Thread.sleep(1);
+            }
+            File output = new File(mDir, "live.wav");
+            int wrapped = 0;
+            for (int i = 0; i < 50; i++) {
+                long head = sink.getWrittenBytes();
+                long size = sink.snapshot(300, output);
+                long end = readFirst(output) + size / CHANNELS / 2;
+                assertContiguous(output, end - size / CHANNELS / 2, end);
+                // 数据区大小是5.5秒
+                if (head > SAMPLE_RATE * 5500L / 1000 * CHANNELS * 2) {
+                    wrapped++;
+                }
+                Thread.sleep(5);
+            }
+            assertTrue("writer never wrapped", wrapped > 0);
+        } finally {
+            running.set(false);
+            writer.join();
+            sink.close();
+        }
+    }
+
+    @Test
+    public void overwrittenCopyFails() throws Exception {
+        // 没有余量 拷贝期间写入的任何数据都会覆盖正在拷贝的部分
+        final LoopFileSink sink = new LoopFileSink(mRing.getPath(), 2000).setGuardMs(0);
+        sink.open(SAMPLE_RATE, CHANNELS);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = startWriter(sink, running, 0);
+        try {
+            while (sink.getWrittenBytes() < SAMPLE_RATE * 2L * CHANNELS * 2) {
+                Thread.sleep(1);
+            }
+            File output = new File(mDir, "overrun.wav");
+            for (int i = 0; i < 200; i++) {
+                try {
+                    sink.snapshot(2000, output);
+                } catch (IOException expected) {
+                    return;
+                }
+            }
+            fail("snapshot never detected the overrun");
+        } finally {
+            running.set(false);
+            writer.join();
+            sink.close();
+        }
+    }
+
+    @Test
+    public void ringFileIsRecovered() throws Exception {
+        LoopFileSink sink = new LoopFileSink(mRing.getPath(), 1000).setGuardMs(250);
+        sink.open(SAMPLE_RATE, CHANNELS);
+        long frames = 0;
+        AudioFrame frame = new AudioFrame(FRAME * CHANNELS);
+        while (frames < SAMPLE_RATE * 3 + FRAME * 7) {
+            frames = write(sink, frame, frames, FRAME);
+        }
+        sink.close();
+
+        // 进程重启后只有文件 没有人在写 整个数据区都可以保存
+        File output = new File(mDir, "recovered.wav");
+        long ring = SAMPLE_RATE * 1250L / 1000;
+        assertEquals(ring * CHANNELS * 2, LoopFileSink.snapshot(mRing, 60000, output));
+        assertContiguous(output, frames - ring, frames);
+        assertEquals(SAMPLE_RATE / 2 * CHANNELS * 2, LoopFileSink.snapshot(mRing, 500, output));
+        assertContiguous(output, frames - SAMPLE_RATE / 2, frames);
+        // 录音结束后实例的snapshot也从文件读取
+        assertEquals(ring * CHANNELS * 2, sink.snapshot(60000, output));
+
+        RandomAccessFile file = new RandomAccessFile(mRing, "rw");
+        try {
+            file.setLength(1000);
+        } finally {
+            file.close();
+        }
+        assertSnapshotFails(mRing, output);
+        file = new RandomAccessFile(mRing, "rw");
+        try {
+            file.write(new byte[64]);
+        } finally {
+            file.close();
+        }
+        assertSnapshotFails(mRing, output);
+    }
+
+    private static void assertSnapshotFails(File ring, File output) {
+        try {
+            LoopFileSink.snapshot(ring, 1000, output);
+            fail("snapshot of a broken ring file");
+        } catch (IOException expected) {
+            // 头不对或者数据区不完整
+        }
+    }
+
+    /**
+     * @param pauseNanos 每写一帧后暂停的时间 0表示尽快写入
+     */
+    private static Thread startWriter(final LoopFileSink sink, final AtomicBoolean running, final long pauseNanos) {
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                AudioFrame frame = new AudioFrame(FRAME * CHANNELS);
+                long frames = 0;
+                while (running.get()) {
+                    frames = write(sink, frame, frames, FRAME);
+                    if (pauseNanos > 0) {
+                        LockSupport.parkNanos(pauseNanos);
+                    }
+                }
+            }
+        }, "loop-writer");
+        writer.start();
+        return writer;
+    }
+
+    private static long write(LoopFileSink sink, AudioFrame frame, long first, int count) {
+        short[] data = new short[count * CHANNELS];
+        for (int i = 0; i < count; i++) {
+            data[i * CHANNELS] = (short) (first + i);
+            data[i * CHANNELS + 1] = (short) ~(first + i);
+        }
+        frame.set(data, 0, data.length, first / count, System.nanoTime());
+        sink.write(frame);
+        return first + count;
+    }
+
+    private static int readFirst(File wav) throws IOException {
+        WavReader reader = new WavReader(wav);
+        try {
+            short[] first = new short[CHANNELS];
+            assertEquals(CHANNELS, reader.read(first, 0, CHANNELS));
+            return first[0] & 0xFFFF;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * WAV中的帧是从from到to(不包含)的连续帧
+     */
+    private static void assertContiguous(File wav, long from, long to) throws IOException {
+        WavReader reader = new WavReader(wav);
+        try {
+            assertEquals(SAMPLE_RATE, reader.getSampleRate());
+            assertEquals(CHANNELS, reader.getChannelCount());
+            assertEquals(to - from, reader.getFrameCount());
+            short[] buffer = new short[4096];
+            long frame = from;
+            int read;
+            while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+                for (int i = 0; i < read; i += CHANNELS, frame++) {
+                    assertEquals("frame " + frame, (short) frame, buffer[i]);
+                    assertEquals("frame " + frame, (short) ~frame, buffer[i + 1]);
+                }
+            }
+            assertEquals(to, frame);
+        } finally {
+            reader.close();
+        }
+    }
+}
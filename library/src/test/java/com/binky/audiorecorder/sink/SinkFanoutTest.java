@@ -0,0 +1,128 @@
+package com.binky.audiorecorder.sink;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 每个sink按顺序收到帧 关闭超时的sink不会在下一次录音中被两个线程同时使用
+ */
+
+public class SinkFanoutTest {
+
+    @Test
+    public void framesArriveInOrder() throws Exception {
+        Log.DEBUG = false;
+        SinkFanout fanout = new SinkFanout();
+        RecordingSink first = new RecordingSink(null);
+        RecordingSink second = new RecordingSink(null);
+        fanout.add(first, 100);
+        fanout.add(second, 100);
+        fanout.add(first, 100);
+        short[] frame = new short[160];
+        for (int session = 0; session < 2; session++) {
+            fanout.open(16000, 1);
+            for (int i = 0; i < 50; i++) {
+                frame[0] = (short) i;
+                fanout.dispatch(frame, 0, frame.length, i, System.nanoTime());
+            }
+            assertTrue(fanout.close(2000));
+            assertEquals(2, fanout.getStats().size());
+            for (SinkStats stats : fanout.getStats()) {
+                assertEquals(50, stats.getFramesWritten());
+                assertEquals(0, stats.getFramesDropped());
+            }
+        }
+        assertEquals(100, first.mWrites.get());
+        assertEquals(0, first.mOutOfOrder.get());
+        assertEquals(100, second.mWrites.get());
+        assertEquals(0, second.mOutOfOrder.get());
+    }
+
+    @Test
+    public void sinkStillClosingIsSkipped() throws Exception {
+        Log.DEBUG = false;
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink(release);
+        SinkFanout fanout = new SinkFanout();
+        fanout.add(slow, 10);
+        short[] frame = new short[160];
+
+        fanout.open(16000, 1);
+        fanout.dispatch(frame, 0, frame.length, 0, System.nanoTime());
+        assertFalse(fanout.close(50));
+
+        // 上一次的写入线程还卡在close中 这次录音不能再打开这个sink
+        fanout.open(16000, 1);
+        assertEquals(0, fanout.getStats().size());
+        fanout.dispatch(frame, 0, frame.length, 0, System.nanoTime());
+        assertTrue(fanout.close(1000));
+
+        release.countDown();
+        assertTrue(slow.mClosed.await(2, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        fanout.open(16000, 1);
+        assertEquals(1, fanout.getStats().size());
+        fanout.dispatch(frame, 0, frame.length, 0, System.nanoTime());
+        assertTrue(fanout.close(1000));
+        assertEquals(1, fanout.getStats().get(0).getFramesWritten());
+        assertEquals(2, slow.mWrites.get());
+        assertEquals(0, slow.mOverlaps.get());
+    }
+
+    /**
+     * 记录写入顺序和同时打开次数的sink close可以被阻塞
+     */
+    private static class RecordingSink implements AudioSink {
+
+        private final CountDownLatch mRelease;
+        private final CountDownLatch mClosed = new CountDownLatch(1);
+        private final AtomicInteger mOpen = new AtomicInteger();
+        private final AtomicInteger mOverlaps = new AtomicInteger();
+        private final AtomicInteger mWrites = new AtomicInteger();
+        private final AtomicInteger mOutOfOrder = new AtomicInteger();
+        private long mLastSequence;
+
+        RecordingSink(CountDownLatch release) {
+            this.mRelease = release;
+        }
+
+        @Override
+        public void open(int sampleRate, int channelCount) {
+            if (mOpen.incrementAndGet() > 1) {
+                mOverlaps.incrementAndGet();
+            }
+            mLastSequence = -1;
+        }
+
+        @Override
+        public void write(AudioFrame frame) {
+            if (frame.sequence != mLastSequence + 1 || frame.data[0] != (short) frame.sequence) {
+                mOutOfOrder.incrementAndGet();
+            }
+            mLastSequence = frame.sequence;
+            mWrites.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (mRelease != null) {
+                    mRelease.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mOpen.decrementAndGet();
+            mClosed.countDown();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.binky.audiorecorder.sink;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * 用本地ServerSocket接收SocketSink发送的数据包
+ */
+
+public class SocketSinkTest {
+
+    @Test
+    public void largePacketIsSentWithoutNextFrame() throws Exception {
+        Log.DEBUG = false;
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        server.setReceiveBufferSize(4096);
+        SocketSink sink = new SocketSink("127.0.0.1", server.getLocalPort()).setFlushTimeout(5000);
+        try {
+            sink.open(16000, 1);
+            Socket client = server.accept();
+            client.setSoTimeout(5000);
+            final DataInputStream input = new DataInputStream(client.getInputStream());
+            // 远大于socket缓冲区的一帧 接收端延迟读取 write返回前必须等到整包发完
+            AudioFrame frame = new AudioFrame(0);
+            short[] data = new short[1 << 23];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (short) i;
+            }
+            frame.set(data, 0, data.length, 7, System.nanoTime());
+            final byte[][] received = new byte[1][];
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                        received[0] = readPacket(input);
+                    } catch (Exception e) {
+                        received[0] = null;
+                    }
+                }
+            });
+            reader.start();
+            sink.write(frame);
+            reader.join(10000);
+            ByteBuffer packet = ByteBuffer.wrap(received[0]).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(SocketSink.MAGIC, packet.getInt());
+            assertEquals(SocketSink.VERSION, packet.getShort());
+            assertEquals(SocketSink.HEADER_SIZE, packet.getShort());
+            assertEquals(7, packet.getLong());
+            packet.getLong();
+            assertEquals(16000, packet.getInt());
+            assertEquals(1, packet.getShort());
+            assertEquals(16, packet.getShort());
+            assertEquals(data.length * 2, packet.getInt());
+            for (int i = 0; i < data.length; i++) {
+                if (packet.getShort() != data[i]) {
+                    throw new AssertionError("payload differs at " + i);
+                }
+            }
+            assertEquals(1, sink.getFramesSent());
+            client.close();
+        } finally {
+            sink.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void unknownHostDoesNotFailRecording() throws Exception {
+        Log.DEBUG = false;
+        // 构造时不解析域名 打开时解析失败按重连处理
+        SocketSink sink = new SocketSink("host.invalid", 9).setDrainTimeout(100).setReconnectInterval(10, 10);
+        sink.open(16000, 1);
+        AudioFrame frame = new AudioFrame(160);
+        frame.length = 160;
+        sink.write(frame);
+        assertFalse(sink.isConnected());
+        sink.close();
+        assertEquals(0, sink.getFramesSent());
+        assertEquals(1, sink.getFramesDropped());
+    }
+
+    private static byte[] readPacket(DataInputStream input) throws IOException {
+        byte[] header = new byte[SocketSink.HEADER_SIZE];
+        input.readFully(header);
+        int payloadSize = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(SocketSink.HEADER_SIZE - 4);
+        byte[] packet = new byte[SocketSink.HEADER_SIZE + payloadSize];
+        System.arraycopy(header, 0, packet, 0, header.length);
+        input.readFully(packet, header.length, payloadSize);
+        return packet;
+    }
+}
@@ -0,0 +1,178 @@
+package com.binky.audiorecorder.trace;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * dump写出的事件由TraceDecoder原样读回 关闭的分类不记录 缓冲区绕回后只保留最新的capacity个事件
+ * <p>
+ * Trace是全局的 测试只在没有录音时运行 不会混入其他线程的事件
+ */
+
+public class TraceTest {
+
+    private File mDir;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mDir = new File(System.getProperty("java.io.tmpdir"), "trace-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+        mFile = new File(mDir, "trace.bin");
+    }
+
+    @After
+    public void tearDown() {
+        Trace.setEnabledCategories(0);
+        Trace.clear();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void dumpRoundTrip() throws Exception {
+        Trace.setCapacity(64);
+        Trace.setEnabledCategories(Trace.CATEGORY_STATE);
+        long begin = System.nanoTime();
+        long wallBegin = System.currentTimeMillis();
+        // 负数和超过32位的参数都要还原
+        Trace.event(Trace.STATE, Trace.STATE_START);
+        Trace.event(Trace.STATE, Trace.STATE_FIRST_FRAME, 123456789012L);
+        Trace.event(Trace.STATE, -1, Long.MIN_VALUE);
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Trace.event(Trace.STATE, Trace.STATE_ERROR, Long.MAX_VALUE);
+            }
+        });
+        other.start();
+        other.join();
+        Trace.event(Trace.STATE, Trace.STATE_STOP);
+        long end = System.nanoTime();
+        assertEquals(5, Trace.dump(mFile, 0));
+
+        TraceDecoder decoder = TraceDecoder.read(mFile);
+        List<TraceEvent> events = decoder.getEvents();
+        assertEquals(5, events.size());
+        long self = Thread.currentThread().getId();
+        assertEvent(events.get(0), self, Trace.STATE_START, 0);
+        assertEvent(events.get(1), self, Trace.STATE_FIRST_FRAME, 123456789012L);
+        assertEvent(events.get(2), self, -1, Long.MIN_VALUE);
+        assertEvent(events.get(3), other.getId(), Trace.STATE_ERROR, Long.MAX_VALUE);
+        assertEvent(events.get(4), self, Trace.STATE_STOP, 0);
+        assertEquals(events.get(0).getTimeNanos(), decoder.getBaseNanos());
+        long previous = begin;
+        for (TraceEvent event : events) {
+            assertEquals(Trace.CATEGORY_STATE, event.getCategory());
+            assertTrue(event.getTimeNanos() >= previous);
+            previous = event.getTimeNanos();
+        }
+        assertTrue(previous <= end);
+        assertEquals(wallBegin, decoder.getBaseWallMillis(), 100);
+    }
+
+    @Test
+    public void beginEndArePaired() throws Exception {
+        Trace.setCapacity(64);
+        Trace.setEnabledCategories(Trace.CATEGORY_ALL);
+        Trace.event(Trace.FILE_WRITE_BEGIN, 4096);
+        Thread.sleep(2);
+        Trace.event(Trace.FILE_WRITE_END, 4096);
+        Trace.event(Trace.FILE_WRITE_END, 8192);
+        Trace.setEnabledCategories(0);
+        Trace.dump(mFile, 0);
+
+        Map<Integer, long[]> durations = TraceDecoder.read(mFile).durations();
+        long[] writes = durations.get(Trace.FILE_WRITE_BEGIN);
+        // 没有BEGIN的END不计入
+        assertEquals(1, writes.length);
+        assertTrue(writes[0] >= 2000000L);
+    }
+
+    @Test
+    public void disabledCategoryRecordsNothing() throws Exception {
+        Trace.setCapacity(64);
+        Trace.setEnabledCategories(Trace.CATEGORY_FILE);
+        Trace.event(Trace.STATE, Trace.STATE_START);
+        Trace.event(Trace.SINK_OFFER, 1, 2);
+        assertEquals(0, Trace.getEventCount());
+        assertTrue(Trace.isEnabled(Trace.CATEGORY_FILE));
+        assertFalse(Trace.isEnabled(Trace.CATEGORY_STATE));
+        Trace.event(Trace.FILE_WRITE_BEGIN, 100);
+        assertEquals(1, Trace.getEventCount());
+
+        Trace.setEnabledCategories(0);
+        Trace.event(Trace.FILE_WRITE_END, 100);
+        assertEquals(1, Trace.getEventCount());
+        assertEquals(1, Trace.dump(mFile, 0));
+        assertEquals(Trace.FILE_WRITE_BEGIN, TraceDecoder.read(mFile).getEvents().get(0).getType());
+    }
+
+    @Test
+    public void wrapAroundKeepsNewestEvents() throws Exception {
+        // 向上取整到32
+        Trace.setCapacity(20);
+        Trace.setEnabledCategories(Trace.CATEGORY_STATE);
+        for (int i = 0; i < 100; i++) {
+            Trace.event(Trace.STATE, i);
+        }
+        assertEquals(100, Trace.getEventCount());
+        assertEquals(32, Trace.dump(mFile, 0));
+        List<TraceEvent> events = TraceDecoder.read(mFile).getEvents();
+        assertEquals(32, events.size());
+        for (int i = 0; i < 32; i++) {
+            assertEquals(68 + i, events.get(i).getA());
+        }
+
+        // 只要最近一段时间的事件
+        Thread.sleep(50);
+        Trace.event(Trace.STATE, 1000);
+        assertEquals(1, Trace.dump(mFile, 20));
+        assertEquals(1000, TraceDecoder.read(mFile).getEvents().get(0).getA());
+
+        Trace.clear();
+        assertEquals(0, Trace.getEventCount());
+        assertEquals(0, Trace.dump(mFile, 0));
+        assertTrue(TraceDecoder.read(mFile).getEvents().isEmpty());
+    }
+
+    @Test
+    public void foreignFileIsRejected() throws Exception {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write("not a trace".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        try {
+            TraceDecoder.read(mFile);
+            fail("decoded a foreign file");
+        } catch (IOException expected) {
+            // 魔数不对
+        }
+    }
+
+    private static void assertEvent(TraceEvent event, long thread, long a, long b) {
+        assertEquals(Trace.STATE, event.getType());
+        assertEquals(thread, event.getThreadId());
+        assertEquals(a, event.getA());
+        assertEquals(b, event.getB());
+    }
+}
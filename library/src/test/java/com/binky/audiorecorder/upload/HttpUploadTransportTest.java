@@ -0,0 +1,21 @@
+package com.binky.audiorecorder.upload;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 文件名作为URL路径段时的转义
+ */
+
+public class HttpUploadTransportTest {
+
+    @Test
+    public void encodesPathSegment() {
+        assertEquals("record_01-a.b~c.wav", HttpUploadTransport.encodePathSegment("record_01-a.b~c.wav"));
+        assertEquals("my%20record%2B1.wav", HttpUploadTransport.encodePathSegment("my record+1.wav"));
+        assertEquals("a%2Fb%3Fc%23d%25e.wav", HttpUploadTransport.encodePathSegment("a/b?c#d%e.wav"));
+        assertEquals("%E5%BD%95%E9%9F%B3.wav", HttpUploadTransport.encodePathSegment("录音.wav"));
+        assertEquals("%2E%2E", HttpUploadTransport.encodePathSegment(".."));
+    }
+}
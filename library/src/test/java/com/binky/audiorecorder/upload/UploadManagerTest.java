@@ -0,0 +1,123 @@
+package com.binky.audiorecorder.upload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.binky.audiorecorder.utils.Log;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用内存中的传输层检查分块上传的结果和统计
+ */
+
+public class UploadManagerTest {
+
+    private File mDir;
+
+    @Before
+    public void setUp() {
+        Log.DEBUG = false;
+        mDir = new File(System.getProperty("java.io.tmpdir"), "upload-test-" + System.nanoTime());
+        assertTrue(mDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    @Test
+    public void uploadsAllChunksAndIgnoresIdleTime() throws Exception {
+        byte[] content = new byte[4 * 64 * 1024 + 1000];
+        new Random(34).nextBytes(content);
+        File file = new File(mDir, "record 1.wav");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+
+        MemoryTransport transport = new MemoryTransport(content.length, 30);
+        UploadManager manager = new UploadManager(new File(mDir, "journal"), transport, 64 * 1024, 2)
+                .setRetryPolicy(3, 10);
+        final CountDownLatch completed = new CountDownLatch(1);
+        manager.setListener(new UploadListener() {
+            @Override
+            public void onComplete(UploadTask task) {
+                completed.countDown();
+            }
+        });
+        manager.enqueue(file.getPath());
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(content, transport.mReceived);
+        assertEquals(1, transport.mFinished);
+
+        UploadStats stats = manager.getStats();
+        assertEquals(content.length, stats.getBytesUploaded());
+        assertEquals(5, stats.getChunksUploaded());
+        // 每块30ms 两块并发 活动时间约为三块的时间 远小于各块耗时之和加上空闲
+        long active = stats.getActiveNanos();
+        assertTrue("active " + active, active >= 80000000L && active < stats.getTransferNanos());
+        double throughput = stats.getThroughputBytesPerSecond();
+        Thread.sleep(300);
+        // 空闲时间不计入吞吐
+        assertEquals(active, stats.getActiveNanos());
+        assertEquals(throughput, stats.getThroughputBytesPerSecond(), 0);
+        manager.shutdown();
+        assertTrue(manager.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * 把分块写到内存 每块耗时固定
+     */
+    private static class MemoryTransport implements UploadTransport {
+
+        private final byte[] mReceived;
+        private final long mDelayMillis;
+        private volatile int mFinished;
+
+        MemoryTransport(int size, long delayMillis) {
+            this.mReceived = new byte[size];
+            this.mDelayMillis = delayMillis;
+            Arrays.fill(mReceived, (byte) 0x55);
+        }
+
+        @Override
+        public void upload(UploadTask task, long offset, ByteBuffer data) throws IOException {
+            try {
+                Thread.sleep(mDelayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            synchronized (mReceived) {
+                data.duplicate().get(mReceived, (int) offset, data.remaining());
+            }
+        }
+
+        @Override
+        public void finish(UploadTask task) {
+            mFinished++;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.binky.audiorecorder.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 复用缓冲的转换和每次分配新数组的转换结果一致
+ */
+
+public class BytesTransUtilTest {
+
+    @Test
+    public void reusedBufferMatchesAllocatingConversion() {
+        BytesTransUtil util = BytesTransUtil.getInstance();
+        Random random = new Random(42);
+        short[] samples = new short[321];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) random.nextInt();
+        }
+        samples[0] = Short.MIN_VALUE;
+        samples[1] = Short.MAX_VALUE;
+        samples[2] = -1;
+
+        byte[] buffer = new byte[1024];
+        Arrays.fill(buffer, (byte) 0x5A);
+        int length = 300;
+        assertEquals(length * 2, util.Shorts2Bytes(samples, length, buffer));
+        assertArrayEquals(util.Shorts2Bytes(samples, length), Arrays.copyOf(buffer, length * 2));
+        // 缓冲中超出的部分不会被改动
+        assertEquals((byte) 0x5A, buffer[length * 2]);
+    }
+}